@@ -55,7 +55,11 @@ import javax.annotation.Nullable;
  *       .limit(10)
  *       .toImmutableList();}</pre>
  *
- * Anything which can be done using {@code FluentIterable} could be done in a different fashion
+ * <p>Consecutive calls to {@link #transform} and {@link #filter} are fused: the resulting fluent
+ * iterable applies all of their functions and predicates to an element in a single loop, rather
+ * than passing it through one wrapper iterator per call.
+ *
+ * <p>Anything which can be done using {@code FluentIterable} could be done in a different fashion
  * (often with {@link Iterables}), however the use of {@code FluentIterable} makes many sets of
  * operations significantly more concise.
  *
@@ -151,7 +155,7 @@ public abstract class FluentIterable<E> implements Iterable<E> {
    * resulting fluent iterable's iterator does not support {@code remove()}.
    */
   public final FluentIterable<E> filter(Predicate<? super E> predicate) {
-    return from(Iterables.filter(iterable, predicate));
+    return FusedFluentIterable.filter(iterable, predicate);
   }
 
   /**
@@ -189,7 +193,7 @@ public abstract class FluentIterable<E> implements Iterable<E> {
    * contains the corresponding element.
    */
   public final <T> FluentIterable<T> transform(Function<? super E, T> function) {
-    return from(Iterables.transform(iterable, function));
+    return FusedFluentIterable.transform(iterable, function);
   }
 
   /**
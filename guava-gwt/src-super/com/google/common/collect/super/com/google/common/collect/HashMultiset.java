@@ -16,19 +16,34 @@
 
 package com.google.common.collect;
 
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkState;
+import static com.google.common.collect.Multisets.checkNonnegative;
+
 import com.google.common.annotations.GwtCompatible;
+import com.google.common.primitives.Ints;
+
+import java.io.Serializable;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Set;
 
-import java.util.HashMap;
+import javax.annotation.Nullable;
 
 /**
- * Multiset implementation backed by a {@link HashMap}.
+ * Multiset implementation backed by a hash table. The elements and their
+ * counts are stored in flat arrays rather than in per-element map entries, so
+ * a {@code HashMultiset} needs considerably less memory than a {@code
+ * HashMap} from elements to counts.
  *
  * @author Kevin Bourrillion
  * @author Jared Levy
  * @since 2.0 (imported from Google Collections Library)
  */
 @GwtCompatible(serializable = true, emulated = true)
-public final class HashMultiset<E> extends AbstractMapBasedMultiset<E> {
+public final class HashMultiset<E> extends AbstractMultiset<E>
+    implements Serializable {
 
   /**
    * Creates a new, empty {@code HashMultiset} using the default initial
@@ -64,12 +79,240 @@ public final class HashMultiset<E> extends AbstractMapBasedMultiset<E> {
     return multiset;
   }
 
+  private transient ObjectCountHashMap<E> backingMap;
+
+  /*
+   * Cache the size for efficiency. Using a long lets us avoid the need for
+   * overflow checking and ensures that size() will function correctly even if
+   * the multiset had once been larger than Integer.MAX_VALUE.
+   */
+  private transient long size;
+
   private HashMultiset() {
-    super(new HashMap<E, Count>());
+    this.backingMap = new ObjectCountHashMap<E>();
   }
 
   private HashMultiset(int distinctElements) {
-    super(Maps.<E, Count>newHashMapWithExpectedSize(distinctElements));
+    this.backingMap = new ObjectCountHashMap<E>(distinctElements);
   }
-}
 
+  // Query Operations
+
+  @Override public int size() {
+    return Ints.saturatedCast(size);
+  }
+
+  @Override int distinctElements() {
+    return backingMap.size();
+  }
+
+  @Override public int count(@Nullable Object element) {
+    return backingMap.get(element);
+  }
+
+  // Modification Operations
+
+  /**
+   * {@inheritDoc}
+   *
+   * @throws IllegalArgumentException if the call would result in more than
+   *     {@link Integer#MAX_VALUE} occurrences of {@code element} in this
+   *     multiset.
+   */
+  @Override public int add(@Nullable E element, int occurrences) {
+    if (occurrences == 0) {
+      return count(element);
+    }
+    checkArgument(
+        occurrences > 0, "occurrences cannot be negative: %s", occurrences);
+    int index = backingMap.indexOf(element);
+    if (index == -1) {
+      backingMap.put(element, occurrences);
+      size += occurrences;
+      return 0;
+    }
+    int oldCount = backingMap.getValue(index);
+    long newCount = (long) oldCount + (long) occurrences;
+    checkArgument(newCount <= Integer.MAX_VALUE,
+        "too many occurrences: %s", newCount);
+    backingMap.setValue(index, (int) newCount);
+    size += occurrences;
+    return oldCount;
+  }
+
+  @Override public int remove(@Nullable Object element, int occurrences) {
+    if (occurrences == 0) {
+      return count(element);
+    }
+    checkArgument(
+        occurrences > 0, "occurrences cannot be negative: %s", occurrences);
+    int index = backingMap.indexOf(element);
+    if (index == -1) {
+      return 0;
+    }
+    int oldCount = backingMap.getValue(index);
+    if (oldCount > occurrences) {
+      backingMap.setValue(index, oldCount - occurrences);
+      size -= occurrences;
+    } else {
+      backingMap.removeEntry(index);
+      size -= oldCount;
+    }
+    return oldCount;
+  }
+
+  @Override public int setCount(@Nullable E element, int count) {
+    checkNonnegative(count, "count");
+    int oldCount = (count == 0)
+        ? backingMap.remove(element)
+        : backingMap.put(element, count);
+    size += (count - oldCount);
+    return oldCount;
+  }
+
+  @Override public void clear() {
+    backingMap.clear();
+    size = 0L;
+  }
+
+  // Iterators
+
+  /**
+   * Iterates over the entries of the backing map in index order. Since
+   * removing an entry moves the last entry into its index, an iterator that
+   * removes the current entry visits that index again.
+   */
+  private abstract class Itr<T> implements Iterator<T> {
+    int expectedModCount = backingMap.modCount;
+    int nextIndex = 0;
+
+    @Override
+    public boolean hasNext() {
+      return nextIndex < backingMap.size();
+    }
+
+    int nextEntryIndex() {
+      checkForComodification();
+      if (!hasNext()) {
+        throw new NoSuchElementException();
+      }
+      return nextIndex++;
+    }
+
+    void removeEntry(int index) {
+      size -= backingMap.getValue(index);
+      backingMap.removeEntry(index);
+      nextIndex = index;
+      expectedModCount = backingMap.modCount;
+    }
+
+    void checkForComodification() {
+      if (backingMap.modCount != expectedModCount) {
+        throw new ConcurrentModificationException();
+      }
+    }
+  }
+
+  @Override public Iterator<E> iterator() {
+    return new Itr<E>() {
+      int currentIndex = -1;
+      int occurrencesLeft;
+      boolean canRemove;
+
+      @Override
+      public boolean hasNext() {
+        return occurrencesLeft > 0 || super.hasNext();
+      }
+
+      @Override
+      public E next() {
+        if (occurrencesLeft == 0) {
+          currentIndex = nextEntryIndex();
+          occurrencesLeft = backingMap.getValue(currentIndex);
+        } else {
+          checkForComodification();
+        }
+        occurrencesLeft--;
+        canRemove = true;
+        return backingMap.getKey(currentIndex);
+      }
+
+      @Override
+      public void remove() {
+        checkState(canRemove,
+            "no calls to next() since the last call to remove()");
+        checkForComodification();
+        int count = backingMap.getValue(currentIndex);
+        if (count == 1) {
+          removeEntry(currentIndex);
+          occurrencesLeft = 0;
+        } else {
+          backingMap.setValue(currentIndex, count - 1);
+          size--;
+        }
+        canRemove = false;
+      }
+    };
+  }
+
+  /**
+   * {@inheritDoc}
+   *
+   * <p>Invoking {@link Multiset.Entry#getCount} on an entry in the returned
+   * set always returns the current count of that element in the multiset, as
+   * opposed to the count at the time the entry was retrieved.
+   */
+  @Override public Set<Multiset.Entry<E>> entrySet() {
+    return super.entrySet();
+  }
+
+  @Override Iterator<Entry<E>> entryIterator() {
+    return new Itr<Entry<E>>() {
+      int toRemove = -1;
+
+      @Override
+      public Entry<E> next() {
+        toRemove = nextEntryIndex();
+        return new MultisetEntry(toRemove);
+      }
+
+      @Override
+      public void remove() {
+        checkForComodification();
+        Iterators.checkRemove(toRemove != -1);
+        removeEntry(toRemove);
+        toRemove = -1;
+      }
+    };
+  }
+
+  /**
+   * An entry that remembers the index of its element, so that {@link
+   * #getCount} needs no hash lookup unless the element has since moved.
+   */
+  private class MultisetEntry extends Multisets.AbstractEntry<E> {
+    final E element;
+    int lastKnownIndex;
+
+    MultisetEntry(int index) {
+      this.element = backingMap.getKey(index);
+      this.lastKnownIndex = index;
+    }
+
+    @Override
+    public E getElement() {
+      return element;
+    }
+
+    @Override
+    public int getCount() {
+      // keys are unique, so the entry at lastKnownIndex is this element's if
+      // it holds the same instance
+      if (lastKnownIndex == -1 || lastKnownIndex >= backingMap.size()
+          || backingMap.getKey(lastKnownIndex) != element) {
+        lastKnownIndex = backingMap.indexOf(element);
+      }
+      return (lastKnownIndex == -1) ? 0 : backingMap.getValue(lastKnownIndex);
+    }
+  }
+}
@@ -18,8 +18,8 @@ package com.google.common.collect;
 
 import com.google.common.annotations.Beta;
 import com.google.common.annotations.GwtCompatible;
+import com.google.common.collect.SlicedImmutableMap.ListSlices;
 
-import java.util.Collection;
 import java.util.Comparator;
 import java.util.Map.Entry;
 
@@ -249,19 +249,19 @@ public class ImmutableListMultimap<K, V>
       }
     }
 
-    ImmutableMap.Builder<K, ImmutableList<V>> builder = ImmutableMap.builder();
-    int size = 0;
+    return fromGrouping(Grouping.of(multimap));
+  }
 
-    for (Entry<? extends K, ? extends Collection<? extends V>> entry
-        : multimap.asMap().entrySet()) {
-      ImmutableList<V> list = ImmutableList.copyOf(entry.getValue());
-      if (!list.isEmpty()) {
-        builder.put(entry.getKey(), list);
-        size += list.size();
-      }
+  /**
+   * Returns a multimap holding the keys and values of {@code grouping}, whose
+   * arrays must not be modified afterwards.
+   */
+  static <K, V> ImmutableListMultimap<K, V> fromGrouping(Grouping grouping) {
+    if (grouping.isEmpty()) {
+      return of();
     }
-
-    return new ImmutableListMultimap<K, V>(builder.build(), size);
+    return new ImmutableListMultimap<K, V>(
+        new ListSlices<K, V>(grouping), grouping.values.length);
   }
 
   ImmutableListMultimap(ImmutableMap<K, ImmutableList<V>> map, int size) {
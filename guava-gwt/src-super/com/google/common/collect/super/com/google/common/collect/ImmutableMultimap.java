@@ -20,17 +20,13 @@ import static com.google.common.base.Preconditions.checkNotNull;
 
 import com.google.common.annotations.Beta;
 import com.google.common.annotations.GwtCompatible;
-import com.google.common.base.Function;
 
 import java.io.Serializable;
 import java.util.Arrays;
 import java.util.Collection;
-import java.util.Collections;
 import java.util.Comparator;
 import java.util.Iterator;
-import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.Map;
 import java.util.Map.Entry;
 
 import javax.annotation.Nullable;
@@ -118,21 +114,6 @@ public abstract class ImmutableMultimap<K, V>
     return new Builder<K, V>();
   }
 
-  /**
-   * Multimap for {@link ImmutableMultimap.Builder} that maintains key and
-   * value orderings, allows duplicate values, and performs better than
-   * {@link LinkedListMultimap}.
-   */
-  private static class BuilderMultimap<K, V> extends AbstractMultimap<K, V> {
-    BuilderMultimap() {
-      super(new LinkedHashMap<K, Collection<V>>());
-    }
-    @Override Collection<V> createCollection() {
-      return Lists.newArrayList();
-    }
-    private static final long serialVersionUID = 0;
-  }
-
   /**
    * A builder for creating immutable multimap instances, especially
    * {@code public static final} multimaps ("constant multimaps"). Example:
@@ -152,7 +133,9 @@ public abstract class ImmutableMultimap<K, V>
    * @since 2.0 (imported from Google Collections Library)
    */
   public static class Builder<K, V> {
-    Multimap<K, V> builderMultimap = new BuilderMultimap<K, V>();
+    // the keys and values of the mappings, in the order they were added
+    final List<K> keys = Lists.newArrayList();
+    final List<V> values = Lists.newArrayList();
     Comparator<? super K> keyComparator;
     Comparator<? super V> valueComparator;
 
@@ -166,7 +149,10 @@ public abstract class ImmutableMultimap<K, V>
      * Adds a key-value mapping to the built multimap.
      */
     public Builder<K, V> put(K key, V value) {
-      builderMultimap.put(checkNotNull(key), checkNotNull(value));
+      checkNotNull(key);
+      checkNotNull(value);
+      keys.add(key);
+      values.add(value);
       return this;
     }
 
@@ -176,9 +162,7 @@ public abstract class ImmutableMultimap<K, V>
      * @since 11.0
      */
     public Builder<K, V> put(Entry<? extends K, ? extends V> entry) {
-      builderMultimap.put(
-          checkNotNull(entry.getKey()), checkNotNull(entry.getValue()));
-      return this;
+      return put(entry.getKey(), entry.getValue());
     }
 
     /**
@@ -189,9 +173,9 @@ public abstract class ImmutableMultimap<K, V>
      *     state.
      */
     public Builder<K, V> putAll(K key, Iterable<? extends V> values) {
-      Collection<V> valueList = builderMultimap.get(checkNotNull(key));
+      checkNotNull(key);
       for (V value : values) {
-        valueList.add(checkNotNull(value));
+        put(key, value);
       }
       return this;
     }
@@ -249,30 +233,8 @@ public abstract class ImmutableMultimap<K, V>
      * Returns a newly-created immutable multimap.
      */
     public ImmutableMultimap<K, V> build() {
-      if (valueComparator != null) {
-        for (Collection<V> values : builderMultimap.asMap().values()) {
-          List<V> list = (List <V>) values;
-          Collections.sort(list, valueComparator);
-        }
-      }
-      if (keyComparator != null) {
-        Multimap<K, V> sortedCopy = new BuilderMultimap<K, V>();
-        List<Map.Entry<K, Collection<V>>> entries = Lists.newArrayList(
-            builderMultimap.asMap().entrySet());
-        Collections.sort(
-            entries,
-            Ordering.from(keyComparator).onResultOf(new Function<Entry<K, Collection<V>>, K>() {
-              @Override
-              public K apply(Entry<K, Collection<V>> entry) {
-                return entry.getKey();
-              }
-            }));
-        for (Map.Entry<K, Collection<V>> entry : entries) {
-          sortedCopy.putAll(entry.getKey(), entry.getValue());
-        }
-        builderMultimap = sortedCopy;
-      }
-      return copyOf(builderMultimap);
+      return ImmutableListMultimap.fromGrouping(Grouping.byKey(
+          keys, values, keyComparator, valueComparator));
     }
   }
 
@@ -301,6 +263,131 @@ public abstract class ImmutableMultimap<K, V>
     return ImmutableListMultimap.copyOf(multimap);
   }
 
+  /**
+   * The distinct keys, offsets and values of a multimap, in the form that a
+   * {@code SlicedImmutableMap} stores them. A set multimap's grouping may
+   * still contain repeated values for a key.
+   */
+  static final class Grouping {
+    final Object[] keys;
+    final int[] offsets;
+    final Object[] values;
+
+    Grouping(Object[] keys, int[] offsets, Object[] values) {
+      this.keys = keys;
+      this.offsets = offsets;
+      this.values = values;
+    }
+
+    boolean isEmpty() {
+      return keys.length == 0;
+    }
+
+    /**
+     * Groups the mappings {@code keys.get(i)}, {@code values.get(i)} by key.
+     * The keys are ordered by {@code keyComparator}, or by first appearance if
+     * it is null, and the values of each key by {@code valueComparator}, or by
+     * position if it is null.
+     *
+     * <p>This is a counting sort, so it takes time linear in the number of
+     * mappings, plus the time to sort the distinct keys and each key's values
+     * when comparators are given.
+     */
+    static Grouping byKey(List<?> keys, List<?> values,
+        @Nullable Comparator<?> keyComparator,
+        @Nullable Comparator<?> valueComparator) {
+      int size = keys.size();
+      // value i of counts is the number of mappings of the i-th distinct key
+      ObjectCountHashMap<Object> counts = new ObjectCountHashMap<Object>();
+      int[] ordinals = new int[size];
+      for (int i = 0; i < size; i++) {
+        Object key = keys.get(i);
+        int ordinal = counts.indexOf(key);
+        if (ordinal == -1) {
+          ordinal = counts.size();
+          counts.put(key, 1);
+        } else {
+          counts.setValue(ordinal, counts.getValue(ordinal) + 1);
+        }
+        ordinals[i] = ordinal;
+      }
+
+      int keyCount = counts.size();
+      Object[] distinctKeys = new Object[keyCount];
+      for (int ordinal = 0; ordinal < keyCount; ordinal++) {
+        distinctKeys[ordinal] = counts.getKey(ordinal);
+      }
+      // rank[ordinal] is the position of the key in the grouped multimap
+      int[] rank = new int[keyCount];
+      if (keyComparator == null) {
+        for (int ordinal = 0; ordinal < keyCount; ordinal++) {
+          rank[ordinal] = ordinal;
+        }
+      } else {
+        sort(distinctKeys, 0, keyCount, keyComparator);
+        for (int position = 0; position < keyCount; position++) {
+          rank[counts.indexOf(distinctKeys[position])] = position;
+        }
+      }
+
+      int[] offsets = new int[keyCount + 1];
+      for (int ordinal = 0; ordinal < keyCount; ordinal++) {
+        offsets[rank[ordinal] + 1] = counts.getValue(ordinal);
+      }
+      for (int position = 0; position < keyCount; position++) {
+        offsets[position + 1] += offsets[position];
+      }
+      int[] next = new int[keyCount];
+      System.arraycopy(offsets, 0, next, 0, keyCount);
+      Object[] groupedValues = new Object[size];
+      for (int i = 0; i < size; i++) {
+        groupedValues[next[rank[ordinals[i]]]++] = values.get(i);
+      }
+      if (valueComparator != null) {
+        for (int position = 0; position < keyCount; position++) {
+          sort(groupedValues, offsets[position], offsets[position + 1],
+              valueComparator);
+        }
+      }
+      return new Grouping(distinctKeys, offsets, groupedValues);
+    }
+
+    @SuppressWarnings("unchecked") // the comparator accepts the elements
+    private static void sort(Object[] array, int fromIndex, int toIndex,
+        Comparator<?> comparator) {
+      Arrays.sort(array, fromIndex, toIndex, (Comparator<Object>) comparator);
+    }
+
+    /**
+     * Returns the grouping of the mappings in {@code multimap}, in the order
+     * of its {@code asMap()} view. Keys with no values are omitted.
+     *
+     * @throws NullPointerException if any key or value is null
+     */
+    static Grouping of(Multimap<?, ?> multimap) {
+      Collection<? extends Entry<?, ? extends Collection<?>>> entries =
+          multimap.asMap().entrySet();
+      List<Object> keys = Lists.newArrayListWithCapacity(entries.size());
+      List<Object> values = Lists.newArrayListWithCapacity(multimap.size());
+      int[] offsets = new int[entries.size() + 1];
+      int keyCount = 0;
+      for (Entry<?, ? extends Collection<?>> entry : entries) {
+        Collection<?> collection = entry.getValue();
+        if (collection.isEmpty()) {
+          continue;
+        }
+        keys.add(checkNotNull(entry.getKey()));
+        for (Object value : collection) {
+          values.add(checkNotNull(value));
+        }
+        offsets[++keyCount] = values.size();
+      }
+      int[] trimmedOffsets = new int[keyCount + 1];
+      System.arraycopy(offsets, 0, trimmedOffsets, 0, keyCount + 1);
+      return new Grouping(keys.toArray(), trimmedOffsets, values.toArray());
+    }
+  }
+
   final transient ImmutableMap<K, ? extends ImmutableCollection<V>> map;
   final transient int size;
 
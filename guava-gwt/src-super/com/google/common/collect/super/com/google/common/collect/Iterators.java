@@ -37,8 +37,6 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.ListIterator;
 import java.util.NoSuchElementException;
-import java.util.PriorityQueue;
-import java.util.Queue;
 
 import javax.annotation.Nullable;
 
@@ -1272,10 +1270,30 @@ public final class Iterators {
   public static <T> UnmodifiableIterator<T> mergeSorted(
       Iterable<? extends Iterator<? extends T>> iterators,
       Comparator<? super T> comparator) {
+    return mergeSorted(iterators, comparator, 1);
+  }
+
+  /**
+   * Returns an iterator over the merged contents of all given
+   * {@code iterators}, like {@link #mergeSorted(Iterable, Comparator)}, but
+   * which reads up to {@code batchSize} elements at a time from each input
+   * iterator into a buffer. This reduces the number of calls to the input
+   * iterators that are interleaved with the merge, at the cost of reading
+   * ahead of the merged output and holding up to {@code batchSize} elements
+   * per input iterator in memory.
+   *
+   * @throws IllegalArgumentException if {@code batchSize} is not positive
+   * @since 12.0
+   */
+  @Beta
+  public static <T> UnmodifiableIterator<T> mergeSorted(
+      Iterable<? extends Iterator<? extends T>> iterators,
+      Comparator<? super T> comparator, int batchSize) {
     checkNotNull(iterators, "iterators");
     checkNotNull(comparator, "comparator");
+    checkArgument(batchSize > 0, "batchSize must be positive: %s", batchSize);
 
-    return new MergingIterator<T>(iterators, comparator);
+    return new MergingIterator<T>(iterators, comparator, batchSize);
   }
 
   /**
@@ -1283,50 +1301,163 @@ public final class Iterators {
    * each time the iterator is polled. This amortizes the sorting cost over the
    * iteration and requires less memory than sorting all elements at once.
    *
-   * <p>Retrieving a single element takes approximately O(log(M)) time, where M
-   * is the number of iterators. (Retrieving all elements takes approximately
-   * O(N*log(M)) time, where N is the total number of elements.)
+   * <p>The current element of each input iterator is kept in a tournament
+   * tree of losers. Each internal node of the tree holds the input that lost
+   * the comparison made at that node, and the overall winner is held
+   * separately. After the winner is returned and its input advanced, the new
+   * element only has to be compared with the losers on the path from its
+   * leaf to the root. Retrieving a single element therefore takes at most
+   * ceil(log2(M)) comparisons, where M is the number of iterators, rather than
+   * the up to 2*log2(M) comparisons of removing from and adding to a binary
+   * heap. (Retrieving all elements takes approximately O(N*log(M)) time, where
+   * N is the total number of elements.)
    */
   private static class MergingIterator<T> extends AbstractIterator<T> {
-    final Queue<PeekingIterator<T>> queue;
     final Comparator<? super T> comparator;
-
+    final Iterator<? extends T>[] inputs;
+    // the current element of each input; meaningful only if it is not done
+    final Object[] heads;
+    final boolean[] done;
+    // tree[0] is the winner, and tree[n] for n > 0 the loser at node n, whose
+    // children are the nodes 2n and 2n + 1; input i is the leaf inputs.length + i
+    final int[] tree;
+    final int batchSize;
+    // for batchSize > 1, the elements read from each input after its head
+    final Object[][] batches;
+    final int[] batchPositions;
+    final int[] batchLimits;
+
+    @SuppressWarnings("unchecked") // generic array creation
     public MergingIterator(Iterable<? extends Iterator<? extends T>> iterators,
-        Comparator<? super T> itemComparator) {
+        Comparator<? super T> itemComparator, int batchSize) {
       this.comparator = itemComparator;
+      this.batchSize = batchSize;
 
-      // A comparator that's used by the heap, allowing the heap
-      // to be sorted based on the top of each iterator.
-      Comparator<PeekingIterator<T>> heapComparator =
-          new Comparator<PeekingIterator<T>>() {
-            @Override
-            public int compare(PeekingIterator<T> o1, PeekingIterator<T> o2) {
-              return comparator.compare(o1.peek(), o2.peek());
-            }
-          };
+      List<Iterator<? extends T>> nonEmpty = Lists.newArrayList();
+      for (Iterator<? extends T> iterator : iterators) {
+        if (iterator.hasNext()) {
+          nonEmpty.add(iterator);
+        }
+      }
+      int size = nonEmpty.size();
+      inputs = (Iterator<? extends T>[]) nonEmpty.toArray(new Iterator<?>[size]);
+      heads = new Object[size];
+      done = new boolean[size];
+      tree = new int[Math.max(size, 1)];
+      if (batchSize > 1) {
+        batches = new Object[size][];
+        batchPositions = new int[size];
+        batchLimits = new int[size];
+      } else {
+        batches = null;
+        batchPositions = null;
+        batchLimits = null;
+      }
 
-      queue = new PriorityQueue<PeekingIterator<T>>(2, heapComparator);
+      if (size == 0) {
+        return;
+      }
+      for (int i = 0; i < size; i++) {
+        advance(i);
+      }
+      // Play the initial tournament bottom-up, recording the winner of each
+      // node in winners and its loser in tree.
+      int[] winners = new int[2 * size];
+      for (int i = 0; i < size; i++) {
+        winners[size + i] = i;
+      }
+      for (int node = size - 1; node > 0; node--) {
+        int left = winners[2 * node];
+        int right = winners[2 * node + 1];
+        if (beats(left, right)) {
+          winners[node] = left;
+          tree[node] = right;
+        } else {
+          winners[node] = right;
+          tree[node] = left;
+        }
+      }
+      tree[0] = winners[1];
+    }
 
-      for (Iterator<? extends T> iterator : iterators) {
+    /**
+     * Returns whether the current element of input {@code a} precedes that of
+     * input {@code b}. Equivalent elements are ordered by input index, and
+     * exhausted inputs come last.
+     */
+    @SuppressWarnings("unchecked") // heads of inputs that are not done are Ts
+    boolean beats(int a, int b) {
+      if (done[a] || done[b]) {
+        return !done[a];
+      }
+      int result = comparator.compare((T) heads[a], (T) heads[b]);
+      return result < 0 || (result == 0 && a < b);
+    }
+
+    /** Replaces the current element of {@code input} with its next one. */
+    void advance(int input) {
+      if (batches == null) {
+        Iterator<? extends T> iterator = inputs[input];
         if (iterator.hasNext()) {
-          queue.add(Iterators.peekingIterator(iterator));
+          heads[input] = iterator.next();
+        } else {
+          heads[input] = null;
+          done[input] = true;
         }
+        return;
+      }
+      if (batchPositions[input] == batchLimits[input] && !fill(input)) {
+        heads[input] = null;
+        done[input] = true;
+        return;
       }
+      Object[] batch = batches[input];
+      heads[input] = batch[batchPositions[input]];
+      batch[batchPositions[input]++] = null;
     }
 
+    /** Reads the next batch of {@code input}, returning false if it has none. */
+    boolean fill(int input) {
+      Iterator<? extends T> iterator = inputs[input];
+      if (!iterator.hasNext()) {
+        batches[input] = null;
+        return false;
+      }
+      Object[] batch = batches[input];
+      if (batch == null) {
+        batch = batches[input] = new Object[batchSize];
+      }
+      int limit = 0;
+      do {
+        batch[limit++] = iterator.next();
+      } while (limit < batchSize && iterator.hasNext());
+      batchPositions[input] = 0;
+      batchLimits[input] = limit;
+      return true;
+    }
+
+    @SuppressWarnings("unchecked") // heads of inputs that are not done are Ts
     @Override
     protected T computeNext() {
-      if (queue.isEmpty()) {
+      if (inputs.length == 0) {
         return endOfData();
       }
-
-      PeekingIterator<T> nextIter = queue.poll();
-      T next = nextIter.next();
-
-      if (nextIter.hasNext()) {
-        queue.add(nextIter);
+      int winner = tree[0];
+      if (done[winner]) {
+        return endOfData();
       }
-
+      T next = (T) heads[winner];
+      advance(winner);
+
+      // Replay the matches on the path from the winner's leaf to the root.
+      for (int node = (winner + inputs.length) >>> 1; node > 0; node >>>= 1) {
+        int loser = tree[node];
+        if (beats(loser, winner)) {
+          tree[node] = winner;
+          winner = loser;
+        }
+      }
+      tree[0] = winner;
       return next;
     }
   }
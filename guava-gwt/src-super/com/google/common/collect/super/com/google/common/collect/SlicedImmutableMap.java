@@ -0,0 +1,84 @@
+/*
+ * Copyright (C) 2012 The Guava Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.common.collect;
+
+import com.google.common.collect.ImmutableMultimap.Grouping;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * GWT emulation of {@link SlicedImmutableMap}, which copies each key's slice
+ * of the values into a collection of its own.
+ */
+abstract class SlicedImmutableMap<K, V, C extends ImmutableCollection<V>>
+    extends ImmutableMap<K, C> {
+  private final int valueCount;
+
+  SlicedImmutableMap(Map<K, C> delegate, int valueCount) {
+    super(delegate);
+    this.valueCount = valueCount;
+  }
+
+  /** Returns the total number of values of all keys. */
+  final int valueCount() {
+    return valueCount;
+  }
+
+  @SuppressWarnings("unchecked") // the grouping holds only K's and V's
+  static <K, V, C> Map<K, C> slices(Grouping grouping, boolean sets) {
+    Map<K, C> map = Maps.newLinkedHashMap();
+    List<Object> values = Arrays.asList(grouping.values);
+    for (int i = 0; i < grouping.keys.length; i++) {
+      List<Object> slice =
+          values.subList(grouping.offsets[i], grouping.offsets[i + 1]);
+      Object previous = map.put((K) grouping.keys[i], (C) (sets
+          ? ImmutableSet.copyOf(slice)
+          : ImmutableList.copyOf(slice)));
+      if (previous != null) {
+        throw new IllegalArgumentException(
+            "duplicate key: " + grouping.keys[i]);
+      }
+    }
+    return map;
+  }
+
+  static final class ListSlices<K, V>
+      extends SlicedImmutableMap<K, V, ImmutableList<V>> {
+    ListSlices(Grouping grouping) {
+      super(SlicedImmutableMap.<K, V, ImmutableList<V>>slices(grouping, false),
+          grouping.values.length);
+    }
+  }
+
+  static final class SetSlices<K, V>
+      extends SlicedImmutableMap<K, V, ImmutableSet<V>> {
+    static <K, V> SetSlices<K, V> create(Grouping grouping) {
+      Map<K, ImmutableSet<V>> map = slices(grouping, true);
+      int valueCount = 0;
+      for (ImmutableSet<V> slice : map.values()) {
+        valueCount += slice.size();
+      }
+      return new SetSlices<K, V>(map, valueCount);
+    }
+
+    private SetSlices(Map<K, ImmutableSet<V>> map, int valueCount) {
+      super(map, valueCount);
+    }
+  }
+}
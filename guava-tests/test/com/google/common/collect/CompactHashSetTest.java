@@ -0,0 +1,119 @@
+/*
+ * Copyright (C) 2012 The Guava Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.common.collect;
+
+import com.google.common.annotations.GwtIncompatible;
+import com.google.common.collect.testing.SetTestSuiteBuilder;
+import com.google.common.collect.testing.TestStringSetGenerator;
+import com.google.common.collect.testing.features.CollectionFeature;
+import com.google.common.collect.testing.features.CollectionSize;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Tests for {@link CompactHashSet}.
+ */
+public class CompactHashSetTest extends TestCase {
+  @GwtIncompatible("suite")
+  public static Test suite() {
+    TestSuite suite = new TestSuite();
+    suite.addTestSuite(CompactHashSetTest.class);
+    suite.addTest(SetTestSuiteBuilder.using(new TestStringSetGenerator() {
+          @Override protected Set<String> create(String[] elements) {
+            Set<String> set = CompactHashSet.createWithExpectedSize(0);
+            set.addAll(Arrays.asList(elements));
+            return set;
+          }
+        })
+        .named("CompactHashSet")
+        .withFeatures(CollectionSize.ANY,
+            CollectionFeature.GENERAL_PURPOSE,
+            CollectionFeature.ALLOWS_NULL_VALUES,
+            CollectionFeature.FAILS_FAST_ON_CONCURRENT_MODIFICATION)
+        .createTestSuite());
+    return suite;
+  }
+
+  public void testNegativeExpectedSize() {
+    try {
+      CompactHashSet.createWithExpectedSize(-1);
+      fail();
+    } catch (IllegalArgumentException expected) {
+    }
+  }
+
+  /**
+   * Checks random operations against a {@code HashSet}, using a small range of
+   * elements with colliding hash codes so that the tables see long probe
+   * sequences, removals from the middle of clusters, and resizing.
+   */
+  public void testRandomOperationsMatchHashSet() {
+    Random random = new Random(0);
+    Set<Collider> set = CompactHashSet.createWithExpectedSize(2);
+    Set<Collider> expected = Sets.newHashSet();
+    for (int i = 0; i < 20000; i++) {
+      Collider element = new Collider(random.nextInt(200));
+      switch (random.nextInt(4)) {
+        case 0:
+        case 1:
+          assertEquals(expected.add(element), set.add(element));
+          break;
+        case 2:
+          assertEquals(expected.remove(element), set.remove(element));
+          break;
+        default:
+          assertEquals(expected.contains(element), set.contains(element));
+      }
+      assertEquals(expected.size(), set.size());
+      if (random.nextInt(1000) == 0) {
+        for (Iterator<Collider> iterator = set.iterator(); iterator.hasNext(); ) {
+          Collider next = iterator.next();
+          if (random.nextBoolean()) {
+            iterator.remove();
+            assertTrue(expected.remove(next));
+          }
+        }
+        assertEquals(expected, set);
+      }
+    }
+    assertEquals(expected, set);
+    assertEquals(expected, Sets.newHashSet(set));
+  }
+
+  private static final class Collider {
+    final int value;
+
+    Collider(int value) {
+      this.value = value;
+    }
+
+    @Override public int hashCode() {
+      return value / 8;
+    }
+
+    @Override public boolean equals(Object obj) {
+      return obj instanceof Collider && ((Collider) obj).value == value;
+    }
+  }
+}
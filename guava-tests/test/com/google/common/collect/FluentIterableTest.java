@@ -38,6 +38,9 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Set;
 import java.util.SortedSet;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 /**
  * Unit test for {@link FluentIterable}.
@@ -269,6 +272,66 @@ public class FluentIterableTest extends TestCase {
     assertEquals(asList("1", "2", "null", "3"), Lists.newArrayList(result));
   }
 
+  public void testTransformAndFilterChain() {
+    List<Integer> input = Lists.newArrayList();
+    for (int i = 0; i < 100; i++) {
+      input.add(i);
+    }
+    FluentIterable<String> chained = FluentIterable.from(input)
+        .filter(new IsEven())
+        .transform(new PlusOneFunction())
+        .filter(Predicates.not(Predicates.equalTo(51)))
+        .transform(new StringValueOfFunction());
+    Iterable<String> nested = Iterables.transform(
+        Iterables.filter(
+            Iterables.transform(Iterables.filter(input, new IsEven()), new PlusOneFunction()),
+            Predicates.not(Predicates.equalTo(51))),
+        new StringValueOfFunction());
+
+    assertEquals(Lists.newArrayList(nested), Lists.newArrayList(chained));
+    assertCanIterateAgain(chained);
+    assertEquals(Iterables.toString(nested), chained.toString());
+  }
+
+  public void testTransformChain_remove() {
+    List<Integer> input = Lists.newArrayList(1, 2, 3);
+    Iterator<String> iterator = FluentIterable.from(input)
+        .transform(new PlusOneFunction())
+        .transform(new StringValueOfFunction())
+        .iterator();
+    assertEquals("2", iterator.next());
+    iterator.remove();
+    assertEquals(asList(2, 3), input);
+  }
+
+  public void testTransformAndFilterChain_removeUnsupported() {
+    List<Integer> input = Lists.newArrayList(1, 2, 3);
+    Iterator<Integer> iterator = FluentIterable.from(input)
+        .transform(new PlusOneFunction())
+        .filter(new IsEven())
+        .iterator();
+    assertEquals(2, (int) iterator.next());
+    try {
+      iterator.remove();
+      fail();
+    } catch (UnsupportedOperationException expected) {
+    }
+  }
+
+  private static final class PlusOneFunction implements Function<Integer, Integer> {
+    @Override
+    public Integer apply(Integer from) {
+      return from + 1;
+    }
+  }
+
+  private static final class IsEven implements Predicate<Integer> {
+    @Override
+    public boolean apply(Integer input) {
+      return input % 2 == 0;
+    }
+  }
+
   public void testFirst_list() {
     List<String> list = Lists.newArrayList("a", "b", "c");
     assertEquals("a", FluentIterable.from(list).first().get());
@@ -484,6 +547,84 @@ public class FluentIterableTest extends TestCase {
     assertTrue(fluent().toImmutableList().isEmpty());
   }
 
+  @GwtIncompatible("Executor")
+  public void testToImmutableList_parallel() {
+    List<Integer> input = Lists.newArrayList();
+    for (int i = 0; i < 1000; i++) {
+      input.add(i);
+    }
+    FluentIterable<String> chained = FluentIterable.from(input)
+        .filter(new IsEven())
+        .transform(new StringValueOfFunction());
+    ExecutorService executor = Executors.newFixedThreadPool(3);
+    try {
+      for (int rangeCount = 1; rangeCount <= 7; rangeCount++) {
+        assertEquals(chained.toImmutableList(),
+            chained.toImmutableList(executor, rangeCount, 1));
+      }
+      assertEquals(input, FluentIterable.from(input).toImmutableList(executor, 5, 1));
+      assertEquals(chained.toImmutableList(), chained.toImmutableList(executor));
+      assertEquals(ImmutableList.of(),
+          FluentIterable.from(input).filter(Predicates.alwaysFalse())
+              .toImmutableList(executor, 4, 1));
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  @GwtIncompatible("Executor")
+  public void testToImmutableList_parallelNotRandomAccess() {
+    List<Integer> input = Lists.newLinkedList(asList(1, 2, 3, 4));
+    Executor executor = new Executor() {
+      @Override
+      public void execute(Runnable command) {
+        fail("a list without random access should be processed sequentially");
+      }
+    };
+    assertEquals(asList(2, 3, 4, 5),
+        FluentIterable.from(input).transform(new PlusOneFunction())
+            .toImmutableList(executor, 4, 1));
+  }
+
+  @GwtIncompatible("Executor")
+  public void testToImmutableList_parallelFailure() {
+    List<Integer> input = Lists.newArrayList();
+    for (int i = 0; i < 100; i++) {
+      input.add(i);
+    }
+    FluentIterable<Integer> failing = FluentIterable.from(input).transform(
+        new Function<Integer, Integer>() {
+          @Override
+          public Integer apply(Integer from) {
+            if (from == 77) {
+              throw new IllegalStateException();
+            }
+            return from;
+          }
+        });
+    ExecutorService executor = Executors.newFixedThreadPool(2);
+    try {
+      failing.toImmutableList(executor, 4, 1);
+      fail();
+    } catch (IllegalStateException expected) {
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  @GwtIncompatible("Executor")
+  public void testToImmutableList_parallelNullElement() {
+    List<Integer> input = Lists.newArrayList(1, 2, null, 4);
+    ExecutorService executor = Executors.newFixedThreadPool(2);
+    try {
+      FluentIterable.from(input).toImmutableList(executor, 2, 1);
+      fail();
+    } catch (NullPointerException expected) {
+    } finally {
+      executor.shutdown();
+    }
+  }
+
   public void testToImmutableSet() {
     ASSERT.that(fluent(1, 2, 3, 4).toImmutableSet()).hasContentsInOrder(1, 2, 3, 4);
   }
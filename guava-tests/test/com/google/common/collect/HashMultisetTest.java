@@ -22,6 +22,9 @@ import com.google.common.testing.SerializableTester;
 
 import java.io.Serializable;
 import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Random;
 
 /**
  * Unit test for {@link HashMultiset}.
@@ -58,6 +61,72 @@ public class HashMultisetTest extends AbstractMultisetTest {
     assertEquals(2, multiset.count("foo"));
   }
 
+  /**
+   * Checks random operations against a map from elements to counts, with
+   * enough distinct elements to force the backing table to grow and with
+   * removals that empty it out again.
+   */
+  public void testRandomOperationsMatchMap() {
+    Random random = new Random(0);
+    HashMultiset<Integer> multiset = HashMultiset.create();
+    Map<Integer, Integer> expected = Maps.newHashMap();
+    int expectedSize = 0;
+    for (int i = 0; i < 20000; i++) {
+      Integer element = random.nextInt(300);
+      int oldCount = expected.containsKey(element) ? expected.get(element) : 0;
+      int newCount;
+      switch (random.nextInt(4)) {
+        case 0:
+          int occurrences = random.nextInt(3);
+          assertEquals(oldCount, multiset.add(element, occurrences));
+          newCount = oldCount + occurrences;
+          break;
+        case 1:
+          occurrences = random.nextInt(3);
+          assertEquals(oldCount, multiset.remove(element, occurrences));
+          newCount = Math.max(0, oldCount - occurrences);
+          break;
+        case 2:
+          newCount = random.nextInt(3);
+          assertEquals(oldCount, multiset.setCount(element, newCount));
+          break;
+        default:
+          assertEquals(oldCount, multiset.count(element));
+          newCount = oldCount;
+      }
+      if (newCount == 0) {
+        expected.remove(element);
+      } else {
+        expected.put(element, newCount);
+      }
+      expectedSize += newCount - oldCount;
+      assertEquals(expectedSize, multiset.size());
+      assertEquals(expected.size(), multiset.elementSet().size());
+      if (random.nextInt(1000) == 0) {
+        for (Iterator<Integer> iterator = multiset.iterator();
+            iterator.hasNext(); ) {
+          Integer next = iterator.next();
+          if (random.nextInt(4) == 0) {
+            iterator.remove();
+            expectedSize--;
+            int count = expected.get(next) - 1;
+            if (count == 0) {
+              expected.remove(next);
+            } else {
+              expected.put(next, count);
+            }
+          }
+        }
+        assertEquals(expectedSize, multiset.size());
+      }
+    }
+    for (Multiset.Entry<Integer> entry : multiset.entrySet()) {
+      assertEquals(expected.get(entry.getElement()),
+          Integer.valueOf(entry.getCount()));
+    }
+    assertEquals(expected.size(), multiset.entrySet().size());
+  }
+
   @GwtIncompatible("SerializableTester")
   public void testSerializationContainingSelf() {
     Multiset<Multiset<?>> multiset = HashMultiset.create();
@@ -27,10 +27,19 @@ import com.google.common.testing.SerializableTester;
 
 import junit.framework.TestCase;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.List;
 import java.util.Map.Entry;
+import java.util.Random;
 
 /**
  * Tests for {@link ImmutableListMultimap}.
@@ -388,6 +397,52 @@ public class ImmutableListMultimapTest extends TestCase {
     assertEquals("{foo=[1, 3], bar=[2]}", multimap.toString());
   }
 
+  public void testRandomBuildsMatchLinkedListMultimap() {
+    Random random = new Random(0);
+    for (int trial = 0; trial < 100; trial++) {
+      ImmutableListMultimap.Builder<Integer, Integer> builder =
+          ImmutableListMultimap.builder();
+      Multimap<Integer, Integer> expected = LinkedListMultimap.create();
+      int entryCount = random.nextInt(50);
+      for (int i = 0; i < entryCount; i++) {
+        int key = random.nextInt(10);
+        int value = random.nextInt(10);
+        builder.put(key, value);
+        expected.put(key, value);
+      }
+      ImmutableListMultimap<Integer, Integer> multimap = builder.build();
+      assertEquals(expected, multimap);
+      assertEquals(expected.size(), multimap.size());
+      assertEquals(ImmutableList.copyOf(expected.keySet()),
+          ImmutableList.copyOf(multimap.keySet()));
+      for (int key = -1; key <= 10; key++) {
+        assertEquals(ImmutableList.copyOf(expected.get(key)),
+            ImmutableList.copyOf(multimap.get(key)));
+        assertEquals(expected.containsKey(key), multimap.containsKey(key));
+        for (int value = 0; value < 10; value++) {
+          assertEquals(expected.containsEntry(key, value),
+              multimap.containsEntry(key, value));
+        }
+      }
+      List<Entry<Integer, Integer>> expectedEntries = Lists.newArrayList();
+      for (Integer key : expected.keySet()) {
+        for (Integer value : expected.get(key)) {
+          expectedEntries.add(Maps.immutableEntry(key, value));
+        }
+      }
+      assertEquals(expectedEntries, ImmutableList.copyOf(multimap.entries()));
+    }
+  }
+
+  public void testGetReturnsPartialView() {
+    ImmutableListMultimap<String, Integer> multimap =
+        ImmutableListMultimap.copyOf(createMultimap());
+    ImmutableList<Integer> values = multimap.get("foo");
+    ImmutableList<Integer> copy = ImmutableList.copyOf(values);
+    assertNotSame(values, copy);
+    assertEquals(values, copy);
+  }
+
   public void testMultimapWrites() {
     Multimap<String, Integer> multimap = createMultimap();
     UnmodifiableCollectionTests.assertMultimapIsUnmodifiable(
@@ -496,4 +551,47 @@ public class ImmutableListMultimapTest extends TestCase {
     Multimap<String, Integer> multimap = ImmutableListMultimap.of();
     assertSame(multimap, SerializableTester.reserialize(multimap));
   }
+
+  @GwtIncompatible("ObjectInputStream")
+  public void testSerialization_nullKey() throws Exception {
+    Multimap<Object, String> multimap = ImmutableListMultimap.<Object, String>of(
+        "foo", "a", new NullOnRead(), "b");
+    try {
+      reserialize(multimap);
+      fail();
+    } catch (InvalidObjectException expected) {
+    }
+  }
+
+  @GwtIncompatible("ObjectInputStream")
+  public void testSerialization_nullValue() throws Exception {
+    Multimap<String, Object> multimap = ImmutableListMultimap.<String, Object>of(
+        "foo", "a", "foo", new NullOnRead());
+    try {
+      reserialize(multimap);
+      fail();
+    } catch (InvalidObjectException expected) {
+    }
+  }
+
+  /** Reads back as null, standing in for a corrupted stream. */
+  @GwtIncompatible("ObjectInputStream")
+  private static class NullOnRead implements Serializable {
+    private Object readResolve() {
+      return null;
+    }
+
+    private static final long serialVersionUID = 0;
+  }
+
+  @GwtIncompatible("ObjectInputStream")
+  private static Object reserialize(Object object)
+      throws IOException, ClassNotFoundException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    ObjectOutputStream out = new ObjectOutputStream(bytes);
+    out.writeObject(object);
+    out.close();
+    return new ObjectInputStream(
+        new ByteArrayInputStream(bytes.toByteArray())).readObject();
+  }
 }
@@ -470,6 +470,30 @@ public class ImmutableMapTest extends TestCase {
     }
   }
 
+  @GwtIncompatible("RegularImmutableMap.hashTable")
+  public void testHashTableSizes() {
+    // byte, short and int index tables
+    for (int size : new int[] {2, 179, 180, 45875, 45876}) {
+      ImmutableMap.Builder<Integer, String> builder = ImmutableMap.builder();
+      for (int i = 0; i < size; i++) {
+        builder.put(i * 37, Integer.toString(i));
+      }
+      ImmutableMap<Integer, String> map = builder.build();
+      Object hashTable = ((RegularImmutableMap<?, ?>) map).hashTable;
+      Class<?> expectedType =
+          (size < 180) ? byte[].class : (size < 45876) ? short[].class : int[].class;
+      assertEquals(expectedType, hashTable.getClass());
+      for (int i = 0; i < size; i++) {
+        assertEquals(Integer.toString(i), map.get(i * 37));
+        assertNull(map.get(i * 37 + 1));
+      }
+      assertEquals(size, map.keySet().size());
+      assertEquals(Integer.valueOf((size - 1) * 37), map.keySet().asList().get(size - 1));
+      assertEquals(Integer.toString(size - 1), map.values().asList().get(size - 1));
+      assertEquals(Maps.immutableEntry(0, "0"), map.entrySet().iterator().next());
+    }
+  }
+
   public void testNullGet() {
     ImmutableMap<String, Integer> map = ImmutableMap.of("one", 1);
     assertNull(map.get(null));
@@ -0,0 +1,120 @@
+/*
+ * Copyright (C) 2012 The Guava Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.common.collect;
+
+import junit.framework.TestCase;
+
+import java.util.NoSuchElementException;
+
+/**
+ * Tests for {@link ImmutableRangeSet} and {@link ImmutableRangeMap}.
+ */
+public class ImmutableRangeSetTest extends TestCase {
+  public void testEmpty() {
+    ImmutableRangeSet<Integer> rangeSet = ImmutableRangeSet.of();
+    assertTrue(rangeSet.isEmpty());
+    assertFalse(rangeSet.contains(0));
+    assertNull(rangeSet.rangeContaining(0));
+    assertEquals(ImmutableSet.of(Ranges.<Integer>all()), rangeSet.complement().asRanges());
+    assertSame(rangeSet, rangeSet.complement().complement());
+    assertSame(rangeSet, ImmutableRangeSet.of(Ranges.closedOpen(1, 1)));
+    try {
+      rangeSet.span();
+      fail();
+    } catch (NoSuchElementException expected) {
+    }
+  }
+
+  public void testBuilderCoalesces() {
+    ImmutableRangeSet<Integer> rangeSet = ImmutableRangeSet.<Integer>builder()
+        .add(Ranges.closed(10, 12))
+        .add(Ranges.open(3, 5))
+        .add(Ranges.closed(1, 3))
+        .add(Ranges.closedOpen(7, 7))
+        .add(Ranges.closed(11, 15))
+        .build();
+    assertEquals(ImmutableList.of(Ranges.closedOpen(1, 5), Ranges.closed(10, 15)),
+        rangeSet.asRanges().asList());
+    assertEquals(Ranges.closed(1, 15), rangeSet.span());
+    assertEquals(Ranges.closedOpen(1, 5), rangeSet.rangeContaining(4));
+    assertNull(rangeSet.rangeContaining(5));
+    assertTrue(rangeSet.encloses(Ranges.open(11, 15)));
+    assertFalse(rangeSet.encloses(Ranges.closed(4, 10)));
+    assertEquals(ImmutableList.of(
+        Ranges.lessThan(1), Ranges.closedOpen(5, 10), Ranges.greaterThan(15)),
+        rangeSet.complement().asRanges().asList());
+    assertEquals(rangeSet, ImmutableRangeSet.<Integer>builder().addAll(rangeSet).build());
+  }
+
+  public void testImmutable() {
+    ImmutableRangeSet<Integer> rangeSet = ImmutableRangeSet.of(Ranges.closed(1, 2));
+    try {
+      rangeSet.add(Ranges.closed(3, 4));
+      fail();
+    } catch (UnsupportedOperationException expected) {
+    }
+    try {
+      rangeSet.remove(Ranges.closed(1, 2));
+      fail();
+    } catch (UnsupportedOperationException expected) {
+    }
+    try {
+      rangeSet.clear();
+      fail();
+    } catch (UnsupportedOperationException expected) {
+    }
+    assertEquals(ImmutableSet.of(Ranges.closed(1, 2)), rangeSet.asRanges());
+  }
+
+  public void testRangeMapBuilder() {
+    ImmutableRangeMap<Integer, String> rangeMap = ImmutableRangeMap.<Integer, String>builder()
+        .put(Ranges.closed(5, 7), "b")
+        .put(Ranges.closedOpen(1, 5), "a")
+        .put(Ranges.greaterThan(7), "c")
+        .build();
+    assertEquals("a", rangeMap.get(4));
+    assertEquals("b", rangeMap.get(5));
+    assertEquals("c", rangeMap.get(100));
+    assertNull(rangeMap.get(0));
+    assertEquals(Maps.immutableEntry(Ranges.closed(5, 7), "b"), rangeMap.getEntry(6));
+    assertEquals(Ranges.atLeast(1), rangeMap.span());
+    assertEquals(ImmutableList.of(Ranges.closedOpen(1, 5), Ranges.closed(5, 7),
+        Ranges.greaterThan(7)), rangeMap.asMapOfRanges().keySet().asList());
+    assertEquals("{[1‥5)=a, [5‥7]=b, (7‥+∞)=c}", rangeMap.toString());
+  }
+
+  public void testRangeMapBuilderRejectsOverlaps() {
+    ImmutableRangeMap.Builder<Integer, String> builder = ImmutableRangeMap.builder();
+    builder.put(Ranges.closed(1, 5), "a");
+    builder.put(Ranges.closed(5, 7), "b");
+    try {
+      builder.build();
+      fail();
+    } catch (IllegalArgumentException expected) {
+    }
+    try {
+      builder.put(Ranges.closedOpen(3, 3), "c");
+      fail();
+    } catch (IllegalArgumentException expected) {
+    }
+    try {
+      ImmutableRangeMap.of(Ranges.closed(1, 2), "a").put(Ranges.closed(3, 4), "b");
+      fail();
+    } catch (UnsupportedOperationException expected) {
+    }
+  }
+}
@@ -30,7 +30,9 @@ import junit.framework.TestCase;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.List;
 import java.util.Map.Entry;
+import java.util.Random;
 
 /**
  * Tests for {@link ImmutableSetMultimap}.
@@ -395,6 +397,51 @@ public class ImmutableSetMultimapTest extends TestCase {
     assertEquals("{foo=[1, 3], bar=[2]}", multimap.toString());
   }
 
+  public void testRandomBuildsMatchLinkedHashMultimap() {
+    Random random = new Random(0);
+    for (int trial = 0; trial < 100; trial++) {
+      ImmutableSetMultimap.Builder<Integer, Integer> builder =
+          ImmutableSetMultimap.builder();
+      Multimap<Integer, Integer> expected = LinkedHashMultimap.create();
+      int entryCount = random.nextInt(50);
+      for (int i = 0; i < entryCount; i++) {
+        int key = random.nextInt(10);
+        int value = random.nextInt(10);
+        builder.put(key, value);
+        expected.put(key, value);
+      }
+      ImmutableSetMultimap<Integer, Integer> multimap = builder.build();
+      assertEquals(expected, multimap);
+      assertEquals(expected.size(), multimap.size());
+      assertEquals(ImmutableList.copyOf(expected.keySet()),
+          ImmutableList.copyOf(multimap.keySet()));
+      for (int key = -1; key <= 10; key++) {
+        assertEquals(ImmutableList.copyOf(expected.get(key)),
+            ImmutableList.copyOf(multimap.get(key)));
+        assertEquals(expected.containsKey(key), multimap.containsKey(key));
+        for (int value = 0; value < 10; value++) {
+          assertEquals(expected.containsEntry(key, value),
+              multimap.containsEntry(key, value));
+        }
+      }
+      List<Entry<Integer, Integer>> expectedEntries = Lists.newArrayList();
+      for (Integer key : expected.keySet()) {
+        for (Integer value : expected.get(key)) {
+          expectedEntries.add(Maps.immutableEntry(key, value));
+        }
+      }
+      assertEquals(expectedEntries, ImmutableList.copyOf(multimap.entries()));
+    }
+  }
+
+  public void testGetReturnsPartialView() {
+    ImmutableSetMultimap<String, Integer> multimap = createMultimap();
+    ImmutableSet<Integer> values = multimap.get("foo");
+    ImmutableSet<Integer> copy = ImmutableSet.copyOf(values);
+    assertNotSame(values, copy);
+    assertEquals(values, copy);
+  }
+
   public void testMultimapWrites() {
     Multimap<String, Integer> multimap = createMultimap();
     UnmodifiableCollectionTests.assertMultimapIsUnmodifiable(
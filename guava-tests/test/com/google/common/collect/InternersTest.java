@@ -23,6 +23,7 @@ import com.google.common.testing.NullPointerTester;
 import junit.framework.TestCase;
 
 import java.lang.ref.WeakReference;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Unit test for {@link Interners}.
@@ -79,6 +80,77 @@ public class InternersTest extends TestCase {
     assertSame(not, pool.intern(not));
   }
 
+  public void testLossy_simplistic() {
+    String canonical = "a";
+    String not = new String("a");
+
+    LossyInterner<String> pool = Interners.newLossyInterner(16);
+    assertSame(canonical, pool.intern(canonical));
+    assertSame(canonical, pool.intern(not));
+    assertEquals(1, pool.hitCount());
+    assertEquals(1, pool.missCount());
+    assertEquals(0.5, pool.hitRate());
+  }
+
+  public void testLossy_null() {
+    Interner<String> pool = Interners.newLossyInterner(16);
+    try {
+      pool.intern(null);
+      fail();
+    } catch (NullPointerException ok) {}
+  }
+
+  public void testLossy_capacity() {
+    assertEquals(2, Interners.newLossyInterner(1).capacity());
+    assertEquals(16, Interners.newLossyInterner(16).capacity());
+    assertEquals(32, Interners.newLossyInterner(17).capacity());
+    assertEquals(1.0, Interners.newLossyInterner(1).hitRate());
+    try {
+      Interners.newLossyInterner(0);
+      fail();
+    } catch (IllegalArgumentException expected) {
+    }
+  }
+
+  public void testLossy_forgetsWhenFull() {
+    LossyInterner<Integer> pool = Interners.newLossyInterner(4);
+    Integer canonical = new Integer(1000);
+    assertSame(canonical, pool.intern(canonical));
+    for (int i = 0; i < 100; i++) {
+      Integer sample = new Integer(i);
+      assertSame(sample, pool.intern(sample));
+      assertSame(sample, pool.intern(new Integer(i)));
+    }
+    Integer not = new Integer(1000);
+    assertSame(not, pool.intern(not));
+    assertEquals(100, pool.hitCount());
+    assertEquals(102, pool.missCount());
+  }
+
+  public void testLossy_concurrent() throws InterruptedException {
+    final LossyInterner<String> pool = Interners.newLossyInterner(64);
+    final AtomicInteger failures = new AtomicInteger();
+    Thread[] threads = new Thread[4];
+    for (int t = 0; t < threads.length; t++) {
+      threads[t] = new Thread() {
+        @Override public void run() {
+          for (int i = 0; i < 100000; i++) {
+            String sample = Integer.toString(i % 200);
+            if (!sample.equals(pool.intern(sample))) {
+              failures.incrementAndGet();
+            }
+          }
+        }
+      };
+      threads[t].start();
+    }
+    for (Thread thread : threads) {
+      thread.join();
+    }
+    assertEquals(0, failures.get());
+    assertEquals(400000, pool.hitCount() + pool.missCount());
+  }
+
   public void testAsFunction_simplistic() {
     String canonical = "a";
     String not = new String("a");
@@ -53,6 +53,7 @@ import java.util.Enumeration;
 import java.util.Iterator;
 import java.util.List;
 import java.util.NoSuchElementException;
+import java.util.Random;
 import java.util.RandomAccess;
 import java.util.Set;
 import java.util.Vector;
@@ -1540,4 +1541,60 @@ public class IteratorsTest extends TestCase {
     assertSame(peek, Iterators.peekingIterator(peek));
     assertSame(peek, Iterators.peekingIterator((Iterator<String>) peek));
   }
+
+  public void testMergeSorted_matchesSort() {
+    Random random = new Random(0);
+    for (int inputCount : new int[] {0, 1, 2, 3, 5, 8, 33, 100}) {
+      for (int batchSize : new int[] {1, 2, 7}) {
+        List<List<Integer>> inputs = Lists.newArrayList();
+        List<Integer> expected = Lists.newArrayList();
+        for (int i = 0; i < inputCount; i++) {
+          List<Integer> input = Lists.newArrayList();
+          for (int j = random.nextInt(20); j > 0; j--) {
+            input.add(random.nextInt(50));
+          }
+          Collections.sort(input);
+          inputs.add(input);
+          expected.addAll(input);
+        }
+        Collections.sort(expected);
+        List<Iterator<Integer>> iterators = Lists.newArrayList();
+        for (List<Integer> input : inputs) {
+          iterators.add(input.iterator());
+        }
+        assertEquals(expected, newArrayList(Iterators.mergeSorted(
+            iterators, Ordering.natural(), batchSize)));
+      }
+    }
+  }
+
+  public void testMergeSorted_nulls() {
+    List<Iterator<Integer>> iterators = Lists.newArrayList();
+    iterators.add(Lists.newArrayList(null, 2, 4).iterator());
+    iterators.add(Lists.newArrayList(null, null, 3).iterator());
+    iterators.add(Lists.<Integer>newArrayList().iterator());
+    iterators.add(Lists.newArrayList(1).iterator());
+    assertEquals(Lists.newArrayList(null, null, null, 1, 2, 3, 4), newArrayList(
+        Iterators.mergeSorted(iterators, Ordering.natural().nullsFirst())));
+  }
+
+  public void testMergeSorted_unbatchedReadsOneAhead() {
+    Iterator<Integer> first = Lists.newArrayList(1, 3, 5, 7).iterator();
+    Iterator<Integer> second = Lists.newArrayList(2, 4).iterator();
+    Iterator<Integer> merged = Iterators.mergeSorted(
+        ImmutableList.of(first, second), Ordering.natural());
+    assertEquals(1, (int) merged.next());
+    assertEquals(2, (int) merged.next());
+    assertEquals(3, (int) merged.next());
+    assertEquals(7, (int) first.next());
+  }
+
+  public void testMergeSorted_invalidBatchSize() {
+    try {
+      Iterators.mergeSorted(
+          ImmutableList.<Iterator<Integer>>of(), Ordering.natural(), 0);
+      fail();
+    } catch (IllegalArgumentException expected) {
+    }
+  }
 }
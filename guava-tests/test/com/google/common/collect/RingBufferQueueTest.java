@@ -0,0 +1,202 @@
+/*
+ * Copyright (C) 2012 The Guava Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.common.collect;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+import com.google.common.collect.Queues.WaitStrategy;
+
+import junit.framework.TestCase;
+
+import java.util.EnumSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Tests for the ring buffer queues returned by {@link Queues#newSpscArrayQueue} and {@link
+ * Queues#newMpscArrayQueue}.
+ */
+public class RingBufferQueueTest extends TestCase {
+
+  private static List<BlockingQueue<Integer>> queues(int capacity) {
+    List<BlockingQueue<Integer>> queues = Lists.newArrayList();
+    for (WaitStrategy strategy : WaitStrategy.values()) {
+      queues.add(Queues.<Integer>newSpscArrayQueue(capacity, strategy));
+      queues.add(Queues.<Integer>newMpscArrayQueue(capacity, strategy));
+    }
+    return queues;
+  }
+
+  public void testBadCapacity() {
+    try {
+      Queues.newSpscArrayQueue(0);
+      fail();
+    } catch (IllegalArgumentException expected) {
+    }
+    try {
+      Queues.newMpscArrayQueue(-1);
+      fail();
+    } catch (IllegalArgumentException expected) {
+    }
+  }
+
+  public void testCapacityRoundedUpToPowerOfTwo() {
+    for (BlockingQueue<Integer> queue : queues(5)) {
+      assertEquals(8, queue.remainingCapacity());
+      for (int i = 0; i < 8; i++) {
+        assertTrue(queue.offer(i));
+      }
+      assertFalse(queue.offer(8));
+      assertEquals(8, queue.size());
+      assertEquals(0, queue.remainingCapacity());
+    }
+  }
+
+  public void testFifoOrderAcrossWraparound() {
+    for (BlockingQueue<Integer> queue : queues(4)) {
+      assertTrue(queue.isEmpty());
+      assertNull(queue.poll());
+      assertNull(queue.peek());
+      int next = 0;
+      for (int round = 0; round < 10; round++) {
+        queue.offer(round * 3);
+        queue.offer(round * 3 + 1);
+        queue.offer(round * 3 + 2);
+        for (int i = 0; i < 3; i++) {
+          assertEquals(Integer.valueOf(next), queue.peek());
+          assertEquals(Integer.valueOf(next++), queue.poll());
+        }
+        assertTrue(queue.isEmpty());
+      }
+    }
+  }
+
+  public void testNullsRejected() {
+    for (BlockingQueue<Integer> queue : queues(4)) {
+      try {
+        queue.offer(null);
+        fail();
+      } catch (NullPointerException expected) {
+      }
+    }
+  }
+
+  public void testIterator() {
+    for (BlockingQueue<Integer> queue : queues(4)) {
+      queue.add(1);
+      queue.add(2);
+      queue.poll();
+      queue.add(3);
+      assertEquals(ImmutableList.of(2, 3), ImmutableList.copyOf(queue));
+      assertTrue(queue.contains(3));
+      Iterator<Integer> iterator = queue.iterator();
+      iterator.next();
+      try {
+        iterator.remove();
+        fail();
+      } catch (UnsupportedOperationException expected) {
+      }
+    }
+  }
+
+  public void testTimedOperations() throws InterruptedException {
+    for (BlockingQueue<Integer> queue : queues(1)) {
+      assertNull(queue.poll(1, MILLISECONDS));
+      assertTrue(queue.offer(1, 1, MILLISECONDS));
+      assertFalse(queue.offer(2, 1, MILLISECONDS));
+      assertEquals(Integer.valueOf(1), queue.poll(1, MILLISECONDS));
+    }
+  }
+
+  public void testTakeInterrupted() {
+    for (BlockingQueue<Integer> queue : queues(1)) {
+      Thread.currentThread().interrupt();
+      try {
+        queue.take();
+        fail();
+      } catch (InterruptedException expected) {
+      }
+    }
+  }
+
+  public void testDrain() throws InterruptedException {
+    for (BlockingQueue<Integer> queue : queues(8)) {
+      for (int i = 0; i < 5; i++) {
+        queue.add(i);
+      }
+      List<Integer> buffer = Lists.newArrayList();
+      assertEquals(3, queue.drainTo(buffer, 3));
+      assertEquals(2, Queues.drain(queue, buffer, 4, 1, MILLISECONDS));
+      assertEquals(ImmutableList.of(0, 1, 2, 3, 4), buffer);
+    }
+  }
+
+  public void testSingleProducerSingleConsumer() throws Exception {
+    // not BUSY_SPIN, which starves the other side when there are fewer cores than threads
+    for (WaitStrategy strategy : EnumSet.of(WaitStrategy.YIELDING, WaitStrategy.BACKING_OFF)) {
+      BlockingQueue<Integer> queue = Queues.newSpscArrayQueue(16, strategy);
+      runProducersAndConsumer(queue, 1, 200000);
+    }
+  }
+
+  public void testMultipleProducersSingleConsumer() throws Exception {
+    // not BUSY_SPIN, which starves the other side when there are fewer cores than threads
+    for (WaitStrategy strategy : EnumSet.of(WaitStrategy.YIELDING, WaitStrategy.BACKING_OFF)) {
+      BlockingQueue<Integer> queue = Queues.newMpscArrayQueue(16, strategy);
+      runProducersAndConsumer(queue, 4, 50000);
+    }
+  }
+
+  /** Checks that every element arrives exactly once, in order per producer. */
+  private static void runProducersAndConsumer(final BlockingQueue<Integer> queue,
+      final int producers, final int perProducer) throws Exception {
+    ExecutorService executor = Executors.newFixedThreadPool(producers);
+    try {
+      List<Future<?>> futures = Lists.newArrayList();
+      for (int p = 0; p < producers; p++) {
+        final int producer = p;
+        futures.add(executor.submit(new Callable<Void>() {
+          @Override public Void call() throws InterruptedException {
+            for (int i = 0; i < perProducer; i++) {
+              queue.put(producer * perProducer + i);
+            }
+            return null;
+          }
+        }));
+      }
+      int[] next = new int[producers];
+      for (int n = 0; n < producers * perProducer; n++) {
+        Integer e = queue.poll(10, SECONDS);
+        assertNotNull(e);
+        int producer = e / perProducer;
+        assertEquals(next[producer]++, e % perProducer);
+      }
+      for (Future<?> future : futures) {
+        future.get(10, SECONDS);
+      }
+      assertTrue(queue.isEmpty());
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+}
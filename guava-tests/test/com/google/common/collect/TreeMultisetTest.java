@@ -17,6 +17,7 @@
 package com.google.common.collect;
 
 import static com.google.common.collect.BoundType.CLOSED;
+import static com.google.common.collect.BoundType.OPEN;
 import static com.google.common.collect.Lists.newArrayList;
 import static com.google.common.collect.testing.IteratorFeature.MODIFIABLE;
 import static org.junit.contrib.truth.Truth.ASSERT;
@@ -30,8 +31,10 @@ import java.util.Collections;
 import java.util.Comparator;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Random;
 import java.util.Set;
 import java.util.SortedSet;
+import java.util.TreeMap;
 
 /**
  * Unit test for {@link TreeMultiset}.
@@ -328,6 +331,81 @@ public class TreeMultisetTest extends AbstractMultisetTest {
     assertEquals(Integer.MAX_VALUE, ms.tailMultiset("a", CLOSED).size());
   }
 
+  public void testRandomOperationsMatchTreeMap() {
+    Random random = new Random(0);
+    TreeMultiset<Integer> ms = TreeMultiset.create();
+    SortedMultiset<Integer> view = ms.subMultiset(100, CLOSED, 300, OPEN);
+    TreeMap<Integer, Integer> expected = Maps.newTreeMap();
+    for (int i = 0; i < 20000; i++) {
+      int element = random.nextInt(400);
+      int count = random.nextInt(3);
+      Integer old = expected.get(element);
+      int oldCount = (old == null) ? 0 : old;
+      int newCount;
+      switch (random.nextInt(3)) {
+        case 0:
+          assertEquals(oldCount, ms.add(element, count));
+          newCount = oldCount + count;
+          break;
+        case 1:
+          assertEquals(oldCount, ms.remove(element, count));
+          newCount = Math.max(0, oldCount - count);
+          break;
+        default:
+          assertEquals(oldCount, ms.setCount(element, count));
+          newCount = count;
+      }
+      if (newCount == 0) {
+        expected.remove(element);
+      } else {
+        expected.put(element, newCount);
+      }
+      int bound = random.nextInt(400);
+      assertEquals(sum(expected.headMap(bound).values()), ms.headMultiset(bound, OPEN).size());
+      assertEquals(expected.tailMap(bound).size(),
+          ms.tailMultiset(bound, CLOSED).entrySet().size());
+    }
+    assertEquals(sum(expected.values()), ms.size());
+    assertEquals(expected.keySet(), ms.elementSet());
+    assertEquals(sum(expected.subMap(100, 300).values()), view.size());
+    for (Multiset.Entry<Integer> entry : view.entrySet()) {
+      assertEquals(expected.get(entry.getElement()).intValue(), entry.getCount());
+    }
+    view.clear();
+    expected.subMap(100, 300).clear();
+    assertEquals(expected.keySet(), ms.elementSet());
+    assertEquals(sum(expected.values()), ms.size());
+  }
+
+  public void testEntryAfterRemovalAndReinsertion() {
+    TreeMultiset<String> ms = TreeMultiset.create();
+    ms.add("a", 2);
+    ms.add("b", 3);
+    ms.add("c");
+    Iterator<Multiset.Entry<String>> iterator = ms.entrySet().iterator();
+    Multiset.Entry<String> a = iterator.next();
+    Multiset.Entry<String> b = iterator.next();
+    iterator.remove();
+    assertEquals(0, b.getCount());
+    assertEquals("c", iterator.next().getElement());
+    assertFalse(iterator.hasNext());
+    ms.setCount("a", 0);
+    assertEquals(0, a.getCount());
+    ms.add("a", 5);
+    assertEquals(5, a.getCount());
+    ms.clear();
+    assertEquals(0, a.getCount());
+    assertTrue(ms.isEmpty());
+  }
+
+  private static int sum(Iterable<Integer> counts) {
+    int sum = 0;
+    for (int count : counts) {
+      sum += count;
+    }
+    return sum;
+  }
+
   @Override public void testToStringNull() {
     c = ms = TreeMultiset.create(Ordering.natural().nullsFirst());
     super.testToStringNull();
@@ -0,0 +1,170 @@
+/*
+ * Copyright (C) 2012 The Guava Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.common.collect;
+
+import static com.google.common.collect.BoundType.CLOSED;
+import static com.google.common.collect.BoundType.OPEN;
+
+import com.google.common.annotations.GwtIncompatible;
+import com.google.common.testing.EqualsTester;
+
+import junit.framework.TestCase;
+
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Random;
+
+/**
+ * Tests for {@link TreeRangeMap}.
+ */
+@GwtIncompatible("TreeRangeMap")
+public class TreeRangeMapTest extends TestCase {
+  public void testPutAndGet() {
+    TreeRangeMap<Integer, String> rangeMap = TreeRangeMap.create();
+    rangeMap.put(Ranges.closed(1, 5), "a");
+    rangeMap.put(Ranges.open(3, 7), "b");
+    rangeMap.put(Ranges.closedOpen(8, 8), "ignored");
+    assertEquals("a", rangeMap.get(3));
+    assertEquals("b", rangeMap.get(4));
+    assertNull(rangeMap.get(7));
+    assertNull(rangeMap.get(8));
+    assertEquals(Maps.immutableEntry(Ranges.closed(1, 3), "a"), rangeMap.getEntry(2));
+    assertNull(rangeMap.getEntry(0));
+    assertEquals(Ranges.closedOpen(1, 7), rangeMap.span());
+    assertEquals(ImmutableMap.of(Ranges.closed(1, 3), "a", Ranges.open(3, 7), "b"),
+        rangeMap.asMapOfRanges());
+    assertEquals("{[1‥3]=a, (3‥7)=b}", rangeMap.toString());
+  }
+
+  public void testRemove() {
+    TreeRangeMap<Integer, String> rangeMap = TreeRangeMap.create();
+    rangeMap.put(Ranges.closed(1, 10), "a");
+    rangeMap.put(Ranges.atLeast(20), "b");
+    rangeMap.remove(Ranges.open(3, 5));
+    rangeMap.remove(Ranges.closed(25, 30));
+    assertEquals(ImmutableList.of(Ranges.closed(1, 3), Ranges.closed(5, 10),
+        Ranges.closedOpen(20, 25), Ranges.greaterThan(30)),
+        ImmutableList.copyOf(rangeMap.asMapOfRanges().keySet()));
+    assertEquals("b", rangeMap.asMapOfRanges().get(Ranges.greaterThan(30)));
+    assertFalse(rangeMap.asMapOfRanges().containsKey(Ranges.closed(1, 10)));
+    assertFalse(rangeMap.asMapOfRanges().containsKey(Ranges.closed("a", "b")));
+    rangeMap.clear();
+    assertTrue(rangeMap.asMapOfRanges().isEmpty());
+    try {
+      rangeMap.span();
+      fail();
+    } catch (NoSuchElementException expected) {
+    }
+  }
+
+  public void testEquals() {
+    TreeRangeMap<Integer, String> a = TreeRangeMap.create();
+    a.put(Ranges.closed(1, 3), "x");
+    a.put(Ranges.closed(5, 7), "y");
+    TreeRangeMap<Integer, String> b = TreeRangeMap.create();
+    b.put(Ranges.closed(5, 7), "y");
+    b.put(Ranges.closed(1, 3), "x");
+    TreeRangeMap<Integer, String> c = TreeRangeMap.create();
+    c.put(Ranges.closed(1, 3), "x");
+    c.put(Ranges.closed(5, 7), "z");
+    new EqualsTester()
+        .addEqualityGroup(a, b, ImmutableRangeMap.copyOf(a))
+        .addEqualityGroup(c)
+        .addEqualityGroup(TreeRangeMap.create(), ImmutableRangeMap.of())
+        .testEquals();
+  }
+
+  private static final int MAX_ENDPOINT = 10;
+
+  /**
+   * Compares random updates against the values at the integers and the midpoints between them.
+   */
+  public void testAgainstPointModel() {
+    Random random = new Random(0);
+    TreeRangeMap<Double, Integer> rangeMap = TreeRangeMap.create();
+    Integer[] model = new Integer[2 * MAX_ENDPOINT + 5];
+    for (int i = 0; i < 2000; i++) {
+      Range<Double> range = randomRange(random);
+      Integer value = null;
+      if (random.nextInt(3) == 0) {
+        rangeMap.remove(range);
+      } else {
+        value = i;
+        rangeMap.put(range, value);
+      }
+      for (int j = 0; j < model.length; j++) {
+        if (range.contains(samplePoint(j))) {
+          model[j] = value;
+        }
+      }
+      checkAgainstModel(rangeMap, model);
+      checkAgainstModel(ImmutableRangeMap.copyOf(rangeMap), model);
+    }
+  }
+
+  private static void checkAgainstModel(RangeMap<Double, Integer> rangeMap, Integer[] model) {
+    for (int j = 0; j < model.length; j++) {
+      Double point = samplePoint(j);
+      assertEquals(model[j], rangeMap.get(point));
+      Map.Entry<Range<Double>, Integer> entry = rangeMap.getEntry(point);
+      if (model[j] == null) {
+        assertNull(entry);
+      } else {
+        assertTrue(entry.getKey().contains(point));
+        assertEquals(entry.getValue(), rangeMap.asMapOfRanges().get(entry.getKey()));
+      }
+    }
+    List<Range<Double>> ranges = ImmutableList.copyOf(rangeMap.asMapOfRanges().keySet());
+    for (int i = 0; i < ranges.size(); i++) {
+      assertFalse(ranges.get(i).isEmpty());
+      if (i > 0) {
+        Range<Double> previous = ranges.get(i - 1);
+        assertTrue(!previous.isConnected(ranges.get(i))
+            || previous.intersection(ranges.get(i)).isEmpty());
+      }
+    }
+  }
+
+  /** Returns -1, -0.5, 0, 0.5, ... for j = 0, 1, 2, 3, .... */
+  private static Double samplePoint(int j) {
+    return (j - 2) / 2.0;
+  }
+
+  private static Range<Double> randomRange(Random random) {
+    switch (random.nextInt(10)) {
+      case 0:
+        return Ranges.downTo((double) random.nextInt(MAX_ENDPOINT + 1), randomBoundType(random));
+      case 1:
+        return Ranges.upTo((double) random.nextInt(MAX_ENDPOINT + 1), randomBoundType(random));
+      default:
+        int lower = random.nextInt(MAX_ENDPOINT + 1);
+        int upper = lower + random.nextInt(MAX_ENDPOINT + 1 - lower);
+        BoundType lowerType = randomBoundType(random);
+        BoundType upperType = randomBoundType(random);
+        if (lower == upper && lowerType == OPEN && upperType == OPEN) {
+          upperType = CLOSED;
+          lowerType = CLOSED;
+        }
+        return Ranges.range((double) lower, lowerType, (double) upper, upperType);
+    }
+  }
+
+  private static BoundType randomBoundType(Random random) {
+    return random.nextBoolean() ? OPEN : CLOSED;
+  }
+}
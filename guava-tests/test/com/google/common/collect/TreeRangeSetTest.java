@@ -0,0 +1,199 @@
+/*
+ * Copyright (C) 2012 The Guava Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.common.collect;
+
+import static com.google.common.collect.BoundType.CLOSED;
+import static com.google.common.collect.BoundType.OPEN;
+
+import com.google.common.annotations.GwtIncompatible;
+import com.google.common.testing.EqualsTester;
+
+import junit.framework.TestCase;
+
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Random;
+
+/**
+ * Tests for {@link TreeRangeSet}.
+ */
+@GwtIncompatible("TreeRangeSet")
+public class TreeRangeSetTest extends TestCase {
+  public void testCoalescing() {
+    TreeRangeSet<Integer> rangeSet = TreeRangeSet.create();
+    rangeSet.add(Ranges.closed(1, 3));
+    rangeSet.add(Ranges.open(3, 5));
+    rangeSet.add(Ranges.closedOpen(7, 7));
+    assertEquals(ImmutableSet.of(Ranges.closedOpen(1, 5)), rangeSet.asRanges());
+    rangeSet.add(Ranges.closed(5, 6));
+    rangeSet.add(Ranges.closed(10, 12));
+    assertEquals(ImmutableList.of(Ranges.closed(1, 6), Ranges.closed(10, 12)),
+        ImmutableList.copyOf(rangeSet.asRanges()));
+    assertEquals("{[1‥6][10‥12]}", rangeSet.toString());
+    assertEquals(Ranges.closed(1, 12), rangeSet.span());
+  }
+
+  public void testRemoveSplitsRanges() {
+    TreeRangeSet<Integer> rangeSet = TreeRangeSet.create();
+    rangeSet.add(Ranges.closed(1, 10));
+    rangeSet.remove(Ranges.open(3, 5));
+    assertEquals(ImmutableList.of(Ranges.closed(1, 3), Ranges.closed(5, 10)),
+        ImmutableList.copyOf(rangeSet.asRanges()));
+    assertTrue(rangeSet.contains(3));
+    assertFalse(rangeSet.contains(4));
+    assertEquals(Ranges.closed(5, 10), rangeSet.rangeContaining(7));
+    assertNull(rangeSet.rangeContaining(11));
+    assertTrue(rangeSet.encloses(Ranges.closedOpen(6, 10)));
+    assertFalse(rangeSet.encloses(Ranges.closed(2, 6)));
+    rangeSet.clear();
+    assertTrue(rangeSet.isEmpty());
+    try {
+      rangeSet.span();
+      fail();
+    } catch (NoSuchElementException expected) {
+    }
+  }
+
+  public void testComplement() {
+    TreeRangeSet<Integer> rangeSet = TreeRangeSet.create();
+    RangeSet<Integer> complement = rangeSet.complement();
+    assertEquals(ImmutableSet.of(Ranges.<Integer>all()), complement.asRanges());
+    rangeSet.add(Ranges.closed(1, 3));
+    rangeSet.add(Ranges.greaterThan(5));
+    assertEquals(ImmutableList.of(Ranges.lessThan(1), Ranges.openClosed(3, 5)),
+        ImmutableList.copyOf(complement.asRanges()));
+    assertEquals(2, complement.asRanges().size());
+    assertEquals(Ranges.openClosed(3, 5), complement.rangeContaining(4));
+    assertNull(complement.rangeContaining(2));
+    assertTrue(complement.encloses(Ranges.closed(4, 5)));
+    assertFalse(complement.encloses(Ranges.closed(3, 4)));
+    assertEquals(Ranges.atMost(5), complement.span());
+    complement.add(Ranges.closed(2, 7));
+    assertEquals(ImmutableList.of(Ranges.closedOpen(1, 2), Ranges.greaterThan(7)),
+        ImmutableList.copyOf(rangeSet.asRanges()));
+    assertSame(rangeSet, complement.complement());
+    complement.clear();
+    assertEquals(ImmutableSet.of(Ranges.<Integer>all()), rangeSet.asRanges());
+    assertTrue(complement.isEmpty());
+  }
+
+  public void testEquals() {
+    TreeRangeSet<Integer> a = TreeRangeSet.create();
+    a.add(Ranges.closed(1, 3));
+    a.add(Ranges.closed(5, 7));
+    TreeRangeSet<Integer> b = TreeRangeSet.create();
+    b.add(Ranges.closed(5, 7));
+    b.add(Ranges.closed(1, 3));
+    new EqualsTester()
+        .addEqualityGroup(a, b, ImmutableRangeSet.copyOf(a), TreeRangeSet.create(a))
+        .addEqualityGroup(TreeRangeSet.create(), ImmutableRangeSet.of())
+        .addEqualityGroup(a.complement())
+        .testEquals();
+  }
+
+  private static final int MAX_ENDPOINT = 10;
+
+  /**
+   * Compares random updates against a model that tracks membership of the integers and the
+   * midpoints between them, which suffices to tell apart any two sets of ranges with integer
+   * endpoints.
+   */
+  public void testAgainstPointModel() {
+    Random random = new Random(0);
+    TreeRangeSet<Double> rangeSet = TreeRangeSet.create();
+    boolean[] model = new boolean[2 * MAX_ENDPOINT + 5];
+    for (int i = 0; i < 2000; i++) {
+      Range<Double> range = randomRange(random);
+      boolean add = random.nextBoolean();
+      if (add) {
+        rangeSet.add(range);
+      } else {
+        rangeSet.remove(range);
+      }
+      for (int j = 0; j < model.length; j++) {
+        if (range.contains(samplePoint(j))) {
+          model[j] = add;
+        }
+      }
+      checkAgainstModel(rangeSet, model);
+      checkAgainstModel(ImmutableRangeSet.copyOf(rangeSet), model);
+
+      Range<Double> query = randomRange(random);
+      if (!query.isEmpty()) {
+        boolean enclosed = true;
+        boolean disjoint = true;
+        for (int j = 0; j < model.length; j++) {
+          if (query.contains(samplePoint(j))) {
+            enclosed &= model[j];
+            disjoint &= !model[j];
+          }
+        }
+        assertEquals(enclosed, rangeSet.encloses(query));
+        assertEquals(enclosed, ImmutableRangeSet.copyOf(rangeSet).encloses(query));
+        assertEquals(disjoint, rangeSet.complement().encloses(query));
+      }
+    }
+  }
+
+  private static void checkAgainstModel(RangeSet<Double> rangeSet, boolean[] model) {
+    RangeSet<Double> complement = rangeSet.complement();
+    for (int j = 0; j < model.length; j++) {
+      Double point = samplePoint(j);
+      assertEquals(model[j], rangeSet.contains(point));
+      assertEquals(!model[j], complement.contains(point));
+      Range<Double> containing = model[j]
+          ? rangeSet.rangeContaining(point) : complement.rangeContaining(point);
+      assertTrue(containing.contains(point));
+    }
+    List<Range<Double>> ranges = ImmutableList.copyOf(rangeSet.asRanges());
+    assertEquals(ranges.size(), rangeSet.asRanges().size());
+    for (int i = 1; i < ranges.size(); i++) {
+      assertFalse(ranges.get(i - 1).isConnected(ranges.get(i)));
+      assertTrue(ranges.get(i - 1).upperEndpoint() <= ranges.get(i).lowerEndpoint());
+    }
+    assertEquals(complement.asRanges().size(), ImmutableList.copyOf(complement.asRanges()).size());
+    assertEquals(ImmutableRangeSet.copyOf(rangeSet).complement(), complement);
+  }
+
+  /** Returns -1, -0.5, 0, 0.5, ... for j = 0, 1, 2, 3, .... */
+  private static Double samplePoint(int j) {
+    return (j - 2) / 2.0;
+  }
+
+  private static Range<Double> randomRange(Random random) {
+    switch (random.nextInt(10)) {
+      case 0:
+        return Ranges.downTo((double) random.nextInt(MAX_ENDPOINT + 1), randomBoundType(random));
+      case 1:
+        return Ranges.upTo((double) random.nextInt(MAX_ENDPOINT + 1), randomBoundType(random));
+      default:
+        int lower = random.nextInt(MAX_ENDPOINT + 1);
+        int upper = lower + random.nextInt(MAX_ENDPOINT + 1 - lower);
+        BoundType lowerType = randomBoundType(random);
+        BoundType upperType = randomBoundType(random);
+        if (lower == upper && lowerType == OPEN && upperType == OPEN) {
+          upperType = CLOSED;
+          lowerType = CLOSED;
+        }
+        return Ranges.range((double) lower, lowerType, (double) upper, upperType);
+    }
+  }
+
+  private static BoundType randomBoundType(Random random) {
+    return random.nextBoolean() ? OPEN : CLOSED;
+  }
+}
@@ -0,0 +1,169 @@
+/*
+ * Copyright (C) 2012 The Guava Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.common.eventbus;
+
+import com.google.common.collect.Lists;
+import com.google.common.eventbus.EventBusStats.HandlerStats;
+import com.google.common.testing.FakeTicker;
+
+import junit.framework.TestCase;
+
+import java.lang.reflect.Method;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Test case for {@link EventBusStats} and stats recording in {@link AbstractEventBus}.
+ */
+public class EventBusStatsTest extends TestCase {
+  private final FakeTicker ticker = new FakeTicker();
+
+  public void testNotRecording() {
+    EventBus bus = new EventBus();
+    bus.register(new StringCatcher());
+    bus.post("hello");
+    bus.post(1);
+
+    EventBusStats stats = bus.stats();
+    assertEquals(0, stats.postCount());
+    assertEquals(0, stats.deadEventCount());
+    assertTrue(stats.handlerStats().isEmpty());
+  }
+
+  public void testHandlerTimingAndSlowHandlers() throws Exception {
+    EventBus bus = new EventBus();
+    bus.recordStats(10, TimeUnit.MILLISECONDS, ticker);
+    bus.register(new TimedCatcher(ticker, 2));
+    bus.post("fast");
+    bus.register(new TimedCatcher(ticker, 20));
+    bus.post("slow");
+
+    EventBusStats stats = bus.stats();
+    assertEquals(2, stats.postCount());
+    assertEquals(0, stats.deadEventCount());
+
+    Method method = TimedCatcher.class.getMethod("catchString", String.class);
+    HandlerStats handlerStats = stats.handlerStats().get(method);
+    assertEquals(3, handlerStats.invocationCount());
+    assertEquals(1, handlerStats.slowInvocationCount());
+    assertEquals(0, handlerStats.exceptionCount());
+    assertEquals(TimeUnit.MILLISECONDS.toNanos(24), handlerStats.totalTime());
+    assertEquals(TimeUnit.MILLISECONDS.toNanos(20), handlerStats.maxTime());
+
+    long[] histogram = handlerStats.latencyHistogram();
+    assertEquals(2, histogram[DispatchStatsCounter.bucket(TimeUnit.MILLISECONDS.toNanos(2))]);
+    assertEquals(1, histogram[DispatchStatsCounter.bucket(TimeUnit.MILLISECONDS.toNanos(20))]);
+    assertTrue(stats.slowHandlers().contains(method));
+  }
+
+  public void testExceptionsCounted() throws Exception {
+    SimpleEventBus bus = new SimpleEventBus();
+    bus.recordStats(1, TimeUnit.SECONDS, ticker);
+    bus.register(new Object() {
+      @Subscribe public void explode(String event) {
+        throw new IllegalStateException(event);
+      }
+    });
+    bus.post("boom");
+
+    HandlerStats handlerStats =
+        bus.stats().handlerStats().values().iterator().next();
+    assertEquals(1, handlerStats.invocationCount());
+    assertEquals(1, handlerStats.exceptionCount());
+    assertTrue(bus.stats().slowHandlers().isEmpty());
+  }
+
+  public void testDeadEvents() {
+    SimpleEventBus bus = new SimpleEventBus();
+    bus.recordStats(1, TimeUnit.SECONDS, ticker);
+    bus.register(new StringCatcher());
+    bus.post("caught");
+    bus.post(1);
+    bus.post(2);
+    bus.post("caught");
+
+    EventBusStats stats = bus.stats();
+    assertEquals(4, stats.postCount());
+    assertEquals(2, stats.deadEventCount());
+    assertEquals(0.5, stats.deadEventRate());
+  }
+
+  public void testAsyncQueueDepth() {
+    final List<Runnable> tasks = Lists.newArrayList();
+    AsyncEventBus bus = new AsyncEventBus(new Executor() {
+      @Override public void execute(Runnable task) {
+        tasks.add(task);
+      }
+    });
+    bus.recordStats(1, TimeUnit.SECONDS, ticker);
+    StringCatcher catcher = new StringCatcher();
+    bus.register(catcher);
+    bus.post("one");
+    bus.post("two");
+    bus.post("three");
+    assertEquals(3, bus.stats().queueDepth());
+
+    tasks.get(0).run();
+    tasks.get(1).run();
+    EventBusStats stats = bus.stats();
+    assertEquals(1, stats.queueDepth());
+    assertEquals(3, stats.maxQueueDepth());
+    assertEquals(2, catcher.getEvents().size());
+  }
+
+  public void testRecordStatsResets() {
+    SimpleEventBus bus = new SimpleEventBus();
+    bus.recordStats(1, TimeUnit.SECONDS, ticker);
+    bus.post("dead");
+    assertEquals(1, bus.stats().postCount());
+    bus.recordStats(1, TimeUnit.SECONDS, ticker);
+    assertEquals(0, bus.stats().postCount());
+  }
+
+  public void testNegativeThreshold() {
+    try {
+      new EventBus().recordStats(-1, TimeUnit.SECONDS);
+      fail();
+    } catch (IllegalArgumentException expected) {
+    }
+  }
+
+  public void testBucket() {
+    assertEquals(0, DispatchStatsCounter.bucket(0));
+    assertEquals(0, DispatchStatsCounter.bucket(1));
+    assertEquals(1, DispatchStatsCounter.bucket(2));
+    assertEquals(1, DispatchStatsCounter.bucket(3));
+    assertEquals(10, DispatchStatsCounter.bucket(1024));
+    assertEquals(62, DispatchStatsCounter.bucket(Long.MAX_VALUE));
+  }
+
+  /** A handler that advances a fake ticker to simulate work. */
+  public static class TimedCatcher {
+    private final FakeTicker ticker;
+    private final long millis;
+
+    TimedCatcher(FakeTicker ticker, long millis) {
+      this.ticker = ticker;
+      this.millis = millis;
+    }
+
+    @Subscribe public void catchString(String event) {
+      ticker.advance(millis, TimeUnit.MILLISECONDS);
+    }
+  }
+}
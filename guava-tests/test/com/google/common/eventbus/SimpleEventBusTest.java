@@ -0,0 +1,130 @@
+/*
+ * Copyright (C) 2012 The Guava Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.common.eventbus;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+
+import junit.framework.TestCase;
+
+import java.util.List;
+
+/**
+ * Test case for {@link SimpleEventBus}, and for the dispatch plans cached by
+ * {@link AbstractEventBus}.
+ */
+public class SimpleEventBusTest extends TestCase {
+  private static final String EVENT = "Hello";
+
+  private SimpleEventBus bus;
+
+  @Override protected void setUp() throws Exception {
+    super.setUp();
+    bus = new SimpleEventBus();
+  }
+
+  public void testBasicCatcherDistribution() {
+    StringCatcher catcher = new StringCatcher();
+    bus.register(catcher);
+    bus.post(EVENT);
+    assertEquals(ImmutableList.of(EVENT), catcher.getEvents());
+  }
+
+  public void testRegisterAfterPostInvalidatesPlan() {
+    StringCatcher first = new StringCatcher();
+    bus.register(first);
+    bus.post("one");
+
+    StringCatcher second = new StringCatcher();
+    bus.register(second);
+    bus.post("two");
+
+    assertEquals(ImmutableList.of("one", "two"), first.getEvents());
+    assertEquals(ImmutableList.of("two"), second.getEvents());
+  }
+
+  public void testUnregisterAfterPostInvalidatesPlan() {
+    StringCatcher catcher = new StringCatcher();
+    bus.register(catcher);
+    bus.post("one");
+    bus.unregister(catcher);
+    bus.post("two");
+
+    assertEquals(ImmutableList.of("one"), catcher.getEvents());
+  }
+
+  public void testFailedUnregisterKeepsPlanConsistent() {
+    StringCatcher catcher = new StringCatcher();
+    bus.register(catcher);
+    bus.post("one");
+    try {
+      bus.unregister(new StringCatcher());
+      fail();
+    } catch (IllegalArgumentException expected) {
+    }
+    bus.post("two");
+
+    assertEquals(ImmutableList.of("one", "two"), catcher.getEvents());
+  }
+
+  public void testDeepHierarchy() {
+    final List<Object> events = Lists.newArrayList();
+    bus.register(new Object() {
+      @Subscribe public void top(Level0 event) {
+        events.add("top");
+      }
+      @Subscribe public void iface(Marker event) {
+        events.add("iface");
+      }
+      @Subscribe public void leaf(Level3 event) {
+        events.add("leaf");
+      }
+    });
+
+    bus.post(new Level3());
+    assertEquals(3, events.size());
+    assertTrue(events.containsAll(ImmutableList.of("top", "iface", "leaf")));
+
+    events.clear();
+    bus.post(new Level1());
+    assertEquals(ImmutableList.of("top"), events);
+  }
+
+  public void testDeadEventAfterUnregister() {
+    final List<DeadEvent> deadEvents = Lists.newArrayList();
+    bus.register(new Object() {
+      @Subscribe public void dead(DeadEvent event) {
+        deadEvents.add(event);
+      }
+    });
+    StringCatcher catcher = new StringCatcher();
+    bus.register(catcher);
+    bus.post(EVENT);
+    assertTrue(deadEvents.isEmpty());
+
+    bus.unregister(catcher);
+    bus.post(EVENT);
+    assertEquals(1, deadEvents.size());
+    assertEquals(EVENT, deadEvents.get(0).getEvent());
+  }
+
+  interface Marker {}
+  static class Level0 {}
+  static class Level1 extends Level0 {}
+  static class Level2 extends Level1 implements Marker {}
+  static class Level3 extends Level2 {}
+}
@@ -0,0 +1,285 @@
+/*
+ * Copyright (C) 2012 The Guava Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.common.io;
+
+import com.google.common.base.Strings;
+import com.google.common.collect.AbstractIterator;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Ordering;
+import com.google.common.io.ExternalSorter.Codec;
+import com.google.common.io.ExternalSorter.ElementProcessor;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Unit tests for {@link ExternalSorter}.
+ */
+public class ExternalSorterTest extends IoTestCase {
+  private File directory;
+
+  @Override protected void setUp() {
+    directory = Files.createTempDir();
+  }
+
+  @Override protected void tearDown() {
+    directory.delete();
+  }
+
+  public void testInMemory() throws IOException {
+    List<Integer> input = randomIntegers(100);
+    ExternalSorter<Integer> sorter = ExternalSorter.create(
+        Ordering.natural(), new CountingCodec()).withTempDirectory(directory);
+    assertEquals(Ordering.natural().sortedCopy(input), sort(sorter, input));
+    assertEquals(0, directory.list().length);
+  }
+
+  public void testSpillsRuns() throws IOException {
+    List<Integer> input = randomIntegers(1000);
+    CountingCodec codec = new CountingCodec();
+    ExternalSorter<Integer> sorter = ExternalSorter.create(
+        Ordering.natural().reverse(), codec)
+        .withMaxElementsInMemory(64)
+        .withTempDirectory(directory);
+    assertEquals(Ordering.natural().reverse().sortedCopy(input),
+        sort(sorter, input));
+    assertEquals(1000, codec.writes);
+    assertEquals(1000, codec.reads);
+    assertEquals(0, directory.list().length);
+  }
+
+  public void testMergesInPasses() throws IOException {
+    List<Integer> input = randomIntegers(1000);
+    CountingCodec codec = new CountingCodec();
+    ExternalSorter<Integer> sorter = ExternalSorter.create(
+        Ordering.natural(), codec)
+        .withMaxElementsInMemory(10)
+        .withMergeWidth(3)
+        .withTempDirectory(directory);
+    assertEquals(Ordering.natural().sortedCopy(input), sort(sorter, input));
+    assertTrue(codec.writes > 1000);
+    assertEquals(0, directory.list().length);
+  }
+
+  public void testParallelRuns() throws IOException {
+    List<Integer> input = randomIntegers(10000);
+    ExecutorService executor = Executors.newFixedThreadPool(3);
+    try {
+      ExternalSorter<Integer> sorter = ExternalSorter.create(
+          Ordering.natural(), new CountingCodec())
+          .withMaxElementsInMemory(100)
+          .withExecutor(executor, 3)
+          .withTempDirectory(directory);
+      assertEquals(Ordering.natural().sortedCopy(input), sort(sorter, input));
+      assertEquals(0, directory.list().length);
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  public void testProcessorStopsEarly() throws IOException {
+    List<Integer> input = randomIntegers(1000);
+    ExternalSorter<Integer> sorter = ExternalSorter.create(
+        Ordering.natural(), new CountingCodec())
+        .withMaxElementsInMemory(100)
+        .withTempDirectory(directory);
+    List<Integer> least = sorter.sort(input.iterator(),
+        new ElementProcessor<Integer, List<Integer>>() {
+          final List<Integer> result = Lists.newArrayList();
+
+          @Override public boolean processElement(Integer element) {
+            result.add(element);
+            return result.size() < 10;
+          }
+
+          @Override public List<Integer> getResult() {
+            return result;
+          }
+        });
+    assertEquals(Ordering.natural().leastOf(input, 10), least);
+    assertEquals(0, directory.list().length);
+  }
+
+  public void testCodecFailure() {
+    ExecutorService executor = Executors.newFixedThreadPool(2);
+    try {
+      ExternalSorter<Integer> sorter = ExternalSorter.create(
+          Ordering.natural(), new CountingCodec() {
+            @Override public void write(Integer element, DataOutput output)
+                throws IOException {
+              if (element == 500) {
+                throw new IOException("cannot write");
+              }
+              super.write(element, output);
+            }
+          })
+          .withMaxElementsInMemory(10)
+          .withExecutor(executor, 2)
+          .withTempDirectory(directory);
+      List<Integer> input = Lists.newArrayList();
+      for (int i = 0; i < 1000; i++) {
+        input.add(i);
+      }
+      try {
+        sort(sorter, input);
+        fail();
+      } catch (IOException expected) {
+        assertEquals("cannot write", expected.getMessage());
+      }
+      assertEquals(0, directory.list().length);
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  public void testRejectingExecutor() throws IOException {
+    ExecutorService executor = Executors.newSingleThreadExecutor();
+    executor.shutdown();
+    ExternalSorter<Integer> sorter = ExternalSorter.create(
+        Ordering.natural(), new CountingCodec())
+        .withMaxElementsInMemory(10)
+        .withExecutor(executor, 2)
+        .withTempDirectory(directory);
+    try {
+      sort(sorter, randomIntegers(100));
+      fail();
+    } catch (RejectedExecutionException expected) {
+    }
+    assertEquals(0, directory.list().length);
+  }
+
+  public void testFailureCancelsUnstartedRuns() throws IOException {
+    final List<Runnable> queued = Lists.newArrayList();
+    Executor queueing = new Executor() {
+      @Override public void execute(Runnable command) {
+        queued.add(command);
+      }
+    };
+    ExternalSorter<Integer> sorter = ExternalSorter.create(
+        Ordering.natural(), new CountingCodec())
+        .withMaxElementsInMemory(40)
+        .withExecutor(queueing, 3)
+        .withTempDirectory(directory);
+    final Iterator<Integer> integers = randomIntegers(25).iterator();
+    Iterator<Integer> failing = new AbstractIterator<Integer>() {
+      @Override protected Integer computeNext() {
+        if (!integers.hasNext()) {
+          throw new IllegalStateException("cannot read");
+        }
+        return integers.next();
+      }
+    };
+    try {
+      sorter.sort(failing, new ElementProcessor<Integer, Void>() {
+        @Override public boolean processElement(Integer element) {
+          return true;
+        }
+
+        @Override public Void getResult() {
+          return null;
+        }
+      });
+      fail();
+    } catch (IllegalStateException expected) {
+    }
+    // the executor never ran the two runs, and they no longer do anything
+    assertEquals(2, queued.size());
+    for (Runnable task : queued) {
+      task.run();
+      assertTrue(((Future<?>) task).isCancelled());
+    }
+    assertEquals(0, directory.list().length);
+  }
+
+  public void testStringCodec() throws IOException {
+    List<String> input = ImmutableList.of(
+        "b", I18N, "", ASCII, Strings.repeat("\u00e9", 70000), "a");
+    ExternalSorter<String> sorter = ExternalSorter.create(
+        Ordering.natural(), ExternalSorter.stringCodec())
+        .withMaxElementsInMemory(2)
+        .withTempDirectory(directory);
+    assertEquals(Ordering.natural().sortedCopy(input), sort(sorter, input));
+  }
+
+  public void testInvalidArguments() {
+    ExternalSorter<String> sorter = ExternalSorter.create(
+        Ordering.natural(), ExternalSorter.stringCodec());
+    try {
+      sorter.withMaxElementsInMemory(0);
+      fail();
+    } catch (IllegalArgumentException expected) {
+    }
+    try {
+      sorter.withMergeWidth(1);
+      fail();
+    } catch (IllegalArgumentException expected) {
+    }
+  }
+
+  private static <E> List<E> sort(ExternalSorter<E> sorter, List<E> input)
+      throws IOException {
+    return sorter.sort(input.iterator(), new ElementProcessor<E, List<E>>() {
+      final List<E> result = Lists.newArrayList();
+
+      @Override public boolean processElement(E element) {
+        result.add(element);
+        return true;
+      }
+
+      @Override public List<E> getResult() {
+        return result;
+      }
+    });
+  }
+
+  private static List<Integer> randomIntegers(int count) {
+    Random random = new Random(0);
+    List<Integer> result = Lists.newArrayList();
+    for (int i = 0; i < count; i++) {
+      result.add(random.nextInt(count));
+    }
+    return result;
+  }
+
+  private static class CountingCodec implements Codec<Integer> {
+    // only checked by tests that sort in the calling thread
+    int writes;
+    int reads;
+
+    @Override public void write(Integer element, DataOutput output)
+        throws IOException {
+      output.writeInt(element);
+      writes++;
+    }
+
+    @Override public Integer read(DataInput input) throws IOException {
+      reads++;
+      return input.readInt();
+    }
+  }
+}
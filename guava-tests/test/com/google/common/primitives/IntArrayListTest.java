@@ -0,0 +1,119 @@
+/*
+ * Copyright (C) 2012 The Guava Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.common.primitives;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.testing.EqualsTester;
+
+import junit.framework.TestCase;
+
+import java.util.List;
+
+/**
+ * Tests for {@link IntArrayList}.
+ */
+public class IntArrayListTest extends TestCase {
+  public void testAddGetSet() {
+    IntArrayList list = IntArrayList.create();
+    assertTrue(list.isEmpty());
+    for (int i = 0; i < 100; i++) {
+      list.add(i * 2);
+    }
+    assertEquals(100, list.size());
+    assertEquals(10, list.get(5));
+    assertEquals(10, list.set(5, -1));
+    assertEquals(-1, list.get(5));
+    try {
+      list.get(100);
+      fail();
+    } catch (IndexOutOfBoundsException expected) {
+    }
+  }
+
+  public void testInsertAndRemove() {
+    IntArrayList list = IntArrayList.of(1, 2, 4);
+    list.add(2, 3);
+    list.add(0, 0);
+    list.add(5, 5);
+    assertEquals(IntArrayList.of(0, 1, 2, 3, 4, 5), list);
+    assertEquals(0, list.removeAt(0));
+    assertEquals(5, list.removeAt(4));
+    assertEquals(ImmutableList.of(1, 2, 3, 4), list.asList());
+    try {
+      list.add(5, 9);
+      fail();
+    } catch (IndexOutOfBoundsException expected) {
+    }
+  }
+
+  public void testSearchSortAndCopy() {
+    IntArrayList list = IntArrayList.withCapacity(2);
+    list.addAll(3, 1, 2, 1);
+    assertTrue(list.contains(2));
+    assertFalse(list.contains(4));
+    assertEquals(1, list.indexOf(1));
+    assertEquals(3, list.lastIndexOf(1));
+    assertEquals(-1, list.indexOf(4));
+    list.sort();
+    assertEquals("[1, 1, 2, 3]", list.toString());
+    int[] array = list.toArray();
+    array[0] = 99;
+    assertEquals(1, list.get(0));
+    list.trimToSize();
+    list.add(4);
+    assertEquals(5, list.size());
+    list.clear();
+    assertTrue(list.isEmpty());
+    assertFalse(list.contains(1));
+  }
+
+  public void testOfCopiesArray() {
+    int[] values = {1, 2};
+    IntArrayList list = IntArrayList.of(values);
+    values[0] = 5;
+    assertEquals(1, list.get(0));
+  }
+
+  public void testAsList() {
+    IntArrayList list = IntArrayList.of(1, 2, 3);
+    List<Integer> view = list.asList();
+    view.add(4);
+    view.remove(0);
+    view.set(0, 7);
+    assertEquals(IntArrayList.of(7, 3, 4), list);
+    list.add(5);
+    assertEquals(ImmutableList.of(7, 3, 4, 5), view);
+    assertEquals(2, view.indexOf(4));
+    assertFalse(view.contains("4"));
+    view.subList(0, 2).clear();
+    assertEquals(IntArrayList.of(4, 5), list);
+    try {
+      view.add(null);
+      fail();
+    } catch (NullPointerException expected) {
+    }
+  }
+
+  public void testEqualsAndHashCode() {
+    new EqualsTester()
+        .addEqualityGroup(IntArrayList.create(), IntArrayList.withCapacity(10))
+        .addEqualityGroup(IntArrayList.of(1, 2), IntArrayList.of(1, 2))
+        .addEqualityGroup(IntArrayList.of(2, 1))
+        .testEquals();
+    assertEquals(ImmutableList.of(1, 2, 3).hashCode(), IntArrayList.of(1, 2, 3).hashCode());
+  }
+}
@@ -0,0 +1,166 @@
+/*
+ * Copyright (C) 2012 The Guava Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.common.primitives;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Maps;
+import com.google.common.testing.EqualsTester;
+
+import junit.framework.TestCase;
+
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Tests for {@link IntIntHashMap}.
+ */
+public class IntIntHashMapTest extends TestCase {
+  public void testPutGetRemove() {
+    IntIntHashMap map = IntIntHashMap.create();
+    assertTrue(map.isEmpty());
+    assertEquals(-1, map.get(0, -1));
+    assertEquals(0, map.put(0, 10));
+    assertEquals(10, map.put(0, 11));
+    assertEquals(0, map.put(7, 70));
+    assertEquals(70, map.put(7, 71));
+    assertEquals(2, map.size());
+    assertEquals(11, map.get(0, -1));
+    assertEquals(71, map.get(7, -1));
+    assertEquals(-1, map.get(8, -1));
+    assertTrue(map.containsKey(0));
+    assertFalse(map.containsKey(8));
+    assertTrue(map.remove(0));
+    assertFalse(map.remove(0));
+    assertFalse(map.containsKey(0));
+    assertEquals(-1, map.get(0, -1));
+    assertEquals(0, map.put(0, 5));
+    assertEquals(2, map.size());
+    assertTrue(map.remove(7));
+    assertFalse(map.remove(7));
+    assertEquals(1, map.size());
+    map.clear();
+    assertTrue(map.isEmpty());
+    assertFalse(map.containsKey(0));
+  }
+
+  public void testZeroValueIsNotAbsence() {
+    IntIntHashMap map = IntIntHashMap.create();
+    assertEquals(0, map.put(3, 0));
+    assertTrue(map.containsKey(3));
+    assertEquals(0, map.get(3, -1));
+    assertEquals(0, map.put(0, 0));
+    assertTrue(map.containsKey(0));
+    assertEquals(0, map.get(0, -1));
+    assertEquals(2, map.size());
+  }
+
+  public void testAddTo() {
+    IntIntHashMap map = IntIntHashMap.create();
+    assertEquals(3, map.addTo(0, 3));
+    assertEquals(5, map.addTo(0, 2));
+    assertEquals(-4, map.addTo(9, -4));
+    assertEquals(-3, map.addTo(9, 1));
+    assertEquals(ImmutableMap.of(0, 5, 9, -3), toMap(map));
+  }
+
+  public void testGrow() {
+    IntIntHashMap map = IntIntHashMap.withExpectedSize(2);
+    for (int i = 0; i < 1000; i++) {
+      assertEquals(0, map.put(i, -i));
+    }
+    assertEquals(1000, map.size());
+    for (int i = 0; i < 1000; i++) {
+      assertEquals(-i, map.get(i, 1));
+    }
+  }
+
+  public void testEqualsAndHashCode() {
+    IntIntHashMap a = IntIntHashMap.create();
+    a.put(0, 1);
+    a.put(2, 3);
+    IntIntHashMap b = IntIntHashMap.withExpectedSize(50);
+    b.put(2, 3);
+    b.put(0, 1);
+    IntIntHashMap c = IntIntHashMap.create();
+    c.put(2, 3);
+    c.put(0, 2);
+    IntIntHashMap d = IntIntHashMap.create();
+    d.put(2, 3);
+    IntIntHashMap zero = IntIntHashMap.create();
+    zero.put(0, 0);
+    new EqualsTester()
+        .addEqualityGroup(a, b)
+        .addEqualityGroup(c)
+        .addEqualityGroup(d)
+        .addEqualityGroup(zero)
+        .addEqualityGroup(IntIntHashMap.create())
+        .testEquals();
+    assertEquals(ImmutableMap.of(0, 1, 2, 3).hashCode(), a.hashCode());
+    assertEquals(ImmutableMap.of(0, 0).hashCode(), zero.hashCode());
+  }
+
+  public void testToString() {
+    IntIntHashMap map = IntIntHashMap.create();
+    assertEquals("{}", map.toString());
+    map.put(5, -2);
+    assertEquals("{5=-2}", map.toString());
+    map.put(0, 1);
+    assertEquals("{0=1, 5=-2}", map.toString());
+    map.remove(5);
+    assertEquals("{0=1}", map.toString());
+  }
+
+  public void testAgainstHashMap() {
+    Random random = new Random(0);
+    IntIntHashMap map = IntIntHashMap.withExpectedSize(4);
+    Map<Integer, Integer> expected = Maps.newHashMap();
+    for (int i = 0; i < 200000; i++) {
+      int key = (random.nextInt(1000) - 500) << (random.nextBoolean() ? 0 : 20);
+      int value = random.nextInt();
+      switch (random.nextInt(4)) {
+        case 0:
+          Integer previous = expected.put(key, value);
+          assertEquals(previous == null ? 0 : previous, map.put(key, value));
+          break;
+        case 1:
+          Integer old = expected.get(key);
+          expected.put(key, (old == null ? 0 : old) + 1);
+          assertEquals((int) expected.get(key), map.addTo(key, 1));
+          break;
+        case 2:
+          assertEquals(expected.remove(key) != null, map.remove(key));
+          break;
+        default:
+          Integer current = expected.get(key);
+          assertEquals(current == null ? 17 : current, map.get(key, 17));
+      }
+      assertEquals(expected.size(), map.size());
+    }
+    assertEquals(expected, toMap(map));
+    assertEquals(expected.hashCode(), map.hashCode());
+  }
+
+  private static Map<Integer, Integer> toMap(IntIntHashMap map) {
+    int[] keys = map.keys();
+    int[] values = map.values();
+    Map<Integer, Integer> result = Maps.newHashMap();
+    for (int i = 0; i < keys.length; i++) {
+      result.put(keys[i], values[i]);
+    }
+    return result;
+  }
+}
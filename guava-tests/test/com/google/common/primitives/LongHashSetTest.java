@@ -0,0 +1,116 @@
+/*
+ * Copyright (C) 2012 The Guava Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.common.primitives;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Sets;
+import com.google.common.testing.EqualsTester;
+
+import junit.framework.TestCase;
+
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Tests for {@link LongHashSet}.
+ */
+public class LongHashSetTest extends TestCase {
+  public void testEmpty() {
+    LongHashSet set = LongHashSet.create();
+    assertTrue(set.isEmpty());
+    assertEquals(0, set.size());
+    assertFalse(set.contains(0));
+    assertFalse(set.remove(1));
+    assertEquals(0, set.toArray().length);
+    assertEquals("[]", set.toString());
+  }
+
+  public void testAddContainsRemove() {
+    LongHashSet set = LongHashSet.create();
+    assertTrue(set.add(0));
+    assertTrue(set.add(Long.MIN_VALUE));
+    assertTrue(set.add(42));
+    assertFalse(set.add(42));
+    assertEquals(3, set.size());
+    assertTrue(set.contains(0));
+    assertTrue(set.contains(Long.MIN_VALUE));
+    assertFalse(set.contains(43));
+    assertTrue(set.remove(0));
+    assertFalse(set.contains(0));
+    assertTrue(set.remove(42));
+    assertEquals(1, set.size());
+    set.clear();
+    assertTrue(set.isEmpty());
+    assertFalse(set.contains(Long.MIN_VALUE));
+  }
+
+  public void testBadExpectedSize() {
+    try {
+      LongHashSet.withExpectedSize(-1);
+      fail();
+    } catch (IllegalArgumentException expected) {
+    }
+  }
+
+  public void testEqualsAndHashCode() {
+    new EqualsTester()
+        .addEqualityGroup(LongHashSet.create(), LongHashSet.withExpectedSize(100))
+        .addEqualityGroup(LongHashSet.of(0, 1, 2), LongHashSet.of(2, 1, 0, 1))
+        .addEqualityGroup(LongHashSet.of(1, 2))
+        .testEquals();
+    assertEquals(ImmutableSet.of(0L, 1L, -5L, Long.MAX_VALUE).hashCode(),
+        LongHashSet.of(0, 1, -5, Long.MAX_VALUE).hashCode());
+  }
+
+  /** Mirrors random operations on a {@code HashSet<Long>}, so that entries collide and shift. */
+  public void testAgainstHashSet() {
+    Random random = new Random(0);
+    LongHashSet set = LongHashSet.create();
+    Set<Long> expected = Sets.newHashSet();
+    for (int i = 0; i < 200000; i++) {
+      // a small range of keys, many of them multiples of the table size, to force collisions
+      long value = (random.nextInt(2000) - 1000) * (random.nextBoolean() ? 1L : 1L << 32);
+      switch (random.nextInt(3)) {
+        case 0:
+        case 1:
+          assertEquals(expected.add(value), set.add(value));
+          break;
+        default:
+          assertEquals(expected.remove(value), set.remove(value));
+      }
+      assertEquals(expected.size(), set.size());
+    }
+    for (long value = -1000; value < 1000; value++) {
+      assertEquals(expected.contains(value), set.contains(value));
+      assertEquals(expected.contains(value << 32), set.contains(value << 32));
+    }
+    assertEquals(expected, Sets.newHashSet(Longs.asList(set.toArray())));
+    assertEquals(expected.hashCode(), set.hashCode());
+  }
+
+  public void testGrowsFromExpectedSize() {
+    LongHashSet set = LongHashSet.withExpectedSize(3);
+    for (long i = 1; i <= 10000; i++) {
+      assertTrue(set.add(i * 31));
+    }
+    assertEquals(10000, set.size());
+    for (long i = 1; i <= 10000; i++) {
+      assertTrue(set.contains(i * 31));
+      assertFalse(set.contains(i * 31 + 1));
+    }
+  }
+}
@@ -0,0 +1,119 @@
+/*
+ * Copyright (C) 2012 The Guava Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.common.primitives;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Maps;
+import com.google.common.testing.EqualsTester;
+
+import junit.framework.TestCase;
+
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Tests for {@link LongLongHashMap}.
+ */
+public class LongLongHashMapTest extends TestCase {
+  public void testPutGetRemove() {
+    LongLongHashMap map = LongLongHashMap.create();
+    assertTrue(map.isEmpty());
+    assertEquals(-1, map.get(0, -1));
+    assertEquals(0, map.put(0, 10));
+    assertEquals(0, map.put(7, 70));
+    assertEquals(70, map.put(7, 71));
+    assertEquals(2, map.size());
+    assertEquals(10, map.get(0, -1));
+    assertEquals(71, map.get(7, -1));
+    assertEquals(-1, map.get(8, -1));
+    assertTrue(map.containsKey(0));
+    assertFalse(map.containsKey(8));
+    assertTrue(map.remove(0));
+    assertFalse(map.remove(0));
+    assertEquals(0, map.put(0, 5));
+    assertEquals(2, map.size());
+    map.clear();
+    assertTrue(map.isEmpty());
+    assertEquals("{}", map.toString());
+  }
+
+  public void testAddTo() {
+    LongLongHashMap map = LongLongHashMap.create();
+    assertEquals(3, map.addTo(0, 3));
+    assertEquals(5, map.addTo(0, 2));
+    assertEquals(-4, map.addTo(9, -4));
+    assertEquals(ImmutableMap.of(0L, 5L, 9L, -4L), toMap(map));
+  }
+
+  public void testEqualsAndHashCode() {
+    LongLongHashMap a = LongLongHashMap.create();
+    a.put(0, 1);
+    a.put(2, 3);
+    LongLongHashMap b = LongLongHashMap.withExpectedSize(50);
+    b.put(2, 3);
+    b.put(0, 1);
+    LongLongHashMap c = LongLongHashMap.create();
+    c.put(2, 3);
+    c.put(0, 2);
+    new EqualsTester()
+        .addEqualityGroup(a, b)
+        .addEqualityGroup(c)
+        .addEqualityGroup(LongLongHashMap.create())
+        .testEquals();
+    assertEquals(ImmutableMap.of(0L, 1L, 2L, 3L).hashCode(), a.hashCode());
+  }
+
+  public void testAgainstHashMap() {
+    Random random = new Random(0);
+    LongLongHashMap map = LongLongHashMap.create();
+    Map<Long, Long> expected = Maps.newHashMap();
+    for (int i = 0; i < 200000; i++) {
+      long key = (random.nextInt(2000) - 1000) * (random.nextBoolean() ? 1L : 1L << 40);
+      long value = random.nextLong();
+      switch (random.nextInt(4)) {
+        case 0:
+          Long previous = expected.put(key, value);
+          assertEquals(previous == null ? 0 : previous, map.put(key, value));
+          break;
+        case 1:
+          Long old = expected.get(key);
+          expected.put(key, (old == null ? 0 : old) + 1);
+          assertEquals((long) expected.get(key), map.addTo(key, 1));
+          break;
+        case 2:
+          assertEquals(expected.remove(key) != null, map.remove(key));
+          break;
+        default:
+          Long current = expected.get(key);
+          assertEquals(current == null ? 17 : current, map.get(key, 17));
+      }
+      assertEquals(expected.size(), map.size());
+    }
+    assertEquals(expected, toMap(map));
+    assertEquals(expected.hashCode(), map.hashCode());
+  }
+
+  private static Map<Long, Long> toMap(LongLongHashMap map) {
+    long[] keys = map.keys();
+    long[] values = map.values();
+    Map<Long, Long> result = Maps.newHashMap();
+    for (int i = 0; i < keys.length; i++) {
+      result.put(keys[i], values[i]);
+    }
+    return result;
+  }
+}
@@ -0,0 +1,122 @@
+/*
+ * Copyright (C) 2012 The Guava Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.common.primitives;
+
+import com.google.common.collect.HashMultiset;
+import com.google.common.collect.ImmutableMultiset;
+import com.google.common.collect.Multiset;
+import com.google.common.testing.EqualsTester;
+
+import junit.framework.TestCase;
+
+import java.util.Random;
+
+/**
+ * Tests for {@link LongMultiset}.
+ */
+public class LongMultisetTest extends TestCase {
+  public void testCounts() {
+    LongMultiset multiset = LongMultiset.create();
+    assertTrue(multiset.isEmpty());
+    assertTrue(multiset.add(5));
+    assertEquals(1, multiset.add(5, 2));
+    assertEquals(0, multiset.add(0, 1));
+    assertEquals(3, multiset.count(5));
+    assertEquals(1, multiset.count(0));
+    assertEquals(0, multiset.count(6));
+    assertEquals(4, multiset.size());
+    assertEquals(2, multiset.elementCount());
+
+    assertEquals(3, multiset.remove(5, 2));
+    assertTrue(multiset.remove(5));
+    assertFalse(multiset.remove(5));
+    assertFalse(multiset.contains(5));
+    assertEquals(1, multiset.remove(0, 10));
+    assertTrue(multiset.isEmpty());
+
+    assertEquals(0, multiset.setCount(9, 4));
+    assertEquals(4, multiset.setCount(9, 0));
+    assertEquals(0, multiset.elementCount());
+  }
+
+  public void testBadArguments() {
+    LongMultiset multiset = LongMultiset.create();
+    try {
+      multiset.add(1, -1);
+      fail();
+    } catch (IllegalArgumentException expected) {
+    }
+    try {
+      multiset.setCount(1, -1);
+      fail();
+    } catch (IllegalArgumentException expected) {
+    }
+    multiset.add(1, Integer.MAX_VALUE);
+    try {
+      multiset.add(1);
+      fail();
+    } catch (IllegalArgumentException expected) {
+    }
+    assertEquals(Integer.MAX_VALUE, multiset.count(1));
+    multiset.add(2, Integer.MAX_VALUE);
+    assertEquals(Integer.MAX_VALUE, multiset.size());
+  }
+
+  public void testEqualsHashCodeAndToString() {
+    LongMultiset a = LongMultiset.create();
+    a.add(1, 3);
+    a.add(2);
+    LongMultiset b = LongMultiset.withExpectedSize(10);
+    b.add(2);
+    b.add(1, 3);
+    LongMultiset c = LongMultiset.create();
+    c.add(1, 2);
+    c.add(2);
+    new EqualsTester()
+        .addEqualityGroup(a, b)
+        .addEqualityGroup(c)
+        .addEqualityGroup(LongMultiset.create())
+        .testEquals();
+    assertEquals(ImmutableMultiset.of(1L, 1L, 1L, 2L).hashCode(), a.hashCode());
+    String string = a.toString();
+    assertTrue(string, string.equals("[1 x 3, 2]") || string.equals("[2, 1 x 3]"));
+  }
+
+  public void testAgainstHashMultiset() {
+    Random random = new Random(0);
+    LongMultiset multiset = LongMultiset.create();
+    Multiset<Long> expected = HashMultiset.create();
+    for (int i = 0; i < 100000; i++) {
+      long element = random.nextInt(500) - 250;
+      int occurrences = random.nextInt(4);
+      if (random.nextBoolean()) {
+        assertEquals(expected.add(element, occurrences), multiset.add(element, occurrences));
+      } else {
+        assertEquals(expected.remove(element, occurrences), multiset.remove(element, occurrences));
+      }
+      assertEquals(expected.size(), multiset.size());
+    }
+    long[] elements = multiset.elements();
+    int[] counts = multiset.counts();
+    Multiset<Long> actual = HashMultiset.create();
+    for (int i = 0; i < elements.length; i++) {
+      actual.add(elements[i], counts[i]);
+    }
+    assertEquals(expected, actual);
+    assertEquals(expected.hashCode(), multiset.hashCode());
+  }
+}
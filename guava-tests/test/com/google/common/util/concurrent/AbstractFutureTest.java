@@ -21,9 +21,16 @@ import static org.junit.contrib.truth.Truth.ASSERT;
 import junit.framework.AssertionFailedError;
 import junit.framework.TestCase;
 
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicReference;
 
 /**
@@ -133,6 +140,121 @@ public class AbstractFutureTest extends TestCase {
     executor.shutdown();
   }
 
+  public void testSetNull() throws Exception {
+    AbstractFuture<String> future = new AbstractFuture<String>() {};
+    assertTrue(future.set(null));
+    assertTrue(future.isDone());
+    assertNull(future.get());
+    assertNull(future.get(0, TimeUnit.SECONDS));
+    assertFalse(future.set("foo"));
+  }
+
+  public void testListenersRunInOrderAdded() {
+    AbstractFuture<String> future = new AbstractFuture<String>() {};
+    final List<Integer> order = Lists.newArrayList();
+    for (int i = 0; i < 5; i++) {
+      final int index = i;
+      future.addListener(new Runnable() {
+        @Override public void run() {
+          order.add(index);
+        }
+      }, MoreExecutors.sameThreadExecutor());
+    }
+    assertTrue(order.isEmpty());
+    future.set("done");
+    assertEquals(ImmutableList.of(0, 1, 2, 3, 4), order);
+
+    future.addListener(new Runnable() {
+      @Override public void run() {
+        order.add(5);
+      }
+    }, MoreExecutors.sameThreadExecutor());
+    assertEquals(6, order.size());
+  }
+
+  public void testTimedGet_timesOut() throws Exception {
+    AbstractFuture<String> future = new AbstractFuture<String>() {};
+    try {
+      future.get(0, TimeUnit.MILLISECONDS);
+      fail();
+    } catch (TimeoutException expected) {
+    }
+    try {
+      future.get(10, TimeUnit.MILLISECONDS);
+      fail();
+    } catch (TimeoutException expected) {
+    }
+    future.set("foo");
+    assertEquals("foo", future.get(10, TimeUnit.MILLISECONDS));
+  }
+
+  public void testGet_interruptedBeforeCall() throws Exception {
+    AbstractFuture<String> future = new AbstractFuture<String>() {
+      {
+        set("foo");
+      }
+    };
+    Thread.currentThread().interrupt();
+    try {
+      future.get();
+      fail();
+    } catch (InterruptedException expected) {
+    }
+    assertFalse(Thread.interrupted());
+  }
+
+  public void testGet_interruptedWhileWaiting() throws Exception {
+    final AbstractFuture<String> future = new AbstractFuture<String>() {};
+    final CountDownLatch interrupted = new CountDownLatch(1);
+    Thread waiter = new Thread() {
+      @Override public void run() {
+        try {
+          future.get();
+        } catch (InterruptedException expected) {
+          interrupted.countDown();
+        } catch (ExecutionException e) {
+          throw new AssertionError(e);
+        }
+      }
+    };
+    waiter.start();
+    waiter.interrupt();
+    assertTrue(interrupted.await(10, TimeUnit.SECONDS));
+    waiter.join();
+
+    // the abandoned waiter must not interfere with completion
+    future.set("foo");
+    assertEquals("foo", future.get());
+  }
+
+  public void testManyWaiters() throws Exception {
+    final AbstractFuture<String> future = new AbstractFuture<String>() {};
+    int waiterCount = 20;
+    ExecutorService executor = Executors.newFixedThreadPool(waiterCount);
+    final CountDownLatch started = new CountDownLatch(waiterCount);
+    final CountDownLatch finished = new CountDownLatch(waiterCount);
+    for (int i = 0; i < waiterCount; i++) {
+      final boolean timed = (i % 2 == 0);
+      executor.execute(new Runnable() {
+        @Override public void run() {
+          started.countDown();
+          try {
+            String value = timed ? future.get(1, TimeUnit.MINUTES) : future.get();
+            if ("foo".equals(value)) {
+              finished.countDown();
+            }
+          } catch (Exception e) {
+            throw new AssertionError(e);
+          }
+        }
+      });
+    }
+    started.await();
+    future.set("foo");
+    assertTrue(finished.await(10, TimeUnit.SECONDS));
+    executor.shutdown();
+  }
+
   private void checkStackTrace(ExecutionException e) {
     // Our call site for get() should be in the trace.
     int index = findStackFrame(
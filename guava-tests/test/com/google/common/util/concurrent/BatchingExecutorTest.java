@@ -0,0 +1,315 @@
+/*
+ * Copyright (C) 2012 The Guava Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.common.util.concurrent;
+
+import static com.google.common.util.concurrent.MoreExecutors.sameThreadExecutor;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+import com.google.common.base.Function;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+
+import junit.framework.TestCase;
+
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Tests for {@link BatchingExecutor}.
+ */
+public class BatchingExecutorTest extends TestCase {
+  /** Returns each item doubled, and records the sizes of the batches it is called with. */
+  private static class Doubler implements Function<List<Integer>, List<Integer>> {
+    final List<Integer> batchSizes = new CopyOnWriteArrayList<Integer>();
+
+    @Override public List<Integer> apply(List<Integer> items) {
+      batchSizes.add(items.size());
+      List<Integer> results = Lists.newArrayList();
+      for (int item : items) {
+        results.add(item * 2);
+      }
+      return results;
+    }
+  }
+
+  private final Doubler doubler = new Doubler();
+
+  public void testBuilderArguments() {
+    try {
+      BatchingExecutor.builder().setMaxBatchSize(0);
+      fail();
+    } catch (IllegalArgumentException expected) {
+    }
+    try {
+      BatchingExecutor.builder().setMaxPendingItems(0);
+      fail();
+    } catch (IllegalArgumentException expected) {
+    }
+    try {
+      BatchingExecutor.builder().setMaxLinger(-1, MILLISECONDS);
+      fail();
+    } catch (IllegalArgumentException expected) {
+    }
+    try {
+      BatchingExecutor.builder().setMaxBatchSize(10).setMaxPendingItems(5)
+          .build(doubler, sameThreadExecutor());
+      fail();
+    } catch (IllegalStateException expected) {
+    }
+  }
+
+  public void testFullBatches() throws Exception {
+    BatchingExecutor<Integer, Integer> executor = BatchingExecutor.builder()
+        .setMaxBatchSize(3)
+        .setMaxLinger(Long.MAX_VALUE, TimeUnit.NANOSECONDS)
+        .build(doubler, sameThreadExecutor());
+    List<ListenableFuture<Integer>> futures = Lists.newArrayList();
+    for (int i = 0; i < 7; i++) {
+      futures.add(executor.submit(i));
+    }
+    assertEquals(ImmutableList.of(3, 3), doubler.batchSizes);
+    assertFalse(futures.get(6).isDone());
+    assertEquals(1, executor.getPendingItemCount());
+
+    executor.flush();
+    assertEquals(ImmutableList.of(3, 3, 1), doubler.batchSizes);
+    for (int i = 0; i < 7; i++) {
+      assertEquals(Integer.valueOf(i * 2), futures.get(i).get());
+    }
+    BatchingExecutor.Stats stats = executor.stats();
+    assertEquals(3, stats.batchCount());
+    assertEquals(7, stats.itemCount());
+    assertEquals(2, stats.fullBatchCount());
+    assertEquals(0, stats.lingerBatchCount());
+    assertEquals(1, stats.flushedBatchCount());
+    assertEquals(3, stats.largestBatchSize());
+    assertEquals(7.0 / 3, stats.averageBatchSize(), 1e-9);
+  }
+
+  public void testLinger() throws Exception {
+    BatchingExecutor<Integer, Integer> executor = BatchingExecutor.builder()
+        .setMaxBatchSize(100)
+        .setMaxLinger(20, MILLISECONDS)
+        .build(doubler, sameThreadExecutor());
+    ListenableFuture<Integer> first = executor.submit(1);
+    ListenableFuture<Integer> second = executor.submit(2);
+    assertEquals(Integer.valueOf(2), first.get(10, SECONDS));
+    assertEquals(Integer.valueOf(4), second.get(10, SECONDS));
+    assertEquals(ImmutableList.of(2), doubler.batchSizes);
+    assertEquals(1, executor.stats().lingerBatchCount());
+  }
+
+  public void testBatchFunctionFails() throws Exception {
+    final RuntimeException failure = new RuntimeException();
+    BatchingExecutor<Integer, Integer> executor = BatchingExecutor.builder()
+        .setMaxBatchSize(2)
+        .build(new Function<List<Integer>, List<Integer>>() {
+          @Override public List<Integer> apply(List<Integer> items) {
+            throw failure;
+          }
+        }, sameThreadExecutor());
+    ListenableFuture<Integer> first = executor.submit(1);
+    ListenableFuture<Integer> second = executor.submit(2);
+    for (ListenableFuture<Integer> future : ImmutableList.of(first, second)) {
+      try {
+        future.get();
+        fail();
+      } catch (ExecutionException expected) {
+        assertSame(failure, expected.getCause());
+      }
+    }
+    assertEquals(0, executor.getPendingItemCount());
+  }
+
+  public void testBatchFunctionThrowsError() throws Exception {
+    final Error failure = new Error();
+    BatchingExecutor<Integer, Integer> executor = BatchingExecutor.builder()
+        .setMaxLinger(1, TimeUnit.HOURS)
+        .build(new Function<List<Integer>, List<Integer>>() {
+          @Override public List<Integer> apply(List<Integer> items) {
+            throw failure;
+          }
+        }, sameThreadExecutor());
+    ListenableFuture<Integer> first = executor.submit(1);
+    ListenableFuture<Integer> second = executor.submit(2);
+    try {
+      executor.flush();
+      fail();
+    } catch (Error expected) {
+      assertSame(failure, expected);
+    }
+    for (ListenableFuture<Integer> future : ImmutableList.of(first, second)) {
+      try {
+        future.get(0, SECONDS);
+        fail();
+      } catch (ExecutionException expected) {
+        assertSame(failure, expected.getCause());
+      }
+    }
+    assertEquals(0, executor.getPendingItemCount());
+  }
+
+  public void testBatchFunctionReturnsWrongSize() throws Exception {
+    BatchingExecutor<Integer, Integer> executor = BatchingExecutor.builder()
+        .setMaxBatchSize(2)
+        .build(new Function<List<Integer>, List<Integer>>() {
+          @Override public List<Integer> apply(List<Integer> items) {
+            return ImmutableList.of(1);
+          }
+        }, sameThreadExecutor());
+    executor.submit(1);
+    try {
+      executor.submit(2).get();
+      fail();
+    } catch (ExecutionException expected) {
+      assertTrue(expected.getCause() instanceof IllegalStateException);
+    }
+  }
+
+  public void testTimerRejects() throws Exception {
+    ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor();
+    timer.shutdown();
+    BatchingExecutor<Integer, Integer> executor = BatchingExecutor.builder()
+        .setTimer(timer)
+        .build(doubler, sameThreadExecutor());
+    try {
+      executor.submit(1);
+      fail();
+    } catch (RejectedExecutionException expected) {
+    }
+    assertEquals(0, executor.getPendingItemCount());
+    executor.shutdown();
+    assertTrue(executor.awaitTermination(0, SECONDS));
+    assertEquals(ImmutableList.of(), doubler.batchSizes);
+  }
+
+  public void testShutdown() throws Exception {
+    BatchingExecutor<Integer, Integer> executor = BatchingExecutor.builder()
+        .setMaxBatchSize(10)
+        .setMaxLinger(1, TimeUnit.HOURS)
+        .build(doubler, sameThreadExecutor());
+    ListenableFuture<Integer> future = executor.submit(5);
+    assertFalse(executor.isShutdown());
+    executor.shutdown();
+    assertTrue(executor.isShutdown());
+    assertEquals(Integer.valueOf(10), future.get());
+    assertTrue(executor.awaitTermination(0, SECONDS));
+    try {
+      executor.submit(6);
+      fail();
+    } catch (RejectedExecutionException expected) {
+    }
+  }
+
+  public void testPendingItemsBounded() throws Exception {
+    final CountDownLatch release = new CountDownLatch(1);
+    final AtomicInteger processed = new AtomicInteger();
+    ExecutorService pool = Executors.newSingleThreadExecutor();
+    try {
+      final BatchingExecutor<Integer, Integer> executor = BatchingExecutor.builder()
+          .setMaxBatchSize(2)
+          .setMaxPendingItems(4)
+          .build(new Function<List<Integer>, List<Integer>>() {
+            @Override public List<Integer> apply(List<Integer> items) {
+              Uninterruptibles.awaitUninterruptibly(release);
+              processed.addAndGet(items.size());
+              return items;
+            }
+          }, pool);
+      for (int i = 0; i < 4; i++) {
+        executor.submit(i);
+      }
+      assertEquals(4, executor.getPendingItemCount());
+
+      final CountDownLatch submitted = new CountDownLatch(1);
+      Thread submitter = new Thread() {
+        @Override public void run() {
+          try {
+            executor.submit(4);
+            submitted.countDown();
+          } catch (InterruptedException e) {
+            throw new AssertionError(e);
+          }
+        }
+      };
+      submitter.start();
+      assertFalse(submitted.await(50, MILLISECONDS));
+
+      release.countDown();
+      assertTrue(submitted.await(10, SECONDS));
+      executor.shutdown();
+      assertTrue(executor.awaitTermination(10, SECONDS));
+      assertEquals(5, processed.get());
+    } finally {
+      pool.shutdown();
+    }
+  }
+
+  public void testConcurrentSubmitters() throws Exception {
+    ExecutorService pool = Executors.newFixedThreadPool(2);
+    ExecutorService submitters = Executors.newFixedThreadPool(4);
+    try {
+      final BatchingExecutor<Integer, Integer> executor = BatchingExecutor.builder()
+          .setMaxBatchSize(64)
+          .setMaxLinger(1, MILLISECONDS)
+          .setMaxPendingItems(256)
+          .build(doubler, pool);
+      final int perThread = 5000;
+      List<ListenableFuture<Integer>> checks = Lists.newArrayList();
+      for (int t = 0; t < 4; t++) {
+        final int base = t * perThread;
+        checks.add(MoreExecutors.listeningDecorator(submitters).submit(
+            new Callable<Integer>() {
+              @Override public Integer call() throws Exception {
+                List<ListenableFuture<Integer>> futures = Lists.newArrayList();
+                for (int i = 0; i < perThread; i++) {
+                  futures.add(executor.submit(base + i));
+                }
+                int wrong = 0;
+                for (int i = 0; i < perThread; i++) {
+                  if (futures.get(i).get(10, SECONDS) != (base + i) * 2) {
+                    wrong++;
+                  }
+                }
+                return wrong;
+              }
+            }));
+      }
+      for (ListenableFuture<Integer> check : checks) {
+        assertEquals(Integer.valueOf(0), check.get(30, SECONDS));
+      }
+      BatchingExecutor.Stats stats = executor.stats();
+      assertEquals(4 * perThread, stats.itemCount());
+      assertTrue(stats.largestBatchSize() <= 64);
+      executor.shutdown();
+      assertTrue(executor.awaitTermination(10, SECONDS));
+    } finally {
+      pool.shutdown();
+      submitters.shutdown();
+    }
+  }
+}
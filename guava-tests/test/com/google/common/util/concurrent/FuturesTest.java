@@ -25,6 +25,7 @@ import static com.google.common.util.concurrent.Futures.immediateFuture;
 import static com.google.common.util.concurrent.Futures.successfulAsList;
 import static java.util.concurrent.Executors.newSingleThreadExecutor;
 import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
 import static java.util.concurrent.TimeUnit.SECONDS;
 import static org.junit.contrib.truth.Truth.ASSERT;
 
@@ -34,6 +35,7 @@ import com.google.common.base.Joiner;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Iterables;
+import com.google.common.collect.Lists;
 import com.google.common.collect.Sets;
 import com.google.common.testing.NullPointerTester;
 import com.google.common.util.concurrent.ForwardingFuture.SimpleForwardingFuture;
@@ -48,6 +50,7 @@ import java.io.IOException;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.AbstractExecutorService;
 import java.util.concurrent.Callable;
 import java.util.concurrent.CancellationException;
 import java.util.concurrent.CountDownLatch;
@@ -370,6 +373,70 @@ public class FuturesTest extends TestCase {
     assertTrue(spy.wasExecuted);
   }
 
+  public void testTransform_doneInputComputedEagerly() throws Exception {
+    FunctionSpy<Object, String> spy =
+        new FunctionSpy<Object, String>(Functions.constant("bar"));
+    ListenableFuture<String> future =
+        Futures.transform(Futures.immediateFuture("foo"), spy);
+    assertEquals(1, spy.getApplyCount());
+    assertTrue(future.isDone());
+    assertEquals("bar", future.get());
+  }
+
+  public void testTransform_doneInputFailure() throws Exception {
+    Exception failure = new IOException("failed");
+    ListenableFuture<Object> future = Futures.transform(
+        Futures.<Object>immediateFailedFuture(failure), Functions.identity());
+    try {
+      future.get();
+      fail();
+    } catch (ExecutionException expected) {
+      assertSame(failure, expected.getCause());
+    }
+  }
+
+  public void testTransform_doneInputCancelled() throws Exception {
+    SettableFuture<Object> input = SettableFuture.create();
+    input.cancel(false);
+    ListenableFuture<Object> future =
+        Futures.transform(input, Functions.identity());
+    assertTrue(future.isCancelled());
+  }
+
+  public void testTransform_doneInputFunctionThrows() throws Exception {
+    final RuntimeException failure = new IllegalStateException("boom");
+    ListenableFuture<Object> future = Futures.transform(
+        Futures.immediateFuture("foo"), new Function<String, Object>() {
+          @Override public Object apply(String input) {
+            throw failure;
+          }
+        });
+    try {
+      future.get();
+      fail();
+    } catch (ExecutionException expected) {
+      assertSame(failure, expected.getCause());
+    }
+  }
+
+  public void testTransform_deepSameThreadChain() throws Exception {
+    SettableFuture<Integer> input = SettableFuture.create();
+    Function<Integer, Integer> increment = new Function<Integer, Integer>() {
+      @Override public Integer apply(Integer value) {
+        return value + 1;
+      }
+    };
+    ListenableFuture<Integer> output = input;
+    int stages = 20000;
+    for (int i = 0; i < stages; i++) {
+      output = Futures.transform(output, increment);
+    }
+    assertFalse(output.isDone());
+    input.set(0);
+    assertTrue(output.isDone());
+    assertEquals(stages, (int) output.get());
+  }
+
   public void testLazyTransform() throws Exception {
     FunctionSpy<Object, String> spy =
         new FunctionSpy<Object, String>(Functions.constant("bar"));
@@ -1152,6 +1219,275 @@ public class FuturesTest extends TestCase {
     ASSERT.that(results).hasContentsInOrder(null, null, DATA3);
   }
 
+  @SuppressWarnings("unchecked") // array is never modified
+  public void testAllAsListFailFast_failureCancelsInputs() throws Exception {
+    SettableFuture<String> future1 = SettableFuture.create();
+    SettableFuture<String> future2 = SettableFuture.create();
+    SettableFuture<String> future3 = SettableFuture.create();
+    ListenableFuture<List<String>> compound =
+        Futures.allAsListFailFast(future1, future2, future3);
+
+    future1.set(DATA1);
+    Throwable failure = new Throwable("failed2");
+    future2.setException(failure);
+    assertTrue(compound.isDone());
+    try {
+      compound.get();
+      fail("Expected exception not thrown");
+    } catch (ExecutionException e) {
+      assertSame(failure, e.getCause());
+    }
+    assertFalse(future1.isCancelled());
+    assertTrue(future3.isCancelled());
+  }
+
+  public void testAllAsListFailFast_cancelOutputCancelsInputs()
+      throws Exception {
+    SettableFuture<String> future1 = SettableFuture.create();
+    SettableFuture<String> future2 = SettableFuture.create();
+    ListenableFuture<List<String>> compound = Futures.allAsListFailFast(
+        ImmutableList.<ListenableFuture<String>>of(future1, future2));
+
+    compound.cancel(false);
+    assertTrue(future1.isCancelled());
+    assertTrue(future2.isCancelled());
+  }
+
+  @SuppressWarnings("unchecked") // array is never modified
+  public void testAllAsListFailFast_success() throws Exception {
+    SettableFuture<String> future1 = SettableFuture.create();
+    SettableFuture<String> future2 = SettableFuture.create();
+    ListenableFuture<List<String>> compound =
+        Futures.allAsListFailFast(future1, future2);
+
+    future2.set(DATA2);
+    assertFalse(compound.isDone());
+    future1.set(DATA1);
+    ASSERT.that(compound.get()).hasContentsInOrder(DATA1, DATA2);
+  }
+
+  public void testInCompletionOrder() throws Exception {
+    SettableFuture<String> future1 = SettableFuture.create();
+    SettableFuture<String> future2 = SettableFuture.create();
+    SettableFuture<String> future3 = SettableFuture.create();
+    List<ListenableFuture<String>> ordered = Futures.inCompletionOrder(
+        ImmutableList.<ListenableFuture<String>>of(future1, future2, future3));
+    assertEquals(3, ordered.size());
+
+    future3.set(DATA3);
+    assertEquals(DATA3, ordered.get(0).get());
+    assertFalse(ordered.get(1).isDone());
+
+    Throwable failure = new Throwable("failed1");
+    future1.setException(failure);
+    try {
+      ordered.get(1).get();
+      fail("Expected exception not thrown");
+    } catch (ExecutionException e) {
+      assertSame(failure, e.getCause());
+    }
+
+    future2.cancel(true);
+    assertTrue(ordered.get(2).isCancelled());
+  }
+
+  public void testInCompletionOrder_doneInputs() throws Exception {
+    List<ListenableFuture<String>> ordered = Futures.inCompletionOrder(
+        ImmutableList.of(immediateFuture(DATA1), immediateFuture(DATA2)));
+    assertEquals(DATA1, ordered.get(0).get());
+    assertEquals(DATA2, ordered.get(1).get());
+  }
+
+  public void testWithTimeout_completesInTime() throws Exception {
+    SettableFuture<String> input = SettableFuture.create();
+    ListenableFuture<String> result = Futures.withTimeout(input, 10, SECONDS);
+    assertFalse(result.isDone());
+    input.set("done");
+    assertEquals("done", result.get());
+  }
+
+  public void testWithTimeout_failureIsPropagated() throws Exception {
+    SettableFuture<String> input = SettableFuture.create();
+    ListenableFuture<String> result = Futures.withTimeout(input, 10, SECONDS);
+    Exception failure = new IOException();
+    input.setException(failure);
+    try {
+      result.get();
+      fail();
+    } catch (ExecutionException expected) {
+      assertSame(failure, expected.getCause());
+    }
+  }
+
+  public void testWithTimeout_timesOut() throws Exception {
+    SettableFuture<String> input = SettableFuture.create();
+    ListenableFuture<String> result = Futures.withTimeout(input, 20, MILLISECONDS);
+    try {
+      result.get(10, SECONDS);
+      fail();
+    } catch (ExecutionException expected) {
+      assertTrue(expected.getCause() instanceof TimeoutException);
+    }
+    assertTrue(input.isCancelled());
+  }
+
+  public void testWithTimeout_hugeTimeout() throws Exception {
+    SettableFuture<String> input = SettableFuture.create();
+    ListenableFuture<String> result =
+        Futures.withTimeout(input, Long.MAX_VALUE, NANOSECONDS);
+    Thread.sleep(50);
+    assertFalse(result.isDone());
+    assertFalse(input.isCancelled());
+    input.set("done");
+    assertEquals("done", result.get());
+  }
+
+  public void testWithTimeout_cancelPropagatesToInput() throws Exception {
+    SettableFuture<String> input = SettableFuture.create();
+    ListenableFuture<String> result = Futures.withTimeout(input, 10, SECONDS);
+    result.cancel(false);
+    assertTrue(input.isCancelled());
+  }
+
+  public void testSubmitAll_respectsMaxInFlight() throws Exception {
+    QueueingExecutorService queue = new QueueingExecutorService();
+    ListeningExecutorService executor = MoreExecutors.listeningDecorator(queue);
+    List<Callable<Integer>> tasks = Lists.newArrayList();
+    for (int i = 0; i < 5; i++) {
+      tasks.add(Callables.returning(i));
+    }
+
+    List<ListenableFuture<Integer>> results =
+        Futures.submitAll(executor, tasks, 2);
+    assertEquals(5, results.size());
+    assertEquals(2, queue.tasks.size());
+
+    queue.runNext();
+    assertEquals(0, (int) results.get(0).get());
+    assertEquals(2, queue.tasks.size());
+
+    // cancelled before its turn: never submitted
+    results.get(3).cancel(false);
+    queue.runNext();
+    queue.runNext();
+    assertEquals(1, queue.tasks.size());
+    queue.runNext();
+    assertTrue(queue.tasks.isEmpty());
+
+    assertEquals(1, (int) results.get(1).get());
+    assertEquals(2, (int) results.get(2).get());
+    assertTrue(results.get(3).isCancelled());
+    assertEquals(4, (int) results.get(4).get());
+  }
+
+  public void testSubmitAll_sameThreadExecutor() throws Exception {
+    List<Callable<Integer>> tasks = Lists.newArrayList();
+    int count = 20000;
+    for (int i = 0; i < count; i++) {
+      tasks.add(Callables.returning(i));
+    }
+    List<ListenableFuture<Integer>> results = Futures.submitAll(
+        MoreExecutors.sameThreadExecutor(), tasks, 1);
+    for (int i = 0; i < count; i++) {
+      assertEquals(i, (int) results.get(i).get());
+    }
+  }
+
+  public void testSubmitAll_cancelRunningTask() throws Exception {
+    QueueingExecutorService queue = new QueueingExecutorService();
+    ListeningExecutorService executor = MoreExecutors.listeningDecorator(queue);
+    List<ListenableFuture<String>> results = Futures.submitAll(executor,
+        ImmutableList.of(Callables.returning(DATA1), Callables.returning(DATA2)),
+        1);
+    assertEquals(1, queue.tasks.size());
+
+    results.get(0).cancel(false);
+    // the executor's future was cancelled too, which frees the permit
+    assertEquals(2, queue.tasks.size());
+    queue.tasks.remove(0);
+    queue.runNext();
+    assertEquals(DATA2, results.get(1).get());
+  }
+
+  public void testSubmitAll_executorThrowsError() throws Exception {
+    final Error failure = new Error("cannot submit");
+    QueueingExecutorService queue = new QueueingExecutorService() {
+      int executions;
+
+      @Override public void execute(Runnable command) {
+        if (++executions == 2) {
+          throw failure;
+        }
+        super.execute(command);
+      }
+    };
+    ListeningExecutorService executor = MoreExecutors.listeningDecorator(queue);
+    List<ListenableFuture<String>> results = Futures.submitAll(executor,
+        ImmutableList.of(Callables.returning(DATA1), Callables.returning(DATA2),
+            Callables.returning(DATA3)),
+        1);
+    assertEquals(1, queue.tasks.size());
+    try {
+      // completing the first task submits the second, which fails
+      queue.runNext();
+      fail();
+    } catch (Error expected) {
+      assertSame(failure, expected);
+    }
+    assertEquals(DATA1, results.get(0).get());
+    try {
+      results.get(1).get();
+      fail();
+    } catch (ExecutionException expected) {
+      assertSame(failure, expected.getCause());
+    }
+    // the failed submission returned its permit, so the third task was submitted
+    assertEquals(1, queue.tasks.size());
+    queue.runNext();
+    assertEquals(DATA3, results.get(2).get());
+  }
+
+  public void testSubmitAll_invalidMaxInFlight() {
+    try {
+      Futures.submitAll(MoreExecutors.sameThreadExecutor(),
+          ImmutableList.<Callable<String>>of(), 0);
+      fail();
+    } catch (IllegalArgumentException expected) {
+    }
+  }
+
+  /** An executor that queues tasks until the test runs them. */
+  private static class QueueingExecutorService
+      extends AbstractExecutorService {
+    final List<Runnable> tasks = Lists.newArrayList();
+
+    void runNext() {
+      tasks.remove(0).run();
+    }
+
+    @Override public void execute(Runnable command) {
+      tasks.add(command);
+    }
+
+    @Override public void shutdown() {}
+
+    @Override public List<Runnable> shutdownNow() {
+      return ImmutableList.of();
+    }
+
+    @Override public boolean isShutdown() {
+      return false;
+    }
+
+    @Override public boolean isTerminated() {
+      return false;
+    }
+
+    @Override public boolean awaitTermination(long timeout, TimeUnit unit) {
+      return false;
+    }
+  }
+
   private static class TestException extends Exception {
     TestException(@Nullable Throwable cause) {
       super(cause);
@@ -0,0 +1,322 @@
+/*
+ * Copyright (C) 2012 The Guava Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.common.util.concurrent;
+
+import static java.util.concurrent.TimeUnit.DAYS;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+import com.google.common.collect.Lists;
+
+import junit.framework.TestCase;
+
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Tests for {@link HashedWheelTimer}.
+ */
+public class HashedWheelTimerTest extends TestCase {
+  private HashedWheelTimer timer;
+
+  @Override protected void setUp() {
+    timer = new HashedWheelTimer(1, MILLISECONDS, 8);
+  }
+
+  @Override protected void tearDown() throws InterruptedException {
+    timer.shutdownNow();
+    assertTrue(timer.awaitTermination(10, SECONDS));
+  }
+
+  public void testBadArguments() {
+    try {
+      new HashedWheelTimer(0, MILLISECONDS, 8);
+      fail();
+    } catch (IllegalArgumentException expected) {
+    }
+    try {
+      new HashedWheelTimer(1, MILLISECONDS, 0);
+      fail();
+    } catch (IllegalArgumentException expected) {
+    }
+    try {
+      timer.scheduleAtFixedRate(new CountingRunnable(), 0, 0, MILLISECONDS);
+      fail();
+    } catch (IllegalArgumentException expected) {
+    }
+  }
+
+  public void testSchedule_callable() throws Exception {
+    long start = System.nanoTime();
+    ScheduledFuture<String> future = timer.schedule(new Callable<String>() {
+      @Override public String call() {
+        return "done";
+      }
+    }, 20, MILLISECONDS);
+    assertEquals("done", future.get(10, SECONDS));
+    assertTrue(System.nanoTime() - start >= MILLISECONDS.toNanos(20));
+  }
+
+  public void testSchedule_longerThanOneRotation() throws Exception {
+    // 8 buckets of 1ms each, so this needs several trips around the wheel
+    long start = System.nanoTime();
+    ScheduledFuture<?> future = timer.schedule(new CountingRunnable(), 50, MILLISECONDS);
+    future.get(10, SECONDS);
+    assertTrue(System.nanoTime() - start >= MILLISECONDS.toNanos(50));
+  }
+
+  public void testSchedule_exceptionIsPropagated() throws Exception {
+    final Exception failure = new Exception();
+    ScheduledFuture<?> future = timer.schedule(new Callable<Void>() {
+      @Override public Void call() throws Exception {
+        throw failure;
+      }
+    }, 1, MILLISECONDS);
+    try {
+      future.get(10, SECONDS);
+      fail();
+    } catch (ExecutionException expected) {
+      assertSame(failure, expected.getCause());
+    }
+  }
+
+  public void testCancel() throws Exception {
+    CountingRunnable task = new CountingRunnable();
+    ScheduledFuture<?> future = timer.schedule(task, 20, MILLISECONDS);
+    assertTrue(future.cancel(false));
+    Thread.sleep(50);
+    assertEquals(0, task.count.get());
+  }
+
+  public void testManyTasks() throws Exception {
+    final AtomicInteger runs = new AtomicInteger();
+    List<ScheduledFuture<?>> live = Lists.newArrayList();
+    int cancelled = 0;
+    for (int i = 0; i < 20000; i++) {
+      ScheduledFuture<?> future = timer.schedule(new Runnable() {
+        @Override public void run() {
+          runs.incrementAndGet();
+        }
+      }, i % 30, MILLISECONDS);
+      if (i % 2 == 1 && future.cancel(false)) {
+        cancelled++;
+      } else {
+        live.add(future);
+      }
+    }
+    for (ScheduledFuture<?> future : live) {
+      future.get(10, SECONDS);
+    }
+    Thread.sleep(50);
+    assertEquals(20000 - cancelled, runs.get());
+  }
+
+  public void testFixedRate() throws Exception {
+    CountingRunnable task = new CountingRunnable();
+    task.latch = new CountDownLatch(5);
+    ScheduledFuture<?> future = timer.scheduleAtFixedRate(task, 0, 5, MILLISECONDS);
+    assertTrue(task.latch.await(10, SECONDS));
+    future.cancel(false);
+    assertTrue(future.isCancelled());
+  }
+
+  public void testFixedDelay_doesNotOverlap() throws Exception {
+    final AtomicInteger running = new AtomicInteger();
+    final AtomicInteger maxRunning = new AtomicInteger();
+    final CountDownLatch latch = new CountDownLatch(5);
+    ScheduledFuture<?> future = timer.scheduleWithFixedDelay(new Runnable() {
+      @Override public void run() {
+        int now = running.incrementAndGet();
+        maxRunning.set(Math.max(maxRunning.get(), now));
+        Uninterruptibles.sleepUninterruptibly(3, MILLISECONDS);
+        running.decrementAndGet();
+        latch.countDown();
+      }
+    }, 0, 1, MILLISECONDS);
+    assertTrue(latch.await(10, SECONDS));
+    future.cancel(false);
+    assertEquals(1, maxRunning.get());
+  }
+
+  public void testPeriodicTaskStopsOnException() throws Exception {
+    final AtomicInteger runs = new AtomicInteger();
+    ScheduledFuture<?> future = timer.scheduleAtFixedRate(new Runnable() {
+      @Override public void run() {
+        runs.incrementAndGet();
+        throw new IllegalStateException();
+      }
+    }, 0, 1, MILLISECONDS);
+    try {
+      future.get(10, SECONDS);
+      fail();
+    } catch (ExecutionException expected) {
+      assertTrue(expected.getCause() instanceof IllegalStateException);
+    }
+    Thread.sleep(20);
+    assertEquals(1, runs.get());
+  }
+
+  public void testSchedule_hugeDelay() throws Exception {
+    ScheduledFuture<?> future = timer.schedule(new CountingRunnable(), Long.MAX_VALUE, DAYS);
+    Thread.sleep(50);
+    assertFalse(future.isDone());
+    assertTrue(future.getDelay(DAYS) > 365 * 100);
+    assertTrue(future.cancel(false));
+  }
+
+  public void testFixedRate_hugePeriod() throws Exception {
+    CountingRunnable task = new CountingRunnable();
+    ScheduledFuture<?> future =
+        timer.scheduleAtFixedRate(task, 0, Long.MAX_VALUE, NANOSECONDS);
+    assertTrue(task.latch.await(10, SECONDS));
+    Thread.sleep(50);
+    assertEquals(1, task.count.get());
+    assertFalse(future.isDone());
+    assertTrue(future.cancel(false));
+  }
+
+  public void testTaskExecutorFailureFailsOnlyThatTask() throws Exception {
+    final RuntimeException failure = new IllegalStateException("cannot execute");
+    final AtomicInteger executions = new AtomicInteger();
+    HashedWheelTimer failing = new HashedWheelTimer(1, MILLISECONDS, 8, new Executor() {
+      @Override public void execute(Runnable command) {
+        if (executions.incrementAndGet() == 1) {
+          throw failure;
+        }
+        command.run();
+      }
+    });
+    try {
+      ScheduledFuture<?> first = failing.schedule(new CountingRunnable(), 1, MILLISECONDS);
+      try {
+        first.get(10, SECONDS);
+        fail();
+      } catch (ExecutionException expected) {
+        assertSame(failure, expected.getCause());
+      }
+      ScheduledFuture<?> second = failing.schedule(new CountingRunnable(), 1, MILLISECONDS);
+      second.get(10, SECONDS);
+    } finally {
+      failing.shutdown();
+    }
+    assertTrue(failing.awaitTermination(10, SECONDS));
+  }
+
+  public void testShutdown_runsDelayedTasksAndCancelsPeriodic() throws Exception {
+    final CountDownLatch started = new CountDownLatch(1);
+    final CountDownLatch release = new CountDownLatch(1);
+    ScheduledFuture<?> delayed = timer.schedule(new Runnable() {
+      @Override public void run() {
+        started.countDown();
+        Uninterruptibles.awaitUninterruptibly(release);
+      }
+    }, 20, MILLISECONDS);
+    ScheduledFuture<?> periodic =
+        timer.scheduleAtFixedRate(new CountingRunnable(), 1, 1, MILLISECONDS);
+    timer.shutdown();
+    assertTrue(timer.isShutdown());
+    try {
+      timer.schedule(new CountingRunnable(), 1, MILLISECONDS);
+      fail();
+    } catch (RejectedExecutionException expected) {
+    }
+    assertTrue(started.await(10, SECONDS));
+    // the delayed task is running, so the timer must not have terminated
+    assertFalse(timer.awaitTermination(20, MILLISECONDS));
+    assertFalse(delayed.isDone());
+    release.countDown();
+    assertTrue(timer.awaitTermination(10, SECONDS));
+    assertTrue(delayed.isDone());
+    assertFalse(delayed.isCancelled());
+    assertTrue(periodic.isCancelled());
+  }
+
+  public void testShutdown_awaitsExecutedTasks() throws Exception {
+    final CountDownLatch release = new CountDownLatch(1);
+    HashedWheelTimer unstarted = new HashedWheelTimer();
+    unstarted.execute(new Runnable() {
+      @Override public void run() {
+        Uninterruptibles.awaitUninterruptibly(release);
+      }
+    });
+    unstarted.shutdown();
+    assertFalse(unstarted.isTerminated());
+    release.countDown();
+    assertTrue(unstarted.awaitTermination(10, SECONDS));
+  }
+
+  public void testShutdownNow_returnsUnrunTasks() throws Exception {
+    ScheduledFuture<?> future = timer.schedule(new CountingRunnable(), 10, SECONDS);
+    List<Runnable> unrun = timer.shutdownNow();
+    assertTrue(timer.isTerminated());
+    assertEquals(1, unrun.size());
+    assertSame(future, unrun.get(0));
+    assertTrue(future.isCancelled());
+  }
+
+  public void testShutdownBeforeStart() {
+    HashedWheelTimer unused = new HashedWheelTimer();
+    unused.shutdown();
+    assertTrue(unused.isTerminated());
+  }
+
+  public void testGetDelay() throws Exception {
+    ScheduledFuture<?> future = timer.schedule(new CountingRunnable(), 10, SECONDS);
+    long delay = future.getDelay(MILLISECONDS);
+    assertTrue(delay > 9000 && delay <= 10000);
+    future.cancel(false);
+  }
+
+  public void testSubmit() throws Exception {
+    assertEquals("done", timer.submit(new Callable<String>() {
+      @Override public String call() {
+        return "done";
+      }
+    }).get(10, SECONDS));
+  }
+
+  public void testSharedTimerCannotBeShutDown() {
+    try {
+      HashedWheelTimer.sharedTimer().shutdown();
+      fail();
+    } catch (UnsupportedOperationException expected) {
+    }
+    try {
+      HashedWheelTimer.sharedTimer().shutdownNow();
+      fail();
+    } catch (UnsupportedOperationException expected) {
+    }
+    assertFalse(HashedWheelTimer.sharedTimer().isShutdown());
+  }
+
+  private static class CountingRunnable implements Runnable {
+    final AtomicInteger count = new AtomicInteger();
+    volatile CountDownLatch latch = new CountDownLatch(1);
+
+    @Override public void run() {
+      count.incrementAndGet();
+      latch.countDown();
+    }
+  }
+}
@@ -0,0 +1,213 @@
+/*
+ * Copyright (C) 2012 The Guava Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.common.util.concurrent;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+import com.google.common.collect.Lists;
+
+import junit.framework.TestCase;
+
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Tests for {@link Monitor}.
+ */
+public class MonitorTest extends TestCase {
+
+  /** A single-slot buffer, the handoff the spinning mode is meant for. */
+  private static class Handoff {
+    final Monitor monitor;
+    final Monitor.Guard full;
+    final Monitor.Guard empty;
+    Long value;
+
+    Handoff(Monitor monitor) {
+      this.monitor = monitor;
+      this.full = new Monitor.Guard(monitor) {
+        @Override public boolean isSatisfied() {
+          return value != null;
+        }
+      };
+      this.empty = new Monitor.Guard(monitor) {
+        @Override public boolean isSatisfied() {
+          return value == null;
+        }
+      };
+    }
+
+    void put(long v) {
+      monitor.enterWhenUninterruptibly(empty);
+      try {
+        value = v;
+      } finally {
+        monitor.leave();
+      }
+    }
+
+    long take() throws InterruptedException {
+      monitor.enterWhen(full);
+      try {
+        long result = value;
+        value = null;
+        return result;
+      } finally {
+        monitor.leave();
+      }
+    }
+  }
+
+  public void testNegativeSpinTries() {
+    try {
+      new Monitor(false, -1);
+      fail();
+    } catch (IllegalArgumentException expected) {
+    }
+  }
+
+  public void testFairMonitorIgnoresSpinTries() {
+    Monitor monitor = new Monitor(true, 100);
+    assertTrue(monitor.isFair());
+    monitor.enter();
+    assertTrue(monitor.isOccupiedByCurrentThread());
+    monitor.leave();
+  }
+
+  public void testReentrantEnterDoesNotSpin() throws Exception {
+    final Monitor monitor = new Monitor(false, Integer.MAX_VALUE);
+    final int depth = 100;
+    Thread thread = new Thread() {
+      @Override public void run() {
+        monitor.enter();
+        // each of these would otherwise spin Integer.MAX_VALUE times before acquiring the lock
+        for (int i = 0; i < depth; i++) {
+          monitor.enter();
+        }
+        for (int i = 0; i <= depth; i++) {
+          monitor.leave();
+        }
+      }
+    };
+    thread.start();
+    thread.join(10000);
+    assertFalse(thread.isAlive());
+    assertFalse(monitor.isOccupied());
+  }
+
+  public void testProducerConsumer_defaultMode() throws Exception {
+    runProducersAndConsumers(new Monitor());
+  }
+
+  public void testProducerConsumer_spinning() throws Exception {
+    runProducersAndConsumers(new Monitor(false, 100));
+  }
+
+  private static void runProducersAndConsumers(Monitor monitor) throws Exception {
+    final Handoff handoff = new Handoff(monitor);
+    final int threads = 3;
+    final int perThread = 5000;
+    final AtomicLong consumed = new AtomicLong();
+    ExecutorService executor = Executors.newFixedThreadPool(2 * threads);
+    try {
+      List<Future<?>> futures = Lists.newArrayList();
+      for (int t = 0; t < threads; t++) {
+        futures.add(executor.submit(new Runnable() {
+          @Override public void run() {
+            for (int i = 1; i <= perThread; i++) {
+              handoff.put(i);
+            }
+          }
+        }));
+        futures.add(executor.submit(new Runnable() {
+          @Override public void run() {
+            try {
+              for (int i = 0; i < perThread; i++) {
+                consumed.addAndGet(handoff.take());
+              }
+            } catch (InterruptedException e) {
+              throw new AssertionError(e);
+            }
+          }
+        }));
+      }
+      for (Future<?> future : futures) {
+        future.get(30, SECONDS);
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+    assertEquals((long) threads * perThread * (perThread + 1) / 2, consumed.get());
+    assertFalse(monitor.isOccupied());
+  }
+
+  public void testGuardEvaluationCount() {
+    Monitor monitor = new Monitor();
+    Handoff handoff = new Handoff(monitor);
+    assertEquals(0, monitor.getGuardEvaluationCount());
+    handoff.put(1);
+    // entry only; with nobody waiting, leave evaluates nothing
+    assertEquals(1, monitor.getGuardEvaluationCount());
+    assertFalse(monitor.enterIf(handoff.empty));
+    assertEquals(2, monitor.getGuardEvaluationCount());
+  }
+
+  public void testWakeupCount() throws Exception {
+    Monitor monitor = new Monitor();
+    Handoff handoff = new Handoff(monitor);
+    monitor.enter();
+    try {
+      assertFalse(monitor.waitForUninterruptibly(handoff.full, 1, MILLISECONDS));
+    } finally {
+      monitor.leave();
+    }
+    assertTrue(monitor.getWakeupCount() >= 1);
+  }
+
+  public void testOnlyOutermostLeaveSignals() throws Exception {
+    Monitor monitor = new Monitor();
+    final Handoff handoff = new Handoff(monitor);
+    final AtomicLong taken = new AtomicLong();
+    Thread consumer = new Thread() {
+      @Override public void run() {
+        try {
+          taken.set(handoff.take());
+        } catch (InterruptedException e) {
+          throw new AssertionError(e);
+        }
+      }
+    };
+    consumer.start();
+    while (!monitor.hasWaiters(handoff.full)) {
+      Thread.sleep(1);
+    }
+    monitor.enter();
+    monitor.enter();
+    handoff.value = 42L;
+    long evaluations = monitor.getGuardEvaluationCount();
+    monitor.leave();
+    assertEquals(evaluations, monitor.getGuardEvaluationCount());
+    monitor.leave();
+    consumer.join(10000);
+    assertEquals(42L, taken.get());
+    assertTrue(monitor.getGuardEvaluationCount() > evaluations);
+  }
+}
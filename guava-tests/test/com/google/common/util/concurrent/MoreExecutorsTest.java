@@ -222,6 +222,36 @@ public class MoreExecutorsTest extends TestCase {
      */
   }
 
+  public void testVirtualThreads() throws Exception {
+    if (!MoreExecutors.isVirtualThreadSupported()) {
+      try {
+        MoreExecutors.newVirtualThreadListeningExecutor();
+        fail();
+      } catch (UnsupportedOperationException expected) {
+      }
+      try {
+        MoreExecutors.virtualThreadFactory();
+        fail();
+      } catch (UnsupportedOperationException expected) {
+      }
+      return;
+    }
+    ListeningExecutorService service =
+        MoreExecutors.newVirtualThreadListeningExecutor();
+    try {
+      assertEquals("x", service.submit(Callables.returning("x")).get(10, SECONDS));
+    } finally {
+      service.shutdown();
+    }
+    Thread thread = new ThreadFactoryBuilder()
+        .setNameFormat("virtual-%d")
+        .setThreadFactory(MoreExecutors.virtualThreadFactory())
+        .build()
+        .newThread(new CountingRunnable());
+    assertEquals("virtual-0", thread.getName());
+    assertTrue(thread.isDaemon());
+  }
+
   private static void assertListenerRunImmediately(ListenableFuture<?> future) {
     CountingRunnable listener = new CountingRunnable();
     future.addListener(listener, sameThreadExecutor());
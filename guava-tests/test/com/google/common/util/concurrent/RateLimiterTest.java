@@ -0,0 +1,259 @@
+/*
+ * Copyright (C) 2012 The Guava Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.common.util.concurrent;
+
+import com.google.common.base.Joiner;
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.RateLimiter.SleepingTicker;
+
+import junit.framework.TestCase;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tests for {@link RateLimiter}.
+ */
+public class RateLimiterTest extends TestCase {
+  private static final double EPSILON = 1e-8;
+
+  private final FakeSleepingTicker ticker = new FakeSleepingTicker();
+
+  public void testSimple() {
+    RateLimiter limiter = RateLimiter.create(ticker, 5.0);
+    limiter.acquire(); // R0.00, since it's the first request
+    limiter.acquire(); // R0.20
+    limiter.acquire(); // R0.20
+    assertEvents("R0.00", "R0.20", "R0.20");
+  }
+
+  public void testImmediateTryAcquire() {
+    RateLimiter r = RateLimiter.create(1);
+    assertTrue("Unable to acquire initial permit", r.tryAcquire());
+    assertFalse("Capable of acquiring secondary permit", r.tryAcquire());
+  }
+
+  public void testSimpleRateUpdate() {
+    RateLimiter limiter = RateLimiter.create(5.0);
+    assertEquals(5.0, limiter.getRate());
+    limiter.setRate(10.0);
+    assertEquals(10.0, limiter.getRate());
+
+    try {
+      limiter.setRate(0.0);
+      fail();
+    } catch (IllegalArgumentException expected) {
+    }
+    try {
+      limiter.setRate(-10.0);
+      fail();
+    } catch (IllegalArgumentException expected) {
+    }
+  }
+
+  public void testSimpleWithWait() {
+    RateLimiter limiter = RateLimiter.create(ticker, 5.0);
+    limiter.acquire(); // R0.00
+    ticker.sleepMillis(200); // U0.20, we are ready for the next request...
+    limiter.acquire(); // R0.00, ...which is granted immediately
+    limiter.acquire(); // R0.20
+    assertEvents("R0.00", "U0.20", "R0.00", "R0.20");
+  }
+
+  public void testSimpleAcquireReturnValues() {
+    RateLimiter limiter = RateLimiter.create(ticker, 5.0);
+    assertEquals(0.0, limiter.acquire(), EPSILON); // R0.00
+    ticker.sleepMillis(200); // U0.20, we are ready for the next request...
+    assertEquals(0.0, limiter.acquire(), EPSILON); // R0.00, ...which is granted immediately
+    assertEquals(0.2, limiter.acquire(), EPSILON); // R0.20
+    assertEvents("R0.00", "U0.20", "R0.00", "R0.20");
+  }
+
+  public void testOneSecondBurst() {
+    RateLimiter limiter = RateLimiter.create(ticker, 5.0);
+    ticker.sleepMillis(1000); // max capacity reached
+    ticker.sleepMillis(1000); // this makes no difference
+    limiter.acquire(1); // R0.00, since it's the first request
+
+    limiter.acquire(1); // R0.00, from capacity
+    limiter.acquire(3); // R0.00, from capacity
+    limiter.acquire(1); // R0.00, concluding a burst of 5 permits
+
+    limiter.acquire(); // R0.20, capacity exhausted
+    assertEvents("U1.00", "U1.00",
+        "R0.00", "R0.00", "R0.00", "R0.00", // first request and burst
+        "R0.20");
+  }
+
+  public void testCreateWithCapacity() {
+    RateLimiter limiter = RateLimiter.createWithCapacity(ticker, 5.0, 2, TimeUnit.SECONDS);
+    ticker.sleepMillis(10000); // fill up the store: 10 permits
+    limiter.acquire(10); // R0.00, all from capacity
+    limiter.acquire(); // R0.00, pays nothing for the previous (stored) permits
+    limiter.acquire(); // R0.20
+    assertEvents("U10.00", "R0.00", "R0.00", "R0.20");
+  }
+
+  public void testWarmUp() {
+    RateLimiter limiter = RateLimiter.create(ticker, 2.0, 4000, TimeUnit.MILLISECONDS);
+    for (int i = 0; i < 8; i++) {
+      limiter.acquire(); // #1
+    }
+    ticker.sleepMillis(500); // #2: to repay for the last acquire
+    ticker.sleepMillis(4000); // #3: becomes cold again
+    for (int i = 0; i < 8; i++) {
+      limiter.acquire(); // // #4
+    }
+    ticker.sleepMillis(500); // #5: to repay for the last acquire
+    ticker.sleepMillis(2000); // #6: didn't get cold! It would take another 2 seconds to go cold
+    for (int i = 0; i < 8; i++) {
+      limiter.acquire(); // #7
+    }
+    assertEvents(
+        "R0.00, R1.38, R1.13, R0.88, R0.63, R0.50, R0.50, R0.50", // #1
+        "U0.50", // #2
+        "U4.00", // #3
+        "R0.00, R1.38, R1.13, R0.88, R0.63, R0.50, R0.50, R0.50", // #4
+        "U0.50", // #5
+        "U2.00", // #6
+        "R0.00, R0.50, R0.50, R0.50, R0.50, R0.50, R0.50, R0.50"); // #7
+  }
+
+  public void testWarmUp_zeroPeriod() {
+    RateLimiter limiter = RateLimiter.create(ticker, 5.0, 0, TimeUnit.SECONDS);
+    limiter.acquire();
+    limiter.acquire();
+    assertEvents("R0.00", "R0.20");
+  }
+
+  public void testTryAcquire_noWaitAllowed() {
+    RateLimiter limiter = RateLimiter.create(ticker, 5.0);
+    assertTrue(limiter.tryAcquire(0, TimeUnit.SECONDS));
+    assertFalse(limiter.tryAcquire(0, TimeUnit.SECONDS));
+    assertFalse(limiter.tryAcquire(0, TimeUnit.SECONDS));
+    ticker.sleepMillis(100);
+    assertFalse(limiter.tryAcquire(0, TimeUnit.SECONDS));
+  }
+
+  public void testTryAcquire_someWaitAllowed() {
+    RateLimiter limiter = RateLimiter.create(ticker, 5.0);
+    assertTrue(limiter.tryAcquire(0, TimeUnit.SECONDS));
+    assertTrue(limiter.tryAcquire(200, TimeUnit.MILLISECONDS));
+    assertFalse(limiter.tryAcquire(100, TimeUnit.MILLISECONDS));
+    ticker.sleepMillis(100);
+    assertTrue(limiter.tryAcquire(200, TimeUnit.MILLISECONDS));
+  }
+
+  public void testTryAcquire_overflow() {
+    RateLimiter limiter = RateLimiter.create(ticker, 5.0);
+    assertTrue(limiter.tryAcquire(0, TimeUnit.MICROSECONDS));
+    ticker.sleepMillis(100);
+    assertTrue(limiter.tryAcquire(Long.MAX_VALUE, TimeUnit.MICROSECONDS));
+  }
+
+  public void testAcquire_badPermits() {
+    RateLimiter limiter = RateLimiter.create(ticker, 5.0);
+    try {
+      limiter.acquire(0);
+      fail();
+    } catch (IllegalArgumentException expected) {
+    }
+    try {
+      limiter.tryAcquire(-1);
+      fail();
+    } catch (IllegalArgumentException expected) {
+    }
+  }
+
+  public void testSimpleWeights() {
+    RateLimiter rateLimiter = RateLimiter.create(ticker, 1.0);
+    rateLimiter.acquire(1); // no wait
+    rateLimiter.acquire(1); // R1.00, to repay previous
+    rateLimiter.acquire(2); // R1.00, to repay previous
+    rateLimiter.acquire(4); // R2.00, to repay previous
+    rateLimiter.acquire(8); // R4.00, to repay previous
+    rateLimiter.acquire(1); // R8.00, to repay previous
+    assertEvents("R0.00", "R1.00", "R1.00", "R2.00", "R4.00", "R8.00");
+  }
+
+  public void testInfinity_bursty() {
+    RateLimiter limiter = RateLimiter.create(ticker, Double.POSITIVE_INFINITY);
+    limiter.acquire(Integer.MAX_VALUE / 4);
+    limiter.acquire(Integer.MAX_VALUE / 2);
+    limiter.acquire(Integer.MAX_VALUE);
+    assertEvents("R0.00", "R0.00", "R0.00"); // no wait, infinite rate!
+
+    limiter.setRate(1.0);
+    limiter.acquire();
+    limiter.acquire();
+    limiter.acquire();
+    assertEvents("R0.00", "R1.00", "R1.00"); // we repay the last request (but that had no cost)
+  }
+
+  public void testHighRateStaysAccurate() {
+    RateLimiter limiter = RateLimiter.create(ticker, 100000.0);
+    int permits = 200000;
+    for (int i = 0; i < permits; i++) {
+      limiter.acquire();
+    }
+    // the first permit is free, and every other one costs 10us
+    assertEquals(TimeUnit.MICROSECONDS.toNanos(10L * (permits - 1)), ticker.read());
+  }
+
+  public void testToString() {
+    assertEquals("RateLimiter[stableRate=5.0qps]", RateLimiter.create(ticker, 5.0).toString());
+  }
+
+  private void assertEvents(String... events) {
+    assertEquals(Joiner.on(", ").join(events), ticker.readEventsAndClear());
+  }
+
+  /**
+   * A ticker that only moves when the rate limiter sleeps, and records every sleep.
+   */
+  private static class FakeSleepingTicker extends SleepingTicker {
+    long instant = 0L;
+    final List<String> events = Lists.newArrayList();
+
+    @Override
+    public long read() {
+      return instant;
+    }
+
+    void sleepMillis(int millis) {
+      sleepMicros("U", TimeUnit.MILLISECONDS.toMicros(millis));
+    }
+
+    void sleepMicros(String caption, long micros) {
+      instant += TimeUnit.MICROSECONDS.toNanos(micros);
+      events.add(caption + String.format("%3.2f", (micros / 1000000.0)));
+    }
+
+    @Override
+    void sleepMicrosUninterruptibly(long micros) {
+      sleepMicros("R", micros);
+    }
+
+    String readEventsAndClear() {
+      try {
+        return Joiner.on(", ").join(events);
+      } finally {
+        events.clear();
+      }
+    }
+  }
+}
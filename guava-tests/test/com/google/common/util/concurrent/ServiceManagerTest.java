@@ -0,0 +1,238 @@
+/*
+ * Copyright (C) 2012 The Guava Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.common.util.concurrent;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSetMultimap;
+import com.google.common.collect.Lists;
+import com.google.common.testing.FakeTicker;
+import com.google.common.util.concurrent.Service.State;
+
+import junit.framework.TestCase;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Tests for {@link ServiceManager}.
+ */
+public class ServiceManagerTest extends TestCase {
+  private final FakeTicker ticker = new FakeTicker();
+
+  /** A service whose startup and shutdown only finish when the test says so. */
+  private static class ManualService extends AbstractService {
+    final String name;
+
+    ManualService(String name) {
+      this.name = name;
+    }
+
+    @Override protected void doStart() {}
+
+    @Override protected void doStop() {
+      notifyStopped();
+    }
+
+    void finishStartup() {
+      notifyStarted();
+    }
+
+    void fail() {
+      notifyFailed(new IllegalStateException(name + " failed"));
+    }
+
+    @Override public String toString() {
+      return name;
+    }
+  }
+
+  /** Records listener calls. */
+  private static class RecordingListener implements ServiceManager.Listener {
+    final List<String> events = Lists.newArrayList();
+
+    @Override public synchronized void healthy() {
+      events.add("healthy");
+    }
+
+    @Override public synchronized void stopped() {
+      events.add("stopped");
+    }
+
+    @Override public synchronized void failure(Service service) {
+      events.add("failure:" + service);
+    }
+  }
+
+  public void testServicesStartInParallel() {
+    ManualService a = new ManualService("a");
+    ManualService b = new ManualService("b");
+    ServiceManager manager = new ServiceManager(ImmutableList.of(a, b));
+    RecordingListener listener = new RecordingListener();
+    manager.addListener(listener, MoreExecutors.sameThreadExecutor());
+
+    manager.startAsync();
+    assertEquals(State.STARTING, a.state());
+    assertEquals(State.STARTING, b.state());
+    assertFalse(manager.isHealthy());
+
+    a.finishStartup();
+    b.finishStartup();
+    manager.awaitHealthy();
+    assertTrue(manager.isHealthy());
+    assertEquals(ImmutableList.of("healthy"), listener.events);
+
+    manager.stopAsync().awaitStopped();
+    assertEquals(State.TERMINATED, a.state());
+    assertEquals(State.TERMINATED, b.state());
+    assertEquals(ImmutableList.of("healthy", "stopped"), listener.events);
+  }
+
+  public void testDependencyOrdering() {
+    ManualService database = new ManualService("database");
+    ManualService server = new ManualService("server");
+    ServiceManager manager = new ServiceManager(ImmutableList.of(server, database),
+        ImmutableSetMultimap.<Service, Service>of(server, database));
+
+    manager.startAsync();
+    assertEquals(State.STARTING, database.state());
+    assertEquals(State.NEW, server.state());
+
+    database.finishStartup();
+    assertEquals(State.STARTING, server.state());
+    server.finishStartup();
+    manager.awaitHealthy();
+
+    // the dependent is stopped first, and the dependency only once it has terminated
+    ManualService slowStopper = new ManualService("slow") {
+      @Override protected void doStop() {}
+    };
+    ManualService dependency = new ManualService("dependency");
+    ServiceManager manager2 = new ServiceManager(ImmutableList.of(slowStopper, dependency),
+        ImmutableSetMultimap.<Service, Service>of(slowStopper, dependency));
+    manager2.startAsync();
+    dependency.finishStartup();
+    slowStopper.finishStartup();
+    manager2.stopAsync();
+    assertEquals(State.STOPPING, slowStopper.state());
+    assertEquals(State.RUNNING, dependency.state());
+    slowStopper.notifyStopped();
+    manager2.awaitStopped();
+    assertEquals(State.TERMINATED, dependency.state());
+  }
+
+  public void testFailedDependencyBlocksDependents() {
+    ManualService database = new ManualService("database");
+    ManualService server = new ManualService("server");
+    ServiceManager manager = new ServiceManager(ImmutableList.of(server, database),
+        ImmutableSetMultimap.<Service, Service>of(server, database));
+    RecordingListener listener = new RecordingListener();
+    manager.addListener(listener, MoreExecutors.sameThreadExecutor());
+
+    manager.startAsync();
+    database.fail();
+    assertEquals(State.NEW, server.state());
+    assertEquals(ImmutableList.of("failure:database"), listener.events);
+    try {
+      manager.awaitHealthy();
+      fail();
+    } catch (IllegalStateException expected) {
+    }
+
+    manager.stopAsync().awaitStopped();
+    assertEquals(State.TERMINATED, server.state());
+    assertEquals(State.FAILED, database.state());
+    assertEquals(ImmutableList.of("failure:database", "stopped"), listener.events);
+  }
+
+  public void testAwaitHealthy_timeout() {
+    ManualService a = new ManualService("a");
+    ServiceManager manager = new ServiceManager(ImmutableList.of(a));
+    manager.startAsync();
+    try {
+      manager.awaitHealthy(1, TimeUnit.MILLISECONDS);
+      fail();
+    } catch (TimeoutException expected) {
+    }
+  }
+
+  public void testStartupTimes() {
+    ManualService fast = new ManualService("fast");
+    ManualService slow = new ManualService("slow");
+    ServiceManager manager = new ServiceManager(
+        ImmutableList.of(fast, slow), ImmutableSetMultimap.<Service, Service>of(), ticker);
+    manager.startAsync();
+    ticker.advance(10, TimeUnit.MILLISECONDS);
+    fast.finishStartup();
+    assertEquals(ImmutableMap.of(fast, 10L), manager.startupTimes());
+
+    ticker.advance(90, TimeUnit.MILLISECONDS);
+    slow.finishStartup();
+    assertEquals(ImmutableMap.of(fast, 10L, slow, 100L), manager.startupTimes());
+  }
+
+  public void testServicesByState() {
+    ManualService a = new ManualService("a");
+    ManualService b = new ManualService("b");
+    ServiceManager manager = new ServiceManager(ImmutableList.of(a, b));
+    manager.startAsync();
+    a.finishStartup();
+    assertEquals(ImmutableList.of(a), manager.servicesByState().get(State.RUNNING));
+    assertEquals(ImmutableList.of(b), manager.servicesByState().get(State.STARTING));
+  }
+
+  public void testStartTwice() {
+    ServiceManager manager = new ServiceManager(ImmutableList.of(new ManualService("a")));
+    manager.startAsync();
+    try {
+      manager.startAsync();
+      fail();
+    } catch (IllegalStateException expected) {
+    }
+  }
+
+  public void testBadArguments() {
+    ManualService a = new ManualService("a");
+    ManualService b = new ManualService("b");
+    try {
+      new ServiceManager(ImmutableList.of(a),
+          ImmutableSetMultimap.<Service, Service>of(a, b));
+      fail();
+    } catch (IllegalArgumentException expected) {
+    }
+    try {
+      new ServiceManager(ImmutableList.of(a, b),
+          ImmutableSetMultimap.<Service, Service>of(a, b, b, a));
+      fail();
+    } catch (IllegalArgumentException expected) {
+    }
+    a.start();
+    try {
+      new ServiceManager(ImmutableList.of(a));
+      fail();
+    } catch (IllegalArgumentException expected) {
+    }
+  }
+
+  public void testStopBeforeStart() {
+    ManualService a = new ManualService("a");
+    ServiceManager manager = new ServiceManager(ImmutableList.of(a));
+    manager.stopAsync().awaitStopped();
+    assertEquals(State.TERMINATED, a.state());
+  }
+}
@@ -0,0 +1,247 @@
+/*
+ * Copyright (C) 2012 The Guava Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.common.util.concurrent;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.common.testing.NullPointerTester;
+
+import junit.framework.TestCase;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Tests for {@link StripedAtomicLongMap} and the {@link LongAdder} behind it.
+ */
+public class StripedAtomicLongMapTest extends TestCase {
+  private static final int ITERATIONS = 100;
+
+  public void testNulls() throws Exception {
+    NullPointerTester tester = new NullPointerTester();
+    tester.testAllPublicConstructors(StripedAtomicLongMap.class);
+    tester.testAllPublicStaticMethods(StripedAtomicLongMap.class);
+    StripedAtomicLongMap<Object> map = StripedAtomicLongMap.create();
+    tester.testAllPublicInstanceMethods(map);
+  }
+
+  public void testCreate_map() {
+    Map<String, Long> in = ImmutableMap.of("1", 1L, "2", 2L, "3", 3L);
+    StripedAtomicLongMap<String> map = StripedAtomicLongMap.create(in);
+    assertEquals(3, map.size());
+    assertEquals(1L, map.get("1"));
+    assertEquals(2L, map.get("2"));
+    assertEquals(3L, map.get("3"));
+    assertEquals(6L, map.sum());
+    assertEquals(in, map.asMap());
+  }
+
+  public void testIncrementAndDecrement() {
+    StripedAtomicLongMap<String> map = StripedAtomicLongMap.create();
+    String key = "key";
+    assertEquals(0L, map.get(key));
+    assertFalse(map.containsKey(key));
+    for (int i = 0; i < ITERATIONS; i++) {
+      map.increment(key);
+    }
+    assertEquals(ITERATIONS, map.get(key));
+    map.decrement(key);
+    map.add(key, -10);
+    assertEquals(ITERATIONS - 11, map.get(key));
+    assertEquals(1, map.size());
+  }
+
+  public void testRemove() {
+    StripedAtomicLongMap<String> map = StripedAtomicLongMap.create();
+    map.add("a", 5);
+    assertEquals(5L, map.remove("a"));
+    assertFalse(map.containsKey("a"));
+    assertEquals(0L, map.remove("a"));
+
+    map.increment("a");
+    assertEquals(1L, map.get("a"));
+  }
+
+  public void testRemoveAllZeros() {
+    StripedAtomicLongMap<String> map = StripedAtomicLongMap.create();
+    map.add("a", 1);
+    map.add("b", 2);
+    map.decrement("a");
+    map.add("c", 0);
+    assertEquals(3, map.size());
+
+    map.removeAllZeros();
+    assertEquals(ImmutableMap.of("b", 2L), map.asMap());
+  }
+
+  public void testClear() {
+    StripedAtomicLongMap<String> map = StripedAtomicLongMap.create();
+    map.add("a", 1);
+    map.add("b", 2);
+    map.clear();
+    assertTrue(map.isEmpty());
+    assertEquals(0L, map.sum());
+
+    map.increment("a");
+    assertEquals(1L, map.get("a"));
+  }
+
+  public void testToString() {
+    StripedAtomicLongMap<String> map = StripedAtomicLongMap.create();
+    map.add("a", 3);
+    assertEquals("{a=3}", map.toString());
+  }
+
+  public void testLongAdder_sumThenReset() {
+    LongAdder adder = new LongAdder();
+    adder.add(5);
+    adder.increment();
+    adder.decrement();
+    assertEquals(5L, adder.sum());
+    assertEquals(5L, adder.sumThenReset());
+    assertEquals(0L, adder.sum());
+  }
+
+  public void testLongAdder_contended() throws InterruptedException {
+    final LongAdder adder = new LongAdder();
+    final int nThreads = 8;
+    final int perThread = 100000;
+    final CountDownLatch start = new CountDownLatch(1);
+    ExecutorService threadPool = Executors.newFixedThreadPool(nThreads);
+    for (int i = 0; i < nThreads; i++) {
+      threadPool.submit(new Runnable() {
+        @Override public void run() {
+          Uninterruptibles.awaitUninterruptibly(start);
+          for (int j = 0; j < perThread; j++) {
+            adder.increment();
+          }
+        }
+      });
+    }
+    start.countDown();
+    threadPool.shutdown();
+    assertTrue(threadPool.awaitTermination(300, TimeUnit.SECONDS));
+    assertEquals((long) nThreads * perThread, adder.sum());
+  }
+
+  public void testRemove_racingAdd() throws InterruptedException {
+    // updates racing with remove() must not take the value that was there before it
+    final long before = 1L << 40;
+    final int writers = 4;
+    final int addsPerWriter = 10000;
+    for (int trial = 0; trial < 1000; trial++) {
+      final StripedAtomicLongMap<Key> map = StripedAtomicLongMap.create();
+      final Key key = new Key(false);
+      map.add(key, before);
+      final CountDownLatch writing = new CountDownLatch(writers);
+      List<Thread> threads = Lists.newArrayList();
+      for (int w = 0; w < writers; w++) {
+        threads.add(new Thread() {
+          @Override public void run() {
+            for (int i = 0; i < addsPerWriter; i++) {
+              map.increment(key);
+              if (i == 0) {
+                writing.countDown();
+              }
+            }
+          }
+        });
+      }
+      for (Thread thread : threads) {
+        thread.start();
+      }
+      Uninterruptibles.awaitUninterruptibly(writing);
+      // an equal key whose hashing is slow widens the window between retiring and draining
+      long removed = map.remove(new Key(true));
+      for (Thread thread : threads) {
+        thread.join();
+      }
+      assertTrue("removed " + removed, removed >= before);
+      assertEquals(before + writers * addsPerWriter, removed + map.get(key));
+    }
+  }
+
+  private static final class Key {
+    final boolean slow;
+
+    Key(boolean slow) {
+      this.slow = slow;
+    }
+
+    @Override public boolean equals(Object object) {
+      return object instanceof Key;
+    }
+
+    @Override public int hashCode() {
+      if (slow) {
+        Uninterruptibles.sleepUninterruptibly(1, TimeUnit.MILLISECONDS);
+      }
+      return 0;
+    }
+  }
+
+  public void testModify_basher() throws InterruptedException {
+    int nTasks = 300;
+    int nThreads = 16;
+    final int opsPerTask = 1000;
+    final String key = "key";
+
+    // everything added, minus everything taken out by remove()
+    final AtomicLong sum = new AtomicLong();
+    final StripedAtomicLongMap<String> map = StripedAtomicLongMap.create();
+
+    ExecutorService threadPool = Executors.newFixedThreadPool(nThreads);
+    for (int i = 0; i < nTasks; i++) {
+      final Random random = new Random(i);
+      threadPool.submit(new Runnable() {
+        @Override public void run() {
+          long threadSum = 0;
+          for (int j = 0; j < opsPerTask; j++) {
+            int behavior = random.nextInt(10);
+            if (behavior < 4) {
+              map.increment(key);
+              threadSum++;
+            } else if (behavior < 7) {
+              map.decrement(key);
+              threadSum--;
+            } else if (behavior == 7) {
+              long delta = random.nextInt(100);
+              map.add(key, delta);
+              threadSum += delta;
+            } else if (behavior == 8) {
+              threadSum -= map.remove(key);
+            } else {
+              map.removeAllZeros();
+            }
+          }
+          sum.addAndGet(threadSum);
+        }
+      });
+    }
+
+    threadPool.shutdown();
+    assertTrue(threadPool.awaitTermination(300, TimeUnit.SECONDS));
+
+    assertEquals(sum.get(), map.get(key));
+  }
+}
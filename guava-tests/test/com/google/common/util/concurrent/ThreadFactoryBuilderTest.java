@@ -102,6 +102,18 @@ public class ThreadFactoryBuilderTest extends TestCase {
     }
   }
 
+  public void testNameFormat_poolNumber() {
+    final String NAME_FORMAT = "pool-%2$d-worker-%1$d";
+    ThreadFactory first = builder.setNameFormat(NAME_FORMAT).build();
+    ThreadFactory second = builder.build();
+    String firstName = first.newThread(monitoredRunnable).getName();
+    String secondName = second.newThread(monitoredRunnable).getName();
+    assertTrue(firstName.matches("^pool-\\d+-worker-0$"));
+    assertTrue(secondName.matches("^pool-\\d+-worker-0$"));
+    assertFalse(firstName.equals(secondName));
+    assertTrue(first.newThread(monitoredRunnable).getName().endsWith("-worker-1"));
+  }
+
   public void testDaemon_false() {
     ThreadFactory factory = builder.setDaemon(false).build();
     Thread thread = factory.newThread(monitoredRunnable);
@@ -0,0 +1,293 @@
+/*
+ * Copyright (C) 2012 The Guava Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.common.util.concurrent;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+
+import junit.framework.TestCase;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Tests for {@link WorkStealingExecutorService}.
+ */
+public class WorkStealingExecutorServiceTest extends TestCase {
+  private WorkStealingExecutorService executor;
+
+  @Override protected void setUp() {
+    executor = WorkStealingExecutorService.create(4);
+  }
+
+  @Override protected void tearDown() throws InterruptedException {
+    executor.shutdownNow();
+    assertTrue(executor.awaitTermination(10, SECONDS));
+  }
+
+  public void testBadParallelism() {
+    try {
+      WorkStealingExecutorService.create(0);
+      fail();
+    } catch (IllegalArgumentException expected) {
+    }
+  }
+
+  public void testSubmit() throws Exception {
+    ListenableFuture<String> future = executor.submit(new Callable<String>() {
+      @Override public String call() {
+        return "done";
+      }
+    });
+    assertEquals("done", future.get(10, SECONDS));
+  }
+
+  public void testManyExternalTasks() throws Exception {
+    int count = 100000;
+    final AtomicInteger runs = new AtomicInteger();
+    final CountDownLatch latch = new CountDownLatch(count);
+    for (int i = 0; i < count; i++) {
+      executor.execute(new Runnable() {
+        @Override public void run() {
+          runs.incrementAndGet();
+          latch.countDown();
+        }
+      });
+    }
+    assertTrue(latch.await(30, SECONDS));
+    assertEquals(count, runs.get());
+  }
+
+  /** Sums the integers in [from, to) by recursive splitting, so the deques grow and get robbed. */
+  private class SumTask implements Runnable {
+    final long from;
+    final long to;
+    final AtomicLong sum;
+    final CountDownLatch done;
+
+    SumTask(long from, long to, AtomicLong sum, CountDownLatch done) {
+      this.from = from;
+      this.to = to;
+      this.sum = sum;
+      this.done = done;
+    }
+
+    @Override public void run() {
+      if (to - from <= 16) {
+        long partial = 0;
+        for (long i = from; i < to; i++) {
+          partial += i;
+        }
+        sum.addAndGet(partial);
+        for (long i = from; i < to; i++) {
+          done.countDown();
+        }
+      } else {
+        long mid = (from + to) >>> 1;
+        executor.execute(new SumTask(from, mid, sum, done));
+        executor.execute(new SumTask(mid, to, sum, done));
+      }
+    }
+  }
+
+  public void testChildTasks() throws Exception {
+    int n = 1 << 16;
+    AtomicLong sum = new AtomicLong();
+    CountDownLatch done = new CountDownLatch(n);
+    executor.execute(new SumTask(0, n, sum, done));
+    assertTrue(done.await(30, SECONDS));
+    assertEquals((long) n * (n - 1) / 2, sum.get());
+    assertTrue(executor.stats().stealCount() > 0);
+  }
+
+  public void testChildTasksRunLocally() throws Exception {
+    final WorkStealingExecutorService pool = WorkStealingExecutorService.create(
+        1, new ThreadFactoryBuilder().build(), true);
+    try {
+      final AtomicReference<Thread> parent = new AtomicReference<Thread>();
+      final AtomicReference<Thread> child = new AtomicReference<Thread>();
+      final AtomicInteger queuedAfterSubmit = new AtomicInteger();
+      final CountDownLatch done = new CountDownLatch(1);
+      pool.execute(new Runnable() {
+        @Override public void run() {
+          parent.set(Thread.currentThread());
+          pool.execute(new Runnable() {
+            @Override public void run() {
+              child.set(Thread.currentThread());
+              done.countDown();
+            }
+          });
+          queuedAfterSubmit.set(pool.getQueuedTaskCount());
+        }
+      });
+      assertTrue(done.await(10, SECONDS));
+      assertEquals(1, queuedAfterSubmit.get());
+      assertSame(parent.get(), child.get());
+    } finally {
+      pool.shutdown();
+    }
+  }
+
+  public void testStats() throws Exception {
+    List<ListenableFuture<?>> futures = Lists.newArrayList();
+    for (int i = 0; i < 100; i++) {
+      futures.add(executor.submit(new Runnable() {
+        @Override public void run() {
+          Uninterruptibles.sleepUninterruptibly(1, MILLISECONDS);
+        }
+      }));
+    }
+    Futures.allAsList(futures).get(30, SECONDS);
+    // a task is counted after its future completes, so wait for the workers to finish counting
+    executor.shutdown();
+    assertTrue(executor.awaitTermination(30, SECONDS));
+    WorkStealingExecutorService.Stats stats = executor.stats();
+    assertEquals(100, stats.completedTaskCount());
+    assertTrue(stats.totalRunNanos() >= 100 * 1000000L);
+    assertTrue(stats.averageRunNanos() >= 1000000.0);
+    assertTrue(stats.totalQueueWaitNanos() >= 0);
+
+    try {
+      executor.execute(new Runnable() {
+        @Override public void run() {}
+      });
+      fail();
+    } catch (RejectedExecutionException expected) {
+    }
+    WorkStealingExecutorService.Stats later = executor.stats();
+    assertEquals(1, later.rejectedTaskCount());
+    assertEquals(0, later.minus(stats).completedTaskCount());
+    assertEquals(1, later.minus(stats).rejectedTaskCount());
+  }
+
+  public void testShutdown_runsQueuedTasks() throws Exception {
+    final CountDownLatch gate = new CountDownLatch(1);
+    final AtomicInteger runs = new AtomicInteger();
+    for (int i = 0; i < 100; i++) {
+      executor.execute(new Runnable() {
+        @Override public void run() {
+          Uninterruptibles.awaitUninterruptibly(gate);
+          runs.incrementAndGet();
+        }
+      });
+    }
+    executor.shutdown();
+    assertTrue(executor.isShutdown());
+    assertFalse(executor.isTerminated());
+    gate.countDown();
+    assertTrue(executor.awaitTermination(10, SECONDS));
+    assertEquals(100, runs.get());
+  }
+
+  public void testShutdownNow_returnsUnstartedTasks() throws Exception {
+    final CountDownLatch started = new CountDownLatch(4);
+    final CountDownLatch interrupted = new CountDownLatch(4);
+    for (int i = 0; i < 4; i++) {
+      executor.execute(new Runnable() {
+        @Override public void run() {
+          started.countDown();
+          try {
+            new CountDownLatch(1).await();
+          } catch (InterruptedException e) {
+            interrupted.countDown();
+          }
+        }
+      });
+    }
+    assertTrue(started.await(10, SECONDS));
+    for (int i = 0; i < 10; i++) {
+      executor.execute(new Runnable() {
+        @Override public void run() {}
+      });
+    }
+    List<Runnable> unstarted = executor.shutdownNow();
+    assertEquals(10, unstarted.size());
+    assertTrue(interrupted.await(10, SECONDS));
+    assertTrue(executor.awaitTermination(10, SECONDS));
+  }
+
+  public void testShutdownNow_racingChildTasksAreRunOrReturned() throws Exception {
+    for (int trial = 0; trial < 100; trial++) {
+      final WorkStealingExecutorService pool = WorkStealingExecutorService.create(
+          2, new ThreadFactoryBuilder().build(), true);
+      final List<ListenableFuture<?>> children =
+          Collections.synchronizedList(Lists.<ListenableFuture<?>>newArrayList());
+      final CountDownLatch forking = new CountDownLatch(1);
+      final CountDownLatch rejected = new CountDownLatch(1);
+      pool.execute(new Runnable() {
+        @Override public void run() {
+          try {
+            while (true) {
+              children.add(pool.submit(new Runnable() {
+                @Override public void run() {}
+              }));
+              forking.countDown();
+            }
+          } catch (RejectedExecutionException expected) {
+            rejected.countDown();
+          }
+        }
+      });
+      assertTrue(forking.await(10, SECONDS));
+      List<Runnable> unstarted = pool.shutdownNow();
+      assertTrue(rejected.await(10, SECONDS));
+      assertTrue(pool.awaitTermination(10, SECONDS));
+      Set<Runnable> returned = Sets.newIdentityHashSet();
+      returned.addAll(unstarted);
+      for (ListenableFuture<?> child : children) {
+        assertTrue(child.isDone() || returned.contains(child));
+      }
+    }
+  }
+
+  public void testExceptionDoesNotKillWorker() throws Exception {
+    final AtomicInteger handled = new AtomicInteger();
+    WorkStealingExecutorService single = WorkStealingExecutorService.create(1,
+        new ThreadFactoryBuilder().setUncaughtExceptionHandler(
+            new Thread.UncaughtExceptionHandler() {
+              @Override public void uncaughtException(Thread t, Throwable e) {
+                handled.incrementAndGet();
+              }
+            }).build(),
+        true);
+    try {
+      single.execute(new Runnable() {
+        @Override public void run() {
+          throw new IllegalStateException();
+        }
+      });
+      assertEquals("ok", single.submit(new Callable<String>() {
+        @Override public String call() {
+          return "ok";
+        }
+      }).get(10, SECONDS));
+      assertEquals(1, handled.get());
+    } finally {
+      single.shutdown();
+    }
+  }
+}
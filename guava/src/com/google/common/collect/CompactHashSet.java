@@ -0,0 +1,203 @@
+/*
+ * Copyright (C) 2012 The Guava Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.common.collect;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.collect.CompactHashing.capacity;
+import static com.google.common.collect.CompactHashing.grownTableSize;
+import static com.google.common.collect.CompactHashing.newTable;
+import static com.google.common.collect.CompactHashing.tableSize;
+
+import com.google.common.annotations.GwtCompatible;
+
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import javax.annotation.Nullable;
+
+/**
+ * A hash set which stores its elements without any per-element objects, using the same layout as
+ * {@link ObjectCountHashMap}: the elements and their hash codes are densely packed in parallel
+ * arrays, and a {@linkplain CompactHashing Robin Hood hash table} of indexes locates them. It is
+ * used for the value sets of {@link HashMultimap}, many of which hold only a few elements.
+ *
+ * <p>Null elements are permitted. Iteration order is unspecified, and removing an element may
+ * move another element to an earlier position in it. The iterator is fail-fast.
+ */
+@GwtCompatible
+final class CompactHashSet<E> extends AbstractSet<E> {
+
+  /**
+   * Creates an empty set with enough capacity for {@code expectedSize} elements.
+   *
+   * @throws IllegalArgumentException if {@code expectedSize} is negative
+   */
+  static <E> CompactHashSet<E> createWithExpectedSize(int expectedSize) {
+    return new CompactHashSet<E>(expectedSize);
+  }
+
+  private Object[] elements;
+  private int[] hashes;
+  private int[] table;
+  private int size;
+  private int modCount;
+  private final int seed;
+
+  private CompactHashSet(int expectedSize) {
+    checkArgument(expectedSize >= 0, "Initial capacity must be non-negative");
+    int tableSize = tableSize(expectedSize);
+    int capacity = capacity(tableSize);
+    this.elements = new Object[capacity];
+    this.hashes = new int[capacity];
+    this.table = newTable(tableSize);
+    this.seed = System.identityHashCode(this);
+  }
+
+  private int indexOf(@Nullable Object object) {
+    return CompactHashing.indexOf(
+        table, hashes, elements, object, CompactHashing.hash(object, seed));
+  }
+
+  @Override
+  public boolean contains(@Nullable Object object) {
+    return indexOf(object) != -1;
+  }
+
+  @Override
+  public boolean add(@Nullable E object) {
+    if (indexOf(object) != -1) {
+      return false;
+    }
+    if (size == elements.length) {
+      grow();
+    }
+    int hash = CompactHashing.hash(object, seed);
+    elements[size] = object;
+    hashes[size] = hash;
+    CompactHashing.insert(table, hashes, size, hash);
+    size++;
+    modCount++;
+    return true;
+  }
+
+  private void grow() {
+    int newTableSize = grownTableSize(table.length);
+    int newCapacity = capacity(newTableSize);
+    elements = ObjectArrays.arraysCopyOf(elements, newCapacity);
+    int[] newHashes = new int[newCapacity];
+    System.arraycopy(hashes, 0, newHashes, 0, size);
+    hashes = newHashes;
+    table = CompactHashing.rebuild(hashes, size, newTableSize);
+  }
+
+  @Override
+  public boolean remove(@Nullable Object object) {
+    int index = indexOf(object);
+    if (index == -1) {
+      return false;
+    }
+    removeEntry(index);
+    return true;
+  }
+
+  private void removeEntry(int index) {
+    int last = size - 1;
+    CompactHashing.remove(table, hashes, index, last);
+    if (index < last) {
+      elements[index] = elements[last];
+      hashes[index] = hashes[last];
+    }
+    elements[last] = null;
+    hashes[last] = 0;
+    size--;
+    modCount++;
+  }
+
+  @Override
+  public Iterator<E> iterator() {
+    return new Iterator<E>() {
+      int expectedModCount = modCount;
+      int nextIndex = 0;
+      int toRemove = -1;
+
+      @Override
+      public boolean hasNext() {
+        return nextIndex < size;
+      }
+
+      @Override
+      @SuppressWarnings("unchecked")
+      public E next() {
+        checkForComodification();
+        if (!hasNext()) {
+          throw new NoSuchElementException();
+        }
+        toRemove = nextIndex;
+        return (E) elements[nextIndex++];
+      }
+
+      @Override
+      public void remove() {
+        checkForComodification();
+        Iterators.checkRemove(toRemove != -1);
+        removeEntry(toRemove);
+        // the last element, which has not been visited yet, now occupies the removed index
+        nextIndex = toRemove;
+        toRemove = -1;
+        expectedModCount = modCount;
+      }
+
+      private void checkForComodification() {
+        if (modCount != expectedModCount) {
+          throw new ConcurrentModificationException();
+        }
+      }
+    };
+  }
+
+  @Override
+  public int size() {
+    return size;
+  }
+
+  @Override
+  public boolean isEmpty() {
+    return size == 0;
+  }
+
+  @Override
+  public Object[] toArray() {
+    return ObjectArrays.arraysCopyOf(elements, size);
+  }
+
+  @Override
+  public <T> T[] toArray(T[] a) {
+    return ObjectArrays.toArrayImpl(this, a);
+  }
+
+  @Override
+  public void clear() {
+    Arrays.fill(elements, 0, size, null);
+    Arrays.fill(hashes, 0, size, 0);
+    Arrays.fill(table, CompactHashing.UNSET);
+    size = 0;
+    modCount++;
+  }
+}
@@ -0,0 +1,197 @@
+/*
+ * Copyright (C) 2012 The Guava Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.common.collect;
+
+import com.google.common.annotations.GwtCompatible;
+import com.google.common.base.Objects;
+
+import java.util.Arrays;
+
+import javax.annotation.Nullable;
+
+/**
+ * The Robin Hood hash table shared by {@link ObjectCountHashMap} and {@link CompactHashSet}.
+ *
+ * <p>Both store their entries densely packed in parallel arrays, and locate them through a
+ * separate open-addressed table of entry indexes, whose length is a power of two. The table is
+ * probed linearly with Robin Hood displacement, which keeps every entry close to its home slot, so
+ * an unsuccessful lookup can stop as soon as it reaches an entry that is closer to its own home
+ * slot than the probe is to the key's. Only the table and the smeared hash codes of the entries,
+ * indexed like the entries, are needed to maintain it, so the methods here take those two arrays.
+ */
+@GwtCompatible
+final class CompactHashing {
+  private CompactHashing() {}
+
+  private static final int MAX_TABLE_SIZE = 1 << 30;
+
+  private static final float LOAD_FACTOR = 0.75f;
+
+  /** The value of a table slot that holds no entry index. */
+  static final int UNSET = -1;
+
+  /**
+   * Returns the smallest power-of-two table size that holds {@code expectedSize} entries without
+   * exceeding the load factor.
+   */
+  static int tableSize(int expectedSize) {
+    int tableSize = 2;
+    while (tableSize < MAX_TABLE_SIZE && capacity(tableSize) < expectedSize) {
+      tableSize <<= 1;
+    }
+    return tableSize;
+  }
+
+  /** Returns the number of entries that a table of the specified size may hold. */
+  static int capacity(int tableSize) {
+    // Always leave at least one slot empty, so that every probe sequence terminates.
+    return (tableSize == MAX_TABLE_SIZE)
+        ? tableSize - 1
+        : Math.max(1, (int) (tableSize * LOAD_FACTOR));
+  }
+
+  /**
+   * Returns the size of the table that replaces a full one of the specified size.
+   *
+   * @throws IllegalStateException if the table is already as large as it can be
+   */
+  static int grownTableSize(int tableSize) {
+    if (tableSize == MAX_TABLE_SIZE) {
+      throw new IllegalStateException("Cannot hold more than " + capacity(tableSize) + " entries");
+    }
+    return tableSize << 1;
+  }
+
+  static int[] newTable(int tableSize) {
+    int[] table = new int[tableSize];
+    Arrays.fill(table, UNSET);
+    return table;
+  }
+
+  /**
+   * Returns the hash code of {@code object}, mixed with a per-instance seed so that the slots
+   * chosen for a given set of keys are not the same across instances. This does not help against
+   * keys whose {@code hashCode()} values are equal.
+   */
+  static int hash(@Nullable Object object, int seed) {
+    return Hashing.smear((object == null ? 0 : object.hashCode()) ^ seed);
+  }
+
+  /** Returns the distance of {@code slot} from the home slot of {@code hash}. */
+  private static int probeDistance(int slot, int hash, int mask) {
+    return (slot - (hash & mask)) & mask;
+  }
+
+  /**
+   * Returns the index of the entry whose key is {@code key}, which has the hash code {@code hash},
+   * or {@code -1} if there is none.
+   */
+  static int indexOf(int[] table, int[] hashes, Object[] keys, @Nullable Object key, int hash) {
+    int mask = table.length - 1;
+    int slot = hash & mask;
+    for (int distance = 0; ; distance++) {
+      int index = table[slot];
+      if (index == UNSET) {
+        return -1;
+      }
+      int residentHash = hashes[index];
+      if (residentHash == hash && Objects.equal(key, keys[index])) {
+        return index;
+      }
+      if (probeDistance(slot, residentHash, mask) < distance) {
+        // Had the key been present, Robin Hood insertion would have placed it here or earlier.
+        return -1;
+      }
+      slot = (slot + 1) & mask;
+    }
+  }
+
+  /**
+   * Places {@code index}, whose entry has the hash code {@code hash} and is not already in the
+   * table, into the table.
+   */
+  static void insert(int[] table, int[] hashes, int index, int hash) {
+    int mask = table.length - 1;
+    int slot = hash & mask;
+    int distance = 0;
+    while (true) {
+      int resident = table[slot];
+      if (resident == UNSET) {
+        table[slot] = index;
+        return;
+      }
+      int residentDistance = probeDistance(slot, hashes[resident], mask);
+      if (residentDistance < distance) {
+        // Take the slot from the entry that is closer to home, and carry on inserting that one.
+        table[slot] = index;
+        index = resident;
+        distance = residentDistance;
+      }
+      slot = (slot + 1) & mask;
+      distance++;
+    }
+  }
+
+  /** Returns a new table of the specified size holding the entries {@code [0, size)}. */
+  static int[] rebuild(int[] hashes, int size, int tableSize) {
+    int[] table = newTable(tableSize);
+    for (int i = 0; i < size; i++) {
+      insert(table, hashes, i, hashes[i]);
+    }
+    return table;
+  }
+
+  /**
+   * Removes {@code index} from the table, and renumbers the entry at {@code last}, the last index
+   * in use, to {@code index}. The caller moves the entry itself, hash code included.
+   */
+  static void remove(int[] table, int[] hashes, int index, int last) {
+    deleteSlot(table, hashes, slotOf(table, hashes, index));
+    if (index < last) {
+      table[slotOf(table, hashes, last)] = index;
+    }
+  }
+
+  /** Returns the table slot that holds {@code index}, which must be a valid entry index. */
+  private static int slotOf(int[] table, int[] hashes, int index) {
+    int mask = table.length - 1;
+    int slot = hashes[index] & mask;
+    while (table[slot] != index) {
+      slot = (slot + 1) & mask;
+    }
+    return slot;
+  }
+
+  /**
+   * Empties {@code slot} by shifting the following entries of its cluster back by one slot, until
+   * reaching an empty slot or an entry that is already in its home slot.
+   */
+  private static void deleteSlot(int[] table, int[] hashes, int slot) {
+    int mask = table.length - 1;
+    int next = (slot + 1) & mask;
+    while (true) {
+      int index = table[next];
+      if (index == UNSET || probeDistance(next, hashes[index], mask) == 0) {
+        break;
+      }
+      table[slot] = index;
+      slot = next;
+      next = (next + 1) & mask;
+    }
+    table[slot] = UNSET;
+  }
+}
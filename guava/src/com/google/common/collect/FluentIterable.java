@@ -23,11 +23,17 @@ import com.google.common.base.Function;
 import com.google.common.base.Optional;
 import com.google.common.base.Preconditions;
 import com.google.common.base.Predicate;
+import com.google.common.base.Throwables;
 
 import java.util.Comparator;
 import java.util.Iterator;
 import java.util.List;
+import java.util.RandomAccess;
 import java.util.SortedSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
 
 import javax.annotation.Nullable;
 
@@ -56,7 +62,11 @@ import javax.annotation.Nullable;
  *       .limit(10)
  *       .toImmutableList();}</pre>
  *
- * Anything which can be done using {@code FluentIterable} could be done in a different fashion
+ * <p>Consecutive calls to {@link #transform} and {@link #filter} are fused: the resulting fluent
+ * iterable applies all of their functions and predicates to an element in a single loop, rather
+ * than passing it through one wrapper iterator per call.
+ *
+ * <p>Anything which can be done using {@code FluentIterable} could be done in a different fashion
  * (often with {@link Iterables}), however the use of {@code FluentIterable} makes many sets of
  * operations significantly more concise.
  *
@@ -152,7 +162,7 @@ public abstract class FluentIterable<E> implements Iterable<E> {
    * resulting fluent iterable's iterator does not support {@code remove()}.
    */
   public final FluentIterable<E> filter(Predicate<? super E> predicate) {
-    return from(Iterables.filter(iterable, predicate));
+    return FusedFluentIterable.filter(iterable, predicate);
   }
 
   /**
@@ -200,7 +210,7 @@ public abstract class FluentIterable<E> implements Iterable<E> {
    * contains the corresponding element.
    */
   public final <T> FluentIterable<T> transform(Function<? super E, T> function) {
-    return from(Iterables.transform(iterable, function));
+    return FusedFluentIterable.transform(iterable, function);
   }
 
   /**
@@ -308,6 +318,108 @@ public abstract class FluentIterable<E> implements Iterable<E> {
     return ImmutableList.copyOf(iterable);
   }
 
+  /**
+   * Returns an {@code ImmutableList} containing all of the elements from this
+   * fluent iterable in proper sequence, computing them in parallel using {@code executor}.
+   *
+   * <p>If this fluent iterable is a {@link RandomAccess} list, or was derived from one by calls
+   * to {@link #transform} and {@link #filter}, the list is split into consecutive ranges, one
+   * per available processor, and the functions and predicates are applied to each range in a
+   * separate task. One range is processed by the calling thread, which then waits for the
+   * others. The results are concatenated in order, so the returned list is equal to the one
+   * {@link #toImmutableList()} returns. Lists of fewer than a few thousand elements, and all
+   * other iterables, are processed sequentially in the calling thread.
+   *
+   * <p>The functions and predicates must therefore be safe to call from several threads at
+   * once, and may be called in any order. If one of them throws an unchecked exception, the
+   * tasks which have not started yet are cancelled and the exception is rethrown by this
+   * method.
+   *
+   * @throws NullPointerException if any element is null
+   */
+  @GwtIncompatible("java.util.concurrent.Executor")
+  public final ImmutableList<E> toImmutableList(Executor executor) {
+    return toImmutableList(
+        executor, Runtime.getRuntime().availableProcessors(), MIN_PARALLEL_RANGE_SIZE);
+  }
+
+  private static final int MIN_PARALLEL_RANGE_SIZE = 1 << 12;
+
+  @GwtIncompatible("java.util.concurrent.Executor")
+  final ImmutableList<E> toImmutableList(
+      Executor executor, int maxRangeCount, int minRangeSize) {
+    Preconditions.checkNotNull(executor);
+    final FusedFluentIterable<E> fused = (iterable instanceof FusedFluentIterable)
+        ? (FusedFluentIterable<E>) iterable
+        : null;
+    Iterable<?> source = (fused == null) ? iterable : fused.source;
+    if (!(source instanceof List && source instanceof RandomAccess)) {
+      return toImmutableList();
+    }
+    List<?> list = (List<?>) source;
+    int size = list.size();
+    int rangeCount = Math.min(maxRangeCount, size / minRangeSize);
+    if (rangeCount <= 1) {
+      return toImmutableList();
+    }
+
+    List<FutureTask<Object[]>> tasks = Lists.newArrayListWithCapacity(rangeCount);
+    for (int i = 0; i < rangeCount; i++) {
+      final List<?> range = list.subList(
+          (int) ((long) size * i / rangeCount), (int) ((long) size * (i + 1) / rangeCount));
+      tasks.add(new FutureTask<Object[]>(new Callable<Object[]>() {
+        @Override
+        public Object[] call() {
+          Iterator<?> iterator = (fused == null) ? range.iterator() : fused.apply(range.iterator());
+          return Lists.newArrayList(iterator).toArray();
+        }
+      }));
+    }
+    try {
+      for (int i = 1; i < rangeCount; i++) {
+        executor.execute(tasks.get(i));
+      }
+      tasks.get(0).run();
+      Object[][] results = new Object[rangeCount][];
+      int resultSize = 0;
+      for (int i = 0; i < rangeCount; i++) {
+        results[i] = getUninterruptibly(tasks.get(i));
+        resultSize += results[i].length;
+      }
+      Object[] elements = new Object[resultSize];
+      int offset = 0;
+      for (Object[] result : results) {
+        System.arraycopy(result, 0, elements, offset, result.length);
+        offset += result.length;
+      }
+      return ImmutableList.asImmutableList(elements);
+    } finally {
+      for (FutureTask<Object[]> task : tasks) {
+        task.cancel(false);
+      }
+    }
+  }
+
+  @GwtIncompatible("java.util.concurrent.FutureTask")
+  private static <V> V getUninterruptibly(FutureTask<V> task) {
+    boolean interrupted = false;
+    try {
+      while (true) {
+        try {
+          return task.get();
+        } catch (InterruptedException e) {
+          interrupted = true;
+        } catch (ExecutionException e) {
+          throw Throwables.propagate(e.getCause());
+        }
+      }
+    } finally {
+      if (interrupted) {
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+
   /**
    * Returns an {@code ImmutableSet} containing all of the elements from this
    * fluent iterable with duplicates removed.
@@ -0,0 +1,131 @@
+/*
+ * Copyright (C) 2012 The Guava Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.common.collect;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import com.google.common.annotations.GwtCompatible;
+import com.google.common.base.Function;
+import com.google.common.base.Predicate;
+
+import java.util.Iterator;
+
+/**
+ * The fluent iterable returned by {@link FluentIterable#transform} and {@link
+ * FluentIterable#filter}. A chain of such calls is stored as a single source
+ * iterable and an array of stages, each a function or a predicate, rather than
+ * as one wrapper iterable per call. Its iterator then runs every stage on an
+ * element in one loop, instead of passing the element through one wrapper
+ * iterator per stage, each with its own {@code hasNext()} and {@code next()}.
+ */
+@GwtCompatible
+final class FusedFluentIterable<E> extends FluentIterable<E> {
+  static <F, T> FusedFluentIterable<T> transform(
+      Iterable<F> iterable, Function<? super F, T> function) {
+    return append(iterable, checkNotNull(function), false);
+  }
+
+  static <E> FusedFluentIterable<E> filter(
+      Iterable<E> iterable, Predicate<? super E> predicate) {
+    return append(iterable, checkNotNull(predicate), true);
+  }
+
+  private static <T> FusedFluentIterable<T> append(
+      Iterable<?> iterable, Object stage, boolean filter) {
+    checkNotNull(iterable);
+    if (!(iterable instanceof FusedFluentIterable)) {
+      return new FusedFluentIterable<T>(
+          iterable, new Object[] {stage}, new boolean[] {filter});
+    }
+    FusedFluentIterable<?> fused = (FusedFluentIterable<?>) iterable;
+    int length = fused.stages.length;
+    Object[] stages = ObjectArrays.arraysCopyOf(fused.stages, length + 1);
+    boolean[] filters = new boolean[length + 1];
+    System.arraycopy(fused.filters, 0, filters, 0, length);
+    stages[length] = stage;
+    filters[length] = filter;
+    return new FusedFluentIterable<T>(fused.source, stages, filters);
+  }
+
+  /** The iterable that the first stage is applied to. */
+  final Iterable<?> source;
+
+  // stages[i] is a Predicate if filters[i], and a Function otherwise
+  private final Object[] stages;
+  private final boolean[] filters;
+  private final boolean hasFilter;
+
+  private FusedFluentIterable(
+      Iterable<?> source, Object[] stages, boolean[] filters) {
+    this.source = source;
+    this.stages = stages;
+    this.filters = filters;
+    boolean hasFilter = false;
+    for (boolean filter : filters) {
+      hasFilter |= filter;
+    }
+    this.hasFilter = hasFilter;
+  }
+
+  @Override
+  public Iterator<E> iterator() {
+    return apply(source.iterator());
+  }
+
+  /**
+   * Returns an iterator over the results of applying the stages to the
+   * elements of {@code sourceIterator}. It supports {@code remove()} if no
+   * stage is a filter and {@code sourceIterator} supports it.
+   */
+  Iterator<E> apply(Iterator<?> sourceIterator) {
+    if (!hasFilter) {
+      return new TransformedIterator<Object, E>(sourceIterator) {
+        @SuppressWarnings("unchecked") // the last stage returns an E
+        @Override
+        E transform(Object from) {
+          Object element = from;
+          for (Object stage : stages) {
+            element = ((Function<Object, ?>) stage).apply(element);
+          }
+          return (E) element;
+        }
+      };
+    }
+    final Iterator<?> backingIterator = checkNotNull(sourceIterator);
+    return new AbstractIterator<E>() {
+      @SuppressWarnings("unchecked") // the stages were checked when added
+      @Override
+      protected E computeNext() {
+        Object[] stages = FusedFluentIterable.this.stages;
+        boolean[] filters = FusedFluentIterable.this.filters;
+        nextElement:
+        while (backingIterator.hasNext()) {
+          Object element = backingIterator.next();
+          for (int i = 0; i < stages.length; i++) {
+            if (!filters[i]) {
+              element = ((Function<Object, ?>) stages[i]).apply(element);
+            } else if (!((Predicate<Object>) stages[i]).apply(element)) {
+              continue nextElement;
+            }
+          }
+          return (E) element;
+        }
+        return endOfData();
+      }
+    };
+  }
+}
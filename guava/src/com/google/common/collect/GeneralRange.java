@@ -137,6 +137,22 @@ final class GeneralRange<T> implements Serializable {
     return hasUpperBound;
   }
 
+  T getLowerEndpoint() {
+    return lowerEndpoint;
+  }
+
+  BoundType getLowerBoundType() {
+    return lowerBoundType;
+  }
+
+  T getUpperEndpoint() {
+    return upperEndpoint;
+  }
+
+  BoundType getUpperBoundType() {
+    return upperBoundType;
+  }
+
   boolean isEmpty() {
     return (hasUpperBound() && tooLow(upperEndpoint))
         || (hasLowerBound() && tooHigh(lowerEndpoint));
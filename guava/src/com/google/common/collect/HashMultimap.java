@@ -106,12 +106,14 @@ public final class HashMultimap<K, V> extends AbstractSetMultimap<K, V> {
   /**
    * {@inheritDoc}
    *
-   * <p>Creates an empty {@code HashSet} for a collection of values for one key.
+   * <p>Creates an empty hash set for a collection of values for one key. The
+   * set stores its values in flat arrays, without the per-value entry objects
+   * of a {@code HashSet}.
    *
-   * @return a new {@code HashSet} containing a collection of values for one key
+   * @return a new hash set containing a collection of values for one key
    */
   @Override Set<V> createCollection() {
-    return Sets.<V>newHashSetWithExpectedSize(expectedValuesPerKey);
+    return CompactHashSet.createWithExpectedSize(expectedValuesPerKey);
   }
 
   /**
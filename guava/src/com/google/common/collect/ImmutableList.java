@@ -281,17 +281,25 @@ public abstract class ImmutableList<E> extends ImmutableCollection<E>
 
   private static <E> ImmutableList<E> copyFromCollection(
       Collection<? extends E> collection) {
-    Object[] elements = collection.toArray();
+    // safe to use the array without copying it
+    // as specified by Collection.toArray().
+    return asImmutableList(collection.toArray());
+  }
+
+  /**
+   * Views the array as an immutable list. {@code elements} has to be
+   * internally created, hold only {@code E} elements, and not be modified
+   * afterwards.
+   */
+  static <E> ImmutableList<E> asImmutableList(Object[] elements) {
     switch (elements.length) {
       case 0:
         return of();
       case 1:
-        @SuppressWarnings("unchecked") // collection had only Es in it
+        @SuppressWarnings("unchecked") // caller ensures only Es
         ImmutableList<E> list = new SingletonImmutableList<E>((E) elements[0]);
         return list;
       default:
-        // safe to use the array without copying it
-        // as specified by Collection.toArray().
         return construct(elements);
     }
   }
@@ -19,13 +19,14 @@ package com.google.common.collect;
 import com.google.common.annotations.Beta;
 import com.google.common.annotations.GwtCompatible;
 import com.google.common.annotations.GwtIncompatible;
+import com.google.common.collect.SlicedImmutableMap.ListSlices;
 
 import java.io.IOException;
 import java.io.InvalidObjectException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
-import java.util.Collection;
 import java.util.Comparator;
+import java.util.List;
 import java.util.Map.Entry;
 
 import javax.annotation.Nullable;
@@ -254,19 +255,19 @@ public class ImmutableListMultimap<K, V>
       }
     }
 
-    ImmutableMap.Builder<K, ImmutableList<V>> builder = ImmutableMap.builder();
-    int size = 0;
+    return fromGrouping(Grouping.of(multimap));
+  }
 
-    for (Entry<? extends K, ? extends Collection<? extends V>> entry
-        : multimap.asMap().entrySet()) {
-      ImmutableList<V> list = ImmutableList.copyOf(entry.getValue());
-      if (!list.isEmpty()) {
-        builder.put(entry.getKey(), list);
-        size += list.size();
-      }
+  /**
+   * Returns a multimap holding the keys and values of {@code grouping}, whose
+   * arrays must not be modified afterwards.
+   */
+  static <K, V> ImmutableListMultimap<K, V> fromGrouping(Grouping grouping) {
+    if (grouping.isEmpty()) {
+      return of();
     }
-
-    return new ImmutableListMultimap<K, V>(builder.build(), size);
+    return new ImmutableListMultimap<K, V>(
+        new ListSlices<K, V>(grouping), grouping.values.length);
   }
 
   ImmutableListMultimap(ImmutableMap<K, ImmutableList<V>> map, int size) {
@@ -351,28 +352,36 @@ public class ImmutableListMultimap<K, V>
     if (keyCount < 0) {
       throw new InvalidObjectException("Invalid key count " + keyCount);
     }
-    ImmutableMap.Builder<Object, ImmutableList<Object>> builder
-        = ImmutableMap.builder();
-    int tmpSize = 0;
+    Object[] keys = new Object[keyCount];
+    int[] offsets = new int[keyCount + 1];
+    List<Object> values = Lists.newArrayList();
 
     for (int i = 0; i < keyCount; i++) {
       Object key = stream.readObject();
+      if (key == null) {
+        throw new InvalidObjectException("Null key");
+      }
+      keys[i] = key;
       int valueCount = stream.readInt();
       if (valueCount <= 0) {
         throw new InvalidObjectException("Invalid value count " + valueCount);
       }
 
-      Object[] array = new Object[valueCount];
       for (int j = 0; j < valueCount; j++) {
-        array[j] = stream.readObject();
+        Object value = stream.readObject();
+        if (value == null) {
+          throw new InvalidObjectException("Null value for key " + key);
+        }
+        values.add(value);
       }
-      builder.put(key, ImmutableList.copyOf(array));
-      tmpSize += valueCount;
+      offsets[i + 1] = values.size();
     }
+    int tmpSize = values.size();
 
     ImmutableMap<Object, ImmutableList<Object>> tmpMap;
     try {
-      tmpMap = builder.build();
+      tmpMap = new ListSlices<Object, Object>(
+          new Grouping(keys, offsets, values.toArray()));
     } catch (IllegalArgumentException e) {
       throw (InvalidObjectException)
           new InvalidObjectException(e.getMessage()).initCause(e);
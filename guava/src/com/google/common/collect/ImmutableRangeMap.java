@@ -0,0 +1,284 @@
+/*
+ * Copyright (C) 2012 The Guava Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.common.collect;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.collect.SortedLists.KeyAbsentBehavior.NEXT_LOWER;
+import static com.google.common.collect.SortedLists.KeyPresentBehavior.ANY_PRESENT;
+
+import com.google.common.annotations.Beta;
+
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.NoSuchElementException;
+
+import javax.annotation.Nullable;
+
+/**
+ * An immutable implementation of {@code RangeMap}, supporting all query operations efficiently.
+ * The ranges are kept in a list sorted by lower bound, which {@link #get} and {@link #getEntry}
+ * binary search in time logarithmic in the number of ranges.
+ *
+ * <p>Like all {@code RangeMap} implementations, this supports neither null keys nor null values.
+ *
+ * @since 12.0
+ */
+@Beta
+public final class ImmutableRangeMap<K extends Comparable, V> implements RangeMap<K, V> {
+
+  private static final ImmutableRangeMap<Comparable<?>, Object> EMPTY =
+      new ImmutableRangeMap<Comparable<?>, Object>(
+          ImmutableList.<Range<Comparable<?>>>of(), ImmutableList.of());
+
+  /**
+   * Returns an empty immutable range map.
+   */
+  @SuppressWarnings("unchecked")
+  public static <K extends Comparable, V> ImmutableRangeMap<K, V> of() {
+    return (ImmutableRangeMap<K, V>) EMPTY;
+  }
+
+  /**
+   * Returns an immutable range map mapping a single range to a single value.
+   *
+   * @throws IllegalArgumentException if {@code range} is empty
+   */
+  public static <K extends Comparable, V> ImmutableRangeMap<K, V> of(Range<K> range, V value) {
+    checkArgument(!range.isEmpty(), "Range must not be empty, but was %s", range);
+    return new ImmutableRangeMap<K, V>(ImmutableList.of(range), ImmutableList.of(value));
+  }
+
+  /**
+   * Returns an immutable copy of the specified {@code RangeMap}.
+   */
+  @SuppressWarnings("unchecked")
+  public static <K extends Comparable, V> ImmutableRangeMap<K, V> copyOf(
+      RangeMap<K, ? extends V> rangeMap) {
+    if (rangeMap instanceof ImmutableRangeMap) {
+      return (ImmutableRangeMap<K, V>) rangeMap;
+    }
+    Map<Range<K>, ? extends V> map = rangeMap.asMapOfRanges();
+    ImmutableList.Builder<Range<K>> rangesBuilder = ImmutableList.builder();
+    ImmutableList.Builder<V> valuesBuilder = ImmutableList.builder();
+    for (Entry<Range<K>, ? extends V> entry : map.entrySet()) {
+      rangesBuilder.add(entry.getKey());
+      valuesBuilder.add(entry.getValue());
+    }
+    return new ImmutableRangeMap<K, V>(rangesBuilder.build(), valuesBuilder.build());
+  }
+
+  /**
+   * Returns a new builder for an immutable range map.
+   */
+  public static <K extends Comparable, V> Builder<K, V> builder() {
+    return new Builder<K, V>();
+  }
+
+  /**
+   * A builder for immutable range maps. Overlapping ranges are prohibited.
+   */
+  public static final class Builder<K extends Comparable, V> {
+    private final List<Entry<Range<K>, V>> entries = Lists.newArrayList();
+
+    /**
+     * Creates a new builder. The returned builder is equivalent to the builder generated by
+     * {@link ImmutableRangeMap#builder}.
+     */
+    public Builder() {}
+
+    /**
+     * Associates the specified range with the specified value.
+     *
+     * @throws IllegalArgumentException if {@code range} is empty
+     */
+    public Builder<K, V> put(Range<K> range, V value) {
+      checkNotNull(range);
+      checkNotNull(value);
+      checkArgument(!range.isEmpty(), "Range must not be empty, but was %s", range);
+      entries.add(Maps.immutableEntry(range, value));
+      return this;
+    }
+
+    /**
+     * Copies all associations from the specified range map into this builder.
+     */
+    public Builder<K, V> putAll(RangeMap<K, ? extends V> rangeMap) {
+      for (Entry<Range<K>, ? extends V> entry : rangeMap.asMapOfRanges().entrySet()) {
+        put(entry.getKey(), entry.getValue());
+      }
+      return this;
+    }
+
+    /**
+     * Returns an {@code ImmutableRangeMap} containing the associations previously added to this
+     * builder.
+     *
+     * @throws IllegalArgumentException if any two ranges inserted into this builder overlap
+     */
+    public ImmutableRangeMap<K, V> build() {
+      List<Entry<Range<K>, V>> sorted = Lists.newArrayList(entries);
+      Collections.sort(sorted, new Comparator<Entry<Range<K>, V>>() {
+        @Override
+        public int compare(Entry<Range<K>, V> left, Entry<Range<K>, V> right) {
+          return left.getKey().lowerBound.compareTo(right.getKey().lowerBound);
+        }
+      });
+      ImmutableList.Builder<Range<K>> rangesBuilder = ImmutableList.builder();
+      ImmutableList.Builder<V> valuesBuilder = ImmutableList.builder();
+      Range<K> previous = null;
+      for (Entry<Range<K>, V> entry : sorted) {
+        Range<K> range = entry.getKey();
+        if (previous != null) {
+          // the ranges are sorted by lower bound, so they overlap iff this holds
+          checkArgument(range.lowerBound.compareTo(previous.upperBound) >= 0,
+              "Overlapping ranges: %s and %s", previous, range);
+        }
+        rangesBuilder.add(range);
+        valuesBuilder.add(entry.getValue());
+        previous = range;
+      }
+      return new ImmutableRangeMap<K, V>(rangesBuilder.build(), valuesBuilder.build());
+    }
+  }
+
+  private final ImmutableList<Range<K>> ranges;
+  private final ImmutableList<V> values;
+
+  private ImmutableMap<Range<K>, V> asMapOfRanges;
+
+  ImmutableRangeMap(ImmutableList<Range<K>> ranges, ImmutableList<V> values) {
+    this.ranges = ranges;
+    this.values = values;
+  }
+
+  /**
+   * Returns the index of the range containing {@code key}, or {@code -1} if there is none.
+   */
+  private int indexOf(K key) {
+    int index = SortedLists.binarySearch(
+        ranges, Range.<K>lowerBoundFn(), Cut.belowValue(key), ANY_PRESENT, NEXT_LOWER);
+    return (index != -1 && ranges.get(index).contains(key)) ? index : -1;
+  }
+
+  @Override
+  @Nullable
+  public V get(K key) {
+    int index = indexOf(key);
+    return (index == -1) ? null : values.get(index);
+  }
+
+  @Override
+  @Nullable
+  public Map.Entry<Range<K>, V> getEntry(K key) {
+    int index = indexOf(key);
+    return (index == -1) ? null : Maps.immutableEntry(ranges.get(index), values.get(index));
+  }
+
+  @Override
+  public Range<K> span() {
+    if (ranges.isEmpty()) {
+      throw new NoSuchElementException();
+    }
+    Range<K> firstRange = ranges.get(0);
+    Range<K> lastRange = ranges.get(ranges.size() - 1);
+    return Ranges.create(firstRange.lowerBound, lastRange.upperBound);
+  }
+
+  /**
+   * Guaranteed to throw an exception and leave the {@code RangeMap} unmodified.
+   *
+   * @throws UnsupportedOperationException always
+   * @deprecated Unsupported operation.
+   */
+  @Deprecated
+  @Override
+  public void put(Range<K> range, V value) {
+    throw new UnsupportedOperationException();
+  }
+
+  /**
+   * Guaranteed to throw an exception and leave the {@code RangeMap} unmodified.
+   *
+   * @throws UnsupportedOperationException always
+   * @deprecated Unsupported operation.
+   */
+  @Deprecated
+  @Override
+  public void putAll(RangeMap<K, V> rangeMap) {
+    throw new UnsupportedOperationException();
+  }
+
+  /**
+   * Guaranteed to throw an exception and leave the {@code RangeMap} unmodified.
+   *
+   * @throws UnsupportedOperationException always
+   * @deprecated Unsupported operation.
+   */
+  @Deprecated
+  @Override
+  public void clear() {
+    throw new UnsupportedOperationException();
+  }
+
+  /**
+   * Guaranteed to throw an exception and leave the {@code RangeMap} unmodified.
+   *
+   * @throws UnsupportedOperationException always
+   * @deprecated Unsupported operation.
+   */
+  @Deprecated
+  @Override
+  public void remove(Range<K> range) {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public ImmutableMap<Range<K>, V> asMapOfRanges() {
+    ImmutableMap<Range<K>, V> result = asMapOfRanges;
+    if (result == null) {
+      ImmutableMap.Builder<Range<K>, V> builder = ImmutableMap.builder();
+      for (int i = 0; i < ranges.size(); i++) {
+        builder.put(ranges.get(i), values.get(i));
+      }
+      result = asMapOfRanges = builder.build();
+    }
+    return result;
+  }
+
+  @Override
+  public int hashCode() {
+    return asMapOfRanges().hashCode();
+  }
+
+  @Override
+  public boolean equals(@Nullable Object o) {
+    if (o instanceof RangeMap) {
+      RangeMap<?, ?> rangeMap = (RangeMap<?, ?>) o;
+      return asMapOfRanges().equals(rangeMap.asMapOfRanges());
+    }
+    return false;
+  }
+
+  @Override
+  public String toString() {
+    return asMapOfRanges().toString();
+  }
+}
@@ -0,0 +1,304 @@
+/*
+ * Copyright (C) 2012 The Guava Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.common.collect;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.collect.SortedLists.KeyAbsentBehavior.NEXT_LOWER;
+import static com.google.common.collect.SortedLists.KeyPresentBehavior.ANY_PRESENT;
+
+import com.google.common.annotations.Beta;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import javax.annotation.Nullable;
+
+/**
+ * An immutable {@link RangeSet}, which stores its member ranges in a list sorted by lower bound.
+ * Lookups, such as {@link #contains} and {@link #rangeContaining}, binary search that list and
+ * take time logarithmic in the number of member ranges.
+ *
+ * @since 12.0
+ */
+@Beta
+public final class ImmutableRangeSet<C extends Comparable> extends AbstractRangeSet<C> {
+
+  private static final ImmutableRangeSet<Comparable<?>> EMPTY =
+      new ImmutableRangeSet<Comparable<?>>(ImmutableList.<Range<Comparable<?>>>of());
+
+  private static final ImmutableRangeSet<Comparable<?>> ALL =
+      new ImmutableRangeSet<Comparable<?>>(ImmutableList.of(Ranges.<Comparable<?>>all()));
+
+  /**
+   * Returns an empty immutable range set.
+   */
+  @SuppressWarnings("unchecked")
+  public static <C extends Comparable> ImmutableRangeSet<C> of() {
+    return (ImmutableRangeSet<C>) EMPTY;
+  }
+
+  /**
+   * Returns an immutable range set containing the single range {@link Ranges#all()}.
+   */
+  @SuppressWarnings("unchecked")
+  static <C extends Comparable> ImmutableRangeSet<C> all() {
+    return (ImmutableRangeSet<C>) ALL;
+  }
+
+  /**
+   * Returns an immutable range set containing the specified single range. If {@link
+   * Range#isEmpty() range.isEmpty()}, this is equivalent to {@link ImmutableRangeSet#of()}.
+   */
+  public static <C extends Comparable> ImmutableRangeSet<C> of(Range<C> range) {
+    checkNotNull(range);
+    if (range.isEmpty()) {
+      return of();
+    } else if (range.equals(Ranges.all())) {
+      return all();
+    } else {
+      return new ImmutableRangeSet<C>(ImmutableList.of(range));
+    }
+  }
+
+  /**
+   * Returns an immutable copy of the specified {@code RangeSet}.
+   */
+  public static <C extends Comparable> ImmutableRangeSet<C> copyOf(RangeSet<C> rangeSet) {
+    checkNotNull(rangeSet);
+    if (rangeSet.isEmpty()) {
+      return of();
+    } else if (rangeSet.encloses(Ranges.<C>all())) {
+      return all();
+    }
+
+    if (rangeSet instanceof ImmutableRangeSet) {
+      return (ImmutableRangeSet<C>) rangeSet;
+    }
+    return new ImmutableRangeSet<C>(ImmutableList.copyOf(rangeSet.asRanges()));
+  }
+
+  private final ImmutableList<Range<C>> ranges;
+
+  private ImmutableSet<Range<C>> asRanges;
+
+  private ImmutableRangeSet<C> complement;
+
+  ImmutableRangeSet(ImmutableList<Range<C>> ranges) {
+    this.ranges = ranges;
+  }
+
+  private ImmutableRangeSet(ImmutableList<Range<C>> ranges, ImmutableRangeSet<C> complement) {
+    this.ranges = ranges;
+    this.complement = complement;
+  }
+
+  /**
+   * Returns the index of the member range with the greatest lower bound that is at most
+   * {@code cut}, or {@code -1} if there is none.
+   */
+  private int floorIndex(Cut<C> cut) {
+    return SortedLists.binarySearch(
+        ranges, Range.<C>lowerBoundFn(), cut, ANY_PRESENT, NEXT_LOWER);
+  }
+
+  @Override
+  public boolean encloses(Range<C> otherRange) {
+    int index = floorIndex(otherRange.lowerBound);
+    return index != -1 && ranges.get(index).encloses(otherRange);
+  }
+
+  @Override
+  @Nullable
+  public Range<C> rangeContaining(C value) {
+    int index = floorIndex(Cut.belowValue(value));
+    if (index != -1) {
+      Range<C> range = ranges.get(index);
+      return range.contains(value) ? range : null;
+    }
+    return null;
+  }
+
+  @Override
+  public Range<C> span() {
+    if (ranges.isEmpty()) {
+      throw new NoSuchElementException();
+    }
+    return Ranges.create(
+        ranges.get(0).lowerBound,
+        ranges.get(ranges.size() - 1).upperBound);
+  }
+
+  @Override
+  public boolean isEmpty() {
+    return ranges.isEmpty();
+  }
+
+  /**
+   * Guaranteed to throw an exception and leave the {@code RangeSet} unmodified.
+   *
+   * @throws UnsupportedOperationException always
+   * @deprecated Unsupported operation.
+   */
+  @Deprecated
+  @Override
+  public void add(Range<C> range) {
+    throw new UnsupportedOperationException();
+  }
+
+  /**
+   * Guaranteed to throw an exception and leave the {@code RangeSet} unmodified.
+   *
+   * @throws UnsupportedOperationException always
+   * @deprecated Unsupported operation.
+   */
+  @Deprecated
+  @Override
+  public void addAll(RangeSet<C> other) {
+    throw new UnsupportedOperationException();
+  }
+
+  /**
+   * Guaranteed to throw an exception and leave the {@code RangeSet} unmodified.
+   *
+   * @throws UnsupportedOperationException always
+   * @deprecated Unsupported operation.
+   */
+  @Deprecated
+  @Override
+  public void remove(Range<C> range) {
+    throw new UnsupportedOperationException();
+  }
+
+  /**
+   * Guaranteed to throw an exception and leave the {@code RangeSet} unmodified.
+   *
+   * @throws UnsupportedOperationException always
+   * @deprecated Unsupported operation.
+   */
+  @Deprecated
+  @Override
+  public void removeAll(RangeSet<C> other) {
+    throw new UnsupportedOperationException();
+  }
+
+  /**
+   * Guaranteed to throw an exception and leave the {@code RangeSet} unmodified.
+   *
+   * @throws UnsupportedOperationException always
+   * @deprecated Unsupported operation.
+   */
+  @Deprecated
+  @Override
+  public void clear() {
+    throw new UnsupportedOperationException();
+  }
+
+  @Override
+  public ImmutableSet<Range<C>> asRanges() {
+    ImmutableSet<Range<C>> result = asRanges;
+    return (result == null) ? asRanges = ImmutableSet.copyOf(ranges) : result;
+  }
+
+  @Override
+  public ImmutableRangeSet<C> complement() {
+    ImmutableRangeSet<C> result = complement;
+    if (result != null) {
+      return result;
+    }
+    ImmutableList.Builder<Range<C>> gaps = ImmutableList.builder();
+    Cut<C> lowerBound = Cut.belowAll();
+    for (Range<C> range : ranges) {
+      Range<C> gap = Ranges.create(lowerBound, range.lowerBound);
+      if (!gap.isEmpty()) {
+        gaps.add(gap);
+      }
+      lowerBound = range.upperBound;
+    }
+    Range<C> lastGap = Ranges.create(lowerBound, Cut.<C>aboveAll());
+    if (!lastGap.isEmpty()) {
+      gaps.add(lastGap);
+    }
+    return complement = new ImmutableRangeSet<C>(gaps.build(), this);
+  }
+
+  /**
+   * Returns a new builder for an immutable range set.
+   */
+  public static <C extends Comparable> Builder<C> builder() {
+    return new Builder<C>();
+  }
+
+  /**
+   * A builder for immutable range sets. Ranges may be added in any order; connected ranges are
+   * coalesced and empty ranges are ignored when the range set is built.
+   */
+  public static class Builder<C extends Comparable> {
+    private final List<Range<C>> ranges = Lists.newArrayList();
+
+    /**
+     * Creates a new builder. The returned builder is equivalent to the builder generated by
+     * {@link ImmutableRangeSet#builder}.
+     */
+    public Builder() {}
+
+    /**
+     * Adds the specified range to this builder.
+     */
+    public Builder<C> add(Range<C> range) {
+      checkNotNull(range);
+      if (!range.isEmpty()) {
+        ranges.add(range);
+      }
+      return this;
+    }
+
+    /**
+     * Adds all ranges from the specified range set to this builder.
+     */
+    public Builder<C> addAll(RangeSet<C> ranges) {
+      for (Range<C> range : ranges.asRanges()) {
+        add(range);
+      }
+      return this;
+    }
+
+    /**
+     * Returns an {@code ImmutableRangeSet} containing the ranges added to this builder.
+     */
+    public ImmutableRangeSet<C> build() {
+      if (ranges.isEmpty()) {
+        return of();
+      }
+      List<Range<C>> sorted = Lists.newArrayList(ranges);
+      Collections.sort(sorted, Ordering.<Cut<C>>natural().onResultOf(Range.<C>lowerBoundFn()));
+      ImmutableList.Builder<Range<C>> coalesced = ImmutableList.builder();
+      Range<C> current = sorted.get(0);
+      for (Range<C> range : sorted.subList(1, sorted.size())) {
+        // the ranges are sorted by lower bound, so they are connected iff this holds
+        if (range.lowerBound.compareTo(current.upperBound) <= 0) {
+          current = current.span(range);
+        } else {
+          coalesced.add(current);
+          current = range;
+        }
+      }
+      coalesced.add(current);
+      return copyOf(new ImmutableRangeSet<C>(coalesced.build()));
+    }
+  }
+}
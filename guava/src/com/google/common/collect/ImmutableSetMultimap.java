@@ -21,21 +21,16 @@ import static com.google.common.base.Preconditions.checkNotNull;
 import com.google.common.annotations.Beta;
 import com.google.common.annotations.GwtCompatible;
 import com.google.common.annotations.GwtIncompatible;
-import com.google.common.base.Function;
+import com.google.common.collect.SlicedImmutableMap.SetSlices;
 
 import java.io.IOException;
 import java.io.InvalidObjectException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.util.Arrays;
-import java.util.Collection;
-import java.util.Collections;
 import java.util.Comparator;
-import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.Map;
 import java.util.Map.Entry;
-import java.util.TreeMap;
 
 import javax.annotation.Nullable;
 
@@ -149,37 +144,6 @@ public class ImmutableSetMultimap<K, V>
     return new Builder<K, V>();
   }
 
-  /**
-   * Multimap for {@link ImmutableSetMultimap.Builder} that maintains key
-   * and value orderings and performs better than {@link LinkedHashMultimap}.
-   */
-  private static class BuilderMultimap<K, V> extends AbstractMultimap<K, V> {
-    BuilderMultimap() {
-      super(new LinkedHashMap<K, Collection<V>>());
-    }
-    @Override Collection<V> createCollection() {
-      return Sets.newLinkedHashSet();
-    }
-    private static final long serialVersionUID = 0;
-  }
-
-  /**
-   * Multimap for {@link ImmutableSetMultimap.Builder} that sorts keys and
-   * maintains value orderings.
-   */
-  private static class SortedKeyBuilderMultimap<K, V>
-      extends AbstractMultimap<K, V> {
-    SortedKeyBuilderMultimap(
-        Comparator<? super K> keyComparator, Multimap<K, V> multimap) {
-      super(new TreeMap<K, Collection<V>>(keyComparator));
-      putAll(multimap);
-    }
-    @Override Collection<V> createCollection() {
-      return Sets.newLinkedHashSet();
-    }
-    private static final long serialVersionUID = 0;
-  }
-
   /**
    * A builder for creating immutable {@code SetMultimap} instances, especially
    * {@code public static final} multimaps ("constant multimaps"). Example:
@@ -204,16 +168,14 @@ public class ImmutableSetMultimap<K, V>
      * Creates a new builder. The returned builder is equivalent to the builder
      * generated by {@link ImmutableSetMultimap#builder}.
      */
-    public Builder() {
-      builderMultimap = new BuilderMultimap<K, V>();
-    }
+    public Builder() {}
 
     /**
      * Adds a key-value mapping to the built multimap if it is not already
      * present.
      */
     @Override public Builder<K, V> put(K key, V value) {
-      builderMultimap.put(checkNotNull(key), checkNotNull(value));
+      super.put(key, value);
       return this;
     }
 
@@ -223,29 +185,23 @@ public class ImmutableSetMultimap<K, V>
      * @since 11.0
      */
     @Override public Builder<K, V> put(Entry<? extends K, ? extends V> entry) {
-      builderMultimap.put(
-          checkNotNull(entry.getKey()), checkNotNull(entry.getValue()));
+      super.put(entry);
       return this;
     }
 
     @Override public Builder<K, V> putAll(K key, Iterable<? extends V> values) {
-      Collection<V> collection = builderMultimap.get(checkNotNull(key));
-      for (V value : values) {
-        collection.add(checkNotNull(value));
-      }
+      super.putAll(key, values);
       return this;
     }
 
     @Override public Builder<K, V> putAll(K key, V... values) {
-      return putAll(key, Arrays.asList(values));
+      super.putAll(key, values);
+      return this;
     }
 
     @Override public Builder<K, V> putAll(
         Multimap<? extends K, ? extends V> multimap) {
-      for (Entry<? extends K, ? extends Collection<? extends V>> entry
-          : multimap.asMap().entrySet()) {
-        putAll(entry.getKey(), entry.getValue());
-      }
+      super.putAll(multimap);
       return this;
     }
 
@@ -282,24 +238,10 @@ public class ImmutableSetMultimap<K, V>
      * Returns a newly-created immutable set multimap.
      */
     @Override public ImmutableSetMultimap<K, V> build() {
-      if (keyComparator != null) {
-        Multimap<K, V> sortedCopy = new BuilderMultimap<K, V>();
-        List<Map.Entry<K, Collection<V>>> entries = Lists.newArrayList(
-            builderMultimap.asMap().entrySet());
-        Collections.sort(
-            entries,
-            Ordering.from(keyComparator).onResultOf(new Function<Entry<K, Collection<V>>, K>() {
-              @Override
-              public K apply(Entry<K, Collection<V>> entry) {
-                return entry.getKey();
-              }
-            }));
-        for (Map.Entry<K, Collection<V>> entry : entries) {
-          sortedCopy.putAll(entry.getKey(), entry.getValue());
-        }
-        builderMultimap = sortedCopy;
-      }
-      return copyOf(builderMultimap, valueComparator);
+      // the sorted sets built for a value comparator do their own sorting
+      return fromGrouping(
+          Grouping.byKey(keys, values, keyComparator, null),
+          valueComparator);
     }
   }
 
@@ -339,22 +281,36 @@ public class ImmutableSetMultimap<K, V>
       }
     }
 
-    ImmutableMap.Builder<K, ImmutableSet<V>> builder = ImmutableMap.builder();
-    int size = 0;
+    return fromGrouping(Grouping.of(multimap), valueComparator);
+  }
 
-    for (Entry<? extends K, ? extends Collection<? extends V>> entry
-        : multimap.asMap().entrySet()) {
-      K key = entry.getKey();
-      Collection<? extends V> values = entry.getValue();
-      ImmutableSet<V> set = (valueComparator == null)
-          ? ImmutableSet.copyOf(values)
-          : ImmutableSortedSet.copyOf(valueComparator, values);
-      if (!set.isEmpty()) {
-        builder.put(key, set);
-        size += set.size();
+  /**
+   * Returns a multimap holding the keys and values of {@code grouping}, whose
+   * arrays must not be modified afterwards, keeping only the first occurrence
+   * of each value of a key.
+   */
+  @SuppressWarnings("unchecked") // the grouping holds only K's and V's
+  private static <K, V> ImmutableSetMultimap<K, V> fromGrouping(
+      Grouping grouping, @Nullable Comparator<? super V> valueComparator) {
+    if (valueComparator == null) {
+      if (grouping.isEmpty()) {
+        return of();
       }
+      SetSlices<K, V> map = SetSlices.create(grouping);
+      return new ImmutableSetMultimap<K, V>(map, map.valueCount(), null);
     }
 
+    // get() returns ImmutableSortedSet instances, which need their own arrays
+    ImmutableMap.Builder<K, ImmutableSet<V>> builder = ImmutableMap.builder();
+    int size = 0;
+    List<Object> values = Arrays.asList(grouping.values);
+    for (int i = 0; i < grouping.keys.length; i++) {
+      List<V> slice = (List<V>) values.subList(
+          grouping.offsets[i], grouping.offsets[i + 1]);
+      ImmutableSet<V> set = ImmutableSortedSet.copyOf(valueComparator, slice);
+      builder.put((K) grouping.keys[i], set);
+      size += set.size();
+    }
     return new ImmutableSetMultimap<K, V>(
         builder.build(), size, valueComparator);
   }
@@ -468,37 +424,37 @@ public class ImmutableSetMultimap<K, V>
     if (keyCount < 0) {
       throw new InvalidObjectException("Invalid key count " + keyCount);
     }
-    ImmutableMap.Builder<Object, ImmutableSet<Object>> builder
-        = ImmutableMap.builder();
-    int tmpSize = 0;
+    Object[] keys = new Object[keyCount];
+    int[] offsets = new int[keyCount + 1];
+    List<Object> values = Lists.newArrayList();
 
     for (int i = 0; i < keyCount; i++) {
-      Object key = stream.readObject();
+      keys[i] = stream.readObject();
       int valueCount = stream.readInt();
       if (valueCount <= 0) {
         throw new InvalidObjectException("Invalid value count " + valueCount);
       }
 
-      Object[] array = new Object[valueCount];
       for (int j = 0; j < valueCount; j++) {
-        array[j] = stream.readObject();
-      }
-      ImmutableSet<Object> valueSet = ImmutableSet.copyOf(array);
-      if (valueSet.size() != array.length) {
-        throw new InvalidObjectException(
-            "Duplicate key-value pairs exist for key " + key);
+        values.add(stream.readObject());
       }
-      builder.put(key, valueSet);
-      tmpSize += valueCount;
+      offsets[i + 1] = values.size();
     }
+    int tmpSize = values.size();
 
-    ImmutableMap<Object, ImmutableSet<Object>> tmpMap;
+    SetSlices<Object, Object> tmpMap;
     try {
-      tmpMap = builder.build();
+      tmpMap = SetSlices.create(new Grouping(keys, offsets, values.toArray()));
     } catch (IllegalArgumentException e) {
       throw (InvalidObjectException)
           new InvalidObjectException(e.getMessage()).initCause(e);
     }
+    for (int i = 0; i < keyCount; i++) {
+      if (tmpMap.sliceSize(i) != offsets[i + 1] - offsets[i]) {
+        throw new InvalidObjectException(
+            "Duplicate key-value pairs exist for key " + keys[i]);
+      }
+    }
 
     FieldSettersHolder.MAP_FIELD_SETTER.set(this, tmpMap);
     FieldSettersHolder.SIZE_FIELD_SETTER.set(this, tmpSize);
@@ -63,6 +63,24 @@ public final class Interners {
     return new WeakInterner<E>();
   }
 
+  /**
+   * Returns a new thread-safe interner which holds at most about {@code capacity} instances, in
+   * a fixed array, and may forget an instance to make room for another. It allocates no objects
+   * of its own, retains no references beyond the array, and takes no locks, so it can be faster
+   * and much smaller than {@link #newStrongInterner} or {@link #newWeakInterner} when interning
+   * large numbers of objects. However, two equal samples may yield different instances if the
+   * first one was forgotten in between; see {@link LossyInterner} for details. The returned
+   * interner reports its {@linkplain LossyInterner#hitRate hit rate}.
+   *
+   * @param capacity the number of instances to hold, which is rounded up to a power of two
+   * @throws IllegalArgumentException if {@code capacity} is not positive
+   * @since 12.0
+   */
+  @GwtIncompatible("java.util.concurrent.atomic")
+  public static <E> LossyInterner<E> newLossyInterner(int capacity) {
+    return new LossyInterner<E>(capacity);
+  }
+
   private static class WeakInterner<E> implements Interner<E> {
     // MapMaker is our friend, we know about this type
     private final MapMakerInternalMap<E, Dummy> map = new MapMaker()
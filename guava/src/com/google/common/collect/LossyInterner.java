@@ -0,0 +1,142 @@
+/*
+ * Copyright (C) 2012 The Guava Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.common.collect;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import com.google.common.annotations.Beta;
+import com.google.common.annotations.GwtIncompatible;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A thread-safe interner of bounded size which, like a direct-mapped cache,
+ * may forget an interned instance when another one needs its place. Create
+ * instances with {@link Interners#newLossyInterner}.
+ *
+ * <p>The instances are kept in a fixed array, divided into buckets of two
+ * adjacent slots. An instance can only be held by the bucket its hash code
+ * selects, and interning an instance that its bucket does not hold moves the
+ * bucket's first instance to the second slot, evicting the previous second
+ * instance, and stores the new instance in the first slot. Lookups and updates
+ * are plain reads and writes of array elements: they take no locks, allocate
+ * nothing, and create no reference objects for the garbage collector to
+ * process. Concurrent updates of the same bucket may overwrite each other,
+ * which only loses instances.
+ *
+ * <p>As a result, {@code intern(a).equals(a)} always holds, but two equal
+ * samples interned at different times may yield different instances, if the
+ * first was evicted in between. This makes the interner suitable for
+ * reducing the number of equal copies of an object, such as strings parsed
+ * from repetitive input, but not for replacing {@code equals} by {@code ==}.
+ * {@link #hitRate} reports how effective it is.
+ *
+ * @since 12.0
+ */
+@Beta
+@GwtIncompatible("java.util.concurrent.atomic")
+public final class LossyInterner<E> implements Interner<E> {
+  private static final int MAXIMUM_CAPACITY = 1 << 30;
+
+  // Hits and misses are counted in several stripes, chosen by thread, so that
+  // threads interning at the same time do not all update the same counter.
+  private static final int STRIPES = Math.min(64,
+      Integer.highestOneBit(Runtime.getRuntime().availableProcessors() * 2));
+  // Counters are this many longs apart, so that each one has its cache line.
+  private static final int PADDING = 8;
+
+  private final AtomicReferenceArray<E> table;
+  private final AtomicLongArray counts =
+      new AtomicLongArray(2 * STRIPES * PADDING);
+
+  LossyInterner(int capacity) {
+    checkArgument(capacity > 0, "capacity must be positive: %s", capacity);
+    int tableSize = 2;
+    while (tableSize < capacity && tableSize < MAXIMUM_CAPACITY) {
+      tableSize <<= 1;
+    }
+    this.table = new AtomicReferenceArray<E>(tableSize);
+  }
+
+  @Override public E intern(E sample) {
+    int first =
+        Hashing.smear(checkNotNull(sample).hashCode()) & (table.length() - 2);
+    E candidate = table.get(first);
+    if (candidate != null && sample.equals(candidate)) {
+      count(0);
+      return candidate;
+    }
+    E second = table.get(first + 1);
+    if (second != null && sample.equals(second)) {
+      count(0);
+      return second;
+    }
+    table.lazySet(first + 1, candidate);
+    table.lazySet(first, sample);
+    count(1);
+    return sample;
+  }
+
+  private void count(int missed) {
+    int stripe = Hashing.smear(System.identityHashCode(Thread.currentThread()))
+        & (STRIPES - 1);
+    counts.incrementAndGet((2 * stripe + missed) * PADDING);
+  }
+
+  private long sum(int missed) {
+    long sum = 0;
+    for (int stripe = 0; stripe < STRIPES; stripe++) {
+      sum += counts.get((2 * stripe + missed) * PADDING);
+    }
+    return sum;
+  }
+
+  /** Returns the number of instances this interner can hold. */
+  public int capacity() {
+    return table.length();
+  }
+
+  /**
+   * Returns the number of times {@link #intern} has returned an instance it
+   * held already. Concurrent calls may or may not be counted.
+   */
+  public long hitCount() {
+    return sum(0);
+  }
+
+  /**
+   * Returns the number of times {@link #intern} has returned its sample,
+   * because it did not hold an equal instance. Concurrent calls may or may not
+   * be counted.
+   */
+  public long missCount() {
+    return sum(1);
+  }
+
+  /**
+   * Returns the ratio of calls to {@link #intern} which were hits. This is
+   * defined as {@code hitCount / (hitCount + missCount)}, or {@code 1.0} when
+   * there have been no calls.
+   */
+  public double hitRate() {
+    long hitCount = hitCount();
+    long requestCount = hitCount + missCount();
+    return (requestCount == 0) ? 1.0 : (double) hitCount / requestCount;
+  }
+}
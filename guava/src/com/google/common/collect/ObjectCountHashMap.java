@@ -0,0 +1,206 @@
+/*
+ * Copyright (C) 2012 The Guava Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.common.collect;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.collect.CompactHashing.capacity;
+import static com.google.common.collect.CompactHashing.grownTableSize;
+import static com.google.common.collect.CompactHashing.newTable;
+import static com.google.common.collect.CompactHashing.tableSize;
+
+import com.google.common.annotations.GwtCompatible;
+
+import java.util.Arrays;
+
+import javax.annotation.Nullable;
+
+/**
+ * A hash map from objects to {@code int} values, which stores its entries without any per-entry
+ * objects and is used as the backing store of {@link HashMultiset}.
+ *
+ * <p>Keys, values and hash codes are stored in parallel arrays, densely packed in the first
+ * {@link #size} positions; an entry is addressed by its <i>index</i> in these arrays. A separate
+ * {@linkplain CompactHashing Robin Hood hash table} maps hash codes to indexes. Removal moves the
+ * last entry into the vacated index, so the dense arrays never contain holes; as a consequence,
+ * removing an entry may change the index of one other entry.
+ *
+ * <p>Null keys are permitted. A value of zero is indistinguishable from an absent key to
+ * {@link #get}; callers that need to tell them apart should use {@link #indexOf}.
+ */
+@GwtCompatible
+final class ObjectCountHashMap<K> {
+  static final int DEFAULT_SIZE = 3;
+
+  /** The keys of the entries, in positions {@code [0, size)}. */
+  private Object[] keys;
+
+  /** The values of the entries, in positions {@code [0, size)}. */
+  private int[] values;
+
+  /** The smeared hash codes of the keys, in positions {@code [0, size)}. */
+  private int[] hashes;
+
+  /**
+   * The open-addressed hash table, whose length is a power of two. Each slot holds either
+   * {@link CompactHashing#UNSET} or the index of an entry.
+   */
+  private int[] table;
+
+  private int size;
+
+  /** Incremented whenever an entry is inserted or removed, but not when a value changes. */
+  int modCount;
+
+  private final int seed;
+
+  /**
+   * Creates an empty map with enough capacity for {@code expectedSize} entries.
+   *
+   * @throws IllegalArgumentException if {@code expectedSize} is negative
+   */
+  ObjectCountHashMap(int expectedSize) {
+    checkArgument(expectedSize >= 0, "Initial capacity must be non-negative");
+    int tableSize = tableSize(expectedSize);
+    int capacity = capacity(tableSize);
+    this.keys = new Object[capacity];
+    this.values = new int[capacity];
+    this.hashes = new int[capacity];
+    this.table = newTable(tableSize);
+    // Cheap, and unpredictable enough to vary the slot layout between instances.
+    this.seed = System.identityHashCode(this);
+  }
+
+  ObjectCountHashMap() {
+    this(DEFAULT_SIZE);
+  }
+
+  int size() {
+    return size;
+  }
+
+  boolean isEmpty() {
+    return size == 0;
+  }
+
+  @SuppressWarnings("unchecked")
+  K getKey(int index) {
+    return (K) keys[index];
+  }
+
+  int getValue(int index) {
+    return values[index];
+  }
+
+  void setValue(int index, int value) {
+    values[index] = value;
+  }
+
+  /** Returns the index of the entry for {@code key}, or {@code -1} if there is none. */
+  int indexOf(@Nullable Object key) {
+    return CompactHashing.indexOf(table, hashes, keys, key, CompactHashing.hash(key, seed));
+  }
+
+  boolean containsKey(@Nullable Object key) {
+    return indexOf(key) != -1;
+  }
+
+  /** Returns the value associated with {@code key}, or zero if there is none. */
+  int get(@Nullable Object key) {
+    int index = indexOf(key);
+    return (index == -1) ? 0 : values[index];
+  }
+
+  /**
+   * Associates {@code value} with {@code key}, and returns the previous value, or zero if there
+   * was none.
+   */
+  int put(@Nullable K key, int value) {
+    int index = indexOf(key);
+    if (index != -1) {
+      int oldValue = values[index];
+      values[index] = value;
+      return oldValue;
+    }
+    if (size == keys.length) {
+      grow();
+    }
+    int hash = CompactHashing.hash(key, seed);
+    keys[size] = key;
+    values[size] = value;
+    hashes[size] = hash;
+    CompactHashing.insert(table, hashes, size, hash);
+    size++;
+    modCount++;
+    return 0;
+  }
+
+  private void grow() {
+    int newTableSize = grownTableSize(table.length);
+    int newCapacity = capacity(newTableSize);
+    keys = ObjectArrays.arraysCopyOf(keys, newCapacity);
+    values = copyOf(values, newCapacity);
+    hashes = copyOf(hashes, newCapacity);
+    table = CompactHashing.rebuild(hashes, size, newTableSize);
+  }
+
+  private static int[] copyOf(int[] array, int newLength) {
+    int[] copy = new int[newLength];
+    System.arraycopy(array, 0, copy, 0, Math.min(array.length, newLength));
+    return copy;
+  }
+
+  /**
+   * Removes the entry for {@code key}, and returns its value, or zero if there was none.
+   */
+  int remove(@Nullable Object key) {
+    int index = indexOf(key);
+    if (index == -1) {
+      return 0;
+    }
+    int oldValue = values[index];
+    removeEntry(index);
+    return oldValue;
+  }
+
+  /**
+   * Removes the entry at {@code index}. The last entry, if it is not the one removed, is moved to
+   * {@code index}.
+   */
+  void removeEntry(int index) {
+    int last = size - 1;
+    CompactHashing.remove(table, hashes, index, last);
+    if (index < last) {
+      keys[index] = keys[last];
+      values[index] = values[last];
+      hashes[index] = hashes[last];
+    }
+    keys[last] = null;
+    values[last] = 0;
+    hashes[last] = 0;
+    size--;
+    modCount++;
+  }
+
+  void clear() {
+    Arrays.fill(keys, 0, size, null);
+    Arrays.fill(values, 0, size, 0);
+    Arrays.fill(hashes, 0, size, 0);
+    Arrays.fill(table, CompactHashing.UNSET);
+    size = 0;
+    modCount++;
+  }
+}
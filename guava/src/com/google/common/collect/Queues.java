@@ -30,6 +30,7 @@ import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.PriorityBlockingQueue;
 import java.util.concurrent.SynchronousQueue;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
 
 /**
  * Static utility methods pertaining to {@link Queue} and {@link Deque} instances.
@@ -240,6 +241,123 @@ public final class Queues {
     return queue;
   }
 
+  // Ring buffers
+
+  /**
+   * How a thread blocked in a lock-free queue's {@code put}, {@code take} or timed {@code offer}
+   * or {@code poll} waits for the queue to change. No strategy involves a lock, so the other side
+   * never has to signal the waiter; the strategies differ in how much latency they trade for CPU.
+   *
+   * @since 12.0
+   */
+  @Beta
+  public enum WaitStrategy {
+    /**
+     * Retries continually. Gives the lowest latency, but keeps a core fully busy for as long as
+     * the thread waits, so it is only suitable when threads are pinned to otherwise idle cores.
+     */
+    BUSY_SPIN {
+      @Override void idle(int attempt) {}
+    },
+
+    /**
+     * Retries for a short while, then {@linkplain Thread#yield yields} between retries, which
+     * keeps latency low while letting other threads run on the core.
+     */
+    YIELDING {
+      @Override void idle(int attempt) {
+        if (attempt >= SPIN_ATTEMPTS) {
+          Thread.yield();
+        }
+      }
+    },
+
+    /**
+     * Retries for a short while, yields for a while longer, and then parks between retries for
+     * exponentially increasing periods of up to a millisecond. Uses little CPU when the queue is
+     * idle, at the cost of up to a millisecond of latency after a long wait.
+     */
+    BACKING_OFF {
+      @Override void idle(int attempt) {
+        if (attempt < SPIN_ATTEMPTS) {
+          return;
+        } else if (attempt < 2 * SPIN_ATTEMPTS) {
+          Thread.yield();
+        } else {
+          int shift = Math.min(attempt - 2 * SPIN_ATTEMPTS, 10);
+          LockSupport.parkNanos(1000L << shift);
+        }
+      }
+    };
+
+    private static final int SPIN_ATTEMPTS = 100;
+
+    /** Waits once, {@code attempt} being the number of times the caller has already waited. */
+    abstract void idle(int attempt);
+  }
+
+  /**
+   * Creates a bounded, lock-free queue for exactly one producer thread and one consumer thread,
+   * whose blocking operations wait according to {@link WaitStrategy#BACKING_OFF}.
+   *
+   * @see #newSpscArrayQueue(int, WaitStrategy)
+   * @since 12.0
+   */
+  public static <E> BlockingQueue<E> newSpscArrayQueue(int capacity) {
+    return newSpscArrayQueue(capacity, WaitStrategy.BACKING_OFF);
+  }
+
+  /**
+   * Creates a bounded, lock-free queue for exactly one producer thread and one consumer thread.
+   *
+   * <p>The queue is a ring buffer: offering and polling never lock or allocate, and the producer
+   * and consumer each update only their own cache-line-padded index, with ordered rather than
+   * fully fenced stores. It is considerably faster than an {@link ArrayBlockingQueue} for handing
+   * elements between two pipeline stages. In return, it is only correct if at most one thread
+   * ever adds elements and at most one thread ever removes them, examines the head, or drains the
+   * queue; other threads may only call {@code size}, {@code isEmpty}, {@code remainingCapacity}
+   * and iterate. {@code remove(Object)} and iterator removal are not supported, and null elements
+   * are not permitted.
+   *
+   * @param capacity the minimum capacity; rounded up to a power of two
+   * @param waitStrategy how blocking operations wait
+   * @throws IllegalArgumentException if {@code capacity} is not positive or exceeds 2^30
+   * @since 12.0
+   */
+  public static <E> BlockingQueue<E> newSpscArrayQueue(int capacity, WaitStrategy waitStrategy) {
+    return new RingBufferQueue.SingleProducer<E>(capacity, waitStrategy);
+  }
+
+  /**
+   * Creates a bounded, lock-free queue for any number of producer threads and one consumer
+   * thread, whose blocking operations wait according to {@link WaitStrategy#BACKING_OFF}.
+   *
+   * @see #newMpscArrayQueue(int, WaitStrategy)
+   * @since 12.0
+   */
+  public static <E> BlockingQueue<E> newMpscArrayQueue(int capacity) {
+    return newMpscArrayQueue(capacity, WaitStrategy.BACKING_OFF);
+  }
+
+  /**
+   * Creates a bounded, lock-free queue for any number of producer threads and one consumer
+   * thread, such as the inbox of a single-threaded stage fed by several others.
+   *
+   * <p>Producers claim slots with a compare-and-set on a shared index and never lock or allocate;
+   * see {@link #newSpscArrayQueue(int, WaitStrategy)} for the rest of the design. The queue is
+   * only correct if at most one thread ever removes elements, examines the head, or drains the
+   * queue. {@code remove(Object)} and iterator removal are not supported, and null elements are
+   * not permitted.
+   *
+   * @param capacity the minimum capacity; rounded up to a power of two
+   * @param waitStrategy how blocking operations wait
+   * @throws IllegalArgumentException if {@code capacity} is not positive or exceeds 2^30
+   * @since 12.0
+   */
+  public static <E> BlockingQueue<E> newMpscArrayQueue(int capacity, WaitStrategy waitStrategy) {
+    return new RingBufferQueue.MultiProducer<E>(capacity, waitStrategy);
+  }
+
   // SynchronousQueue
 
   /**
@@ -22,6 +22,7 @@ import static com.google.common.collect.Ranges.create;
 import com.google.common.annotations.Beta;
 import com.google.common.annotations.GwtCompatible;
 import com.google.common.base.Equivalence;
+import com.google.common.base.Function;
 import com.google.common.base.Predicate;
 
 import java.io.Serializable;
@@ -455,5 +456,22 @@ public final class Range<C extends Comparable> implements Predicate<C>, Serializ
     return left.compareTo(right);
   }
 
+  /**
+   * Returns a function that maps a range to its lower bound, for searching lists of ranges that
+   * are sorted by lower bound.
+   */
+  @SuppressWarnings("unchecked") // the function accepts any range
+  static <C extends Comparable<?>> Function<Range<C>, Cut<C>> lowerBoundFn() {
+    return (Function) LOWER_BOUND_FN;
+  }
+
+  private static final Function<Range<?>, Cut<?>> LOWER_BOUND_FN =
+      new Function<Range<?>, Cut<?>>() {
+        @Override
+        public Cut<?> apply(Range<?> range) {
+          return range.lowerBound;
+        }
+      };
+
   private static final long serialVersionUID = 0;
 }
@@ -17,26 +17,49 @@
 package com.google.common.collect;
 
 import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkElementIndex;
 
 import com.google.common.annotations.GwtCompatible;
+import com.google.common.annotations.VisibleForTesting;
+
+import java.util.Arrays;
 
 import javax.annotation.Nullable;
-import javax.annotation.concurrent.Immutable;
 
 /**
  * Implementation of {@link ImmutableMap} with two or more entries.
  *
+ * <p>The keys and values live in a single array, alternating in insertion
+ * order, and the hash table is an array of indexes into it, probed linearly.
+ * The index array is a {@code byte[]}, a {@code short[]} or an {@code int[]},
+ * whichever is the smallest that can address every entry, and is kept at
+ * most 70% full. With compressed references, a map of under 180 entries costs
+ * about 10 to 11 bytes per entry beyond the keys and values themselves: two
+ * references, and under three bytes of table. A table of chained entry
+ * objects cost about 36: a 24-byte entry object, a reference to it in the
+ * insertion-ordered array, and about two table slots. {@link #get} reads the
+ * index array and then the key array, rather than chasing pointers from entry
+ * to entry. {@code Entry} objects are only created when the entry set is
+ * iterated.
+ *
  * @author Jesse Wilson
  * @author Kevin Bourrillion
  * @author Gregory Kick
  */
 @GwtCompatible(serializable = true, emulated = true)
 final class RegularImmutableMap<K, V> extends ImmutableMap<K, V> {
+  // Tables of up to this many slots hold entries in a byte[], and up to
+  // SHORT_MAX_SIZE slots in a short[]; the all-ones index marks an empty slot.
+  @VisibleForTesting static final int BYTE_MAX_SIZE = 1 << 8;
+  @VisibleForTesting static final int SHORT_MAX_SIZE = 1 << 16;
+  private static final int BYTE_MASK = (1 << 8) - 1;
+  private static final int SHORT_MASK = (1 << 16) - 1;
+  private static final int ABSENT = -1;
 
-  // entries in insertion order
-  private final transient LinkedEntry<K, V>[] entries;
-  // array of linked lists of entries
-  private final transient LinkedEntry<K, V>[] table;
+  // keys at even indexes and values at odd ones, in insertion order
+  private final transient Object[] alternatingKeysAndValues;
+  // byte[], short[] or int[] of entry indexes in hashed positions
+  @VisibleForTesting final transient Object hashTable;
   // 'and' with an int to get a table index
   private final transient int mask;
   private final transient int keySetHashCode;
@@ -45,124 +68,124 @@ final class RegularImmutableMap<K, V> extends ImmutableMap<K, V> {
   // re-copy them anyway.
   RegularImmutableMap(Entry<?, ?>... immutableEntries) {
     int size = immutableEntries.length;
-    entries = createEntryArray(size);
-
-    int tableSize = chooseTableSize(size);
-    table = createEntryArray(tableSize);
+    alternatingKeysAndValues = new Object[2 * size];
+    int tableSize = ImmutableSet.chooseTableSize(size);
     mask = tableSize - 1;
 
+    byte[] byteTable = null;
+    short[] shortTable = null;
+    int[] intTable = null;
+    if (tableSize <= BYTE_MAX_SIZE) {
+      byteTable = new byte[tableSize];
+      Arrays.fill(byteTable, (byte) ABSENT);
+    } else if (tableSize <= SHORT_MAX_SIZE) {
+      shortTable = new short[tableSize];
+      Arrays.fill(shortTable, (short) ABSENT);
+    } else {
+      intTable = new int[tableSize];
+      Arrays.fill(intTable, ABSENT);
+    }
+
+    int absent = absent(tableSize);
     int keySetHashCodeMutable = 0;
     for (int entryIndex = 0; entryIndex < size; entryIndex++) {
-      // each of our 6 callers carefully put only Entry<K, V>s into the array!
-      @SuppressWarnings("unchecked")
-      Entry<K, V> entry = (Entry<K, V>) immutableEntries[entryIndex];
-      K key = entry.getKey();
+      Entry<?, ?> entry = immutableEntries[entryIndex];
+      Object key = entry.getKey();
       int keyHashCode = key.hashCode();
       keySetHashCodeMutable += keyHashCode;
-      int tableIndex = Hashing.smear(keyHashCode) & mask;
-      @Nullable LinkedEntry<K, V> existing = table[tableIndex];
-      // prepend, not append, so the entries can be immutable
-      LinkedEntry<K, V> linkedEntry =
-          newLinkedEntry(key, entry.getValue(), existing);
-      table[tableIndex] = linkedEntry;
-      entries[entryIndex] = linkedEntry;
-      while (existing != null) {
-        checkArgument(!key.equals(existing.getKey()), "duplicate key: %s", key);
-        existing = existing.next();
+      alternatingKeysAndValues[2 * entryIndex] = key;
+      alternatingKeysAndValues[2 * entryIndex + 1] = entry.getValue();
+      for (int h = Hashing.smear(keyHashCode); ; h++) {
+        int tableIndex = h & mask;
+        int existing = (byteTable != null) ? byteTable[tableIndex] & BYTE_MASK
+            : (shortTable != null) ? shortTable[tableIndex] & SHORT_MASK
+            : intTable[tableIndex];
+        if (existing == absent) {
+          if (byteTable != null) {
+            byteTable[tableIndex] = (byte) entryIndex;
+          } else if (shortTable != null) {
+            shortTable[tableIndex] = (short) entryIndex;
+          } else {
+            intTable[tableIndex] = entryIndex;
+          }
+          break;
+        }
+        checkArgument(!key.equals(alternatingKeysAndValues[2 * existing]),
+            "duplicate key: %s", key);
       }
     }
     keySetHashCode = keySetHashCodeMutable;
+    hashTable = (byteTable != null) ? byteTable
+        : (shortTable != null) ? shortTable
+        : intTable;
   }
 
-  private static int chooseTableSize(int size) {
-    // least power of 2 greater than size
-    int tableSize = Integer.highestOneBit(size) << 1;
-    checkArgument(tableSize > 0, "table too large: %s", size);
-    return tableSize;
-  }
-
-  /**
-   * Creates a {@link LinkedEntry} array to hold parameterized entries. The
-   * result must never be upcast back to LinkedEntry[] (or Object[], etc.), or
-   * allowed to escape the class.
-   */
-  @SuppressWarnings("unchecked") // Safe as long as the javadocs are followed
-  private LinkedEntry<K, V>[] createEntryArray(int size) {
-    return new LinkedEntry[size];
-  }
-
-  private static <K, V> LinkedEntry<K, V> newLinkedEntry(K key, V value,
-      @Nullable LinkedEntry<K, V> next) {
-    return (next == null)
-        ? new TerminalEntry<K, V>(key, value)
-        : new NonTerminalEntry<K, V>(key, value, next);
-  }
-
-  private interface LinkedEntry<K, V> extends Entry<K, V> {
-    /** Returns the next entry in the list or {@code null} if none exists. */
-    @Nullable LinkedEntry<K, V> next();
-  }
-
-  /** {@code LinkedEntry} implementation that has a next value. */
-  @Immutable
-  @SuppressWarnings("serial") // this class is never serialized
-  private static final class NonTerminalEntry<K, V>
-      extends ImmutableEntry<K, V> implements LinkedEntry<K, V> {
-    final LinkedEntry<K, V> next;
-
-    NonTerminalEntry(K key, V value, LinkedEntry<K, V> next) {
-      super(key, value);
-      this.next = next;
-    }
-
-    @Override public LinkedEntry<K, V> next() {
-      return next;
-    }
-  }
-
-  /**
-   * {@code LinkedEntry} implementation that serves as the last entry in the
-   * list.  I.e. no next entry
-   */
-  @Immutable
-  @SuppressWarnings("serial") // this class is never serialized
-  private static final class TerminalEntry<K, V> extends ImmutableEntry<K, V>
-      implements LinkedEntry<K, V> {
-    TerminalEntry(K key, V value) {
-      super(key, value);
-    }
-
-    @Nullable @Override public LinkedEntry<K, V> next() {
-      return null;
-    }
+  /** Returns the index that marks an empty slot in a table of this size. */
+  private static int absent(int tableSize) {
+    return (tableSize <= BYTE_MAX_SIZE) ? BYTE_MASK
+        : (tableSize <= SHORT_MAX_SIZE) ? SHORT_MASK
+        : ABSENT;
   }
 
   @Override public V get(@Nullable Object key) {
     if (key == null) {
       return null;
     }
-    int index = Hashing.smear(key.hashCode()) & mask;
-    for (LinkedEntry<K, V> entry = table[index];
-        entry != null;
-        entry = entry.next()) {
-      K candidateKey = entry.getKey();
-
-      /*
-       * Assume that equals uses the == optimization when appropriate, and that
-       * it would check hash codes as an optimization when appropriate. If we
-       * did these things, it would just make things worse for the most
-       * performance-conscious users.
-       */
-      if (key.equals(candidateKey)) {
-        return entry.getValue();
+    Object[] keysAndValues = alternatingKeysAndValues;
+    int h = Hashing.smear(key.hashCode());
+    /*
+     * Assume that equals uses the == optimization when appropriate, and that
+     * it would check hash codes as an optimization when appropriate. If we
+     * did these things, it would just make things worse for the most
+     * performance-conscious users.
+     */
+    if (hashTable instanceof byte[]) {
+      byte[] table = (byte[]) hashTable;
+      for (; ; h++) {
+        int index = table[h & mask] & BYTE_MASK;
+        if (index == BYTE_MASK) {
+          return null;
+        } else if (key.equals(keysAndValues[2 * index])) {
+          return value(index);
+        }
+      }
+    } else if (hashTable instanceof short[]) {
+      short[] table = (short[]) hashTable;
+      for (; ; h++) {
+        int index = table[h & mask] & SHORT_MASK;
+        if (index == SHORT_MASK) {
+          return null;
+        } else if (key.equals(keysAndValues[2 * index])) {
+          return value(index);
+        }
+      }
+    } else {
+      int[] table = (int[]) hashTable;
+      for (; ; h++) {
+        int index = table[h & mask];
+        if (index == ABSENT) {
+          return null;
+        } else if (key.equals(keysAndValues[2 * index])) {
+          return value(index);
+        }
       }
     }
-    return null;
+  }
+
+  // each of our 6 callers carefully put only K's and V's into the array!
+  @SuppressWarnings("unchecked")
+  private K key(int index) {
+    return (K) alternatingKeysAndValues[2 * index];
+  }
+
+  @SuppressWarnings("unchecked")
+  private V value(int index) {
+    return (V) alternatingKeysAndValues[2 * index + 1];
   }
 
   @Override
   public int size() {
-    return entries.length;
+    return alternatingKeysAndValues.length / 2;
   }
 
   @Override public boolean isEmpty() {
@@ -173,8 +196,8 @@ final class RegularImmutableMap<K, V> extends ImmutableMap<K, V> {
     if (value == null) {
       return false;
     }
-    for (Entry<K, V> entry : entries) {
-      if (entry.getValue().equals(value)) {
+    for (int i = 1; i < alternatingKeysAndValues.length; i += 2) {
+      if (alternatingKeysAndValues[i].equals(value)) {
         return true;
       }
     }
@@ -199,20 +222,85 @@ final class RegularImmutableMap<K, V> extends ImmutableMap<K, V> {
 
     @Override
     ImmutableList<Entry<K, V>> createAsList() {
-      // TODO(user): make this delegate contains calls to the EntrySet
-      return new RegularImmutableList<Entry<K, V>>(entries);
+      return new ImmutableList<Entry<K, V>>() {
+        @Override public Entry<K, V> get(int index) {
+          checkElementIndex(index, size());
+          return Maps.immutableEntry(key(index), value(index));
+        }
+
+        @Override public int size() {
+          return RegularImmutableMap.this.size();
+        }
+
+        @Override boolean isPartialView() {
+          return true;
+        }
+      };
     }
   }
 
+  @SuppressWarnings("serial") // uses writeReplace(), not default serialization
   @Override
   ImmutableSet<K> createKeySet() {
-    return new KeySet(keySetHashCode);
+    return new KeySet(keySetHashCode) {
+      @Override public UnmodifiableIterator<K> iterator() {
+        return asList().iterator();
+      }
+
+      @Override ImmutableList<K> createAsList() {
+        return new KeysOrValues<K>(0);
+      }
+    };
+  }
+
+  @SuppressWarnings("serial") // uses writeReplace(), not default serialization
+  @Override
+  ImmutableCollection<V> createValues() {
+    return new Values() {
+      @Override public UnmodifiableIterator<V> iterator() {
+        return asList().iterator();
+      }
+
+      @Override ImmutableList<V> createAsList() {
+        return new KeysOrValues<V>(1);
+      }
+    };
+  }
+
+  /** The keys ({@code offset} 0) or the values ({@code offset} 1) as a list. */
+  @SuppressWarnings("serial") // uses writeReplace(), not default serialization
+  private final class KeysOrValues<E> extends ImmutableList<E> {
+    final int offset;
+
+    KeysOrValues(int offset) {
+      this.offset = offset;
+    }
+
+    @SuppressWarnings("unchecked") // offset 0 lists only keys, 1 only values
+    @Override public E get(int index) {
+      checkElementIndex(index, size());
+      return (E) alternatingKeysAndValues[2 * index + offset];
+    }
+
+    @Override public int size() {
+      return RegularImmutableMap.this.size();
+    }
+
+    @Override boolean isPartialView() {
+      return true;
+    }
   }
 
   @Override public String toString() {
     StringBuilder result
         = Collections2.newStringBuilderForCollection(size()).append('{');
-    Collections2.STANDARD_JOINER.appendTo(result, entries);
+    for (int i = 0; i < alternatingKeysAndValues.length; i += 2) {
+      if (i > 0) {
+        result.append(", ");
+      }
+      result.append(alternatingKeysAndValues[i]).append('=')
+          .append(alternatingKeysAndValues[i + 1]);
+    }
     return result.append('}').toString();
   }
 
@@ -0,0 +1,284 @@
+/*
+ * Copyright (C) 2012 The Guava Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.common.collect;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import com.google.common.collect.Queues.WaitStrategy;
+import com.google.common.math.IntMath;
+
+import java.math.RoundingMode;
+import java.util.AbstractQueue;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A bounded, lock-free {@link BlockingQueue} over a power-of-two ring buffer, for a single
+ * consumer thread and either a single producer thread or many. See {@link
+ * Queues#newSpscArrayQueue} and {@link Queues#newMpscArrayQueue}.
+ *
+ * <p>The producer and consumer indices each live on their own cache line, so the two sides do not
+ * invalidate each other's caches on every operation, and are published with {@code lazySet}
+ * (an ordered store without a full fence). The consumer nulls out slots as it takes their
+ * elements, and a producer never writes a slot until the consumer index shows it has been freed.
+ * Blocking operations wait according to a {@link WaitStrategy} rather than through locks and
+ * signals, so producers never have to wake the consumer.
+ */
+abstract class RingBufferQueue<E> extends AbstractQueue<E> implements BlockingQueue<E> {
+  final AtomicReferenceArray<E> buffer;
+  final int mask;
+  final WaitStrategy waitStrategy;
+  final Sequence producerIndex = new Sequence();
+  final Sequence consumerIndex = new Sequence();
+
+  RingBufferQueue(int capacity, WaitStrategy waitStrategy) {
+    checkArgument(capacity > 0 && capacity <= 1 << 30,
+        "capacity must be in (0, 2^30]: %s", capacity);
+    int size = 1 << IntMath.log2(capacity, RoundingMode.CEILING);
+    this.buffer = new AtomicReferenceArray<E>(size);
+    this.mask = size - 1;
+    this.waitStrategy = checkNotNull(waitStrategy);
+  }
+
+  /** Returns the number of slots, which is the requested capacity rounded up to a power of two. */
+  final int capacity() {
+    return mask + 1;
+  }
+
+  // Consumer side; only ever called from the single consumer thread.
+
+  @Override public final E poll() {
+    long c = consumerIndex.value;
+    int i = (int) c & mask;
+    E e = buffer.get(i);
+    if (e == null) {
+      if (c == producerIndex.value) {
+        return null;
+      }
+      // a producer has claimed the slot but not yet stored into it; it will momentarily
+      do {
+        e = buffer.get(i);
+      } while (e == null);
+    }
+    buffer.lazySet(i, null);
+    consumerIndex.lazySet(c + 1);
+    return e;
+  }
+
+  @Override public final E peek() {
+    long c = consumerIndex.value;
+    int i = (int) c & mask;
+    E e = buffer.get(i);
+    if (e == null && c != producerIndex.value) {
+      do {
+        e = buffer.get(i);
+      } while (e == null);
+    }
+    return e;
+  }
+
+  @Override public final E take() throws InterruptedException {
+    E e;
+    for (int attempt = 0; (e = poll()) == null; attempt++) {
+      idle(attempt);
+    }
+    return e;
+  }
+
+  @Override public final E poll(long timeout, TimeUnit unit) throws InterruptedException {
+    E e = poll();
+    if (e != null) {
+      return e;
+    }
+    long deadline = System.nanoTime() + unit.toNanos(timeout);
+    for (int attempt = 0; (e = poll()) == null; attempt++) {
+      if (System.nanoTime() - deadline >= 0) {
+        return null;
+      }
+      idle(attempt);
+    }
+    return e;
+  }
+
+  @Override public final int drainTo(Collection<? super E> c) {
+    return drainTo(c, Integer.MAX_VALUE);
+  }
+
+  @Override public final int drainTo(Collection<? super E> c, int maxElements) {
+    checkNotNull(c);
+    checkArgument(c != this, "cannot drain a queue into itself");
+    int n = 0;
+    E e;
+    while (n < maxElements && (e = poll()) != null) {
+      c.add(e);
+      n++;
+    }
+    return n;
+  }
+
+  // Producer side
+
+  @Override public final void put(E e) throws InterruptedException {
+    checkNotNull(e);
+    for (int attempt = 0; !offer(e); attempt++) {
+      idle(attempt);
+    }
+  }
+
+  @Override public final boolean offer(E e, long timeout, TimeUnit unit)
+      throws InterruptedException {
+    if (offer(e)) {
+      return true;
+    }
+    long deadline = System.nanoTime() + unit.toNanos(timeout);
+    for (int attempt = 0; !offer(e); attempt++) {
+      if (System.nanoTime() - deadline >= 0) {
+        return false;
+      }
+      idle(attempt);
+    }
+    return true;
+  }
+
+  private void idle(int attempt) throws InterruptedException {
+    if (Thread.interrupted()) {
+      throw new InterruptedException();
+    }
+    waitStrategy.idle(attempt);
+  }
+
+  // Either side
+
+  @Override public final int size() {
+    // read the consumer index on both sides of the producer index, so the two are consistent
+    long after = consumerIndex.value;
+    for (;;) {
+      long before = after;
+      long p = producerIndex.value;
+      after = consumerIndex.value;
+      if (before == after) {
+        long size = p - after;
+        return (int) Math.max(0, Math.min(size, capacity()));
+      }
+    }
+  }
+
+  @Override public final boolean isEmpty() {
+    return consumerIndex.value == producerIndex.value;
+  }
+
+  @Override public final int remainingCapacity() {
+    return capacity() - size();
+  }
+
+  /**
+   * Returns a weakly consistent iterator over a snapshot of the elements. Its {@code remove}
+   * method, and therefore {@link #remove(Object)}, is not supported, since only the consumer may
+   * take elements, and only from the head.
+   */
+  @Override public final Iterator<E> iterator() {
+    List<E> snapshot = Lists.newArrayList();
+    long p = producerIndex.value;
+    for (long c = consumerIndex.value; c < p; c++) {
+      E e = buffer.get((int) c & mask);
+      if (e != null) {
+        snapshot.add(e);
+      }
+    }
+    return Iterators.unmodifiableIterator(snapshot.iterator());
+  }
+
+  /*
+   * Cache-line padding: the superclass fields come first in the object layout, so the value sits
+   * between two runs of seven longs, and no other hot field can share its cache line.
+   */
+
+  @SuppressWarnings("unused")
+  static class LeftPadding {
+    long p1, p2, p3, p4, p5, p6, p7;
+  }
+
+  static class SequenceValue extends LeftPadding {
+    volatile long value;
+  }
+
+  @SuppressWarnings("unused")
+  static final class Sequence extends SequenceValue {
+    private static final AtomicLongFieldUpdater<SequenceValue> updater =
+        AtomicLongFieldUpdater.newUpdater(SequenceValue.class, "value");
+
+    long p9, p10, p11, p12, p13, p14, p15;
+
+    void lazySet(long newValue) {
+      updater.lazySet(this, newValue);
+    }
+
+    boolean compareAndSet(long expect, long update) {
+      return updater.compareAndSet(this, expect, update);
+    }
+  }
+
+  /** A queue for a single producer thread, which publishes each element with one ordered store. */
+  static final class SingleProducer<E> extends RingBufferQueue<E> {
+    SingleProducer(int capacity, WaitStrategy waitStrategy) {
+      super(capacity, waitStrategy);
+    }
+
+    @Override public boolean offer(E e) {
+      checkNotNull(e);
+      long p = producerIndex.value;
+      int i = (int) p & mask;
+      if (buffer.get(i) != null) {
+        return false; // full: the consumer has not yet freed this slot
+      }
+      buffer.lazySet(i, e);
+      producerIndex.lazySet(p + 1);
+      return true;
+    }
+  }
+
+  /**
+   * A queue for any number of producer threads, which claim slots by a compare-and-set on the
+   * producer index and then store into them.
+   */
+  static final class MultiProducer<E> extends RingBufferQueue<E> {
+    MultiProducer(int capacity, WaitStrategy waitStrategy) {
+      super(capacity, waitStrategy);
+    }
+
+    @Override public boolean offer(E e) {
+      checkNotNull(e);
+      int capacity = capacity();
+      for (;;) {
+        long p = producerIndex.value;
+        if (p - consumerIndex.value >= capacity) {
+          return false;
+        }
+        if (producerIndex.compareAndSet(p, p + 1)) {
+          buffer.lazySet((int) p & mask, e);
+          return true;
+        }
+      }
+    }
+  }
+}
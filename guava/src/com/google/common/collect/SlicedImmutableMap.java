@@ -0,0 +1,383 @@
+/*
+ * Copyright (C) 2012 The Guava Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.common.collect;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkElementIndex;
+
+import com.google.common.annotations.GwtCompatible;
+import com.google.common.collect.ImmutableMultimap.Grouping;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.Map.Entry;
+
+import javax.annotation.Nullable;
+
+/**
+ * The map underlying {@link ImmutableListMultimap} and {@link
+ * ImmutableSetMultimap}, which stores the values of all keys in one flat array
+ * instead of in a collection per key.
+ *
+ * <p>The distinct keys are kept in an array, and the values of the key at
+ * index {@code i} occupy positions {@code offsets[i]} (inclusive) through
+ * {@code offsets[i + 1]} (exclusive) of the values array. An open-addressed
+ * table of key indexes, probed linearly, finds the index of a key. The
+ * collection that {@link #get} returns is a view of its key's slice of the
+ * values array, created on each call, so a multimap costs two references and
+ * an {@code int} per key plus one reference per value, and about one table
+ * slot for each. A map from keys to collections, by contrast, costs an entry
+ * and a collection object per key, and usually an array per key too.
+ *
+ * <p>Every key has at least one value. Slices are partial views, so copying
+ * one with {@code ImmutableList.copyOf} or {@code ImmutableSet.copyOf} does not
+ * retain the values of other keys.
+ */
+@GwtCompatible(serializable = true, emulated = true)
+@SuppressWarnings("serial") // uses writeReplace(), not default serialization
+abstract class SlicedImmutableMap<K, V, C extends ImmutableCollection<V>>
+    extends ImmutableMap<K, C> {
+  private static final int ABSENT = -1;
+
+  // the distinct keys, in iteration order
+  final transient Object[] keys;
+  // offsets[i] is the position of the first value of keys[i] in allValues,
+  // and offsets[keys.length] is the total number of values
+  final transient int[] offsets;
+  final transient Object[] allValues;
+  // indexes into keys, in hashed positions
+  private final transient int[] keyTable;
+  private final transient int keySetHashCode;
+
+  SlicedImmutableMap(Object[] keys, int[] offsets, Object[] allValues) {
+    this.keys = keys;
+    this.offsets = offsets;
+    this.allValues = allValues;
+    this.keyTable = newTable(keys.length);
+    int mask = keyTable.length - 1;
+    int keySetHashCodeMutable = 0;
+    for (int keyIndex = 0; keyIndex < keys.length; keyIndex++) {
+      Object key = keys[keyIndex];
+      int keyHashCode = key.hashCode();
+      keySetHashCodeMutable += keyHashCode;
+      for (int h = Hashing.smear(keyHashCode); ; h++) {
+        int existing = keyTable[h & mask];
+        if (existing == ABSENT) {
+          keyTable[h & mask] = keyIndex;
+          break;
+        }
+        checkArgument(!key.equals(keys[existing]), "duplicate key: %s", key);
+      }
+    }
+    this.keySetHashCode = keySetHashCodeMutable;
+  }
+
+  static int[] newTable(int size) {
+    int[] table = new int[ImmutableSet.chooseTableSize(Math.max(size, 2))];
+    Arrays.fill(table, ABSENT);
+    return table;
+  }
+
+  /** Returns a view of the values of the key at {@code keyIndex}. */
+  abstract C slice(int keyIndex);
+
+  /** Returns the index of {@code key} in {@link #keys}, or {@code -1}. */
+  final int keyIndex(@Nullable Object key) {
+    if (key == null) {
+      return -1;
+    }
+    int[] table = keyTable;
+    int mask = table.length - 1;
+    for (int h = Hashing.smear(key.hashCode()); ; h++) {
+      int index = table[h & mask];
+      if (index == ABSENT) {
+        return -1;
+      } else if (key.equals(keys[index])) {
+        return index;
+      }
+    }
+  }
+
+  @SuppressWarnings("unchecked") // only K's are put into keys
+  final K key(int keyIndex) {
+    return (K) keys[keyIndex];
+  }
+
+  /** Returns the number of values of the key at {@code keyIndex}. */
+  final int sliceSize(int keyIndex) {
+    return offsets[keyIndex + 1] - offsets[keyIndex];
+  }
+
+  /** Returns the values of the key at {@code keyIndex} as a list view. */
+  final <E> ImmutableList<E> sliceAsList(int keyIndex) {
+    return new RegularImmutableList<E>(
+        allValues, offsets[keyIndex], sliceSize(keyIndex));
+  }
+
+  /** Returns the total number of values of all keys. */
+  final int valueCount() {
+    return offsets[keys.length];
+  }
+
+  @Override public C get(@Nullable Object key) {
+    int keyIndex = keyIndex(key);
+    return (keyIndex == -1) ? null : slice(keyIndex);
+  }
+
+  @Override public boolean containsKey(@Nullable Object key) {
+    return keyIndex(key) != -1;
+  }
+
+  @Override public boolean containsValue(@Nullable Object value) {
+    if (value == null) {
+      return false;
+    }
+    for (int keyIndex = 0; keyIndex < keys.length; keyIndex++) {
+      if (slice(keyIndex).equals(value)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  @Override public int size() {
+    return keys.length;
+  }
+
+  @Override boolean isPartialView() {
+    return false;
+  }
+
+  @Override ImmutableSet<Entry<K, C>> createEntrySet() {
+    return new EntrySet() {
+      @Override public UnmodifiableIterator<Entry<K, C>> iterator() {
+        return asList().iterator();
+      }
+
+      @Override ImmutableList<Entry<K, C>> createAsList() {
+        return new ImmutableList<Entry<K, C>>() {
+          @Override public Entry<K, C> get(int index) {
+            checkElementIndex(index, size());
+            return Maps.immutableEntry(key(index), slice(index));
+          }
+
+          @Override public int size() {
+            return keys.length;
+          }
+
+          @Override boolean isPartialView() {
+            return true;
+          }
+        };
+      }
+    };
+  }
+
+  @Override ImmutableSet<K> createKeySet() {
+    return new KeySet(keySetHashCode) {
+      @Override public UnmodifiableIterator<K> iterator() {
+        return asList().iterator();
+      }
+
+      @Override ImmutableList<K> createAsList() {
+        return new RegularImmutableList<K>(keys);
+      }
+    };
+  }
+
+  @Override Object writeReplace() {
+    return new SerializedForm(this);
+  }
+
+  /**
+   * Serialized form which retains the flat layout, so that a deserialized
+   * multimap's {@code asMap()} is again a {@code SlicedImmutableMap}.
+   */
+  private static final class SerializedForm implements Serializable {
+    private final Object[] keys;
+    private final int[] offsets;
+    private final Object[] values;
+    private final boolean sets;
+
+    SerializedForm(SlicedImmutableMap<?, ?, ?> map) {
+      this.keys = map.keys;
+      this.offsets = map.offsets;
+      this.values = map.allValues;
+      this.sets = map instanceof SetSlices;
+    }
+
+    Object readResolve() {
+      Grouping grouping = new Grouping(keys, offsets, values);
+      return sets
+          ? SetSlices.create(grouping)
+          : new ListSlices<Object, Object>(grouping);
+    }
+
+    private static final long serialVersionUID = 0;
+  }
+
+  /** A map whose values are lists, for {@link ImmutableListMultimap}. */
+  static final class ListSlices<K, V>
+      extends SlicedImmutableMap<K, V, ImmutableList<V>> {
+    ListSlices(Grouping grouping) {
+      super(grouping.keys, grouping.offsets, grouping.values);
+    }
+
+    @Override ImmutableList<V> slice(int keyIndex) {
+      return sliceAsList(keyIndex);
+    }
+  }
+
+  /**
+   * A map whose values are sets, for {@link ImmutableSetMultimap}. A second
+   * table, of value positions hashed together with their key indexes, answers
+   * whether a key maps to a value.
+   */
+  static final class SetSlices<K, V>
+      extends SlicedImmutableMap<K, V, ImmutableSet<V>> {
+    /**
+     * Returns the map of the specified grouping, keeping only the first
+     * occurrence of each value of a key. The grouping's arrays are reused and
+     * must not be modified afterwards.
+     */
+    static <K, V> SetSlices<K, V> create(Grouping grouping) {
+      Object[] keys = grouping.keys;
+      int[] offsets = grouping.offsets;
+      Object[] values = grouping.values;
+      int[] entryTable = newTable(values.length);
+      int mask = entryTable.length - 1;
+      int distinctCount = 0;
+      int[] distinctOffsets = new int[keys.length + 1];
+      for (int keyIndex = 0; keyIndex < keys.length; keyIndex++) {
+        distinctOffsets[keyIndex] = distinctCount;
+        for (int i = offsets[keyIndex]; i < offsets[keyIndex + 1]; i++) {
+          Object value = values[i];
+          for (int h = entryHash(keyIndex, value); ; h++) {
+            int existing = entryTable[h & mask];
+            if (existing == ABSENT) {
+              entryTable[h & mask] = distinctCount;
+              // distinctCount <= i, so this never overwrites an unread value
+              values[distinctCount++] = value;
+              break;
+            } else if (existing >= distinctOffsets[keyIndex]
+                && value.equals(values[existing])) {
+              break;
+            }
+          }
+        }
+      }
+      distinctOffsets[keys.length] = distinctCount;
+      if (distinctCount < values.length) {
+        values = ObjectArrays.arraysCopyOf(values, distinctCount);
+      }
+      return new SetSlices<K, V>(keys, distinctOffsets, values, entryTable);
+    }
+
+    private static int entryHash(int keyIndex, Object value) {
+      return Hashing.smear(31 * keyIndex + value.hashCode());
+    }
+
+    // positions in allValues, hashed by entryHash
+    private final transient int[] entryTable;
+
+    private SetSlices(Object[] keys, int[] offsets, Object[] allValues,
+        int[] entryTable) {
+      super(keys, offsets, allValues);
+      this.entryTable = entryTable;
+    }
+
+    boolean sliceContains(int keyIndex, @Nullable Object value) {
+      if (value == null) {
+        return false;
+      }
+      int[] table = entryTable;
+      int mask = table.length - 1;
+      int from = offsets[keyIndex];
+      int to = offsets[keyIndex + 1];
+      for (int h = entryHash(keyIndex, value); ; h++) {
+        int position = table[h & mask];
+        if (position == ABSENT) {
+          return false;
+        } else if (position >= from && position < to
+            && value.equals(allValues[position])) {
+          return true;
+        }
+      }
+    }
+
+    @Override ImmutableSet<V> slice(int keyIndex) {
+      return new SliceSet(keyIndex);
+    }
+
+    private final class SliceSet extends ImmutableSet<V> {
+      final int keyIndex;
+
+      SliceSet(int keyIndex) {
+        this.keyIndex = keyIndex;
+      }
+
+      @Override public int size() {
+        return sliceSize(keyIndex);
+      }
+
+      @Override public boolean isEmpty() {
+        return false;
+      }
+
+      @Override public boolean contains(@Nullable Object object) {
+        return sliceContains(keyIndex, object);
+      }
+
+      @Override public UnmodifiableIterator<V> iterator() {
+        return asList().iterator();
+      }
+
+      @Override ImmutableList<V> createAsList() {
+        return sliceAsList(keyIndex);
+      }
+
+      @Override boolean isPartialView() {
+        return true;
+      }
+
+      @Override Object writeReplace() {
+        return new SliceSetForm(toArray());
+      }
+    }
+
+    /**
+     * Serialized form of a slice, which holds only the slice's values rather than the whole map.
+     * It is read back as the slice of a new single-key map, so that it is again equal to the
+     * original and of the same class.
+     */
+    private static final class SliceSetForm implements Serializable {
+      private final Object[] values;
+
+      SliceSetForm(Object[] values) {
+        this.values = values;
+      }
+
+      Object readResolve() {
+        Grouping grouping = new Grouping(
+            new Object[] {new Object()}, new int[] {0, values.length}, values);
+        return SetSlices.create(grouping).slice(0);
+      }
+
+      private static final long serialVersionUID = 0;
+    }
+  }
+}
@@ -19,12 +19,9 @@ package com.google.common.collect;
 import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
 import static com.google.common.base.Preconditions.checkState;
-import static com.google.common.collect.BstSide.LEFT;
-import static com.google.common.collect.BstSide.RIGHT;
 
 import com.google.common.annotations.GwtCompatible;
 import com.google.common.annotations.GwtIncompatible;
-import com.google.common.base.Optional;
 import com.google.common.primitives.Ints;
 
 import java.io.IOException;
@@ -34,6 +31,7 @@ import java.io.Serializable;
 import java.util.Comparator;
 import java.util.ConcurrentModificationException;
 import java.util.Iterator;
+import java.util.NoSuchElementException;
 
 import javax.annotation.Nullable;
 
@@ -49,6 +47,12 @@ import javax.annotation.Nullable;
  * resulting multiset will violate the {@link java.util.Collection} contract,
  * which is specified in terms of {@link Object#equals}.
  *
+ * <p>The elements are kept in a mutable AVL tree with one node per distinct
+ * element. Each node records the size of its subtree, so that {@code size()}
+ * of the multiset and of its range views takes time logarithmic in the number
+ * of distinct elements, and an update changes nodes in place instead of
+ * allocating new ones.
+ *
  * <p>See the Guava User Guide article on <a href=
  * "http://code.google.com/p/guava-libraries/wiki/NewCollectionTypesExplained#Multiset">
  * {@code Multiset}</a>.
@@ -128,67 +132,149 @@ public final class TreeMultiset<E> extends AbstractSortedMultiset<E>
     return super.iterator();
   }
 
-  private TreeMultiset(Comparator<? super E> comparator) {
-    super(comparator);
-    this.range = GeneralRange.all(comparator);
-    this.rootReference = new Reference<Node<E>>();
-  }
 
-  private TreeMultiset(GeneralRange<E> range, Reference<Node<E>> root) {
+  private final transient Reference<AvlNode<E>> rootReference;
+  private final transient GeneralRange<E> range;
+  private final transient AvlNode<E> header;
+
+  TreeMultiset(Reference<AvlNode<E>> rootReference, GeneralRange<E> range, AvlNode<E> endLink) {
     super(range.comparator());
+    this.rootReference = rootReference;
     this.range = range;
-    this.rootReference = root;
+    this.header = endLink;
   }
 
-  E checkElement(Object o) {
-    @SuppressWarnings("unchecked")
-    E cast = (E) o;
-    // Make sure the object is accepted by the comparator (e.g., the right type, possibly non-null).
-    comparator.compare(cast, cast);
-    return cast;
+  TreeMultiset(Comparator<? super E> comparator) {
+    super(comparator);
+    this.range = GeneralRange.all(comparator);
+    this.header = new AvlNode<E>(null, 1);
+    successor(header, header);
+    this.rootReference = new Reference<AvlNode<E>>();
   }
 
-  private transient final GeneralRange<E> range;
+  /**
+   * A function which can be summed across a subtree.
+   */
+  private enum Aggregate {
+    SIZE {
+      @Override
+      int nodeAggregate(AvlNode<?> node) {
+        return node.elemCount;
+      }
+
+      @Override
+      long treeAggregate(@Nullable AvlNode<?> root) {
+        return (root == null) ? 0 : root.totalCount;
+      }
+    },
+    DISTINCT {
+      @Override
+      int nodeAggregate(AvlNode<?> node) {
+        return 1;
+      }
 
-  private transient final Reference<Node<E>> rootReference;
+      @Override
+      long treeAggregate(@Nullable AvlNode<?> root) {
+        return (root == null) ? 0 : root.distinctElements;
+      }
+    };
 
-  static final class Reference<T> {
-    T value;
+    abstract int nodeAggregate(AvlNode<?> node);
 
-    public Reference() {}
+    abstract long treeAggregate(@Nullable AvlNode<?> root);
+  }
 
-    public T get() {
-      return value;
+  private long aggregateForEntries(Aggregate aggr) {
+    AvlNode<E> root = rootReference.get();
+    long total = aggr.treeAggregate(root);
+    if (range.hasLowerBound()) {
+      total -= aggregateBelowRange(aggr, root);
     }
+    if (range.hasUpperBound()) {
+      total -= aggregateAboveRange(aggr, root);
+    }
+    return total;
+  }
 
-    public boolean compareAndSet(T expected, T newValue) {
-      if (value == expected) {
-        value = newValue;
-        return true;
+  private long aggregateBelowRange(Aggregate aggr, @Nullable AvlNode<E> node) {
+    if (node == null) {
+      return 0;
+    }
+    int cmp = comparator().compare(range.getLowerEndpoint(), node.elem);
+    if (cmp < 0) {
+      return aggregateBelowRange(aggr, node.left);
+    } else if (cmp == 0) {
+      switch (range.getLowerBoundType()) {
+        case OPEN:
+          return aggr.nodeAggregate(node) + aggr.treeAggregate(node.left);
+        case CLOSED:
+          return aggr.treeAggregate(node.left);
+        default:
+          throw new AssertionError();
       }
-      return false;
+    } else {
+      return aggr.treeAggregate(node.left) + aggr.nodeAggregate(node)
+          + aggregateBelowRange(aggr, node.right);
     }
   }
 
-  @Override
-  int distinctElements() {
-    Node<E> root = rootReference.get();
-    return Ints.checkedCast(BstRangeOps.totalInRange(distinctAggregate(), range, root));
+  private long aggregateAboveRange(Aggregate aggr, @Nullable AvlNode<E> node) {
+    if (node == null) {
+      return 0;
+    }
+    int cmp = comparator().compare(range.getUpperEndpoint(), node.elem);
+    if (cmp > 0) {
+      return aggregateAboveRange(aggr, node.right);
+    } else if (cmp == 0) {
+      switch (range.getUpperBoundType()) {
+        case OPEN:
+          return aggr.nodeAggregate(node) + aggr.treeAggregate(node.right);
+        case CLOSED:
+          return aggr.treeAggregate(node.right);
+        default:
+          throw new AssertionError();
+      }
+    } else {
+      return aggr.treeAggregate(node.right) + aggr.nodeAggregate(node)
+          + aggregateAboveRange(aggr, node.left);
+    }
   }
 
   @Override
   public int size() {
-    Node<E> root = rootReference.get();
-    return Ints.saturatedCast(BstRangeOps.totalInRange(sizeAggregate(), range, root));
+    return Ints.saturatedCast(aggregateForEntries(Aggregate.SIZE));
+  }
+
+  @Override
+  int distinctElements() {
+    return Ints.saturatedCast(aggregateForEntries(Aggregate.DISTINCT));
+  }
+
+  E checkElement(Object o) {
+    @SuppressWarnings("unchecked")
+    E cast = (E) o;
+    // Make sure the object is accepted by the comparator (e.g., the right type, possibly non-null).
+    comparator.compare(cast, cast);
+    return cast;
   }
 
   @Override
   public int count(@Nullable Object element) {
     try {
       E e = checkElement(element);
-      if (range.contains(e)) {
-        Node<E> node = BstOperations.seek(comparator(), rootReference.get(), e);
-        return countOrZero(node);
+      AvlNode<E> node = rootReference.get();
+      if (!range.contains(e)) {
+        return 0;
+      }
+      while (node != null) {
+        int cmp = comparator().compare(e, node.elem);
+        if (cmp < 0) {
+          node = node.left;
+        } else if (cmp > 0) {
+          node = node.right;
+        } else {
+          return node.elemCount;
+        }
       }
       return 0;
     } catch (ClassCastException e) {
@@ -198,186 +284,269 @@ public final class TreeMultiset<E> extends AbstractSortedMultiset<E>
     }
   }
 
-  private int mutate(@Nullable E e, MultisetModifier modifier) {
-    BstMutationRule<E, Node<E>> mutationRule = BstMutationRule.createRule(
-        modifier,
-        BstCountBasedBalancePolicies.
-          <E, Node<E>>singleRebalancePolicy(distinctAggregate()),
-        nodeFactory());
-    BstMutationResult<E, Node<E>> mutationResult =
-        BstOperations.mutate(comparator(), mutationRule, rootReference.get(), e);
-    if (!rootReference.compareAndSet(
-        mutationResult.getOriginalRoot(), mutationResult.getChangedRoot())) {
-      throw new ConcurrentModificationException();
-    }
-    Node<E> original = mutationResult.getOriginalTarget();
-    return countOrZero(original);
-  }
-
   @Override
   public int add(E element, int occurrences) {
     checkElement(element);
+    checkArgument(occurrences >= 0, "occurrences must be >= 0 but was %s", occurrences);
     if (occurrences == 0) {
       return count(element);
     }
     checkArgument(range.contains(element));
-    return mutate(element, new AddModifier(occurrences));
+    AvlNode<E> root = rootReference.get();
+    if (root == null) {
+      AvlNode<E> newRoot = new AvlNode<E>(element, occurrences);
+      successor(header, newRoot, header);
+      rootReference.checkAndSet(root, newRoot);
+      return 0;
+    }
+    int[] result = new int[1]; // used as a mutable int reference to hold result
+    AvlNode<E> newRoot = root.add(comparator(), element, occurrences, result);
+    rootReference.checkAndSet(root, newRoot);
+    return result[0];
   }
 
   @Override
   public int remove(@Nullable Object element, int occurrences) {
+    checkArgument(occurrences >= 0, "occurrences must be >= 0 but was %s", occurrences);
     if (occurrences == 0) {
       return count(element);
     }
+    AvlNode<E> root = rootReference.get();
+    int[] result = new int[1]; // used as a mutable int reference to hold result
+    AvlNode<E> newRoot;
     try {
       E e = checkElement(element);
-      return range.contains(e) ? mutate(e, new RemoveModifier(occurrences)) : 0;
+      if (!range.contains(e) || root == null) {
+        return 0;
+      }
+      newRoot = root.remove(comparator(), e, occurrences, result);
     } catch (ClassCastException e) {
       return 0;
     } catch (NullPointerException e) {
       return 0;
     }
+    rootReference.checkAndSet(root, newRoot);
+    return result[0];
   }
 
   @Override
-  public boolean setCount(E element, int oldCount, int newCount) {
+  public int setCount(E element, int count) {
     checkElement(element);
+    checkArgument(count >= 0, "count must be >= 0 but was %s", count);
     checkArgument(range.contains(element));
-    return mutate(element, new ConditionalSetCountModifier(oldCount, newCount))
-        == oldCount;
+    AvlNode<E> root = rootReference.get();
+    if (root == null) {
+      if (count > 0) {
+        add(element, count);
+      }
+      return 0;
+    }
+    int[] result = new int[1]; // used as a mutable int reference to hold result
+    AvlNode<E> newRoot = root.setCount(comparator(), element, count, result);
+    rootReference.checkAndSet(root, newRoot);
+    return result[0];
   }
 
   @Override
-  public int setCount(E element, int count) {
+  public boolean setCount(E element, int oldCount, int newCount) {
     checkElement(element);
+    checkArgument(oldCount >= 0 & newCount >= 0);
     checkArgument(range.contains(element));
-    return mutate(element, new SetCountModifier(count));
+    AvlNode<E> root = rootReference.get();
+    if (root == null) {
+      if (oldCount == 0) {
+        if (newCount > 0) {
+          add(element, newCount);
+        }
+        return true;
+      } else {
+        return false;
+      }
+    }
+    int[] result = new int[1]; // used as a mutable int reference to hold result
+    AvlNode<E> newRoot = root.setCount(comparator(), element, oldCount, newCount, result);
+    rootReference.checkAndSet(root, newRoot);
+    return result[0] == oldCount;
   }
 
-  private BstPathFactory<Node<E>, BstInOrderPath<Node<E>>> pathFactory() {
-    return BstInOrderPath.inOrderFactory();
+  private Entry<E> wrapEntry(final AvlNode<E> baseEntry) {
+    return new Multisets.AbstractEntry<E>() {
+      @Override
+      public E getElement() {
+        return baseEntry.elem;
+      }
+
+      @Override
+      public int getCount() {
+        int result = baseEntry.elemCount;
+        if (result == 0) {
+          // the node was removed from the tree; the element may have been added back since
+          return count(getElement());
+        } else {
+          return result;
+        }
+      }
+    };
   }
 
-  @Override
-  Iterator<Entry<E>> entryIterator() {
-    Node<E> root = rootReference.get();
-    final BstInOrderPath<Node<E>> startingPath =
-        BstRangeOps.furthestPath(range, LEFT, pathFactory(), root);
-    return iteratorInDirection(startingPath, RIGHT);
+  /**
+   * Returns the first node in the tree that is in range, or {@code null} if there is none.
+   */
+  @Nullable private AvlNode<E> firstNode() {
+    AvlNode<E> root = rootReference.get();
+    if (root == null) {
+      return null;
+    }
+    AvlNode<E> node;
+    if (range.hasLowerBound()) {
+      E endpoint = range.getLowerEndpoint();
+      node = root.ceiling(comparator(), endpoint);
+      if (node == null) {
+        return null;
+      }
+      if (range.getLowerBoundType() == BoundType.OPEN
+          && comparator().compare(endpoint, node.elem) == 0) {
+        node = node.succ;
+      }
+    } else {
+      node = header.succ;
+    }
+    return (node == header || !range.contains(node.elem)) ? null : node;
+  }
+
+  /**
+   * Returns the last node in the tree that is in range, or {@code null} if there is none.
+   */
+  @Nullable private AvlNode<E> lastNode() {
+    AvlNode<E> root = rootReference.get();
+    if (root == null) {
+      return null;
+    }
+    AvlNode<E> node;
+    if (range.hasUpperBound()) {
+      E endpoint = range.getUpperEndpoint();
+      node = root.floor(comparator(), endpoint);
+      if (node == null) {
+        return null;
+      }
+      if (range.getUpperBoundType() == BoundType.OPEN
+          && comparator().compare(endpoint, node.elem) == 0) {
+        node = node.pred;
+      }
+    } else {
+      node = header.pred;
+    }
+    return (node == header || !range.contains(node.elem)) ? null : node;
   }
 
   @Override
-  Iterator<Entry<E>> descendingEntryIterator() {
-    Node<E> root = rootReference.get();
-    final BstInOrderPath<Node<E>> startingPath =
-        BstRangeOps.furthestPath(range, RIGHT, pathFactory(), root);
-    return iteratorInDirection(startingPath, LEFT);
-  }
-
-  private Iterator<Entry<E>> iteratorInDirection(
-      @Nullable BstInOrderPath<Node<E>> start, final BstSide direction) {
-    final Iterator<BstInOrderPath<Node<E>>> pathIterator =
-        new AbstractSequentialIterator<BstInOrderPath<Node<E>>>(start) {
-          @Override
-          protected BstInOrderPath<Node<E>> computeNext(BstInOrderPath<Node<E>> previous) {
-            if (!previous.hasNext(direction)) {
-              return null;
-            }
-            BstInOrderPath<Node<E>> next = previous.next(direction);
-            // TODO(user): only check against one side
-            return range.contains(next.getTip().getKey()) ? next : null;
-          }
-        };
+  Iterator<Entry<E>> entryIterator() {
     return new Iterator<Entry<E>>() {
-      final ToRemove<E> toRemove = new ToRemove<E>();
+      AvlNode<E> current = firstNode();
+      Entry<E> prevEntry;
 
       @Override
       public boolean hasNext() {
-        return pathIterator.hasNext();
+        if (current == null) {
+          return false;
+        } else if (range.tooHigh(current.elem)) {
+          current = null;
+          return false;
+        } else {
+          return true;
+        }
       }
 
       @Override
       public Entry<E> next() {
-        BstInOrderPath<Node<E>> path = pathIterator.next();
-        return new LiveEntry(
-            toRemove.setAndGet(path.getTip().getKey()), path.getTip().elemCount());
+        if (!hasNext()) {
+          throw new NoSuchElementException();
+        }
+        Entry<E> result = wrapEntry(current);
+        prevEntry = result;
+        current = (current.succ == header) ? null : current.succ;
+        return result;
       }
 
       @Override
       public void remove() {
-        setCount(toRemove.getAndClear(), 0);
+        checkState(prevEntry != null);
+        setCount(prevEntry.getElement(), 0);
+        prevEntry = null;
       }
     };
   }
 
-  // If we were ever to resurrect AbstractRemovableIterator, we could use it instead.
-  private static final class ToRemove<E> {
-    @Nullable Optional<E> element;
-
-    E setAndGet(@Nullable E element) {
-      this.element = Optional.fromNullable(element);
-      return element;
-    }
-
-    E getAndClear() {
-      checkState(element != null);
-      E returnValue = element.orNull();
-      element = null;
-      return returnValue;
-    }
-  }
-
-  class LiveEntry extends Multisets.AbstractEntry<E> {
-    private Node<E> expectedRoot;
-    private final E element;
-    private int count;
+  @Override
+  Iterator<Entry<E>> descendingEntryIterator() {
+    return new Iterator<Entry<E>>() {
+      AvlNode<E> current = lastNode();
+      Entry<E> prevEntry = null;
 
-    private LiveEntry(E element, int count) {
-      this.expectedRoot = rootReference.get();
-      this.element = element;
-      this.count = count;
-    }
+      @Override
+      public boolean hasNext() {
+        if (current == null) {
+          return false;
+        } else if (range.tooLow(current.elem)) {
+          current = null;
+          return false;
+        } else {
+          return true;
+        }
+      }
 
-    @Override
-    public E getElement() {
-      return element;
-    }
+      @Override
+      public Entry<E> next() {
+        if (!hasNext()) {
+          throw new NoSuchElementException();
+        }
+        Entry<E> result = wrapEntry(current);
+        prevEntry = result;
+        current = (current.pred == header) ? null : current.pred;
+        return result;
+      }
 
-    @Override
-    public int getCount() {
-      if (rootReference.get() == expectedRoot) {
-        return count;
-      } else {
-        // check for updates
-        expectedRoot = rootReference.get();
-        return count = TreeMultiset.this.count(element);
+      @Override
+      public void remove() {
+        checkState(prevEntry != null);
+        setCount(prevEntry.getElement(), 0);
+        prevEntry = null;
       }
-    }
+    };
   }
 
   @Override
   public void clear() {
-    Node<E> root = rootReference.get();
-    Node<E> cleared = BstRangeOps.minusRange(range,
-        BstCountBasedBalancePolicies.<E, Node<E>>fullRebalancePolicy(distinctAggregate()),
-        nodeFactory(), root);
-    if (!rootReference.compareAndSet(root, cleared)) {
-      throw new ConcurrentModificationException();
+    if (!range.hasLowerBound() && !range.hasUpperBound()) {
+      // Unlink every node, so that outstanding entries and iterators see them as removed.
+      for (AvlNode<E> current = header.succ; current != header;) {
+        AvlNode<E> next = current.succ;
+        current.elemCount = 0;
+        current.left = null;
+        current.right = null;
+        current.pred = null;
+        current.succ = null;
+        current = next;
+      }
+      successor(header, header);
+      rootReference.clear();
+    } else {
+      Iterators.clear(entryIterator());
     }
   }
 
   @Override
   public SortedMultiset<E> headMultiset(E upperBound, BoundType boundType) {
     checkNotNull(upperBound);
-    return new TreeMultiset<E>(
-        range.intersect(GeneralRange.upTo(comparator, upperBound, boundType)), rootReference);
+    return new TreeMultiset<E>(rootReference,
+        range.intersect(GeneralRange.upTo(comparator, upperBound, boundType)), header);
   }
 
   @Override
   public SortedMultiset<E> tailMultiset(E lowerBound, BoundType boundType) {
     checkNotNull(lowerBound);
-    return new TreeMultiset<E>(
-        range.intersect(GeneralRange.downTo(comparator, lowerBound, boundType)), rootReference);
+    return new TreeMultiset<E>(rootReference,
+        range.intersect(GeneralRange.downTo(comparator, lowerBound, boundType)), header);
   }
 
   /**
@@ -390,171 +559,446 @@ public final class TreeMultiset<E> extends AbstractSortedMultiset<E>
     return super.comparator();
   }
 
-  private static final class Node<E> extends BstNode<E, Node<E>> implements Serializable {
-    private final long size;
-    private final int distinct;
+  /**
+   * The root of the tree, shared between a multiset and all of its range views. Every update
+   * checks that the root it started from is still current, so that an update which replaces the
+   * root cannot silently lose another one.
+   */
+  static final class Reference<T> {
+    @Nullable private T value;
 
-    private Node(E key, int elemCount, @Nullable Node<E> left,
-        @Nullable Node<E> right) {
-      super(key, left, right);
-      checkArgument(elemCount > 0);
-      this.size = elemCount + sizeOrZero(left) + sizeOrZero(right);
-      this.distinct = 1 + distinctOrZero(left) + distinctOrZero(right);
+    @Nullable public T get() {
+      return value;
     }
 
-    int elemCount() {
-      long result = size - sizeOrZero(childOrNull(LEFT))
-          - sizeOrZero(childOrNull(RIGHT));
-      return Ints.checkedCast(result);
+    public void checkAndSet(@Nullable T expected, T newValue) {
+      if (value != expected) {
+        throw new ConcurrentModificationException();
+      }
+      value = newValue;
     }
 
-    private Node(E key, int elemCount) {
-      this(key, elemCount, null, null);
+    void clear() {
+      value = null;
     }
-
-    private static final long serialVersionUID = 0;
   }
 
-  private static long sizeOrZero(@Nullable Node<?> node) {
-    return (node == null) ? 0 : node.size;
+  private static int distinctElements(@Nullable AvlNode<?> node) {
+    return (node == null) ? 0 : node.distinctElements;
   }
 
-  private static int distinctOrZero(@Nullable Node<?> node) {
-    return (node == null) ? 0 : node.distinct;
-  }
+  /**
+   * A mutable AVL tree node holding one distinct element and its count. Each node also keeps the
+   * number of distinct elements and the total count of its subtree, updated in place as the tree
+   * changes, so that sizes of range views are computed in logarithmic time.
+   *
+   * <p>Nodes are additionally threaded into a circular doubly-linked list through {@link #pred}
+   * and {@link #succ}, in element order, starting and ending at the multiset's header node; this
+   * lets iterators advance in constant time, even while they remove entries. A node keeps its
+   * element for its whole life: rebalancing relinks nodes rather than moving elements between
+   * them, and a node removed from the tree has its count set to zero.
+   */
+  private static final class AvlNode<E> {
+    @Nullable private final E elem;
 
-  private static int countOrZero(@Nullable Node<?> entry) {
-    return (entry == null) ? 0 : entry.elemCount();
-  }
+    // elemCount is 0 iff this node has been deleted.
+    private int elemCount;
 
-  @SuppressWarnings("unchecked")
-  private BstAggregate<Node<E>> distinctAggregate() {
-    return (BstAggregate) DISTINCT_AGGREGATE;
-  }
+    private int distinctElements;
+    private long totalCount;
+    private int height;
+    private AvlNode<E> left;
+    private AvlNode<E> right;
+    private AvlNode<E> pred;
+    private AvlNode<E> succ;
+
+    AvlNode(@Nullable E elem, int elemCount) {
+      checkArgument(elemCount > 0);
+      this.elem = elem;
+      this.elemCount = elemCount;
+      this.totalCount = elemCount;
+      this.distinctElements = 1;
+      this.height = 1;
+      this.left = null;
+      this.right = null;
+    }
 
-  private static final BstAggregate<Node<Object>> DISTINCT_AGGREGATE =
-      new BstAggregate<Node<Object>>() {
-    @Override
-    public int entryValue(Node<Object> entry) {
-      return 1;
+    private AvlNode<E> addRightChild(E e, int count) {
+      right = new AvlNode<E>(e, count);
+      successor(this, right, succ);
+      height = Math.max(2, height);
+      distinctElements++;
+      totalCount += count;
+      return this;
     }
 
-    @Override
-    public long treeValue(@Nullable Node<Object> tree) {
-      return distinctOrZero(tree);
+    private AvlNode<E> addLeftChild(E e, int count) {
+      left = new AvlNode<E>(e, count);
+      successor(pred, left, this);
+      height = Math.max(2, height);
+      distinctElements++;
+      totalCount += count;
+      return this;
     }
-  };
 
-  @SuppressWarnings("unchecked")
-  private BstAggregate<Node<E>> sizeAggregate() {
-    return (BstAggregate) SIZE_AGGREGATE;
-  }
+    AvlNode<E> add(Comparator<? super E> comparator, @Nullable E e, int count, int[] result) {
+      /*
+       * It speeds things up considerably to unconditionally add count to totalCount here,
+       * but that destroys failure atomicity in the case of count overflow. =(
+       */
+      int cmp = comparator.compare(e, elem);
+      if (cmp < 0) {
+        AvlNode<E> initLeft = left;
+        if (initLeft == null) {
+          result[0] = 0;
+          return addLeftChild(e, count);
+        }
+        int initHeight = initLeft.height;
+
+        left = initLeft.add(comparator, e, count, result);
+        if (result[0] == 0) {
+          distinctElements++;
+        }
+        this.totalCount += count;
+        return (left.height == initHeight) ? this : rebalance();
+      } else if (cmp > 0) {
+        AvlNode<E> initRight = right;
+        if (initRight == null) {
+          result[0] = 0;
+          return addRightChild(e, count);
+        }
+        int initHeight = initRight.height;
 
-  private static final BstAggregate<Node<Object>> SIZE_AGGREGATE =
-      new BstAggregate<Node<Object>>() {
-        @Override
-        public int entryValue(Node<Object> entry) {
-          return entry.elemCount();
+        right = initRight.add(comparator, e, count, result);
+        if (result[0] == 0) {
+          distinctElements++;
         }
+        this.totalCount += count;
+        return (right.height == initHeight) ? this : rebalance();
+      }
+
+      // adding count to me!  No rebalance possible.
+      result[0] = elemCount;
+      long resultCount = (long) elemCount + count;
+      checkArgument(resultCount <= Integer.MAX_VALUE, "Cannot add this many elements");
+      this.elemCount += count;
+      this.totalCount += count;
+      return this;
+    }
 
-        @Override
-        public long treeValue(@Nullable Node<Object> tree) {
-          return sizeOrZero(tree);
+    AvlNode<E> remove(Comparator<? super E> comparator, @Nullable E e, int count, int[] result) {
+      int cmp = comparator.compare(e, elem);
+      if (cmp < 0) {
+        AvlNode<E> initLeft = left;
+        if (initLeft == null) {
+          result[0] = 0;
+          return this;
         }
-      };
 
-  @SuppressWarnings("unchecked")
-  private BstNodeFactory<Node<E>> nodeFactory() {
-    return (BstNodeFactory) NODE_FACTORY;
-  }
+        left = initLeft.remove(comparator, e, count, result);
+
+        if (result[0] > 0) {
+          if (count >= result[0]) {
+            this.distinctElements--;
+            this.totalCount -= result[0];
+          } else {
+            this.totalCount -= count;
+          }
+        }
+        return (result[0] == 0) ? this : rebalance();
+      } else if (cmp > 0) {
+        AvlNode<E> initRight = right;
+        if (initRight == null) {
+          result[0] = 0;
+          return this;
+        }
+
+        right = initRight.remove(comparator, e, count, result);
 
-  private static final BstNodeFactory<Node<Object>> NODE_FACTORY =
-      new BstNodeFactory<Node<Object>>() {
-        @Override
-        public Node<Object> createNode(Node<Object> source, @Nullable Node<Object> left,
-            @Nullable Node<Object> right) {
-          return new Node<Object>(source.getKey(), source.elemCount(), left, right);
+        if (result[0] > 0) {
+          if (count >= result[0]) {
+            this.distinctElements--;
+            this.totalCount -= result[0];
+          } else {
+            this.totalCount -= count;
+          }
         }
-      };
-
-  private abstract class MultisetModifier implements BstModifier<E, Node<E>> {
-    abstract int newCount(int oldCount);
-
-    @Nullable
-    @Override
-    public BstModificationResult<Node<E>> modify(E key, @Nullable Node<E> originalEntry) {
-      int oldCount = countOrZero(originalEntry);
-      int newCount = newCount(oldCount);
-      if (oldCount == newCount) {
-        return BstModificationResult.identity(originalEntry);
-      } else if (newCount == 0) {
-        return BstModificationResult.rebalancingChange(originalEntry, null);
-      } else if (oldCount == 0) {
-        return BstModificationResult.rebalancingChange(null, new Node<E>(key, newCount));
+        return (result[0] == 0) ? this : rebalance();
+      }
+
+      // removing count from me!
+      result[0] = elemCount;
+      if (count >= elemCount) {
+        return deleteMe();
       } else {
-        return BstModificationResult.rebuildingChange(originalEntry,
-            new Node<E>(originalEntry.getKey(), newCount));
+        this.elemCount -= count;
+        this.totalCount -= count;
+        return this;
       }
     }
-  }
 
-  private final class AddModifier extends MultisetModifier {
-    private final int countToAdd;
+    AvlNode<E> setCount(Comparator<? super E> comparator, @Nullable E e, int count, int[] result) {
+      int cmp = comparator.compare(e, elem);
+      if (cmp < 0) {
+        AvlNode<E> initLeft = left;
+        if (initLeft == null) {
+          result[0] = 0;
+          return (count > 0) ? addLeftChild(e, count) : this;
+        }
+
+        left = initLeft.setCount(comparator, e, count, result);
+
+        if (count == 0 && result[0] != 0) {
+          this.distinctElements--;
+        } else if (count > 0 && result[0] == 0) {
+          this.distinctElements++;
+        }
+
+        this.totalCount += count - result[0];
+        return rebalance();
+      } else if (cmp > 0) {
+        AvlNode<E> initRight = right;
+        if (initRight == null) {
+          result[0] = 0;
+          return (count > 0) ? addRightChild(e, count) : this;
+        }
 
-    private AddModifier(int countToAdd) {
-      checkArgument(countToAdd > 0);
-      this.countToAdd = countToAdd;
+        right = initRight.setCount(comparator, e, count, result);
+
+        if (count == 0 && result[0] != 0) {
+          this.distinctElements--;
+        } else if (count > 0 && result[0] == 0) {
+          this.distinctElements++;
+        }
+
+        this.totalCount += count - result[0];
+        return rebalance();
+      }
+
+      // setting my count
+      result[0] = elemCount;
+      if (count == 0) {
+        return deleteMe();
+      }
+      this.totalCount += count - elemCount;
+      this.elemCount = count;
+      return this;
     }
 
-    @Override
-    int newCount(int oldCount) {
-      checkArgument(countToAdd <= Integer.MAX_VALUE - oldCount, "Cannot add this many elements");
-      return oldCount + countToAdd;
+    AvlNode<E> setCount(Comparator<? super E> comparator, @Nullable E e, int expectedCount,
+        int newCount, int[] result) {
+      int cmp = comparator.compare(e, elem);
+      if (cmp < 0) {
+        AvlNode<E> initLeft = left;
+        if (initLeft == null) {
+          result[0] = 0;
+          if (expectedCount == 0 && newCount > 0) {
+            return addLeftChild(e, newCount);
+          }
+          return this;
+        }
+
+        left = initLeft.setCount(comparator, e, expectedCount, newCount, result);
+
+        if (result[0] == expectedCount) {
+          if (newCount == 0 && result[0] != 0) {
+            this.distinctElements--;
+          } else if (newCount > 0 && result[0] == 0) {
+            this.distinctElements++;
+          }
+          this.totalCount += newCount - result[0];
+        }
+        return rebalance();
+      } else if (cmp > 0) {
+        AvlNode<E> initRight = right;
+        if (initRight == null) {
+          result[0] = 0;
+          if (expectedCount == 0 && newCount > 0) {
+            return addRightChild(e, newCount);
+          }
+          return this;
+        }
+
+        right = initRight.setCount(comparator, e, expectedCount, newCount, result);
+
+        if (result[0] == expectedCount) {
+          if (newCount == 0 && result[0] != 0) {
+            this.distinctElements--;
+          } else if (newCount > 0 && result[0] == 0) {
+            this.distinctElements++;
+          }
+          this.totalCount += newCount - result[0];
+        }
+        return rebalance();
+      }
+
+      // setting my count
+      result[0] = elemCount;
+      if (expectedCount == elemCount) {
+        if (newCount == 0) {
+          return deleteMe();
+        }
+        this.totalCount += newCount - elemCount;
+        this.elemCount = newCount;
+      }
+      return this;
     }
-  }
 
-  private final class RemoveModifier extends MultisetModifier {
-    private final int countToRemove;
+    private AvlNode<E> deleteMe() {
+      int oldElemCount = this.elemCount;
+      this.elemCount = 0;
+      successor(pred, succ);
+      if (left == null) {
+        return right;
+      } else if (right == null) {
+        return left;
+      } else if (left.height >= right.height) {
+        AvlNode<E> newTop = pred;
+        // newTop is the maximum node in my left subtree
+        newTop.left = left.removeMax(newTop);
+        newTop.right = right;
+        newTop.distinctElements = distinctElements - 1;
+        newTop.totalCount = totalCount - oldElemCount;
+        return newTop.rebalance();
+      } else {
+        AvlNode<E> newTop = succ;
+        // newTop is the minimum node in my right subtree
+        newTop.right = right.removeMin(newTop);
+        newTop.left = left;
+        newTop.distinctElements = distinctElements - 1;
+        newTop.totalCount = totalCount - oldElemCount;
+        return newTop.rebalance();
+      }
+    }
 
-    private RemoveModifier(int countToRemove) {
-      checkArgument(countToRemove > 0);
-      this.countToRemove = countToRemove;
+    // Removes the minimum node from this subtree to be reused elsewhere
+    private AvlNode<E> removeMin(AvlNode<E> node) {
+      if (left == null) {
+        return right;
+      } else {
+        left = left.removeMin(node);
+        distinctElements--;
+        totalCount -= node.elemCount;
+        return rebalance();
+      }
     }
 
-    @Override
-    int newCount(int oldCount) {
-      return Math.max(0, oldCount - countToRemove);
+    // Removes the maximum node from this subtree to be reused elsewhere
+    private AvlNode<E> removeMax(AvlNode<E> node) {
+      if (right == null) {
+        return left;
+      } else {
+        right = right.removeMax(node);
+        distinctElements--;
+        totalCount -= node.elemCount;
+        return rebalance();
+      }
     }
-  }
 
-  private final class SetCountModifier extends MultisetModifier {
-    private final int countToSet;
+    private void recomputeMultiset() {
+      this.distinctElements = 1 + TreeMultiset.distinctElements(left)
+          + TreeMultiset.distinctElements(right);
+      this.totalCount = elemCount + totalCount(left) + totalCount(right);
+    }
 
-    private SetCountModifier(int countToSet) {
-      checkArgument(countToSet >= 0);
-      this.countToSet = countToSet;
+    private void recomputeHeight() {
+      this.height = 1 + Math.max(height(left), height(right));
     }
 
-    @Override
-    int newCount(int oldCount) {
-      return countToSet;
+    private void recompute() {
+      recomputeMultiset();
+      recomputeHeight();
+    }
+
+    private AvlNode<E> rebalance() {
+      switch (balanceFactor()) {
+        case -2:
+          if (right.balanceFactor() > 0) {
+            right = right.rotateRight();
+          }
+          return rotateLeft();
+        case 2:
+          if (left.balanceFactor() < 0) {
+            left = left.rotateLeft();
+          }
+          return rotateRight();
+        default:
+          recomputeHeight();
+          return this;
+      }
     }
-  }
 
-  private final class ConditionalSetCountModifier extends MultisetModifier {
-    private final int expectedCount;
-    private final int setCount;
+    private int balanceFactor() {
+      return height(left) - height(right);
+    }
 
-    private ConditionalSetCountModifier(int expectedCount, int setCount) {
-      checkArgument(setCount >= 0 & expectedCount >= 0);
-      this.expectedCount = expectedCount;
-      this.setCount = setCount;
+    private AvlNode<E> rotateLeft() {
+      checkState(right != null);
+      AvlNode<E> newTop = right;
+      this.right = newTop.left;
+      newTop.left = this;
+      newTop.totalCount = this.totalCount;
+      newTop.distinctElements = this.distinctElements;
+      this.recompute();
+      newTop.recomputeHeight();
+      return newTop;
     }
 
-    @Override
-    int newCount(int oldCount) {
-      return (oldCount == expectedCount) ? setCount : oldCount;
+    private AvlNode<E> rotateRight() {
+      checkState(left != null);
+      AvlNode<E> newTop = left;
+      this.left = newTop.right;
+      newTop.right = this;
+      newTop.totalCount = this.totalCount;
+      newTop.distinctElements = this.distinctElements;
+      this.recompute();
+      newTop.recomputeHeight();
+      return newTop;
     }
+
+    private static long totalCount(@Nullable AvlNode<?> node) {
+      return (node == null) ? 0 : node.totalCount;
+    }
+
+    private static int height(@Nullable AvlNode<?> node) {
+      return (node == null) ? 0 : node.height;
+    }
+
+    /** Returns the node with the least element that is at least {@code e}, if any. */
+    @Nullable private AvlNode<E> ceiling(Comparator<? super E> comparator, E e) {
+      int cmp = comparator.compare(e, elem);
+      if (cmp < 0) {
+        AvlNode<E> result = (left == null) ? null : left.ceiling(comparator, e);
+        return (result == null) ? this : result;
+      } else if (cmp == 0) {
+        return this;
+      } else {
+        return (right == null) ? null : right.ceiling(comparator, e);
+      }
+    }
+
+    /** Returns the node with the greatest element that is at most {@code e}, if any. */
+    @Nullable private AvlNode<E> floor(Comparator<? super E> comparator, E e) {
+      int cmp = comparator.compare(e, elem);
+      if (cmp > 0) {
+        AvlNode<E> result = (right == null) ? null : right.floor(comparator, e);
+        return (result == null) ? this : result;
+      } else if (cmp == 0) {
+        return this;
+      } else {
+        return (left == null) ? null : left.floor(comparator, e);
+      }
+    }
+  }
+
+  private static <T> void successor(AvlNode<T> a, AvlNode<T> b) {
+    a.succ = b;
+    b.pred = a;
+  }
+
+  private static <T> void successor(AvlNode<T> a, AvlNode<T> b, AvlNode<T> c) {
+    successor(a, b);
+    successor(b, c);
   }
 
   /*
@@ -585,7 +1029,10 @@ public final class TreeMultiset<E> extends AbstractSortedMultiset<E>
     Serialization.getFieldSetter(TreeMultiset.class, "range").set(this,
         GeneralRange.all(comparator));
     Serialization.getFieldSetter(TreeMultiset.class, "rootReference").set(this,
-        new Reference<Node<E>>());
+        new Reference<AvlNode<E>>());
+    AvlNode<E> header = new AvlNode<E>(null, 1);
+    Serialization.getFieldSetter(TreeMultiset.class, "header").set(this, header);
+    successor(header, header);
     Serialization.populateMultiset(this, stream);
   }
 
@@ -0,0 +1,359 @@
+/*
+ * Copyright (C) 2012 The Guava Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.common.collect;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import com.google.common.annotations.Beta;
+import com.google.common.annotations.GwtIncompatible;
+
+import java.util.AbstractSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Map.Entry;
+import java.util.NavigableMap;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.TreeMap;
+
+import javax.annotation.Nullable;
+
+/**
+ * An implementation of {@link RangeSet} backed by a {@link TreeMap}, keyed by the lower bound of
+ * each member range. Lookups, {@link #encloses}, {@link #add} and {@link #remove} take time
+ * logarithmic in the number of member ranges, plus linear time in the number of ranges that an
+ * update coalesces or removes.
+ *
+ * @since 12.0
+ */
+@Beta
+@GwtIncompatible("uses NavigableMap")
+public class TreeRangeSet<C extends Comparable> extends AbstractRangeSet<C> {
+  private final NavigableMap<Cut<C>, Range<C>> rangesByLowerCut;
+
+  /**
+   * Creates an empty {@code TreeRangeSet} instance.
+   */
+  public static <C extends Comparable> TreeRangeSet<C> create() {
+    return new TreeRangeSet<C>(new TreeMap<Cut<C>, Range<C>>());
+  }
+
+  /**
+   * Returns a {@code TreeRangeSet} initialized with the ranges in the specified range set.
+   */
+  public static <C extends Comparable> TreeRangeSet<C> create(RangeSet<C> rangeSet) {
+    TreeRangeSet<C> result = create();
+    result.addAll(rangeSet);
+    return result;
+  }
+
+  private TreeRangeSet(NavigableMap<Cut<C>, Range<C>> rangesByLowerCut) {
+    this.rangesByLowerCut = rangesByLowerCut;
+  }
+
+  private Set<Range<C>> asRanges;
+
+  @Override
+  public Set<Range<C>> asRanges() {
+    Set<Range<C>> result = asRanges;
+    return (result == null) ? asRanges = new AsRanges() : result;
+  }
+
+  private final class AsRanges extends ForwardingCollection<Range<C>> implements Set<Range<C>> {
+    @Override
+    protected Collection<Range<C>> delegate() {
+      return Collections.unmodifiableCollection(rangesByLowerCut.values());
+    }
+
+    @Override
+    public int hashCode() {
+      return Sets.hashCodeImpl(this);
+    }
+
+    @Override
+    public boolean equals(@Nullable Object o) {
+      return Sets.equalsImpl(this, o);
+    }
+  }
+
+  @Override
+  @Nullable
+  public Range<C> rangeContaining(C value) {
+    checkNotNull(value);
+    Entry<Cut<C>, Range<C>> floorEntry = rangesByLowerCut.floorEntry(Cut.belowValue(value));
+    if (floorEntry != null && floorEntry.getValue().contains(value)) {
+      return floorEntry.getValue();
+    } else {
+      return null;
+    }
+  }
+
+  @Override
+  public boolean encloses(Range<C> range) {
+    checkNotNull(range);
+    Entry<Cut<C>, Range<C>> floorEntry = rangesByLowerCut.floorEntry(range.lowerBound);
+    return floorEntry != null && floorEntry.getValue().encloses(range);
+  }
+
+  @Override
+  public boolean isEmpty() {
+    return rangesByLowerCut.isEmpty();
+  }
+
+  @Override
+  public Range<C> span() {
+    Entry<Cut<C>, Range<C>> firstEntry = rangesByLowerCut.firstEntry();
+    Entry<Cut<C>, Range<C>> lastEntry = rangesByLowerCut.lastEntry();
+    if (firstEntry == null) {
+      throw new NoSuchElementException();
+    }
+    return Ranges.create(firstEntry.getValue().lowerBound, lastEntry.getValue().upperBound);
+  }
+
+  @Override
+  public void add(Range<C> rangeToAdd) {
+    checkNotNull(rangeToAdd);
+
+    if (rangeToAdd.isEmpty()) {
+      return;
+    }
+
+    // We will use { } to illustrate ranges currently in the range set, and < >
+    // to illustrate rangeToAdd.
+    Cut<C> lbToAdd = rangeToAdd.lowerBound;
+    Cut<C> ubToAdd = rangeToAdd.upperBound;
+
+    Entry<Cut<C>, Range<C>> entryBelowLB = rangesByLowerCut.lowerEntry(lbToAdd);
+    if (entryBelowLB != null) {
+      // { <
+      Range<C> rangeBelowLB = entryBelowLB.getValue();
+      if (rangeBelowLB.upperBound.compareTo(lbToAdd) >= 0) {
+        // { < }, and we will need to coalesce
+        if (rangeBelowLB.upperBound.compareTo(ubToAdd) >= 0) {
+          // { < > }
+          ubToAdd = rangeBelowLB.upperBound;
+        }
+        lbToAdd = rangeBelowLB.lowerBound;
+      }
+    }
+
+    Entry<Cut<C>, Range<C>> entryBelowUB = rangesByLowerCut.floorEntry(ubToAdd);
+    if (entryBelowUB != null) {
+      // { >
+      Range<C> rangeBelowUB = entryBelowUB.getValue();
+      if (rangeBelowUB.upperBound.compareTo(ubToAdd) >= 0) {
+        // { > }, and we need to coalesce
+        ubToAdd = rangeBelowUB.upperBound;
+      }
+    }
+
+    // Remove ranges which are strictly enclosed.
+    rangesByLowerCut.subMap(lbToAdd, ubToAdd).clear();
+
+    replaceRangeWithSameLowerBound(Ranges.create(lbToAdd, ubToAdd));
+  }
+
+  @Override
+  public void remove(Range<C> rangeToRemove) {
+    checkNotNull(rangeToRemove);
+
+    if (rangeToRemove.isEmpty()) {
+      return;
+    }
+
+    // We will use { } to illustrate ranges currently in the range set, and < >
+    // to illustrate rangeToRemove.
+
+    Entry<Cut<C>, Range<C>> entryBelowLB = rangesByLowerCut.lowerEntry(rangeToRemove.lowerBound);
+    if (entryBelowLB != null) {
+      // { <
+      Range<C> rangeBelowLB = entryBelowLB.getValue();
+      if (rangeBelowLB.upperBound.compareTo(rangeToRemove.lowerBound) >= 0) {
+        // { < }, and we will need to subdivide
+        if (rangeBelowLB.upperBound.compareTo(rangeToRemove.upperBound) >= 0) {
+          // { < > }
+          replaceRangeWithSameLowerBound(
+              Ranges.create(rangeToRemove.upperBound, rangeBelowLB.upperBound));
+        }
+        replaceRangeWithSameLowerBound(
+            Ranges.create(rangeBelowLB.lowerBound, rangeToRemove.lowerBound));
+      }
+    }
+
+    Entry<Cut<C>, Range<C>> entryBelowUB = rangesByLowerCut.floorEntry(rangeToRemove.upperBound);
+    if (entryBelowUB != null) {
+      // { >
+      Range<C> rangeBelowUB = entryBelowUB.getValue();
+      if (rangeBelowUB.upperBound.compareTo(rangeToRemove.upperBound) >= 0) {
+        // { > }
+        replaceRangeWithSameLowerBound(
+            Ranges.create(rangeToRemove.upperBound, rangeBelowUB.upperBound));
+      }
+    }
+
+    rangesByLowerCut.subMap(rangeToRemove.lowerBound, rangeToRemove.upperBound).clear();
+  }
+
+  @Override
+  public void clear() {
+    rangesByLowerCut.clear();
+  }
+
+  private void replaceRangeWithSameLowerBound(Range<C> range) {
+    if (range.isEmpty()) {
+      rangesByLowerCut.remove(range.lowerBound);
+    } else {
+      rangesByLowerCut.put(range.lowerBound, range);
+    }
+  }
+
+  private RangeSet<C> complement;
+
+  @Override
+  public RangeSet<C> complement() {
+    RangeSet<C> result = complement;
+    return (result == null) ? complement = new Complement() : result;
+  }
+
+  /**
+   * A view of the gaps between the member ranges of this range set. Its queries look up the
+   * neighbouring member ranges, so they also take logarithmic time.
+   */
+  private final class Complement extends AbstractRangeSet<C> {
+    @Override
+    @Nullable
+    public Range<C> rangeContaining(C value) {
+      checkNotNull(value);
+      Cut<C> cut = Cut.belowValue(value);
+      Entry<Cut<C>, Range<C>> floorEntry = rangesByLowerCut.floorEntry(cut);
+      Cut<C> lowerBound = Cut.belowAll();
+      if (floorEntry != null) {
+        if (floorEntry.getValue().contains(value)) {
+          return null;
+        }
+        lowerBound = floorEntry.getValue().upperBound;
+      }
+      Cut<C> higherKey = rangesByLowerCut.higherKey(cut);
+      Cut<C> upperBound = (higherKey == null) ? Cut.<C>aboveAll() : higherKey;
+      return Ranges.create(lowerBound, upperBound);
+    }
+
+    @Override
+    public boolean encloses(Range<C> range) {
+      checkNotNull(range);
+      // The only member range that could overlap range is the last one to start below its end.
+      Entry<Cut<C>, Range<C>> lowerEntry = rangesByLowerCut.lowerEntry(range.upperBound);
+      return lowerEntry == null
+          || lowerEntry.getValue().upperBound.compareTo(range.lowerBound) <= 0;
+    }
+
+    @Override
+    public boolean isEmpty() {
+      Entry<Cut<C>, Range<C>> firstEntry = rangesByLowerCut.firstEntry();
+      return firstEntry != null && firstEntry.getValue().equals(Ranges.all());
+    }
+
+    @Override
+    public Range<C> span() {
+      Entry<Cut<C>, Range<C>> firstEntry = rangesByLowerCut.firstEntry();
+      Entry<Cut<C>, Range<C>> lastEntry = rangesByLowerCut.lastEntry();
+      if (firstEntry == null) {
+        return Ranges.all();
+      }
+      Range<C> first = firstEntry.getValue();
+      Range<C> last = lastEntry.getValue();
+      Cut<C> lowerBound =
+          (first.lowerBound == Cut.belowAll()) ? first.upperBound : Cut.<C>belowAll();
+      Cut<C> upperBound =
+          (last.upperBound == Cut.aboveAll()) ? last.lowerBound : Cut.<C>aboveAll();
+      if (lowerBound.compareTo(upperBound) >= 0) {
+        // the only member range is (-∞..+∞)
+        throw new NoSuchElementException();
+      }
+      return Ranges.create(lowerBound, upperBound);
+    }
+
+    private Set<Range<C>> asRanges;
+
+    @Override
+    public Set<Range<C>> asRanges() {
+      Set<Range<C>> result = asRanges;
+      return (result == null) ? asRanges = new ComplementRanges() : result;
+    }
+
+    @Override
+    public RangeSet<C> complement() {
+      return TreeRangeSet.this;
+    }
+
+    @Override
+    public void add(Range<C> rangeToAdd) {
+      TreeRangeSet.this.remove(rangeToAdd);
+    }
+
+    @Override
+    public void remove(Range<C> rangeToRemove) {
+      TreeRangeSet.this.add(rangeToRemove);
+    }
+  }
+
+  private final class ComplementRanges extends AbstractSet<Range<C>> {
+    @Override
+    public Iterator<Range<C>> iterator() {
+      final Iterator<Range<C>> positiveItr = rangesByLowerCut.values().iterator();
+      return new AbstractIterator<Range<C>>() {
+        Cut<C> nextLowerBound = Cut.belowAll();
+
+        @Override
+        protected Range<C> computeNext() {
+          while (nextLowerBound != null) {
+            Range<C> gap;
+            if (positiveItr.hasNext()) {
+              Range<C> positiveRange = positiveItr.next();
+              gap = Ranges.create(nextLowerBound, positiveRange.lowerBound);
+              nextLowerBound = positiveRange.upperBound;
+            } else {
+              gap = Ranges.create(nextLowerBound, Cut.<C>aboveAll());
+              nextLowerBound = null;
+            }
+            if (!gap.isEmpty()) {
+              return gap;
+            }
+          }
+          return endOfData();
+        }
+      };
+    }
+
+    @Override
+    public int size() {
+      Entry<Cut<C>, Range<C>> firstEntry = rangesByLowerCut.firstEntry();
+      if (firstEntry == null) {
+        return 1;
+      }
+      int size = rangesByLowerCut.size() + 1;
+      if (firstEntry.getValue().lowerBound == Cut.belowAll()) {
+        size--;
+      }
+      if (rangesByLowerCut.lastEntry().getValue().upperBound == Cut.aboveAll()) {
+        size--;
+      }
+      return size;
+    }
+  }
+}
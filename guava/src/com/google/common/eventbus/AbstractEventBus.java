@@ -1,11 +1,23 @@
 package com.google.common.eventbus;
 
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.lang.reflect.InvocationTargetException;
 import java.util.Collection;
+import java.util.List;
+import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import javax.annotation.Nullable;
+
 import com.google.common.annotations.Beta;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Ticker;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Multimap;
 import com.google.common.collect.SetMultimap;
 
@@ -23,9 +35,31 @@ public abstract class AbstractEventBus {
    * constructor, or "default" if none is provided.
    */
   protected final Logger logger;
+
+  /**
+   * Dispatch statistics, or {@code null} until {@link #recordStats} is called.
+   */
+  @Nullable
+  private volatile DispatchStatsCounter statsCounter;
+
+  /**
+   * Complete handler lists keyed by concrete event class, or {@code null}
+   * until the first post.  A fresh map is installed after every change to
+   * the registered handlers, so a plan computed from stale handlers can only
+   * ever be stored in a map that has already been discarded.
+   */
+  @Nullable
+  private volatile Map<Class<?>, List<EventHandler>> dispatchPlans;
   
   protected abstract Set<Class<?>> flattenHierarchy(Class<?> concreteClass);
   protected abstract SetMultimap<Class<?>, EventHandler> getHandlersByType();
+
+  /**
+   * Creates an empty map for caching dispatch plans, keyed by concrete event
+   * class.  The map must be at least as thread-safe as the bus itself, and
+   * should not prevent event classes from being unloaded.
+   */
+  protected abstract Map<Class<?>, List<EventHandler>> newDispatchPlanMap();
   protected abstract void enqueueEvent(Object event, EventHandler handler);
   protected abstract void dispatchQueuedEvents();
   
@@ -50,21 +84,20 @@ public abstract class AbstractEventBus {
    * @param event  event to post.
    */
   public void post(Object event) {
-    Set<Class<?>> dispatchTypes = flattenHierarchy(event.getClass());
-
-    boolean dispatched = false;
-    for (Class<?> eventType : dispatchTypes) {
-      Set<EventHandler> wrappers = getHandlersForEventType(eventType);
+    DispatchStatsCounter stats = statsCounter;
+    if (stats != null && !(event instanceof DeadEvent)) {
+      stats.recordPost();
+    }
 
-      if (wrappers != null && !wrappers.isEmpty()) {
-        dispatched = true;
-        for (EventHandler wrapper : wrappers) {
-          enqueueEvent(event, wrapper);
-        }
-      }
+    List<EventHandler> wrappers = getDispatchPlan(event.getClass());
+    for (int i = 0; i < wrappers.size(); i++) {
+      enqueueEvent(event, wrappers.get(i));
     }
 
-    if (!dispatched && !(event instanceof DeadEvent)) {
+    if (wrappers.isEmpty() && !(event instanceof DeadEvent)) {
+      if (stats != null) {
+        stats.recordDeadEvent();
+      }
       post(new DeadEvent(this, event));
     }
 
@@ -81,6 +114,7 @@ public abstract class AbstractEventBus {
    */
   public void register(Object object) {
     getHandlersByType().putAll(finder.findAllHandlers(object));
+    dispatchPlans = newDispatchPlanMap();
   }
   
   /**
@@ -91,18 +125,134 @@ public abstract class AbstractEventBus {
    */
   public void unregister(Object object) {
     Multimap<Class<?>, EventHandler> handlersForObject = finder.findAllHandlers(object);
-    for (Entry<Class<?>, Collection<EventHandler>> entry : handlersForObject.asMap().entrySet()) {
-      Set<EventHandler> currentHandlers = getHandlersForEventType(entry.getKey());
-      Collection<EventHandler> eventMethodsInListener = entry.getValue();
-      
-      if (currentHandlers == null || !currentHandlers.containsAll(entry.getValue())) {
-        throw new IllegalArgumentException(
-            "missing event handler for an annotated method. Is " + object + " registered?");
+    try {
+      for (Entry<Class<?>, Collection<EventHandler>> entry : handlersForObject.asMap().entrySet()) {
+        Set<EventHandler> currentHandlers = getHandlersForEventType(entry.getKey());
+        Collection<EventHandler> eventMethodsInListener = entry.getValue();
+        
+        if (currentHandlers == null || !currentHandlers.containsAll(entry.getValue())) {
+          throw new IllegalArgumentException(
+              "missing event handler for an annotated method. Is " + object + " registered?");
+        }
+        currentHandlers.removeAll(eventMethodsInListener);
+      }
+    } finally {
+      // some handlers may have been removed before an exception
+      dispatchPlans = newDispatchPlanMap();
+    }
+  }
+
+  /**
+   * Returns every handler that should receive an event of class
+   * {@code eventClass}, in dispatch order, computing and caching the list on
+   * first use.
+   */
+  private List<EventHandler> getDispatchPlan(Class<?> eventClass) {
+    Map<Class<?>, List<EventHandler>> plans = dispatchPlans;
+    if (plans == null) {
+      synchronized (this) {
+        plans = dispatchPlans;
+        if (plans == null) {
+          plans = dispatchPlans = newDispatchPlanMap();
+        }
       }
-      currentHandlers.removeAll(eventMethodsInListener);
     }
+
+    List<EventHandler> plan = plans.get(eventClass);
+    if (plan == null) {
+      ImmutableList.Builder<EventHandler> builder = ImmutableList.builder();
+      for (Class<?> eventType : flattenHierarchy(eventClass)) {
+        Set<EventHandler> wrappers = getHandlersForEventType(eventType);
+        if (wrappers != null) {
+          builder.addAll(wrappers);
+        }
+      }
+      plan = builder.build();
+      plans.put(eventClass, plan);
+    }
+    return plan;
   }
   
+  /**
+   * Starts recording dispatch statistics for this bus, which can then be read through
+   * {@link #stats}. Any handler invocation taking at least {@code slowHandlerThreshold} is counted
+   * as slow. Calling this again discards the statistics gathered so far.
+   *
+   * <p>Until this method is called, dispatch does no timing or counting at all.
+   *
+   * @param slowHandlerThreshold  invocation time at or above which a handler is reported as slow.
+   * @param unit  unit of {@code slowHandlerThreshold}.
+   * @throws IllegalArgumentException if {@code slowHandlerThreshold} is negative.
+   * @since 12.0
+   */
+  public void recordStats(long slowHandlerThreshold, TimeUnit unit) {
+    recordStats(slowHandlerThreshold, unit, Ticker.systemTicker());
+  }
+
+  @VisibleForTesting
+  void recordStats(long slowHandlerThreshold, TimeUnit unit, Ticker ticker) {
+    checkArgument(slowHandlerThreshold >= 0,
+        "slowHandlerThreshold must not be negative: %s", slowHandlerThreshold);
+    statsCounter = new DispatchStatsCounter(unit.toNanos(slowHandlerThreshold), ticker);
+  }
+
+  /**
+   * Returns a current snapshot of this bus's dispatch statistics. Statistics are only gathered
+   * after {@link #recordStats} has been called; before that every value is zero.
+   *
+   * <p>The snapshot may be an inconsistent view, as it may be interleaved with dispatch.
+   *
+   * @since 12.0
+   */
+  public EventBusStats stats() {
+    DispatchStatsCounter stats = statsCounter;
+    return (stats == null) ? EventBusStats.EMPTY : stats.snapshot();
+  }
+
+  /**
+   * Returns the current statistics accumulator, or {@code null} if stats are not being recorded.
+   */
+  @Nullable
+  DispatchStatsCounter statsCounter() {
+    return statsCounter;
+  }
+
+  /**
+   * Invokes the handler in {@code wrapper} with {@code event}, logging any exception it throws.
+   * Subclasses should route every handler invocation through this method so that it is counted in
+   * {@link #stats}.
+   *
+   * @param event  event to dispatch.
+   * @param wrapper  wrapper that will call the handler.
+   */
+  protected final void invokeHandler(Object event, EventHandler wrapper) {
+    DispatchStatsCounter stats = statsCounter;
+    if (stats == null) {
+      try {
+        wrapper.handleEvent(event);
+      } catch (InvocationTargetException e) {
+        logDispatchFailure(event, wrapper, e);
+      }
+      return;
+    }
+
+    boolean threw = true;
+    long start = stats.ticker.read();
+    try {
+      wrapper.handleEvent(event);
+      threw = false;
+    } catch (InvocationTargetException e) {
+      logDispatchFailure(event, wrapper, e);
+    } finally {
+      stats.recordInvocation(wrapper.getMethod(), stats.ticker.read() - start, threw);
+    }
+  }
+
+  private void logDispatchFailure(Object event, EventHandler wrapper, InvocationTargetException e) {
+    logger.log(Level.SEVERE,
+        "Could not dispatch event: " + event + " to handler " + wrapper, e);
+  }
+
   /**
    * Retrieves a mutable set of the currently registered handlers for
    * {@code type}.  If no handlers are currently registered for {@code type},
@@ -88,13 +88,32 @@ public class AsyncEventBus extends EventBus {
    */
   @Override
   protected void dispatch(final Object event, final EventHandler handler) {
-    executor.execute(new Runnable() {
-          @Override
-          @SuppressWarnings("synthetic-access")
-          public void run() {
-            AsyncEventBus.super.dispatch(event, handler);
-          }
-        });
+    final DispatchStatsCounter stats = statsCounter();
+    if (stats == null) {
+      executor.execute(new Runnable() {
+            @Override
+            @SuppressWarnings("synthetic-access")
+            public void run() {
+              AsyncEventBus.super.dispatch(event, handler);
+            }
+          });
+      return;
+    }
+
+    stats.recordEnqueued();
+    try {
+      executor.execute(new Runnable() {
+            @Override
+            @SuppressWarnings("synthetic-access")
+            public void run() {
+              stats.recordDequeued();
+              AsyncEventBus.super.dispatch(event, handler);
+            }
+          });
+    } catch (RuntimeException e) {
+      stats.recordDequeued();
+      throw e;
+    }
   }
 
 }
@@ -0,0 +1,140 @@
+/*
+ * Copyright (C) 2012 The Guava Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.common.eventbus;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import com.google.common.base.Ticker;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.eventbus.EventBusStats.HandlerStats;
+
+import java.lang.reflect.Method;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Thread-safe accumulator behind {@link EventBusStats}. An {@link AbstractEventBus} only holds one
+ * of these while stats are being recorded, so dispatch pays nothing more than a null check when
+ * they are not.
+ */
+final class DispatchStatsCounter {
+  /** One bucket per possible bit length of a non-negative long. */
+  private static final int HISTOGRAM_BUCKETS = Long.SIZE - 1;
+
+  final Ticker ticker;
+  private final long slowThresholdNanos;
+
+  private final AtomicLong postCount = new AtomicLong();
+  private final AtomicLong deadEventCount = new AtomicLong();
+  private final AtomicLong queueDepth = new AtomicLong();
+  private final AtomicLong maxQueueDepth = new AtomicLong();
+  private final ConcurrentMap<Method, HandlerCounter> handlerCounters =
+      new ConcurrentHashMap<Method, HandlerCounter>();
+
+  DispatchStatsCounter(long slowThresholdNanos, Ticker ticker) {
+    this.slowThresholdNanos = slowThresholdNanos;
+    this.ticker = checkNotNull(ticker);
+  }
+
+  void recordPost() {
+    postCount.incrementAndGet();
+  }
+
+  void recordDeadEvent() {
+    deadEventCount.incrementAndGet();
+  }
+
+  void recordEnqueued() {
+    long depth = queueDepth.incrementAndGet();
+    long max;
+    while (depth > (max = maxQueueDepth.get())) {
+      if (maxQueueDepth.compareAndSet(max, depth)) {
+        break;
+      }
+    }
+  }
+
+  void recordDequeued() {
+    queueDepth.decrementAndGet();
+  }
+
+  void recordInvocation(Method method, long elapsedNanos, boolean threw) {
+    HandlerCounter counter = handlerCounters.get(method);
+    if (counter == null) {
+      HandlerCounter newCounter = new HandlerCounter();
+      counter = handlerCounters.putIfAbsent(method, newCounter);
+      if (counter == null) {
+        counter = newCounter;
+      }
+    }
+    counter.record(elapsedNanos, threw, elapsedNanos >= slowThresholdNanos);
+  }
+
+  EventBusStats snapshot() {
+    ImmutableMap.Builder<Method, HandlerStats> handlerStats = ImmutableMap.builder();
+    for (Map.Entry<Method, HandlerCounter> entry : handlerCounters.entrySet()) {
+      handlerStats.put(entry.getKey(), entry.getValue().snapshot());
+    }
+    return new EventBusStats(postCount.get(), deadEventCount.get(), queueDepth.get(),
+        maxQueueDepth.get(), handlerStats.build());
+  }
+
+  private static final class HandlerCounter {
+    final AtomicLong invocationCount = new AtomicLong();
+    final AtomicLong exceptionCount = new AtomicLong();
+    final AtomicLong slowInvocationCount = new AtomicLong();
+    final AtomicLong totalTime = new AtomicLong();
+    final AtomicLong maxTime = new AtomicLong();
+    final AtomicLongArray histogram = new AtomicLongArray(HISTOGRAM_BUCKETS);
+
+    void record(long elapsedNanos, boolean threw, boolean slow) {
+      // a misbehaving Ticker should not poison the histogram
+      long elapsed = Math.max(0, elapsedNanos);
+      invocationCount.incrementAndGet();
+      if (threw) {
+        exceptionCount.incrementAndGet();
+      }
+      if (slow) {
+        slowInvocationCount.incrementAndGet();
+      }
+      totalTime.addAndGet(elapsed);
+      long max;
+      while (elapsed > (max = maxTime.get())) {
+        if (maxTime.compareAndSet(max, elapsed)) {
+          break;
+        }
+      }
+      histogram.incrementAndGet(bucket(elapsed));
+    }
+
+    HandlerStats snapshot() {
+      long[] buckets = new long[HISTOGRAM_BUCKETS];
+      for (int i = 0; i < buckets.length; i++) {
+        buckets[i] = histogram.get(i);
+      }
+      return new HandlerStats(invocationCount.get(), exceptionCount.get(),
+          slowInvocationCount.get(), totalTime.get(), maxTime.get(), buckets);
+    }
+  }
+
+  static int bucket(long elapsedNanos) {
+    return Math.max(0, Long.SIZE - 1 - Long.numberOfLeadingZeros(elapsedNanos));
+  }
+}
@@ -24,21 +24,21 @@ import com.google.common.cache.CacheBuilder;
 import com.google.common.cache.CacheLoader;
 import com.google.common.cache.LoadingCache;
 import com.google.common.collect.Lists;
+import com.google.common.collect.MapMaker;
 import com.google.common.collect.Multimap;
 import com.google.common.collect.Multimaps;
 import com.google.common.collect.SetMultimap;
 import com.google.common.collect.Sets;
 
-import java.lang.reflect.InvocationTargetException;
 import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.CopyOnWriteArraySet;
 import java.util.concurrent.ExecutionException;
-import java.util.logging.Level;
 import java.util.logging.Logger;
 
 /**
@@ -211,12 +211,7 @@ public class EventBus extends AbstractEventBus {
    * @param wrapper  wrapper that will call the handler.
    */
   protected void dispatch(Object event, EventHandler wrapper) {
-    try {
-      wrapper.handleEvent(event);
-    } catch (InvocationTargetException e) {
-      logger.log(Level.SEVERE,
-          "Could not dispatch event: " + event + " to handler " + wrapper, e);
-    }
+    invokeHandler(event, wrapper);
   }
 
 
@@ -253,6 +248,11 @@ public class EventBus extends AbstractEventBus {
     return handlersByType;
   }
 
+  @Override
+  protected Map<Class<?>, List<EventHandler>> newDispatchPlanMap() {
+    return new MapMaker().weakKeys().makeMap();
+  }
+
   /** simple struct representing an event and it's handler */
   static class EventWithHandler {
     final Object event;
@@ -0,0 +1,238 @@
+/*
+ * Copyright (C) 2012 The Guava Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.common.eventbus;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import com.google.common.annotations.Beta;
+import com.google.common.base.Objects;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * Statistics about event dispatch on an {@link AbstractEventBus}. Instances of this class are
+ * immutable.
+ *
+ * <p>Statistics are only gathered once {@link AbstractEventBus#recordStats} has been called; until
+ * then every counter is zero. They are incremented according to the following rules:
+ *
+ * <ul>
+ * <li>Each call to {@code post} with an event that is not a {@link DeadEvent} increments
+ *     {@code postCount}.
+ * <li>When such an event reaches no handler, {@code deadEventCount} is incremented.
+ * <li>Each handler invocation is timed and recorded against the handler {@link Method}, whatever
+ *     object it was registered on.
+ * <li>For an {@link AsyncEventBus}, {@code queueDepth} is the number of handler invocations that
+ *     have been handed to the executor but have not yet started.
+ * </ul>
+ *
+ * @since 12.0
+ */
+@Beta
+public final class EventBusStats {
+  static final EventBusStats EMPTY =
+      new EventBusStats(0, 0, 0, 0, ImmutableMap.<Method, HandlerStats>of());
+
+  private final long postCount;
+  private final long deadEventCount;
+  private final long queueDepth;
+  private final long maxQueueDepth;
+  private final ImmutableMap<Method, HandlerStats> handlerStats;
+
+  EventBusStats(long postCount, long deadEventCount, long queueDepth, long maxQueueDepth,
+      ImmutableMap<Method, HandlerStats> handlerStats) {
+    checkArgument(postCount >= 0);
+    checkArgument(deadEventCount >= 0);
+    checkArgument(maxQueueDepth >= 0);
+
+    this.postCount = postCount;
+    this.deadEventCount = deadEventCount;
+    // the counters are read without a lock, so a concurrent dequeue may briefly push this below 0
+    this.queueDepth = Math.max(0, queueDepth);
+    this.maxQueueDepth = maxQueueDepth;
+    this.handlerStats = checkNotNull(handlerStats);
+  }
+
+  /**
+   * Returns the number of non-{@link DeadEvent} events that have been posted.
+   */
+  public long postCount() {
+    return postCount;
+  }
+
+  /**
+   * Returns the number of posted events that reached no handler and were reposted as a
+   * {@link DeadEvent}.
+   */
+  public long deadEventCount() {
+    return deadEventCount;
+  }
+
+  /**
+   * Returns the ratio of dead events to posted events, or {@code 0.0} when nothing has been posted.
+   */
+  public double deadEventRate() {
+    return (postCount == 0) ? 0.0 : (double) deadEventCount / postCount;
+  }
+
+  /**
+   * Returns the number of handler invocations waiting to be run by an {@link AsyncEventBus}'s
+   * executor. Always zero for synchronous buses.
+   */
+  public long queueDepth() {
+    return queueDepth;
+  }
+
+  /**
+   * Returns the largest {@link #queueDepth} observed since stats recording began.
+   */
+  public long maxQueueDepth() {
+    return maxQueueDepth;
+  }
+
+  /**
+   * Returns statistics for every handler method that has been invoked, keyed by the method.
+   */
+  public ImmutableMap<Method, HandlerStats> handlerStats() {
+    return handlerStats;
+  }
+
+  /**
+   * Returns the handler methods that have taken at least the configured slow-handler threshold on
+   * one or more invocations.
+   */
+  public ImmutableSet<Method> slowHandlers() {
+    ImmutableSet.Builder<Method> builder = ImmutableSet.builder();
+    for (Map.Entry<Method, HandlerStats> entry : handlerStats.entrySet()) {
+      if (entry.getValue().slowInvocationCount() > 0) {
+        builder.add(entry.getKey());
+      }
+    }
+    return builder.build();
+  }
+
+  @Override
+  public String toString() {
+    return Objects.toStringHelper(this)
+        .add("postCount", postCount)
+        .add("deadEventCount", deadEventCount)
+        .add("queueDepth", queueDepth)
+        .add("maxQueueDepth", maxQueueDepth)
+        .add("handlerStats", handlerStats)
+        .toString();
+  }
+
+  /**
+   * Statistics about the invocations of a single handler method. Instances of this class are
+   * immutable.
+   *
+   * <p>Invocation latencies are kept in a histogram with power-of-two buckets: bucket {@code i}
+   * counts invocations that took between 2<sup>i</sup> and 2<sup>i+1</sup>-1 nanoseconds (bucket
+   * 0 also counts invocations that took no measurable time).
+   */
+  public static final class HandlerStats {
+    private final long invocationCount;
+    private final long exceptionCount;
+    private final long slowInvocationCount;
+    private final long totalTime;
+    private final long maxTime;
+    private final long[] latencyHistogram;
+
+    HandlerStats(long invocationCount, long exceptionCount, long slowInvocationCount,
+        long totalTime, long maxTime, long[] latencyHistogram) {
+      checkArgument(invocationCount >= 0);
+      checkArgument(exceptionCount >= 0);
+      checkArgument(slowInvocationCount >= 0);
+      checkArgument(totalTime >= 0);
+      checkArgument(maxTime >= 0);
+
+      this.invocationCount = invocationCount;
+      this.exceptionCount = exceptionCount;
+      this.slowInvocationCount = slowInvocationCount;
+      this.totalTime = totalTime;
+      this.maxTime = maxTime;
+      this.latencyHistogram = latencyHistogram;
+    }
+
+    /**
+     * Returns the number of times the handler has been invoked.
+     */
+    public long invocationCount() {
+      return invocationCount;
+    }
+
+    /**
+     * Returns the number of invocations that threw an exception.
+     */
+    public long exceptionCount() {
+      return exceptionCount;
+    }
+
+    /**
+     * Returns the number of invocations that took at least the slow-handler threshold.
+     */
+    public long slowInvocationCount() {
+      return slowInvocationCount;
+    }
+
+    /**
+     * Returns the total number of nanoseconds spent in the handler.
+     */
+    public long totalTime() {
+      return totalTime;
+    }
+
+    /**
+     * Returns the longest single invocation, in nanoseconds.
+     */
+    public long maxTime() {
+      return maxTime;
+    }
+
+    /**
+     * Returns the average number of nanoseconds spent per invocation, or {@code 0.0} if the
+     * handler has not been invoked.
+     */
+    public double averageTime() {
+      return (invocationCount == 0) ? 0.0 : (double) totalTime / invocationCount;
+    }
+
+    /**
+     * Returns a copy of the latency histogram, one count per power-of-two bucket of nanoseconds.
+     */
+    public long[] latencyHistogram() {
+      return latencyHistogram.clone();
+    }
+
+    @Override
+    public String toString() {
+      return Objects.toStringHelper(this)
+          .add("invocationCount", invocationCount)
+          .add("exceptionCount", exceptionCount)
+          .add("slowInvocationCount", slowInvocationCount)
+          .add("totalTime", totalTime)
+          .add("maxTime", maxTime)
+          .add("latencyHistogram", Arrays.toString(latencyHistogram))
+          .toString();
+    }
+  }
+}
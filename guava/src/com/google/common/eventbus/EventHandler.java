@@ -79,6 +79,13 @@ class EventHandler {
     }
   }
 
+  /**
+   * Returns the wrapped handler method.
+   */
+  Method getMethod() {
+    return method;
+  }
+
   @Override public String toString() {
     return "[wrapper " + method + "]";
   }
@@ -16,10 +16,10 @@
 
 package com.google.common.eventbus;
 
-import java.lang.reflect.InvocationTargetException;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.WeakHashMap;
-import java.util.logging.Level;
 
 import com.google.common.annotations.Beta;
 import com.google.common.collect.HashMultimap;
@@ -52,18 +52,14 @@ public class SimpleEventBus extends AbstractEventBus {
   }
 
   @Override
-  protected void enqueueEvent(Object event, EventHandler wrapper) {
-    //no reason to queue them up in this implementation - just send now.
-    dispatch(event, wrapper);
+  protected Map<Class<?>, List<EventHandler>> newDispatchPlanMap() {
+    return new WeakHashMap<Class<?>, List<EventHandler>>();
   }
 
-  private void dispatch(Object event, EventHandler wrapper) {
-    try {
-      wrapper.handleEvent(event);
-    } catch (InvocationTargetException e) {
-      logger.log(Level.SEVERE,
-          "Could not dispatch event: " + event + " to handler " + wrapper, e);
-    }
+  @Override
+  protected void enqueueEvent(Object event, EventHandler wrapper) {
+    //no reason to queue them up in this implementation - just send now.
+    invokeHandler(event, wrapper);
   }
 
   @Override
@@ -18,17 +18,22 @@ package com.google.common.eventbus;
 
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * Wraps a single-argument 'handler' method on a specific object, and ensures
  * that only one thread may enter the method at a time.
  *
  * <p>Beyond synchronization, this class behaves identically to
- * {@link EventHandler}.
+ * {@link EventHandler}. It excludes other threads with a {@link ReentrantLock}
+ * rather than a {@code synchronized} method, so that a virtual thread blocked
+ * in a handler does not pin its carrier thread.
  *
  * @author Cliff Biffle
  */
 class SynchronizedEventHandler extends EventHandler {
+  private final ReentrantLock lock = new ReentrantLock();
+
   /**
    * Creates a new SynchronizedEventHandler to wrap {@code method} on
    * {@code target}.
@@ -40,9 +45,14 @@ class SynchronizedEventHandler extends EventHandler {
     super(target, method);
   }
 
-  @Override public synchronized void handleEvent(Object event)
+  @Override public void handleEvent(Object event)
       throws InvocationTargetException {
-    super.handleEvent(event);
+    lock.lock();
+    try {
+      super.handleEvent(event);
+    } finally {
+      lock.unlock();
+    }
   }
 
 }
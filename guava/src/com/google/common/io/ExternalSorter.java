@@ -0,0 +1,522 @@
+/*
+ * Copyright (C) 2012 The Guava Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.common.io;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import com.google.common.annotations.Beta;
+import com.google.common.base.Charsets;
+import com.google.common.base.Throwables;
+import com.google.common.collect.AbstractIterator;
+import com.google.common.collect.Iterators;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Ordering;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.annotation.Nullable;
+
+/**
+ * Sorts sequences of elements that may not fit in memory, by sorting them in
+ * chunks that do and merging the sorted chunks from temporary files.
+ *
+ * <p>The input is read into a buffer of at most {@linkplain
+ * #withMaxElementsInMemory a configurable number} of elements. Each full buffer
+ * is sorted and written to a temporary file as a <i>run</i>, using a {@link
+ * Codec} to encode the elements. The runs are then merged, at most {@linkplain
+ * #withMergeWidth a configurable number} at a time, and the merged elements are
+ * handed to an {@link ElementProcessor}. If the whole input fits in one buffer,
+ * it is sorted in memory and nothing is written to disk. For example: <pre>
+ * {@code
+ *
+ *   ExternalSorter<String> sorter =
+ *       ExternalSorter.create(Ordering.natural(), ExternalSorter.stringCodec())
+ *           .withMaxElementsInMemory(1000000);
+ *   int count = sorter.sort(lines, new ElementProcessor<String, Integer>() {
+ *     int count;
+ *     public boolean processElement(String line) throws IOException {
+ *       writer.write(line);
+ *       writer.write('\n');
+ *       count++;
+ *       return true;
+ *     }
+ *     public Integer getResult() {
+ *       return count;
+ *     }
+ *   });}</pre>
+ *
+ * <p>When given an executor with {@link #withExecutor}, the sorter sorts and
+ * writes several runs in parallel while the calling thread reads the next
+ * buffer. The memory limit is then shared among the buffers being read,
+ * sorted and written. Merging always takes place in the calling thread.
+ *
+ * <p>The sort is not stable: equal elements may be processed in any order.
+ * Temporary files are deleted before {@link #sort} returns or throws.
+ *
+ * <p>Instances are immutable and thread-safe; the {@code with} methods return
+ * new instances.
+ *
+ * @since 12.0
+ */
+@Beta
+public final class ExternalSorter<E> {
+  /**
+   * Encodes elements to, and decodes them from, a run file. {@link #read} must
+   * read exactly the bytes that {@link #write} wrote for the element.
+   */
+  public interface Codec<E> {
+    /** Writes {@code element} to {@code output}. */
+    void write(E element, DataOutput output) throws IOException;
+
+    /** Reads an element written by {@link #write} from {@code input}. */
+    E read(DataInput input) throws IOException;
+  }
+
+  /**
+   * A callback to be used with {@link ExternalSorter#sort}.
+   *
+   * <p>{@link #processElement} will be called for each element in sorted
+   * order, and should return {@code false} when you want to stop processing.
+   */
+  public interface ElementProcessor<E, T> {
+    /**
+     * This method will be called once for each element.
+     *
+     * @return true to continue processing, false to stop
+     */
+    boolean processElement(E element) throws IOException;
+
+    /** Return the result of processing all the elements. */
+    T getResult();
+  }
+
+  private static final int DEFAULT_MAX_ELEMENTS_IN_MEMORY = 1 << 16;
+  private static final int DEFAULT_MERGE_WIDTH = 64;
+  private static final int BUFFER_SIZE = 1 << 16;
+
+  private final Ordering<? super E> ordering;
+  private final Codec<E> codec;
+  private final int maxElementsInMemory;
+  private final int mergeWidth;
+  @Nullable private final File tempDirectory;
+  @Nullable private final Executor executor;
+  private final int parallelism;
+
+  private ExternalSorter(Ordering<? super E> ordering, Codec<E> codec,
+      int maxElementsInMemory, int mergeWidth, @Nullable File tempDirectory,
+      @Nullable Executor executor, int parallelism) {
+    this.ordering = ordering;
+    this.codec = codec;
+    this.maxElementsInMemory = maxElementsInMemory;
+    this.mergeWidth = mergeWidth;
+    this.tempDirectory = tempDirectory;
+    this.executor = executor;
+    this.parallelism = parallelism;
+  }
+
+  /**
+   * Returns a sorter which orders elements by {@code comparator} and encodes
+   * them in run files with {@code codec}. It keeps up to 65536 elements in
+   * memory, merges up to 64 runs at a time, creates its temporary files in a
+   * new directory beneath {@code java.io.tmpdir}, and sorts in the calling
+   * thread.
+   */
+  public static <E> ExternalSorter<E> create(
+      Comparator<? super E> comparator, Codec<E> codec) {
+    return new ExternalSorter<E>(Ordering.from(comparator), checkNotNull(codec),
+        DEFAULT_MAX_ELEMENTS_IN_MEMORY, DEFAULT_MERGE_WIDTH, null, null, 1);
+  }
+
+  /**
+   * Returns a sorter like this one which holds at most {@code maxElements}
+   * input elements in memory at once, and therefore writes runs of at most
+   * that many elements.
+   *
+   * @throws IllegalArgumentException if {@code maxElements} is not positive
+   */
+  public ExternalSorter<E> withMaxElementsInMemory(int maxElements) {
+    checkArgument(maxElements > 0, "maxElements must be positive");
+    return new ExternalSorter<E>(ordering, codec, maxElements, mergeWidth,
+        tempDirectory, executor, parallelism);
+  }
+
+  /**
+   * Returns a sorter like this one which reads at most {@code width} run files
+   * at once. If there are more runs, groups of them are first merged into
+   * longer runs.
+   *
+   * @throws IllegalArgumentException if {@code width} is less than 2
+   */
+  public ExternalSorter<E> withMergeWidth(int width) {
+    checkArgument(width >= 2, "width must be at least 2");
+    return new ExternalSorter<E>(ordering, codec, maxElementsInMemory, width,
+        tempDirectory, executor, parallelism);
+  }
+
+  /**
+   * Returns a sorter like this one which creates its temporary files in
+   * {@code directory}, which must exist, instead of in a new directory.
+   */
+  public ExternalSorter<E> withTempDirectory(File directory) {
+    return new ExternalSorter<E>(ordering, codec, maxElementsInMemory,
+        mergeWidth, checkNotNull(directory), executor, parallelism);
+  }
+
+  /**
+   * Returns a sorter like this one which sorts and writes up to {@code
+   * parallelism} runs at once using {@code executor}. Each run then holds at
+   * most {@code maxElementsInMemory / (parallelism + 1)} elements.
+   *
+   * @throws IllegalArgumentException if {@code parallelism} is not positive
+   */
+  public ExternalSorter<E> withExecutor(Executor executor, int parallelism) {
+    checkArgument(parallelism > 0, "parallelism must be positive");
+    return new ExternalSorter<E>(ordering, codec, maxElementsInMemory,
+        mergeWidth, tempDirectory, checkNotNull(executor), parallelism);
+  }
+
+  /**
+   * Sorts the elements of {@code input} and passes them to {@code processor}
+   * in order, until it returns {@code false} or all elements have been
+   * processed. Returns the result of the processor.
+   *
+   * @throws IOException if an I/O error occurs writing or reading a temporary
+   *     file, or {@code processor} or the codec throws one
+   * @throws RejectedExecutionException if the executor rejects a run
+   */
+  public <T> T sort(Iterator<? extends E> input,
+      ElementProcessor<? super E, T> processor) throws IOException {
+    checkNotNull(input);
+    checkNotNull(processor);
+    int runSize = (executor == null)
+        ? maxElementsInMemory
+        : Math.max(1, maxElementsInMemory / (parallelism + 1));
+    Session session = new Session();
+    try {
+      List<E> buffer = Lists.newArrayList();
+      while (input.hasNext()) {
+        buffer.add(input.next());
+        if (buffer.size() == runSize && input.hasNext()) {
+          session.spill(buffer);
+          buffer = Lists.newArrayListWithCapacity(runSize);
+        }
+      }
+      if (!session.hasSpilled()) {
+        Collections.sort(buffer, ordering);
+        return process(buffer.iterator(), processor);
+      }
+      session.spill(buffer);
+      List<File> runs = session.awaitRuns();
+      while (runs.size() > mergeWidth) {
+        List<File> group = runs.subList(0, mergeWidth);
+        File merged = session.merge(group);
+        group.clear();
+        runs.add(merged);
+      }
+      return process(session.read(runs), processor);
+    } catch (RunReadException e) {
+      throw e.getCause();
+    } finally {
+      session.close();
+    }
+  }
+
+  private static <E, T> T process(Iterator<? extends E> sorted,
+      ElementProcessor<? super E, T> processor) throws IOException {
+    while (sorted.hasNext() && processor.processElement(sorted.next())) {}
+    return processor.getResult();
+  }
+
+  /**
+   * The temporary files and pending tasks of one call to {@link #sort}. Only
+   * the calling thread uses it; the tasks only sort and write their own runs.
+   */
+  private final class Session implements Closeable {
+    private final List<File> files = Collections.synchronizedList(
+        Lists.<File>newArrayList());
+    private final List<File> runs = Lists.newArrayList();
+    private final LinkedList<RunTask> pending = Lists.newLinkedList();
+    private final List<Closeable> openStreams = Lists.newArrayList();
+    private File directory;
+    private boolean ownsDirectory;
+    private boolean spilled;
+
+    boolean hasSpilled() {
+      return spilled;
+    }
+
+    /** Sorts {@code buffer} and writes it as a run, possibly in parallel. */
+    void spill(final List<E> buffer) throws IOException {
+      spilled = true;
+      if (buffer.isEmpty()) {
+        return;
+      }
+      if (directory == null) {
+        ownsDirectory = (tempDirectory == null);
+        directory = ownsDirectory ? Files.createTempDir() : tempDirectory;
+      }
+      if (executor == null) {
+        Collections.sort(buffer, ordering);
+        runs.add(writeRun(buffer.iterator(), buffer.size()));
+        return;
+      }
+      while (pending.size() >= parallelism) {
+        runs.add(await(pending.removeFirst()));
+      }
+      RunTask task = new RunTask(new Callable<File>() {
+        @Override
+        public File call() throws IOException {
+          Collections.sort(buffer, ordering);
+          return writeRun(buffer.iterator(), buffer.size());
+        }
+      });
+      // close() waits for pending tasks, so add only tasks the executor accepted
+      executor.execute(task);
+      pending.addLast(task);
+    }
+
+    /** Waits for the pending runs, and returns all runs written so far. */
+    List<File> awaitRuns() throws IOException {
+      while (!pending.isEmpty()) {
+        runs.add(await(pending.removeFirst()));
+      }
+      return runs;
+    }
+
+    private File await(RunTask task) throws IOException {
+      try {
+        return task.get();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new InterruptedIOException();
+      } catch (ExecutionException e) {
+        Throwables.propagateIfPossible(e.getCause(), IOException.class);
+        throw new AssertionError(e.getCause());
+      }
+    }
+
+    File writeRun(Iterator<? extends E> sorted, long count) throws IOException {
+      File file = File.createTempFile("run", ".tmp", directory);
+      files.add(file);
+      DataOutputStream output = new DataOutputStream(new BufferedOutputStream(
+          new FileOutputStream(file), BUFFER_SIZE));
+      boolean threw = true;
+      try {
+        output.writeLong(count);
+        while (sorted.hasNext()) {
+          codec.write(sorted.next(), output);
+        }
+        threw = false;
+      } finally {
+        Closeables.close(output, threw);
+      }
+      return file;
+    }
+
+    /** Merges {@code group} into a new run, and deletes its files. */
+    File merge(List<File> group) throws IOException {
+      long count = 0;
+      for (File run : group) {
+        count += countOf(run);
+      }
+      File merged = writeRun(read(group), count);
+      for (File run : group) {
+        delete(run);
+      }
+      return merged;
+    }
+
+    private long countOf(File run) throws IOException {
+      DataInputStream input = new DataInputStream(new FileInputStream(run));
+      try {
+        return input.readLong();
+      } finally {
+        Closeables.closeQuietly(input);
+      }
+    }
+
+    /** Returns the merged elements of {@code runs}. */
+    Iterator<E> read(List<File> runs) throws IOException {
+      List<Iterator<E>> iterators = Lists.newArrayListWithCapacity(runs.size());
+      for (File run : runs) {
+        iterators.add(new RunIterator(run));
+      }
+      return Iterators.mergeSorted(iterators, ordering);
+    }
+
+    private void delete(File file) {
+      file.delete();
+      files.remove(file);
+    }
+
+    /**
+     * Cancels the pending tasks that have not started, waits for the others,
+     * and deletes all temporary files.
+     */
+    @Override public void close() {
+      boolean interrupted = false;
+      for (RunTask task : pending) {
+        if (task.cancelIfNotStarted()) {
+          continue;
+        }
+        while (true) {
+          try {
+            task.get();
+            break;
+          } catch (InterruptedException e) {
+            interrupted = true;
+          } catch (ExecutionException e) {
+            // a file the task created, if any, is in files
+            break;
+          }
+        }
+      }
+      for (Closeable stream : openStreams) {
+        Closeables.closeQuietly(stream);
+      }
+      synchronized (files) {
+        for (File file : files) {
+          file.delete();
+        }
+      }
+      if (ownsDirectory) {
+        directory.delete();
+      }
+      if (interrupted) {
+        Thread.currentThread().interrupt();
+      }
+    }
+
+    /** The elements of a run, read as they are needed. */
+    private final class RunIterator extends AbstractIterator<E> {
+      final DataInputStream input;
+      long remaining;
+
+      RunIterator(File run) throws IOException {
+        input = new DataInputStream(new BufferedInputStream(
+            new FileInputStream(run), BUFFER_SIZE));
+        openStreams.add(input);
+        remaining = input.readLong();
+      }
+
+      @Override protected E computeNext() {
+        if (remaining == 0) {
+          Closeables.closeQuietly(input);
+          return endOfData();
+        }
+        remaining--;
+        try {
+          return codec.read(input);
+        } catch (IOException e) {
+          throw new RunReadException(e);
+        }
+      }
+    }
+  }
+
+  /**
+   * A task that sorts and writes a run. Unlike {@link FutureTask#cancel}, which
+   * also marks a running task cancelled, {@link #cancelIfNotStarted} tells
+   * whether the task may still create a file, and so must be waited for.
+   */
+  private static final class RunTask extends FutureTask<File> {
+    private final AtomicBoolean started = new AtomicBoolean();
+
+    RunTask(Callable<File> callable) {
+      super(callable);
+    }
+
+    @Override public void run() {
+      if (started.compareAndSet(false, true)) {
+        super.run();
+      }
+    }
+
+    /**
+     * Cancels this task if it has not started, and returns whether it did;
+     * otherwise the task is running or done.
+     */
+    boolean cancelIfNotStarted() {
+      return started.compareAndSet(false, true) && cancel(false);
+    }
+  }
+
+  /**
+   * Carries an {@code IOException} thrown while reading a run out of an
+   * iterator, to be rethrown by {@link #sort}.
+   */
+  private static final class RunReadException extends RuntimeException {
+    RunReadException(IOException cause) {
+      super(cause);
+    }
+
+    @Override public synchronized IOException getCause() {
+      return (IOException) super.getCause();
+    }
+
+    private static final long serialVersionUID = 0;
+  }
+
+  /**
+   * Returns a codec for strings, which writes each one as its length in UTF-8
+   * bytes followed by those bytes. Unlike {@link DataOutput#writeUTF}, it
+   * accepts strings of any length.
+   */
+  public static Codec<String> stringCodec() {
+    return StringCodec.INSTANCE;
+  }
+
+  private enum StringCodec implements Codec<String> {
+    INSTANCE;
+
+    @Override public void write(String element, DataOutput output)
+        throws IOException {
+      byte[] bytes = element.getBytes(Charsets.UTF_8);
+      output.writeInt(bytes.length);
+      output.write(bytes);
+    }
+
+    @Override public String read(DataInput input) throws IOException {
+      byte[] bytes = new byte[input.readInt()];
+      input.readFully(bytes);
+      return new String(bytes, Charsets.UTF_8);
+    }
+  }
+}
@@ -0,0 +1,310 @@
+/*
+ * Copyright (C) 2012 The Guava Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.common.primitives;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkElementIndex;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkPositionIndex;
+
+import com.google.common.annotations.Beta;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.RandomAccess;
+
+import javax.annotation.Nullable;
+
+/**
+ * A growable list of {@code int} values, stored unboxed in an array.
+ *
+ * <p>Where {@link Ints#asList} gives a fixed-size view of an existing array, this list grows as
+ * values are added, like an {@code ArrayList<Integer>}, but spends four bytes on each value rather
+ * than a reference and a boxed {@code Integer}. {@link #asList} views it as a {@code
+ * List<Integer>} where one is needed.
+ *
+ * <p>This class is not thread-safe. Its {@link #equals} and {@link #hashCode} methods follow the
+ * contract of {@link List}, applied to the boxed values.
+ *
+ * @since 12.0
+ */
+@Beta
+public final class IntArrayList {
+  private static final int[] EMPTY = new int[0];
+
+  private int[] array;
+  private int size;
+
+  /** Creates an empty list. */
+  public static IntArrayList create() {
+    return new IntArrayList(EMPTY);
+  }
+
+  /**
+   * Creates an empty list that can hold {@code initialCapacity} values without growing.
+   *
+   * @throws IllegalArgumentException if {@code initialCapacity} is negative
+   */
+  public static IntArrayList withCapacity(int initialCapacity) {
+    checkArgument(initialCapacity >= 0, "Invalid initialCapacity: %s", initialCapacity);
+    return new IntArrayList(new int[initialCapacity]);
+  }
+
+  /** Creates a list containing the given values, in order. */
+  public static IntArrayList of(int... values) {
+    IntArrayList list = new IntArrayList(values.clone());
+    list.size = values.length;
+    return list;
+  }
+
+  private IntArrayList(int[] array) {
+    this.array = array;
+  }
+
+  /** Returns the number of values in this list. */
+  public int size() {
+    return size;
+  }
+
+  /** Returns whether this list has no values. */
+  public boolean isEmpty() {
+    return size == 0;
+  }
+
+  /**
+   * Returns the value at {@code index}.
+   *
+   * @throws IndexOutOfBoundsException if {@code index} is negative or not less than {@link #size}
+   */
+  public int get(int index) {
+    checkElementIndex(index, size);
+    return array[index];
+  }
+
+  /**
+   * Replaces the value at {@code index}, and returns the value it replaced.
+   *
+   * @throws IndexOutOfBoundsException if {@code index} is negative or not less than {@link #size}
+   */
+  public int set(int index, int value) {
+    checkElementIndex(index, size);
+    int previous = array[index];
+    array[index] = value;
+    return previous;
+  }
+
+  /** Appends {@code value} to this list. */
+  public void add(int value) {
+    if (size == array.length) {
+      grow(size + 1);
+    }
+    array[size++] = value;
+  }
+
+  /**
+   * Inserts {@code value} at {@code index}, shifting later values along.
+   *
+   * @throws IndexOutOfBoundsException if {@code index} is negative or greater than {@link #size}
+   */
+  public void add(int index, int value) {
+    checkPositionIndex(index, size);
+    if (size == array.length) {
+      grow(size + 1);
+    }
+    System.arraycopy(array, index, array, index + 1, size - index);
+    array[index] = value;
+    size++;
+  }
+
+  /** Appends each of {@code values} to this list, in order. */
+  public void addAll(int... values) {
+    ensureCapacity(size + values.length);
+    System.arraycopy(values, 0, array, size, values.length);
+    size += values.length;
+  }
+
+  /**
+   * Removes the value at {@code index}, shifting later values back, and returns it.
+   *
+   * @throws IndexOutOfBoundsException if {@code index} is negative or not less than {@link #size}
+   */
+  public int removeAt(int index) {
+    checkElementIndex(index, size);
+    int removed = array[index];
+    System.arraycopy(array, index + 1, array, index, size - index - 1);
+    size--;
+    return removed;
+  }
+
+  /** Removes every value from this list, keeping its capacity. */
+  public void clear() {
+    size = 0;
+  }
+
+  /** Returns whether this list contains {@code target}. */
+  public boolean contains(int target) {
+    return indexOf(target) >= 0;
+  }
+
+  /** Returns the index of the first occurrence of {@code target}, or -1 if there is none. */
+  public int indexOf(int target) {
+    for (int i = 0; i < size; i++) {
+      if (array[i] == target) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  /** Returns the index of the last occurrence of {@code target}, or -1 if there is none. */
+  public int lastIndexOf(int target) {
+    for (int i = size - 1; i >= 0; i--) {
+      if (array[i] == target) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  /** Sorts the values of this list into ascending order. */
+  public void sort() {
+    Arrays.sort(array, 0, size);
+  }
+
+  /** Returns a new array containing the values of this list, in order. */
+  public int[] toArray() {
+    int[] result = new int[size];
+    System.arraycopy(array, 0, result, 0, size);
+    return result;
+  }
+
+  /**
+   * Ensures that this list can hold {@code minCapacity} values without growing again.
+   *
+   * @throws IllegalArgumentException if {@code minCapacity} is negative
+   */
+  public void ensureCapacity(int minCapacity) {
+    checkArgument(minCapacity >= 0, "Invalid minCapacity: %s", minCapacity);
+    if (minCapacity > array.length) {
+      grow(minCapacity);
+    }
+  }
+
+  /** Shrinks the backing array of this list to its size. */
+  public void trimToSize() {
+    if (size < array.length) {
+      array = toArray();
+    }
+  }
+
+  /**
+   * Returns a {@code List<Integer>} view of this list. Changes to either are visible in the other,
+   * and the view supports every optional operation except for adding or removing nulls.
+   */
+  public List<Integer> asList() {
+    return new AsList();
+  }
+
+  /**
+   * Returns {@code true} if {@code object} is an {@code IntArrayList} with the same values in the
+   * same order.
+   */
+  @Override public boolean equals(@Nullable Object object) {
+    if (object == this) {
+      return true;
+    }
+    if (!(object instanceof IntArrayList)) {
+      return false;
+    }
+    IntArrayList that = (IntArrayList) object;
+    if (size != that.size) {
+      return false;
+    }
+    for (int i = 0; i < size; i++) {
+      if (array[i] != that.array[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /** Returns the hash code that a {@code List<Integer>} with the same values would have. */
+  @Override public int hashCode() {
+    int hash = 1;
+    for (int i = 0; i < size; i++) {
+      hash = 31 * hash + Ints.hashCode(array[i]);
+    }
+    return hash;
+  }
+
+  /** Returns the values in the format of {@code List.toString()}. */
+  @Override public String toString() {
+    return "[" + Ints.join(", ", toArray()) + "]";
+  }
+
+  /** Grows the backing array to hold at least {@code minCapacity} values, by half again or more. */
+  private void grow(int minCapacity) {
+    int padding = Math.max(array.length >> 1, 10);
+    if (padding > Integer.MAX_VALUE - 8 - minCapacity) {
+      padding = Math.max(0, Integer.MAX_VALUE - 8 - minCapacity);
+    }
+    array = Ints.ensureCapacity(array, minCapacity, padding);
+  }
+
+  private final class AsList extends AbstractList<Integer> implements RandomAccess {
+    @Override public int size() {
+      return size;
+    }
+
+    @Override public Integer get(int index) {
+      return IntArrayList.this.get(index);
+    }
+
+    @Override public Integer set(int index, Integer element) {
+      return IntArrayList.this.set(index, checkNotNull(element));
+    }
+
+    @Override public void add(int index, Integer element) {
+      IntArrayList.this.add(index, checkNotNull(element));
+      modCount++;
+    }
+
+    @Override public Integer remove(int index) {
+      Integer removed = removeAt(index);
+      modCount++;
+      return removed;
+    }
+
+    @Override public void clear() {
+      IntArrayList.this.clear();
+      modCount++;
+    }
+
+    @Override public int indexOf(@Nullable Object target) {
+      return (target instanceof Integer) ? IntArrayList.this.indexOf((Integer) target) : -1;
+    }
+
+    @Override public int lastIndexOf(@Nullable Object target) {
+      return (target instanceof Integer) ? IntArrayList.this.lastIndexOf((Integer) target) : -1;
+    }
+
+    @Override public boolean contains(@Nullable Object target) {
+      return indexOf(target) >= 0;
+    }
+  }
+}
@@ -0,0 +1,335 @@
+/*
+ * Copyright (C) 2012 The Guava Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.common.primitives;
+
+import com.google.common.annotations.Beta;
+
+import java.util.Arrays;
+
+import javax.annotation.Nullable;
+
+/**
+ * A growable map from {@code int} keys to {@code int} values, stored unboxed in an
+ * open-addressing hash table of parallel key and value arrays.
+ *
+ * <p>Each entry takes two {@code int} slots, in a table kept at most three quarters full, where
+ * a {@code HashMap<Integer, Integer>} spends a hash map entry and two boxed values. The map never
+ * allocates on lookups or updates, other than when its table grows.
+ *
+ * <p>This class is not thread-safe. Its {@link #equals} and {@link #hashCode} methods follow the
+ * contract of {@link java.util.Map}, applied to the boxed entries, but this class does not
+ * implement {@code Map}.
+ *
+ * @since 12.0
+ */
+@Beta
+public final class IntIntHashMap {
+  /** The keys of the table, in which 0 marks an empty slot. */
+  private int[] keys;
+  private int[] values;
+  private int mask;
+  private int maxFill;
+  /** The number of keys in the table, which excludes 0. */
+  private int assigned;
+  private boolean containsZeroKey;
+  private int zeroKeyValue;
+
+  /** Creates an empty map. */
+  public static IntIntHashMap create() {
+    return withExpectedSize(0);
+  }
+
+  /**
+   * Creates an empty map that can hold {@code expectedSize} entries without growing its table.
+   *
+   * @throws IllegalArgumentException if {@code expectedSize} is negative
+   */
+  public static IntIntHashMap withExpectedSize(int expectedSize) {
+    return new IntIntHashMap(OpenHashTables.tableSize(expectedSize));
+  }
+
+  private IntIntHashMap(int tableSize) {
+    allocate(tableSize);
+  }
+
+  private void allocate(int tableSize) {
+    keys = new int[tableSize];
+    values = new int[tableSize];
+    mask = tableSize - 1;
+    maxFill = OpenHashTables.maxFill(tableSize);
+  }
+
+  /** Returns the number of entries in this map. */
+  public int size() {
+    return assigned + (containsZeroKey ? 1 : 0);
+  }
+
+  /** Returns whether this map has no entries. */
+  public boolean isEmpty() {
+    return size() == 0;
+  }
+
+  /** Returns whether this map has an entry for {@code key}. */
+  public boolean containsKey(int key) {
+    return (key == 0) ? containsZeroKey : slot(key) >= 0;
+  }
+
+  /** Returns the value for {@code key}, or {@code defaultValue} if the map has no entry for it. */
+  public int get(int key, int defaultValue) {
+    if (key == 0) {
+      return containsZeroKey ? zeroKeyValue : defaultValue;
+    }
+    int slot = slot(key);
+    return (slot >= 0) ? values[slot] : defaultValue;
+  }
+
+  /**
+   * Associates {@code value} with {@code key}.
+   *
+   * @return the value previously associated with {@code key}, or 0 if there was none; use {@link
+   *     #containsKey} to tell the two apart
+   */
+  public int put(int key, int value) {
+    if (key == 0) {
+      int previous = zeroKeyValue;
+      containsZeroKey = true;
+      zeroKeyValue = value;
+      return previous;
+    }
+    int slot = OpenHashTables.mix(key) & mask;
+    for (int k; (k = keys[slot]) != 0; slot = (slot + 1) & mask) {
+      if (k == key) {
+        int previous = values[slot];
+        values[slot] = value;
+        return previous;
+      }
+    }
+    insert(slot, key, value);
+    return 0;
+  }
+
+  /**
+   * Adds {@code delta} to the value for {@code key}, treating a missing entry as 0, and returns
+   * the new value. This is the unboxed equivalent of a counting {@code Map<Integer, Integer>}
+   * update.
+   */
+  public int addTo(int key, int delta) {
+    if (key == 0) {
+      zeroKeyValue = containsZeroKey ? zeroKeyValue + delta : delta;
+      containsZeroKey = true;
+      return zeroKeyValue;
+    }
+    int slot = OpenHashTables.mix(key) & mask;
+    for (int k; (k = keys[slot]) != 0; slot = (slot + 1) & mask) {
+      if (k == key) {
+        return values[slot] += delta;
+      }
+    }
+    insert(slot, key, delta);
+    return delta;
+  }
+
+  /**
+   * Removes the entry for {@code key}, if any.
+   *
+   * @return {@code true} if the map had an entry for {@code key}
+   */
+  public boolean remove(int key) {
+    if (key == 0) {
+      boolean removed = containsZeroKey;
+      containsZeroKey = false;
+      zeroKeyValue = 0;
+      return removed;
+    }
+    int slot = slot(key);
+    if (slot < 0) {
+      return false;
+    }
+    shiftKeys(slot);
+    assigned--;
+    return true;
+  }
+
+  /** Removes every entry from this map, keeping its table. */
+  public void clear() {
+    Arrays.fill(keys, 0);
+    Arrays.fill(values, 0);
+    assigned = 0;
+    containsZeroKey = false;
+    zeroKeyValue = 0;
+  }
+
+  /**
+   * Returns the keys of this map, in no particular order, but in the same order as {@link
+   * #values} returns their values if the map is not modified in between.
+   */
+  public int[] keys() {
+    int[] result = new int[size()];
+    int i = 0;
+    if (containsZeroKey) {
+      result[i++] = 0;
+    }
+    for (int key : keys) {
+      if (key != 0) {
+        result[i++] = key;
+      }
+    }
+    return result;
+  }
+
+  /** Returns the values of this map, in the same order as {@link #keys} returns their keys. */
+  public int[] values() {
+    int[] result = new int[size()];
+    int i = 0;
+    if (containsZeroKey) {
+      result[i++] = zeroKeyValue;
+    }
+    for (int slot = 0; slot < keys.length; slot++) {
+      if (keys[slot] != 0) {
+        result[i++] = values[slot];
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Returns {@code true} if {@code object} is an {@code IntIntHashMap} with the same entries as
+   * this map.
+   */
+  @Override public boolean equals(@Nullable Object object) {
+    if (object == this) {
+      return true;
+    }
+    if (!(object instanceof IntIntHashMap)) {
+      return false;
+    }
+    IntIntHashMap that = (IntIntHashMap) object;
+    if (size() != that.size() || containsZeroKey != that.containsZeroKey
+        || zeroKeyValue != that.zeroKeyValue) {
+      return false;
+    }
+    for (int slot = 0; slot < keys.length; slot++) {
+      int key = keys[slot];
+      if (key != 0) {
+        int thatSlot = that.slot(key);
+        if (thatSlot < 0 || that.values[thatSlot] != values[slot]) {
+          return false;
+        }
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Returns the hash code that a {@code Map<Integer, Integer>} with the same entries would have.
+   */
+  @Override public int hashCode() {
+    int hash = containsZeroKey ? Ints.hashCode(zeroKeyValue) : 0;
+    for (int slot = 0; slot < keys.length; slot++) {
+      if (keys[slot] != 0) {
+        hash += Ints.hashCode(keys[slot]) ^ Ints.hashCode(values[slot]);
+      }
+    }
+    return hash;
+  }
+
+  /** Returns the entries in the format of {@code Map.toString()}, in no particular order. */
+  @Override public String toString() {
+    StringBuilder builder = new StringBuilder(size() * 8 + 2).append('{');
+    boolean first = true;
+    if (containsZeroKey) {
+      builder.append("0=").append(zeroKeyValue);
+      first = false;
+    }
+    for (int slot = 0; slot < keys.length; slot++) {
+      if (keys[slot] != 0) {
+        if (!first) {
+          builder.append(", ");
+        }
+        builder.append(keys[slot]).append('=').append(values[slot]);
+        first = false;
+      }
+    }
+    return builder.append('}').toString();
+  }
+
+  /** Returns the slot holding {@code key}, which is not 0, or -1 if it is absent. */
+  private int slot(int key) {
+    for (int slot = OpenHashTables.mix(key) & mask; ; slot = (slot + 1) & mask) {
+      int k = keys[slot];
+      if (k == key) {
+        return slot;
+      } else if (k == 0) {
+        return -1;
+      }
+    }
+  }
+
+  /** Stores a new entry in {@code slot}, the empty slot where the probe for {@code key} ended. */
+  private void insert(int slot, int key, int value) {
+    if (assigned == maxFill) {
+      rehash(OpenHashTables.grow(keys.length));
+      slot = emptySlot(key);
+    }
+    keys[slot] = key;
+    values[slot] = value;
+    assigned++;
+  }
+
+  private int emptySlot(int key) {
+    int slot = OpenHashTables.mix(key) & mask;
+    while (keys[slot] != 0) {
+      slot = (slot + 1) & mask;
+    }
+    return slot;
+  }
+
+  private void rehash(int tableSize) {
+    int[] oldKeys = keys;
+    int[] oldValues = values;
+    allocate(tableSize);
+    for (int i = 0; i < oldKeys.length; i++) {
+      int key = oldKeys[i];
+      if (key != 0) {
+        int slot = emptySlot(key);
+        keys[slot] = key;
+        values[slot] = oldValues[i];
+      }
+    }
+  }
+
+  /**
+   * Empties the slot {@code gap}, moving back any later entry of the probe run whose probe
+   * sequence passes through it.
+   */
+  private void shiftKeys(int gap) {
+    for (int slot = (gap + 1) & mask; ; slot = (slot + 1) & mask) {
+      int key = keys[slot];
+      if (key == 0) {
+        keys[gap] = 0;
+        values[gap] = 0;
+        return;
+      }
+      int ideal = OpenHashTables.mix(key) & mask;
+      if (((slot - ideal) & mask) >= ((slot - gap) & mask)) {
+        keys[gap] = key;
+        values[gap] = values[slot];
+        gap = slot;
+      }
+    }
+  }
+}
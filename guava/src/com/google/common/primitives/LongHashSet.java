@@ -0,0 +1,266 @@
+/*
+ * Copyright (C) 2012 The Guava Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.common.primitives;
+
+import com.google.common.annotations.Beta;
+
+import java.util.Arrays;
+
+import javax.annotation.Nullable;
+
+/**
+ * A growable set of {@code long} values, stored unboxed in an open-addressing hash table.
+ *
+ * <p>A {@code HashSet<Long>} spends a hash map entry and a boxed {@code Long}, around 50 to 60
+ * bytes, on each element. This set spends one {@code long} slot of its table, which is kept at
+ * most three quarters full, so between 8 and 22 bytes per element: 50 million elements take 0.5
+ * to 1 GB rather than about 3 GB, and lookups touch one array instead of chasing pointers.
+ *
+ * <p>This class is not thread-safe. Its {@link #equals} and {@link #hashCode} methods follow the
+ * contract of {@link java.util.Set}, applied to the boxed elements, but this class does not
+ * implement {@code Set}; use {@link #toArray} and {@link Longs#asList} to interoperate with
+ * collections of boxed values.
+ *
+ * @since 12.0
+ */
+@Beta
+public final class LongHashSet {
+  /** The table, in which 0 marks an empty slot. */
+  private long[] keys;
+  private int mask;
+  private int maxFill;
+  /** The number of keys in the table, which excludes 0. */
+  private int assigned;
+  private boolean containsZero;
+
+  /** Creates an empty set. */
+  public static LongHashSet create() {
+    return withExpectedSize(0);
+  }
+
+  /**
+   * Creates an empty set that can hold {@code expectedSize} elements without growing its table.
+   *
+   * @throws IllegalArgumentException if {@code expectedSize} is negative
+   */
+  public static LongHashSet withExpectedSize(int expectedSize) {
+    return new LongHashSet(OpenHashTables.tableSize(expectedSize));
+  }
+
+  /** Creates a set containing the given values. */
+  public static LongHashSet of(long... values) {
+    LongHashSet set = withExpectedSize(values.length);
+    for (long value : values) {
+      set.add(value);
+    }
+    return set;
+  }
+
+  private LongHashSet(int tableSize) {
+    allocate(tableSize);
+  }
+
+  private void allocate(int tableSize) {
+    keys = new long[tableSize];
+    mask = tableSize - 1;
+    maxFill = OpenHashTables.maxFill(tableSize);
+  }
+
+  /** Returns the number of elements in this set. */
+  public int size() {
+    return assigned + (containsZero ? 1 : 0);
+  }
+
+  /** Returns whether this set has no elements. */
+  public boolean isEmpty() {
+    return size() == 0;
+  }
+
+  /** Returns whether this set contains {@code value}. */
+  public boolean contains(long value) {
+    if (value == 0) {
+      return containsZero;
+    }
+    for (int slot = OpenHashTables.mix(value) & mask; ; slot = (slot + 1) & mask) {
+      long key = keys[slot];
+      if (key == value) {
+        return true;
+      } else if (key == 0) {
+        return false;
+      }
+    }
+  }
+
+  /**
+   * Adds {@code value} to this set.
+   *
+   * @return {@code true} if the set did not already contain {@code value}
+   */
+  public boolean add(long value) {
+    if (value == 0) {
+      boolean added = !containsZero;
+      containsZero = true;
+      return added;
+    }
+    int slot = OpenHashTables.mix(value) & mask;
+    for (long key; (key = keys[slot]) != 0; slot = (slot + 1) & mask) {
+      if (key == value) {
+        return false;
+      }
+    }
+    if (assigned == maxFill) {
+      rehash(OpenHashTables.grow(keys.length));
+      slot = emptySlot(value);
+    }
+    keys[slot] = value;
+    assigned++;
+    return true;
+  }
+
+  /**
+   * Adds each of {@code values} to this set.
+   *
+   * @return {@code true} if the set changed
+   */
+  public boolean addAll(long... values) {
+    boolean changed = false;
+    for (long value : values) {
+      changed |= add(value);
+    }
+    return changed;
+  }
+
+  /**
+   * Removes {@code value} from this set.
+   *
+   * @return {@code true} if the set contained {@code value}
+   */
+  public boolean remove(long value) {
+    if (value == 0) {
+      boolean removed = containsZero;
+      containsZero = false;
+      return removed;
+    }
+    for (int slot = OpenHashTables.mix(value) & mask; ; slot = (slot + 1) & mask) {
+      long key = keys[slot];
+      if (key == value) {
+        shiftKeys(slot);
+        assigned--;
+        return true;
+      } else if (key == 0) {
+        return false;
+      }
+    }
+  }
+
+  /** Removes every element from this set, keeping its table. */
+  public void clear() {
+    Arrays.fill(keys, 0);
+    assigned = 0;
+    containsZero = false;
+  }
+
+  /** Returns the elements of this set, in no particular order. */
+  public long[] toArray() {
+    long[] result = new long[size()];
+    int i = 0;
+    if (containsZero) {
+      result[i++] = 0;
+    }
+    for (long key : keys) {
+      if (key != 0) {
+        result[i++] = key;
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Returns {@code true} if {@code object} is a {@code LongHashSet} with the same elements as this
+   * set.
+   */
+  @Override public boolean equals(@Nullable Object object) {
+    if (object == this) {
+      return true;
+    }
+    if (!(object instanceof LongHashSet)) {
+      return false;
+    }
+    LongHashSet that = (LongHashSet) object;
+    if (size() != that.size() || containsZero != that.containsZero) {
+      return false;
+    }
+    for (long key : keys) {
+      if (key != 0 && !that.contains(key)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /** Returns the hash code that a {@code Set<Long>} with the same elements would have. */
+  @Override public int hashCode() {
+    int hash = 0;
+    for (long key : keys) {
+      hash += Longs.hashCode(key); // 0 for the empty slots, and for the key 0
+    }
+    return hash;
+  }
+
+  /** Returns the elements in the format of {@code Set.toString()}, in no particular order. */
+  @Override public String toString() {
+    return "[" + Longs.join(", ", toArray()) + "]";
+  }
+
+  /** Returns the empty slot where {@code value}, which is absent, belongs. */
+  private int emptySlot(long value) {
+    int slot = OpenHashTables.mix(value) & mask;
+    while (keys[slot] != 0) {
+      slot = (slot + 1) & mask;
+    }
+    return slot;
+  }
+
+  private void rehash(int tableSize) {
+    long[] oldKeys = keys;
+    allocate(tableSize);
+    for (long key : oldKeys) {
+      if (key != 0) {
+        keys[emptySlot(key)] = key;
+      }
+    }
+  }
+
+  /**
+   * Empties the slot {@code gap}, moving back any later key of the probe run whose probe sequence
+   * passes through it.
+   */
+  private void shiftKeys(int gap) {
+    for (int slot = (gap + 1) & mask; ; slot = (slot + 1) & mask) {
+      long key = keys[slot];
+      if (key == 0) {
+        keys[gap] = 0;
+        return;
+      }
+      int ideal = OpenHashTables.mix(key) & mask;
+      if (((slot - ideal) & mask) >= ((slot - gap) & mask)) {
+        keys[gap] = key;
+        gap = slot;
+      }
+    }
+  }
+}
@@ -0,0 +1,225 @@
+/*
+ * Copyright (C) 2012 The Guava Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.common.primitives;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import com.google.common.annotations.Beta;
+
+import javax.annotation.Nullable;
+
+/**
+ * A growable multiset of {@code long} values, which counts the occurrences of each distinct value
+ * in a {@link LongLongHashMap}, without boxing.
+ *
+ * <p>The counts follow the rules of {@link com.google.common.collect.Multiset}: they are never
+ * negative, an element is present exactly when its count is positive, and no count may exceed
+ * {@link Integer#MAX_VALUE}. Methods that would violate those rules throw {@link
+ * IllegalArgumentException} and leave the multiset unchanged.
+ *
+ * <p>This class is not thread-safe. Its {@link #equals} and {@link #hashCode} methods follow the
+ * contract of {@code Multiset}, applied to the boxed elements, but this class does not implement
+ * {@code Multiset}.
+ *
+ * @since 12.0
+ */
+@Beta
+public final class LongMultiset {
+  private final LongLongHashMap counts;
+  private long size;
+
+  /** Creates an empty multiset. */
+  public static LongMultiset create() {
+    return new LongMultiset(LongLongHashMap.create());
+  }
+
+  /**
+   * Creates an empty multiset that can hold {@code distinctElements} distinct elements without
+   * growing its table.
+   *
+   * @throws IllegalArgumentException if {@code distinctElements} is negative
+   */
+  public static LongMultiset withExpectedSize(int distinctElements) {
+    return new LongMultiset(LongLongHashMap.withExpectedSize(distinctElements));
+  }
+
+  private LongMultiset(LongLongHashMap counts) {
+    this.counts = counts;
+  }
+
+  /**
+   * Returns the total number of occurrences of all elements, or {@link Integer#MAX_VALUE} if it is
+   * larger than that.
+   */
+  public int size() {
+    return Ints.saturatedCast(size);
+  }
+
+  /** Returns whether this multiset has no elements. */
+  public boolean isEmpty() {
+    return size == 0;
+  }
+
+  /** Returns the number of distinct elements. */
+  public int elementCount() {
+    return counts.size();
+  }
+
+  /** Returns the number of occurrences of {@code element}, which is 0 if it is absent. */
+  public int count(long element) {
+    return (int) counts.get(element, 0);
+  }
+
+  /** Returns whether {@code element} occurs at least once. */
+  public boolean contains(long element) {
+    return counts.containsKey(element);
+  }
+
+  /**
+   * Adds one occurrence of {@code element}.
+   *
+   * @return {@code true} always, as {@link java.util.Collection#add} does
+   * @throws IllegalArgumentException if the count would exceed {@link Integer#MAX_VALUE}
+   */
+  public boolean add(long element) {
+    add(element, 1);
+    return true;
+  }
+
+  /**
+   * Adds {@code occurrences} occurrences of {@code element}.
+   *
+   * @return the count of {@code element} before the operation
+   * @throws IllegalArgumentException if {@code occurrences} is negative, or if the count would
+   *     exceed {@link Integer#MAX_VALUE}
+   */
+  public int add(long element, int occurrences) {
+    checkArgument(occurrences >= 0, "occurrences cannot be negative: %s", occurrences);
+    int previous = count(element);
+    if (occurrences > 0) {
+      long newCount = (long) previous + occurrences;
+      checkArgument(newCount <= Integer.MAX_VALUE, "too many occurrences: %s", newCount);
+      counts.put(element, newCount);
+      size += occurrences;
+    }
+    return previous;
+  }
+
+  /**
+   * Removes one occurrence of {@code element}, if it is present.
+   *
+   * @return {@code true} if an occurrence was removed
+   */
+  public boolean remove(long element) {
+    return remove(element, 1) > 0;
+  }
+
+  /**
+   * Removes up to {@code occurrences} occurrences of {@code element}; if it has fewer, removes them
+   * all.
+   *
+   * @return the count of {@code element} before the operation
+   * @throws IllegalArgumentException if {@code occurrences} is negative
+   */
+  public int remove(long element, int occurrences) {
+    checkArgument(occurrences >= 0, "occurrences cannot be negative: %s", occurrences);
+    return setCount(element, Math.max(0, count(element) - occurrences));
+  }
+
+  /**
+   * Sets the count of {@code element} to {@code count}, adding or removing occurrences as needed.
+   *
+   * @return the count of {@code element} before the operation
+   * @throws IllegalArgumentException if {@code count} is negative
+   */
+  public int setCount(long element, int count) {
+    checkArgument(count >= 0, "count cannot be negative: %s", count);
+    int previous = count(element);
+    if (count == 0) {
+      counts.remove(element);
+    } else {
+      counts.put(element, count);
+    }
+    size += count - previous;
+    return previous;
+  }
+
+  /** Removes every element from this multiset, keeping its table. */
+  public void clear() {
+    counts.clear();
+    size = 0;
+  }
+
+  /**
+   * Returns the distinct elements of this multiset, in no particular order, but in the same order
+   * as {@link #counts} returns their counts if the multiset is not modified in between.
+   */
+  public long[] elements() {
+    return counts.keys();
+  }
+
+  /** Returns the counts of the distinct elements, in the same order as {@link #elements}. */
+  public int[] counts() {
+    long[] values = counts.values();
+    int[] result = new int[values.length];
+    for (int i = 0; i < values.length; i++) {
+      result[i] = (int) values[i];
+    }
+    return result;
+  }
+
+  /**
+   * Returns {@code true} if {@code object} is a {@code LongMultiset} with the same elements and
+   * counts as this multiset.
+   */
+  @Override public boolean equals(@Nullable Object object) {
+    if (object == this) {
+      return true;
+    }
+    if (object instanceof LongMultiset) {
+      LongMultiset that = (LongMultiset) object;
+      return size == that.size && counts.equals(that.counts);
+    }
+    return false;
+  }
+
+  /** Returns the hash code that a {@code Multiset<Long>} with the same counts would have. */
+  @Override public int hashCode() {
+    // The map's hash is the sum of (hash(element) ^ hash(count)), and hash(count) == count.
+    return counts.hashCode();
+  }
+
+  /**
+   * Returns the elements in the format of {@code Multiset.toString()}, such as {@code "[1 x 3,
+   * 2]"}, in no particular order.
+   */
+  @Override public String toString() {
+    long[] elements = elements();
+    int[] counts = counts();
+    StringBuilder builder = new StringBuilder(elements.length * 8 + 2).append('[');
+    for (int i = 0; i < elements.length; i++) {
+      if (i > 0) {
+        builder.append(", ");
+      }
+      builder.append(elements[i]);
+      if (counts[i] != 1) {
+        builder.append(" x ").append(counts[i]);
+      }
+    }
+    return builder.append(']').toString();
+  }
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright (C) 2012 The Guava Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.common.primitives;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Sizing and hashing shared by the open-addressing primitive collections, {@link LongHashSet},
+ * {@link IntIntHashMap} and {@link LongLongHashMap}.
+ *
+ * <p>Their tables have a power-of-two length and are probed linearly. The key 0 marks an empty
+ * slot, so each collection keeps the entry for the key 0, if any, outside its table. Removal
+ * shifts later entries of the probe sequence back into the freed slot, so there are no tombstones
+ * and lookups never slow down as entries come and go.
+ */
+final class OpenHashTables {
+  private OpenHashTables() {}
+
+  /** The largest table length. */
+  static final int MAX_TABLE_SIZE = Ints.MAX_POWER_OF_TWO;
+
+  private static final double LOAD_FACTOR = 0.75;
+
+  /** Returns the table length for {@code expectedSize} entries at the load factor. */
+  static int tableSize(int expectedSize) {
+    checkArgument(expectedSize >= 0, "expectedSize cannot be negative but was: %s", expectedSize);
+    long needed = (long) Math.ceil(expectedSize / LOAD_FACTOR) + 1;
+    if (needed >= MAX_TABLE_SIZE) {
+      return MAX_TABLE_SIZE;
+    }
+    return Math.max(4, Integer.highestOneBit((int) needed - 1) << 1);
+  }
+
+  /** Returns the number of table entries at which a table of {@code tableSize} must grow. */
+  static int maxFill(int tableSize) {
+    return (tableSize == MAX_TABLE_SIZE) ? tableSize - 1 : (int) (tableSize * LOAD_FACTOR);
+  }
+
+  /** Returns the doubled table length, or fails if the table cannot grow. */
+  static int grow(int tableSize) {
+    if (tableSize == MAX_TABLE_SIZE) {
+      throw new IllegalStateException("table is full: " + tableSize);
+    }
+    return tableSize << 1;
+  }
+
+  /**
+   * Spreads the bits of {@code key}, so that keys which differ only in their high bits still land
+   * in different slots of a power-of-two table.
+   */
+  static int mix(int key) {
+    int h = key * 0x9E3779B9;
+    return h ^ (h >>> 16);
+  }
+
+  /** Spreads the bits of {@code key} into an {@code int}, as {@link #mix(int)} does. */
+  static int mix(long key) {
+    long h = key * 0x9E3779B97F4A7C15L;
+    h ^= h >>> 32;
+    return (int) (h ^ (h >>> 16));
+  }
+}
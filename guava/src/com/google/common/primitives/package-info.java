@@ -61,6 +61,15 @@
  *   <li>{@link com.google.common.primitives.UnsignedInteger}
  *   <li>{@link com.google.common.primitives.UnsignedLong}
  * </ul>
+ *
+ * <h3>Collections</h3>
+ * <ul>
+ *   <li>{@link com.google.common.primitives.IntArrayList}
+ *   <li>{@link com.google.common.primitives.IntIntHashMap}
+ *   <li>{@link com.google.common.primitives.LongHashSet}
+ *   <li>{@link com.google.common.primitives.LongLongHashMap}
+ *   <li>{@link com.google.common.primitives.LongMultiset}
+ * </ul>
  */
 @ParametersAreNonnullByDefault
 package com.google.common.primitives;
@@ -23,7 +23,10 @@ import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
-import java.util.concurrent.locks.AbstractQueuedSynchronizer;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 import javax.annotation.Nullable;
 
@@ -42,33 +45,92 @@ import javax.annotation.Nullable;
  * #interruptTask()}, which will be invoked automatically if a call to {@link
  * #cancel(boolean) cancel(true)} succeeds in canceling the future.
  *
- * <p>{@code AbstractFuture} uses an {@link AbstractQueuedSynchronizer} to deal
- * with concurrency issues and guarantee thread safety.
+ * <p>{@code AbstractFuture} is lock-free: the result is published with a
+ * single compare-and-set of a volatile field, and threads blocked in
+ * {@code get} and listeners added before completion are kept in two
+ * lock-free stacks that are drained by whichever thread completes the
+ * future.
  *
  * <p>The state changing methods all return a boolean indicating success or
  * failure in changing the future's state.  Valid states are running,
  * completed, failed, or cancelled.
  *
- * <p>This class uses an {@link ExecutionList} to guarantee that all registered
- * listeners will be executed, either when the future finishes or, for listeners
- * that are added after the future completes, immediately.
- * {@code Runnable}-{@code Executor} pairs are stored in the execution list but
- * are not necessarily executed in the order in which they were added.  (If a
- * listener is added after the Future is complete, it will be executed
- * immediately, even if earlier listeners have not been executed. Additionally,
- * executors need not guarantee FIFO execution, or different listeners may run
- * in different executors.)
+ * <p>This class guarantees that all registered listeners will be executed,
+ * either when the future finishes or, for listeners that are added after the
+ * future completes, immediately. Listeners registered before completion are
+ * executed in the order in which they were added, but a listener added
+ * concurrently with completion may be executed before earlier ones.
+ * (Additionally, executors need not guarantee FIFO execution, or different
+ * listeners may run in different executors.) When completing a future
+ * happens inside a listener that is itself several listener executions deep
+ * on the same thread, the new listeners are run after that listener returns
+ * rather than from within {@code set}, so that long chains of
+ * {@link MoreExecutors#sameThreadExecutor} listeners do not exhaust the stack.
  *
  * @author Sven Mawson
  * @since 1.0
  */
 public abstract class AbstractFuture<V> implements ListenableFuture<V> {
 
-  /** Synchronization control for AbstractFutures. */
-  private final Sync<V> sync = new Sync<V>();
+  // Logger to log exceptions caught when running listeners.
+  private static final Logger log =
+      Logger.getLogger(AbstractFuture.class.getName());
 
-  // The execution list to hold our executors.
-  private final ExecutionList executionList = new ExecutionList();
+  /**
+   * How many {@link #complete} calls may run listeners inline, nested on one
+   * thread's stack, before further listeners are deferred to the outermost of
+   * them. Chains of futures that complete each other through {@link
+   * MoreExecutors#sameThreadExecutor} listeners would otherwise recurse once
+   * per future and could overflow the stack.
+   */
+  private static final int MAX_LISTENER_DEPTH = 8;
+
+  private static final ThreadLocal<ListenerQueue> pendingListeners =
+      new ThreadLocal<ListenerQueue>() {
+        @Override protected ListenerQueue initialValue() {
+          return new ListenerQueue();
+        }
+      };
+
+  /** Stands in for a {@code null} result, so that {@code null} means "not done". */
+  private static final Object NULL = new Object();
+
+  /** The result of a cancelled future. */
+  private static final Object CANCELLED = new Object();
+
+  @SuppressWarnings("rawtypes")
+  private static final AtomicReferenceFieldUpdater<AbstractFuture, Object>
+      VALUE_UPDATER = AtomicReferenceFieldUpdater.newUpdater(
+          AbstractFuture.class, Object.class, "value");
+
+  @SuppressWarnings("rawtypes")
+  private static final AtomicReferenceFieldUpdater<AbstractFuture, Listener>
+      LISTENERS_UPDATER = AtomicReferenceFieldUpdater.newUpdater(
+          AbstractFuture.class, Listener.class, "listeners");
+
+  @SuppressWarnings("rawtypes")
+  private static final AtomicReferenceFieldUpdater<AbstractFuture, Waiter>
+      WAITERS_UPDATER = AtomicReferenceFieldUpdater.newUpdater(
+          AbstractFuture.class, Waiter.class, "waiters");
+
+  /**
+   * {@code null} while the future is running. Once done, this holds the
+   * value, {@link #NULL}, a {@link Failure} or {@link #CANCELLED}, and never
+   * changes again.
+   */
+  private volatile Object value;
+
+  /**
+   * Listeners added before completion, most recent first, or
+   * {@link Listener#TOMBSTONE} once they have been handed off for execution.
+   */
+  private volatile Listener listeners;
+
+  /**
+   * Threads blocked in {@code get}, most recent first, or
+   * {@link Waiter#TOMBSTONE} once the future is done.
+   */
+  private volatile Waiter waiters;
 
   /*
    * Improve the documentation of when InterruptedException is thrown. Our
@@ -88,7 +150,45 @@ public abstract class AbstractFuture<V> implements ListenableFuture<V> {
   @Override
   public V get(long timeout, TimeUnit unit) throws InterruptedException,
       TimeoutException, ExecutionException {
-    return sync.get(unit.toNanos(timeout));
+    long remainingNanos = unit.toNanos(timeout);
+    if (Thread.interrupted()) {
+      throw new InterruptedException();
+    }
+    Object localValue = value;
+    if (localValue != null) {
+      return getDoneValue(localValue);
+    }
+    if (remainingNanos <= 0) {
+      throw new TimeoutException("Timeout waiting for task.");
+    }
+
+    long deadline = System.nanoTime() + remainingNanos;
+    Waiter node = new Waiter();
+    if (push(node)) {
+      while (true) {
+        LockSupport.parkNanos(this, remainingNanos);
+        if (Thread.interrupted()) {
+          removeWaiter(node);
+          throw new InterruptedException();
+        }
+        localValue = value;
+        if (localValue != null) {
+          return getDoneValue(localValue);
+        }
+        remainingNanos = deadline - System.nanoTime();
+        if (remainingNanos <= 0) {
+          removeWaiter(node);
+          // the future may have completed while we were unlinking ourselves
+          localValue = value;
+          if (localValue != null) {
+            return getDoneValue(localValue);
+          }
+          throw new TimeoutException("Timeout waiting for task.");
+        }
+      }
+    }
+    // The waiter list was tombstoned, so the value is already set.
+    return getDoneValue(value);
   }
 
   /*
@@ -108,25 +208,64 @@ public abstract class AbstractFuture<V> implements ListenableFuture<V> {
    */
   @Override
   public V get() throws InterruptedException, ExecutionException {
-    return sync.get();
+    if (Thread.interrupted()) {
+      throw new InterruptedException();
+    }
+    Object localValue = value;
+    if (localValue != null) {
+      return getDoneValue(localValue);
+    }
+
+    Waiter node = new Waiter();
+    if (push(node)) {
+      while (true) {
+        LockSupport.park(this);
+        if (Thread.interrupted()) {
+          removeWaiter(node);
+          throw new InterruptedException();
+        }
+        localValue = value;
+        if (localValue != null) {
+          return getDoneValue(localValue);
+        }
+      }
+    }
+    // The waiter list was tombstoned, so the value is already set.
+    return getDoneValue(value);
+  }
+
+  /**
+   * Unboxes the result of a done future, throwing as {@code get} specifies.
+   */
+  @SuppressWarnings("unchecked")
+  private V getDoneValue(Object localValue) throws ExecutionException {
+    if (localValue == CANCELLED) {
+      throw new CancellationException("Task was cancelled.");
+    }
+    if (localValue instanceof Failure) {
+      throw new ExecutionException(((Failure) localValue).exception);
+    }
+    if (localValue == NULL) {
+      return null;
+    }
+    return (V) localValue;
   }
 
   @Override
   public boolean isDone() {
-    return sync.isDone();
+    return value != null;
   }
 
   @Override
   public boolean isCancelled() {
-    return sync.isCancelled();
+    return value == CANCELLED;
   }
 
   @Override
   public boolean cancel(boolean mayInterruptIfRunning) {
-    if (!sync.cancel()) {
+    if (!complete(CANCELLED)) {
       return false;
     }
-    executionList.execute();
     if (mayInterruptIfRunning) {
       interruptTask();
     }
@@ -152,41 +291,50 @@ public abstract class AbstractFuture<V> implements ListenableFuture<V> {
    */
   @Override
   public void addListener(Runnable listener, Executor exec) {
-    executionList.add(listener, exec);
+    // Fail fast on a null.  We throw NPE here because the contract of
+    // Executor states that it throws NPE on null listener, so we propagate
+    // that contract up into the add method as well.
+    checkNotNull(listener, "Runnable was null.");
+    checkNotNull(exec, "Executor was null.");
+
+    Listener head = listeners;
+    if (head != Listener.TOMBSTONE) {
+      Listener node = new Listener(listener, exec);
+      do {
+        node.next = head;
+        if (LISTENERS_UPDATER.compareAndSet(this, head, node)) {
+          return;
+        }
+        head = listeners;
+      } while (head != Listener.TOMBSTONE);
+    }
+    // The listeners have already been handed off, so run this one now.
+    executeListener(listener, exec);
   }
 
   /**
    * Subclasses should invoke this method to set the result of the computation
-   * to {@code value}.  This will set the state of the future to
-   * {@link AbstractFuture.Sync#COMPLETED} and invoke the listeners if the
-   * state was successfully changed.
+   * to {@code value}.  This will mark the future as completed and invoke the
+   * listeners if the state was successfully changed.
    *
    * @param value the value that was the result of the task.
    * @return true if the state was successfully changed.
    */
   protected boolean set(@Nullable V value) {
-    boolean result = sync.set(value);
-    if (result) {
-      executionList.execute();
-    }
-    return result;
+    return complete((value == null) ? NULL : value);
   }
 
   /**
    * Subclasses should invoke this method to set the result of the computation
-   * to an error, {@code throwable}.  This will set the state of the future to
-   * {@link AbstractFuture.Sync#COMPLETED} and invoke the listeners if the
-   * state was successfully changed.
+   * to an error, {@code throwable}.  This will mark the future as completed
+   * and invoke the listeners if the state was successfully changed.
    *
    * @param throwable the exception that the task failed with.
    * @return true if the state was successfully changed.
    * @throws Error if the throwable was an {@link Error}.
    */
   protected boolean setException(Throwable throwable) {
-    boolean result = sync.setException(checkNotNull(throwable));
-    if (result) {
-      executionList.execute();
-    }
+    boolean result = complete(new Failure(checkNotNull(throwable)));
 
     // If it's an Error, we want to make sure it reaches the top of the
     // call stack, so we rethrow it.
@@ -197,170 +345,225 @@ public abstract class AbstractFuture<V> implements ListenableFuture<V> {
   }
 
   /**
-   * <p>Following the contract of {@link AbstractQueuedSynchronizer} we create a
-   * private subclass to hold the synchronizer.  This synchronizer is used to
-   * implement the blocking and waiting calls as well as to handle state changes
-   * in a thread-safe manner.  The current state of the future is held in the
-   * Sync state, and the lock is released whenever the state changes to either
-   * {@link #COMPLETED} or {@link #CANCELLED}.
-   *
-   * <p>To avoid races between threads doing release and acquire, we transition
-   * to the final state in two steps.  One thread will successfully CAS from
-   * RUNNING to COMPLETING, that thread will then set the result of the
-   * computation, and only then transition to COMPLETED or CANCELLED.
-   *
-   * <p>We don't use the integer argument passed between acquire methods so we
-   * pass around a -1 everywhere.
+   * Publishes {@code result} if the future is still running, then wakes every
+   * waiting thread and runs every listener.
    */
-  static final class Sync<V> extends AbstractQueuedSynchronizer {
-
-    private static final long serialVersionUID = 0L;
-
-    /* Valid states. */
-    static final int RUNNING = 0;
-    static final int COMPLETING = 1;
-    static final int COMPLETED = 2;
-    static final int CANCELLED = 4;
-
-    private V value;
-    private Throwable exception;
-
-    /*
-     * Acquisition succeeds if the future is done, otherwise it fails.
-     */
-    @Override
-    protected int tryAcquireShared(int ignored) {
-      if (isDone()) {
-        return 1;
+  private boolean complete(Object result) {
+    if (!VALUE_UPDATER.compareAndSet(this, null, result)) {
+      return false;
+    }
+
+    Waiter waiter = WAITERS_UPDATER.getAndSet(this, Waiter.TOMBSTONE);
+    for (; waiter != null; waiter = waiter.next) {
+      waiter.unpark();
+    }
+
+    // Reverse the stack so that listeners run in the order they were added.
+    Listener head = LISTENERS_UPDATER.getAndSet(this, Listener.TOMBSTONE);
+    if (head != null) {
+      Listener last = head;
+      Listener reversed = null;
+      while (head != null) {
+        Listener next = head.next;
+        head.next = reversed;
+        reversed = head;
+        head = next;
       }
-      return -1;
+      runListeners(reversed, last);
     }
+    return true;
+  }
 
-    /*
-     * We always allow a release to go through, this means the state has been
-     * successfully changed and the result is available.
-     */
-    @Override
-    protected boolean tryReleaseShared(int finalState) {
-      setState(finalState);
-      return true;
+  /**
+   * Runs the listeners from {@code first} through {@code last}, unless this
+   * thread is already {@link #MAX_LISTENER_DEPTH} listener executions deep, in
+   * which case they are queued for the deepest enclosing call to run once its
+   * current listener returns. That turns long same-thread chains into a loop.
+   *
+   * <p>An {@code Error} thrown by a listener does not stop the remaining
+   * listeners from running; the first one is rethrown afterwards.
+   */
+  private static void runListeners(Listener first, Listener last) {
+    ListenerQueue queue = pendingListeners.get();
+    if (queue.depth >= MAX_LISTENER_DEPTH) {
+      queue.append(first, last);
+      return;
     }
 
-    /**
-     * Blocks until the task is complete or the timeout expires.  Throws a
-     * {@link TimeoutException} if the timer expires, otherwise behaves like
-     * {@link #get()}.
-     */
-    V get(long nanos) throws TimeoutException, CancellationException,
-        ExecutionException, InterruptedException {
-
-      // Attempt to acquire the shared lock with a timeout.
-      if (!tryAcquireSharedNanos(-1, nanos)) {
-        throw new TimeoutException("Timeout waiting for task.");
+    queue.depth++;
+    Error error = null;
+    try {
+      Listener listener = first;
+      while (true) {
+        // read next first, as last.next is not ours to follow
+        Listener next = listener.next;
+        error = runListener(listener, error);
+        if (listener == last) {
+          break;
+        }
+        listener = next;
       }
+      while ((listener = queue.poll()) != null) {
+        error = runListener(listener, error);
+      }
+    } finally {
+      queue.depth--;
+    }
+    if (error != null) {
+      throw error;
+    }
+  }
 
-      return getValue();
+  private static Error runListener(Listener listener, @Nullable Error error) {
+    try {
+      executeListener(listener.runnable, listener.executor);
+    } catch (Error e) {
+      if (error == null) {
+        return e;
+      }
     }
+    return error;
+  }
 
-    /**
-     * Blocks until {@link #complete(Object, Throwable, int)} has been
-     * successfully called.  Throws a {@link CancellationException} if the task
-     * was cancelled, or a {@link ExecutionException} if the task completed with
-     * an error.
-     */
-    V get() throws CancellationException, ExecutionException,
-        InterruptedException {
-
-      // Acquire the shared lock allowing interruption.
-      acquireSharedInterruptibly(-1);
-      return getValue();
+  /**
+   * Pushes {@code node} onto the waiter stack, returning {@code false} if the
+   * future completed first.
+   */
+  private boolean push(Waiter node) {
+    Waiter head = waiters;
+    while (head != Waiter.TOMBSTONE) {
+      node.next = head;
+      if (WAITERS_UPDATER.compareAndSet(this, head, node)) {
+        return true;
+      }
+      head = waiters;
     }
+    return false;
+  }
 
-    /**
-     * Implementation of the actual value retrieval.  Will return the value
-     * on success, an exception on failure, a cancellation on cancellation, or
-     * an illegal state if the synchronizer is in an invalid state.
-     */
-    private V getValue() throws CancellationException, ExecutionException {
-      int state = getState();
-      switch (state) {
-        case COMPLETED:
-          if (exception != null) {
-            throw new ExecutionException(exception);
-          } else {
-            return value;
+  /**
+   * Unlinks a waiter that gave up because of a timeout or an interrupt.
+   * Marking the node dead first lets concurrent removals cooperate: any
+   * traversal that observes a dead node unlinks it.
+   */
+  private void removeWaiter(Waiter node) {
+    node.thread = null;
+    restart: while (true) {
+      Waiter pred = null;
+      Waiter curr = waiters;
+      if (curr == Waiter.TOMBSTONE) {
+        return;
+      }
+      while (curr != null) {
+        Waiter succ = curr.next;
+        if (curr.thread != null) {
+          pred = curr;
+        } else if (pred != null) {
+          pred.next = succ;
+          if (pred.thread == null) {
+            // our predecessor was removed concurrently; start over
+            continue restart;
           }
+        } else if (!WAITERS_UPDATER.compareAndSet(this, curr, succ)) {
+          continue restart;
+        }
+        curr = succ;
+      }
+      return;
+    }
+  }
 
-        case CANCELLED:
-          throw new CancellationException("Task was cancelled.");
+  /**
+   * Submits {@code runnable} to {@code executor}, logging rather than
+   * propagating any {@code RuntimeException}.
+   */
+  private static void executeListener(Runnable runnable, Executor executor) {
+    try {
+      executor.execute(runnable);
+    } catch (RuntimeException e) {
+      // Log it and keep going, bad runnable and/or executor.  Don't
+      // punish the other runnables if we're given a bad one.  We only
+      // catch RuntimeException because we want Errors to propagate up.
+      log.log(Level.SEVERE, "RuntimeException while executing runnable "
+          + runnable + " with executor " + executor, e);
+    }
+  }
 
-        default:
-          throw new IllegalStateException(
-              "Error, synchronizer in invalid state: " + state);
-      }
+  /** The result of a future that failed with {@link #setException}. */
+  private static final class Failure {
+    final Throwable exception;
+
+    Failure(Throwable exception) {
+      this.exception = exception;
     }
+  }
 
-    /**
-     * Checks if the state is {@link #COMPLETED} or {@link #CANCELLED}.
-     */
-    boolean isDone() {
-      return (getState() & (COMPLETED | CANCELLED)) != 0;
+  /** A node in the stack of listeners. */
+  private static final class Listener {
+    static final Listener TOMBSTONE = new Listener(null, null);
+
+    final Runnable runnable;
+    final Executor executor;
+    Listener next;
+
+    Listener(Runnable runnable, Executor executor) {
+      this.runnable = runnable;
+      this.executor = executor;
     }
+  }
 
-    /**
-     * Checks if the state is {@link #CANCELLED}.
-     */
-    boolean isCancelled() {
-      return getState() == CANCELLED;
+  /**
+   * Per-thread state for running listeners: how deeply listener execution is
+   * nested, and the listeners deferred because it got too deep.
+   */
+  private static final class ListenerQueue {
+    int depth;
+    Listener head;
+    Listener tail;
+
+    void append(Listener first, Listener last) {
+      if (tail == null) {
+        head = first;
+      } else {
+        tail.next = first;
+      }
+      last.next = null;
+      tail = last;
     }
 
-    /**
-     * Transition to the COMPLETED state and set the value.
-     */
-    boolean set(@Nullable V v) {
-      return complete(v, null, COMPLETED);
+    Listener poll() {
+      Listener result = head;
+      if (result != null) {
+        head = result.next;
+        if (head == null) {
+          tail = null;
+        }
+        result.next = null;
+      }
+      return result;
     }
+  }
+
+  /** A node in the stack of threads blocked in {@code get}. */
+  private static final class Waiter {
+    static final Waiter TOMBSTONE = new Waiter(false);
+
+    volatile Thread thread;
+    volatile Waiter next;
 
-    /**
-     * Transition to the COMPLETED state and set the exception.
-     */
-    boolean setException(Throwable t) {
-      return complete(null, t, COMPLETED);
+    Waiter() {
+      thread = Thread.currentThread();
     }
 
-    /**
-     * Transition to the CANCELLED state.
-     */
-    boolean cancel() {
-      return complete(null, null, CANCELLED);
+    Waiter(boolean unused) {
     }
 
-    /**
-     * Implementation of completing a task.  Either {@code v} or {@code t} will
-     * be set but not both.  The {@code finalState} is the state to change to
-     * from {@link #RUNNING}.  If the state is not in the RUNNING state we
-     * return {@code false} after waiting for the state to be set to a valid
-     * final state ({@link #COMPLETED} or {@link #CANCELLED}).
-     *
-     * @param v the value to set as the result of the computation.
-     * @param t the exception to set as the result of the computation.
-     * @param finalState the state to transition to.
-     */
-    private boolean complete(@Nullable V v, @Nullable Throwable t,
-        int finalState) {
-      boolean doCompletion = compareAndSetState(RUNNING, COMPLETING);
-      if (doCompletion) {
-        // If this thread successfully transitioned to COMPLETING, set the value
-        // and exception and then release to the final state.
-        this.value = v;
-        this.exception = t;
-        releaseShared(finalState);
-      } else if (getState() == COMPLETING) {
-        // If some other thread is currently completing the future, block until
-        // they are done so we can guarantee completion.
-        acquireShared(-1);
+    void unpark() {
+      Thread w = thread;
+      if (w != null) {
+        thread = null;
+        LockSupport.unpark(w);
       }
-      return doCompletion;
     }
   }
 }
@@ -21,7 +21,6 @@ import com.google.common.base.Preconditions;
 import com.google.common.base.Throwables;
 
 import java.util.concurrent.Callable;
-import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
@@ -262,11 +261,13 @@ public abstract class AbstractScheduledService implements Service {
    * {@link ScheduledExecutorService#shutdown} when this service stops. Subclasses may override this
    * method to use a custom {@link ScheduledExecutorService} instance.
    * 
-   * <p>By default this returns a new {@link ScheduledExecutorService} with a single thread thread
-   * pool.  This method will only be called once.
+   * <p>By default this returns the {@linkplain HashedWheelTimer#sharedTimer shared timer}, so
+   * services do not each hold on to a thread of their own; executions of {@link #runOneIteration}
+   * may be delayed by up to the timer's 10 millisecond tick. Services that need precise timing
+   * should override this method.  This method will only be called once.
    */
   protected ScheduledExecutorService executor() {
-    return Executors.newSingleThreadScheduledExecutor();
+    return HashedWheelTimer.sharedTimer();
   }
 
   @Override public String toString() {
@@ -19,13 +19,17 @@ package com.google.common.util.concurrent;
 import static com.google.common.base.Preconditions.checkNotNull;
 
 import com.google.common.annotations.Beta;
+import com.google.common.collect.Queues;
 import com.google.common.util.concurrent.Service.State; // javadoc needs this
 
+import java.util.Queue;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 import java.util.concurrent.locks.ReentrantLock;
 
+import javax.annotation.concurrent.GuardedBy;
+
 /**
  * Base class for implementing services that can handle {@link #doStart} and
  * {@link #doStop} requests, responding to them with {@link #notifyStarted()}
@@ -56,6 +60,16 @@ public abstract class AbstractService implements Service {
    */
   private boolean shutdownWhenStartupFinishes = false;
 
+  /**
+   * Completions of {@link #startup} and {@link #shutdown} decided under {@code
+   * lock} but not yet performed. They are run by {@link #executeCompletions}
+   * once the lock is released, so that listeners on the returned futures never
+   * run while the lock is held, where they would block every other thread
+   * that calls into this service.
+   */
+  @GuardedBy("lock")
+  private final Queue<Runnable> pendingCompletions = Queues.newArrayDeque();
+
   /**
    * This method is called by {@link #start} to initiate service startup. The
    * invocation of this method should cause a call to {@link #notifyStarted()},
@@ -94,6 +108,7 @@ public abstract class AbstractService implements Service {
       notifyFailed(startupFailure);
     } finally {
       lock.unlock();
+      executeCompletions();
     }
 
     return startup;
@@ -105,11 +120,11 @@ public abstract class AbstractService implements Service {
     try {
       if (state == State.NEW) {
         state = State.TERMINATED;
-        startup.set(State.TERMINATED);
-        shutdown.set(State.TERMINATED);
+        complete(startup, State.TERMINATED);
+        complete(shutdown, State.TERMINATED);
       } else if (state == State.STARTING) {
         shutdownWhenStartupFinishes = true;
-        startup.set(State.STOPPING);
+        complete(startup, State.STOPPING);
       } else if (state == State.RUNNING) {
         state = State.STOPPING;
         doStop();
@@ -119,6 +134,7 @@ public abstract class AbstractService implements Service {
       notifyFailed(shutdownFailure);
     } finally {
       lock.unlock();
+      executeCompletions();
     }
 
     return shutdown;
@@ -156,10 +172,11 @@ public abstract class AbstractService implements Service {
       if (shutdownWhenStartupFinishes) {
         stop();
       } else {
-        startup.set(State.RUNNING);
+        complete(startup, State.RUNNING);
       }
     } finally {
       lock.unlock();
+      executeCompletions();
     }
   }
 
@@ -182,9 +199,10 @@ public abstract class AbstractService implements Service {
       }
 
       state = State.TERMINATED;
-      shutdown.set(State.TERMINATED);
+      complete(shutdown, State.TERMINATED);
     } finally {
       lock.unlock();
+      executeCompletions();
     }
   }
 
@@ -200,19 +218,62 @@ public abstract class AbstractService implements Service {
     lock.lock();
     try {
       if (state == State.STARTING) {
-        startup.setException(cause);
-        shutdown.setException(new Exception(
-            "Service failed to start.", cause));
+        fail(startup, cause);
+        fail(shutdown, new Exception("Service failed to start.", cause));
       } else if (state == State.STOPPING) {
-        shutdown.setException(cause);
+        fail(shutdown, cause);
       } else if (state == State.RUNNING) {
-        shutdown.setException(new Exception("Service failed while running", cause));
+        fail(shutdown, new Exception("Service failed while running", cause));
       } else if (state == State.NEW || state == State.TERMINATED) {
         throw new IllegalStateException("Failed while in state:" + state, cause);
       }
       state = State.FAILED;
     } finally {
       lock.unlock();
+      executeCompletions();
+    }
+  }
+
+  /** Arranges for {@code transition} to succeed once the lock is released. */
+  @GuardedBy("lock")
+  private void complete(final Transition transition, final State result) {
+    pendingCompletions.add(new Runnable() {
+      @Override public void run() {
+        transition.set(result);
+      }
+    });
+  }
+
+  /** Arranges for {@code transition} to fail once the lock is released. */
+  @GuardedBy("lock")
+  private void fail(final Transition transition, final Throwable cause) {
+    pendingCompletions.add(new Runnable() {
+      @Override public void run() {
+        transition.setException(cause);
+      }
+    });
+  }
+
+  /**
+   * Performs the pending completions, unless this thread still holds the lock,
+   * in which case the outermost call will perform them after unlocking.
+   */
+  private void executeCompletions() {
+    if (lock.isHeldByCurrentThread()) {
+      return;
+    }
+    while (true) {
+      Runnable completion;
+      lock.lock();
+      try {
+        completion = pendingCompletions.poll();
+      } finally {
+        lock.unlock();
+      }
+      if (completion == null) {
+        return;
+      }
+      completion.run();
     }
   }
 
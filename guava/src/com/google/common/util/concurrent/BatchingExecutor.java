@@ -0,0 +1,541 @@
+/*
+ * Copyright (C) 2012 The Guava Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.common.util.concurrent;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+
+import com.google.common.annotations.Beta;
+import com.google.common.base.Function;
+import com.google.common.base.Objects;
+import com.google.common.collect.Lists;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import javax.annotation.concurrent.GuardedBy;
+
+/**
+ * Gathers individually submitted items into batches, and processes each batch with a single call
+ * to a batch function, completing a separate {@link ListenableFuture} for each item.
+ *
+ * <p>Submitting a tiny task to an executor costs a queue hop, a future and often a round trip to
+ * some backend; when there are millions of them, those costs dominate. A batching executor pays
+ * them once per batch instead. A batch is dispatched to the executor as soon as it holds
+ * {@linkplain Builder#setMaxBatchSize the maximum number of items}, or once its first item has
+ * waited {@linkplain Builder#setMaxLinger the maximum linger time}, whichever comes first, or when
+ * {@link #flush} or {@link #shutdown} is called.
+ *
+ * <p>The batch function receives the items of a batch in submission order, and must return a list
+ * of the same size, whose {@code i}th element is the result for the {@code i}th item. If it
+ * throws, or returns a list of the wrong size, every future of the batch fails with that
+ * exception. Cancelling an item's future does not remove the item from its batch.
+ *
+ * <p>Memory is bounded: at most {@linkplain Builder#setMaxPendingItems a fixed number of items}
+ * may be pending, that is, submitted but not yet processed, at a time, and {@link #submit} blocks
+ * while that many are. The executor keeps {@linkplain #stats() statistics} on the sizes of the
+ * batches it actually dispatched, for tuning the limits.
+ *
+ * <p>Example:<pre>   {@code
+ *
+ *   BatchingExecutor<Key, Void> writer = BatchingExecutor.builder()
+ *       .setMaxBatchSize(500)
+ *       .setMaxLinger(5, TimeUnit.MILLISECONDS)
+ *       .build(new Function<List<Key>, List<Void>>() {
+ *         public List<Void> apply(List<Key> keys) {
+ *           backend.writeAll(keys);
+ *           return Collections.nCopies(keys.size(), null);
+ *         }
+ *       }, ioExecutor);
+ *   ListenableFuture<Void> written = writer.submit(key);}</pre>
+ *
+ * @param <T> the type of the submitted items
+ * @param <R> the type of the result for each item
+ * @since 12.0
+ */
+@Beta
+public final class BatchingExecutor<T, R> {
+  private final Function<? super List<T>, ? extends List<? extends R>> batchFunction;
+  private final Executor executor;
+  private final ScheduledExecutorService timer;
+  private final int maxBatchSize;
+  private final long maxLingerNanos;
+  private final int maxPendingItems;
+
+  private final ReentrantLock lock = new ReentrantLock();
+  private final Condition notFull = lock.newCondition();
+  private final Condition drained = lock.newCondition();
+
+  /** The batch being filled. */
+  @GuardedBy("lock")
+  private List<Item<T, R>> current;
+
+  /** The timer that will dispatch the current batch when it has lingered long enough, if any. */
+  @GuardedBy("lock")
+  private ScheduledFuture<?> lingerTimer;
+
+  /** Incremented whenever the current batch is dispatched, so that stale timers do nothing. */
+  @GuardedBy("lock")
+  private long batchNumber;
+
+  /** The number of items submitted whose batches have not yet been processed. */
+  @GuardedBy("lock")
+  private int pendingItems;
+
+  @GuardedBy("lock")
+  private boolean shutdown;
+
+  @GuardedBy("lock")
+  private long batchCount;
+  @GuardedBy("lock")
+  private long itemCount;
+  @GuardedBy("lock")
+  private long fullBatchCount;
+  @GuardedBy("lock")
+  private long lingerBatchCount;
+  @GuardedBy("lock")
+  private int largestBatchSize;
+
+  /** Returns a new builder with the default limits. */
+  public static Builder builder() {
+    return new Builder();
+  }
+
+  private BatchingExecutor(Builder builder,
+      Function<? super List<T>, ? extends List<? extends R>> batchFunction, Executor executor) {
+    this.batchFunction = batchFunction;
+    this.executor = executor;
+    this.timer = builder.timer;
+    this.maxBatchSize = builder.maxBatchSize;
+    this.maxLingerNanos = builder.maxLingerNanos;
+    this.maxPendingItems = builder.maxPendingItems;
+    this.current = newBatch();
+  }
+
+  private List<Item<T, R>> newBatch() {
+    return Lists.newArrayListWithCapacity(Math.min(maxBatchSize, 1024));
+  }
+
+  /**
+   * Adds {@code item} to the current batch, and returns a future for its result. If the batch is
+   * then full, it is dispatched to the executor.
+   *
+   * @throws InterruptedException if interrupted while waiting for the number of pending items to
+   *     fall below the limit
+   * @throws RejectedExecutionException if this executor has been shut down
+   */
+  public ListenableFuture<R> submit(T item) throws InterruptedException {
+    checkNotNull(item);
+    Item<T, R> entry = new Item<T, R>(item);
+    List<Item<T, R>> full = null;
+    lock.lockInterruptibly();
+    try {
+      while (!shutdown && pendingItems >= maxPendingItems) {
+        notFull.await();
+      }
+      if (shutdown) {
+        throw new RejectedExecutionException("BatchingExecutor has been shut down");
+      }
+      if (current.isEmpty() && maxBatchSize > 1 && maxLingerNanos != Long.MAX_VALUE) {
+        // before taking the item, so that a timer that rejects the task leaves nothing behind
+        scheduleLingerTimer();
+      }
+      pendingItems++;
+      current.add(entry);
+      if (current.size() >= maxBatchSize) {
+        fullBatchCount++;
+        full = takeBatch();
+      }
+    } finally {
+      lock.unlock();
+    }
+    if (full != null) {
+      dispatch(full);
+    }
+    return entry.future;
+  }
+
+  /** Dispatches the current batch to the executor now, if it holds any items. */
+  public void flush() {
+    List<Item<T, R>> batch;
+    lock.lock();
+    try {
+      batch = current.isEmpty() ? null : takeBatch();
+    } finally {
+      lock.unlock();
+    }
+    if (batch != null) {
+      dispatch(batch);
+    }
+  }
+
+  /**
+   * Dispatches the current batch, and rejects any later submission. Items already submitted are
+   * still processed.
+   */
+  public void shutdown() {
+    lock.lock();
+    try {
+      shutdown = true;
+      notFull.signalAll();
+    } finally {
+      lock.unlock();
+    }
+    flush();
+  }
+
+  /** Returns whether {@link #shutdown} has been called. */
+  public boolean isShutdown() {
+    lock.lock();
+    try {
+      return shutdown;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Waits until this executor has been shut down and every submitted item has been processed, or
+   * the timeout elapses.
+   *
+   * @return {@code true} if every item has been processed, {@code false} if the timeout elapsed
+   */
+  public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+    long nanos = unit.toNanos(timeout);
+    lock.lock();
+    try {
+      while (!shutdown || pendingItems > 0) {
+        if (nanos <= 0) {
+          return false;
+        }
+        nanos = drained.awaitNanos(nanos);
+      }
+      return true;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /** Returns the number of items submitted but not yet processed. */
+  public int getPendingItemCount() {
+    lock.lock();
+    try {
+      return pendingItems;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /** Returns a snapshot of the sizes of the batches this executor has dispatched so far. */
+  public Stats stats() {
+    lock.lock();
+    try {
+      return new Stats(batchCount, itemCount, fullBatchCount, lingerBatchCount, largestBatchSize);
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  @Override public String toString() {
+    return Objects.toStringHelper(this)
+        .add("maxBatchSize", maxBatchSize)
+        .add("maxPendingItems", maxPendingItems)
+        .add("pendingItems", getPendingItemCount())
+        .toString();
+  }
+
+  @GuardedBy("lock")
+  private List<Item<T, R>> takeBatch() {
+    List<Item<T, R>> batch = current;
+    current = newBatch();
+    batchNumber++;
+    if (lingerTimer != null) {
+      lingerTimer.cancel(false);
+      lingerTimer = null;
+    }
+    batchCount++;
+    itemCount += batch.size();
+    largestBatchSize = Math.max(largestBatchSize, batch.size());
+    return batch;
+  }
+
+  @GuardedBy("lock")
+  private void scheduleLingerTimer() {
+    final long lingeringBatch = batchNumber;
+    lingerTimer = timer.schedule(new Runnable() {
+      @Override public void run() {
+        List<Item<T, R>> batch = null;
+        lock.lock();
+        try {
+          if (batchNumber == lingeringBatch && !current.isEmpty()) {
+            lingerBatchCount++;
+            batch = takeBatch();
+          }
+        } finally {
+          lock.unlock();
+        }
+        if (batch != null) {
+          dispatch(batch);
+        }
+      }
+    }, maxLingerNanos, TimeUnit.NANOSECONDS);
+  }
+
+  private void dispatch(final List<Item<T, R>> batch) {
+    try {
+      executor.execute(new Runnable() {
+        @Override public void run() {
+          process(batch);
+        }
+      });
+    } catch (RuntimeException e) {
+      fail(batch, e);
+      release(batch.size());
+    }
+  }
+
+  private void process(List<Item<T, R>> batch) {
+    try {
+      List<T> items = Lists.newArrayListWithCapacity(batch.size());
+      for (Item<T, R> entry : batch) {
+        items.add(entry.item);
+      }
+      List<? extends R> results;
+      try {
+        results = batchFunction.apply(Collections.unmodifiableList(items));
+      } catch (Throwable t) {
+        fail(batch, t);
+        return;
+      }
+      if (results == null || results.size() != batch.size()) {
+        fail(batch, new IllegalStateException("batch function returned "
+            + (results == null ? "null" : results.size() + " results")
+            + " for " + batch.size() + " items"));
+        return;
+      }
+      for (int i = 0; i < batch.size(); i++) {
+        batch.get(i).future.set(results.get(i));
+      }
+    } finally {
+      release(batch.size());
+    }
+  }
+
+  private static <T, R> void fail(List<Item<T, R>> batch, Throwable cause) {
+    // setException rethrows an Error after completing the future; fail the rest of the batch
+    // before passing it on
+    Error error = null;
+    for (Item<T, R> entry : batch) {
+      try {
+        entry.future.setException(cause);
+      } catch (Error e) {
+        error = e;
+      }
+    }
+    if (error != null) {
+      throw error;
+    }
+  }
+
+  private void release(int items) {
+    lock.lock();
+    try {
+      pendingItems -= items;
+      notFull.signalAll();
+      if (pendingItems == 0) {
+        drained.signalAll();
+      }
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  private static final class Item<T, R> {
+    final T item;
+    final SettableFuture<R> future = SettableFuture.create();
+
+    Item(T item) {
+      this.item = item;
+    }
+  }
+
+  /**
+   * A builder of {@link BatchingExecutor} instances. By default, batches hold up to 100 items and
+   * linger for up to 10 milliseconds, at most 10,000 items may be pending, and lingering batches
+   * are timed by {@link HashedWheelTimer#sharedTimer()}.
+   *
+   * @since 12.0
+   */
+  @Beta
+  public static final class Builder {
+    private int maxBatchSize = 100;
+    private long maxLingerNanos = TimeUnit.MILLISECONDS.toNanos(10);
+    private int maxPendingItems = 10000;
+    private ScheduledExecutorService timer = HashedWheelTimer.sharedTimer();
+
+    private Builder() {}
+
+    /**
+     * Sets the number of items at which a batch is dispatched without waiting for its linger time.
+     *
+     * @return this for the builder pattern
+     * @throws IllegalArgumentException if {@code maxBatchSize} is not positive
+     */
+    public Builder setMaxBatchSize(int maxBatchSize) {
+      checkArgument(maxBatchSize > 0, "maxBatchSize must be positive: %s", maxBatchSize);
+      this.maxBatchSize = maxBatchSize;
+      return this;
+    }
+
+    /**
+     * Sets how long the first item of a batch may wait for more items before the batch is
+     * dispatched anyway. A duration of {@code Long.MAX_VALUE} nanoseconds or more disables the
+     * linger timer, so that only full batches, {@link BatchingExecutor#flush} and {@link
+     * BatchingExecutor#shutdown} dispatch batches.
+     *
+     * @return this for the builder pattern
+     * @throws IllegalArgumentException if {@code maxLinger} is negative
+     */
+    public Builder setMaxLinger(long maxLinger, TimeUnit unit) {
+      checkArgument(maxLinger >= 0, "maxLinger must not be negative: %s", maxLinger);
+      this.maxLingerNanos = unit.toNanos(maxLinger);
+      return this;
+    }
+
+    /**
+     * Sets the number of items that may be submitted but not yet processed, beyond which {@link
+     * BatchingExecutor#submit} blocks. This bounds the memory held by the executor.
+     *
+     * @return this for the builder pattern
+     * @throws IllegalArgumentException if {@code maxPendingItems} is not positive
+     */
+    public Builder setMaxPendingItems(int maxPendingItems) {
+      checkArgument(maxPendingItems > 0, "maxPendingItems must be positive: %s", maxPendingItems);
+      this.maxPendingItems = maxPendingItems;
+      return this;
+    }
+
+    /**
+     * Sets the scheduler of the linger timers. It only dispatches batches to the executor, so it
+     * may be shared.
+     *
+     * @return this for the builder pattern
+     */
+    public Builder setTimer(ScheduledExecutorService timer) {
+      this.timer = checkNotNull(timer);
+      return this;
+    }
+
+    /**
+     * Builds a batching executor that processes each batch by calling {@code batchFunction} on
+     * {@code executor}. Lingering batches are dispatched from the timer's thread, so {@code
+     * executor} should not run batches in the calling thread unless the batch function is cheap.
+     *
+     * @throws IllegalStateException if the maximum batch size exceeds the maximum number of
+     *     pending items, so that no batch could ever fill up
+     */
+    public <T, R> BatchingExecutor<T, R> build(
+        Function<? super List<T>, ? extends List<? extends R>> batchFunction,
+        Executor executor) {
+      checkNotNull(batchFunction);
+      checkNotNull(executor);
+      checkState(maxBatchSize <= maxPendingItems,
+          "maxBatchSize (%s) must not exceed maxPendingItems (%s)", maxBatchSize, maxPendingItems);
+      return new BatchingExecutor<T, R>(this, batchFunction, executor);
+    }
+  }
+
+  /**
+   * Statistics about the batches dispatched by a {@link BatchingExecutor}. Snapshots are
+   * immutable.
+   *
+   * @since 12.0
+   */
+  @Beta
+  public static final class Stats {
+    private final long batchCount;
+    private final long itemCount;
+    private final long fullBatchCount;
+    private final long lingerBatchCount;
+    private final int largestBatchSize;
+
+    Stats(long batchCount, long itemCount, long fullBatchCount, long lingerBatchCount,
+        int largestBatchSize) {
+      this.batchCount = batchCount;
+      this.itemCount = itemCount;
+      this.fullBatchCount = fullBatchCount;
+      this.lingerBatchCount = lingerBatchCount;
+      this.largestBatchSize = largestBatchSize;
+    }
+
+    /** Returns the number of batches dispatched. */
+    public long batchCount() {
+      return batchCount;
+    }
+
+    /** Returns the total number of items in the dispatched batches. */
+    public long itemCount() {
+      return itemCount;
+    }
+
+    /** Returns the number of batches dispatched because they reached the maximum size. */
+    public long fullBatchCount() {
+      return fullBatchCount;
+    }
+
+    /** Returns the number of batches dispatched because their linger time ran out. */
+    public long lingerBatchCount() {
+      return lingerBatchCount;
+    }
+
+    /**
+     * Returns the number of batches dispatched by {@link BatchingExecutor#flush} or {@link
+     * BatchingExecutor#shutdown}.
+     */
+    public long flushedBatchCount() {
+      return batchCount - fullBatchCount - lingerBatchCount;
+    }
+
+    /** Returns the size of the largest batch dispatched, or 0 if none has been. */
+    public int largestBatchSize() {
+      return largestBatchSize;
+    }
+
+    /** Returns the average size of the dispatched batches, or 0.0 if none has been. */
+    public double averageBatchSize() {
+      return (batchCount == 0) ? 0.0 : (double) itemCount / batchCount;
+    }
+
+    @Override public String toString() {
+      return Objects.toStringHelper(this)
+          .add("batchCount", batchCount)
+          .add("itemCount", itemCount)
+          .add("fullBatchCount", fullBatchCount)
+          .add("lingerBatchCount", lingerBatchCount)
+          .add("largestBatchSize", largestBatchSize)
+          .toString();
+    }
+  }
+}
@@ -17,10 +17,9 @@
 package com.google.common.util.concurrent;
 
 import com.google.common.base.Preconditions;
-import com.google.common.collect.Lists;
 
-import java.util.Queue;
 import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -48,12 +47,21 @@ public final class ExecutionList {
   private static final Logger log =
       Logger.getLogger(ExecutionList.class.getName());
 
-  // The runnable,executor pairs to execute.
-  private final Queue<RunnableExecutorPair> runnables = Lists.newLinkedList();
+  /*
+   * The runnable,executor pairs to execute, as a Treiber stack linked through
+   * RunnableExecutorPair.next, newest first. Once execute() has been called the
+   * head is EXECUTED for good. Neither add nor execute takes a lock, so neither
+   * can block a thread (or pin a virtual thread to its carrier) while another
+   * thread is running listeners.
+   */
+  private static final RunnableExecutorPair EXECUTED =
+      new RunnableExecutorPair(null, null, null);
+
+  private static final AtomicReferenceFieldUpdater<ExecutionList, RunnableExecutorPair>
+      headUpdater = AtomicReferenceFieldUpdater.newUpdater(
+          ExecutionList.class, RunnableExecutorPair.class, "head");
 
-  // Boolean we use mark when execution has started.  Only accessed from within
-  // synchronized blocks.
-  private boolean executed = false;
+  private volatile RunnableExecutorPair head;
 
   /** Creates a new, empty {@link ExecutionList}. */
   public ExecutionList() {
@@ -84,16 +92,17 @@ public final class ExecutionList {
     Preconditions.checkNotNull(runnable, "Runnable was null.");
     Preconditions.checkNotNull(executor, "Executor was null.");
 
-    boolean executeImmediate = false;
-
-    // Lock while we check state.  We must maintain the lock while adding the
-    // new pair so that another thread can't run the list out from under us.
-    // We only add to the list if we have not yet started execution.
-    synchronized (runnables) {
-      if (!executed) {
-        runnables.add(new RunnableExecutorPair(runnable, executor));
+    // Push the new pair unless execution has started, in which case the
+    // execute() call that started it will never see the pair.
+    RunnableExecutorPair pair = null;
+    for (RunnableExecutorPair h = head; h != EXECUTED; h = head) {
+      if (pair == null) {
+        pair = new RunnableExecutorPair(runnable, executor, h);
       } else {
-        executeImmediate = true;
+        pair.next = h;
+      }
+      if (headUpdater.compareAndSet(this, h, pair)) {
+        return;
       }
     }
 
@@ -101,9 +110,7 @@ public final class ExecutionList {
     // getting called before some of the previously added runnables, but we're
     // OK with that.  If we want to change the contract to guarantee ordering
     // among runnables we'd have to modify the logic here to allow it.
-    if (executeImmediate) {
-      new RunnableExecutorPair(runnable, executor).execute();
-    }
+    executeListener(runnable, executor);
   }
 
   /**
@@ -119,41 +126,49 @@ public final class ExecutionList {
    * @since 10.0 (present in 1.0 as {@code run})
    */
   public void execute() {
-    // Lock while we update our state so the add method above will finish adding
-    // any listeners before we start to run them.
-    synchronized (runnables) {
-      if (executed) {
-        return;
-      }
-      executed = true;
+    // Swap in the sentinel so that later adds execute immediately; only the
+    // first caller gets the pairs.
+    RunnableExecutorPair list = headUpdater.getAndSet(this, EXECUTED);
+    if (list == EXECUTED) {
+      return;
     }
 
-    // At this point the runnables will never be modified by another
-    // thread, so we are safe using it outside of the synchronized block.
-    while (!runnables.isEmpty()) {
-      runnables.poll().execute();
+    // The stack is newest first, so reverse it to run in insertion order.
+    RunnableExecutorPair reversed = null;
+    while (list != null) {
+      RunnableExecutorPair next = list.next;
+      list.next = reversed;
+      reversed = list;
+      list = next;
+    }
+    while (reversed != null) {
+      executeListener(reversed.runnable, reversed.executor);
+      reversed = reversed.next;
+    }
+  }
+
+  private static void executeListener(Runnable runnable, Executor executor) {
+    try {
+      executor.execute(runnable);
+    } catch (RuntimeException e) {
+      // Log it and keep going, bad runnable and/or executor.  Don't
+      // punish the other runnables if we're given a bad one.  We only
+      // catch RuntimeException because we want Errors to propagate up.
+      log.log(Level.SEVERE, "RuntimeException while executing runnable "
+          + runnable + " with executor " + executor, e);
     }
   }
 
-  private static class RunnableExecutorPair {
+  private static final class RunnableExecutorPair {
     final Runnable runnable;
     final Executor executor;
+    RunnableExecutorPair next;
 
-    RunnableExecutorPair(Runnable runnable, Executor executor) {
+    RunnableExecutorPair(
+        Runnable runnable, Executor executor, RunnableExecutorPair next) {
       this.runnable = runnable;
       this.executor = executor;
-    }
-
-    void execute() {
-      try {
-        executor.execute(runnable);
-      } catch (RuntimeException e) {
-        // Log it and keep going, bad runnable and/or executor.  Don't
-        // punish the other runnables if we're given a bad one.  We only
-        // catch RuntimeException because we want Errors to propagate up.
-        log.log(Level.SEVERE, "RuntimeException while executing runnable "
-            + runnable + " with executor " + executor, e);
-      }
+      this.next = next;
     }
   }
 }
@@ -39,14 +39,17 @@ import java.lang.reflect.UndeclaredThrowableException;
 import java.util.Arrays;
 import java.util.List;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
 import java.util.concurrent.CancellationException;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executor;
 import java.util.concurrent.Future;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.annotation.Nullable;
@@ -210,7 +213,7 @@ public final class Futures {
    */
   public static <I, O> ListenableFuture<O> transform(ListenableFuture<I> input,
       AsyncFunction<? super I, ? extends O> function) {
-    return transform(input, function, MoreExecutors.sameThreadExecutor());
+    return transform(input, function, MoreExecutors.directExecutor());
   }
 
   /**
@@ -320,7 +323,7 @@ public final class Futures {
    */
   public static <I, O> ListenableFuture<O> transform(ListenableFuture<I> input,
       final Function<? super I, ? extends O> function) {
-    return transform(input, function, MoreExecutors.sameThreadExecutor());
+    return transform(input, function, MoreExecutors.directExecutor());
   }
 
   /**
@@ -374,6 +377,10 @@ public final class Futures {
   public static <I, O> ListenableFuture<O> transform(ListenableFuture<I> input,
       final Function<? super I, ? extends O> function, Executor executor) {
     checkNotNull(function);
+    if (input.isDone() && MoreExecutors.isDirectExecutor(executor)) {
+      // The function would run right here anyway, so skip the chaining.
+      return transformDoneInput(input, function);
+    }
     AsyncFunction<I, O> wrapperFunction
         = new AsyncFunction<I, O>() {
             @Override public ListenableFuture<O> apply(I input) {
@@ -384,6 +391,37 @@ public final class Futures {
     return transform(input, wrapperFunction, executor);
   }
 
+  /**
+   * Applies {@code function} to the result of the already-done {@code input}
+   * and returns an immediate future with the same outcome the chained
+   * transformation would have produced.
+   */
+  private static <I, O> ListenableFuture<O> transformDoneInput(
+      ListenableFuture<I> input, Function<? super I, ? extends O> function) {
+    I sourceResult;
+    try {
+      sourceResult = getUninterruptibly(input);
+    } catch (CancellationException e) {
+      SettableFuture<O> output = SettableFuture.create();
+      output.cancel(false);
+      return output;
+    } catch (ExecutionException e) {
+      return immediateFailedFuture(e.getCause());
+    }
+
+    try {
+      return Futures.<O>immediateFuture(function.apply(sourceResult));
+    } catch (UndeclaredThrowableException e) {
+      return immediateFailedFuture(e.getCause());
+    } catch (Exception e) {
+      return immediateFailedFuture(e);
+    } catch (Error e) {
+      // Errors are rethrown by immediateFailedFuture, as they would be by the
+      // chained transformation.
+      return immediateFailedFuture(e);
+    }
+  }
+
   /**
    * Like {@link #transform(ListenableFuture, Function)} except that the
    * transformation {@code function} is invoked on each call to
@@ -554,7 +592,7 @@ public final class Futures {
                 ChainingListenableFuture.this.outputFuture = null;
               }
             }
-          }, MoreExecutors.sameThreadExecutor());
+          }, MoreExecutors.directExecutor());
       } catch (UndeclaredThrowableException e) {
         // Set the cause of the exception as this future's exception
         setException(e.getCause());
@@ -595,7 +633,7 @@ public final class Futures {
   public static <V> ListenableFuture<List<V>> allAsList(
       ListenableFuture<? extends V>... futures) {
     return new ListFuture<V>(ImmutableList.copyOf(futures), true,
-        MoreExecutors.sameThreadExecutor());
+        MoreExecutors.directExecutor());
   }
 
   /**
@@ -618,7 +656,7 @@ public final class Futures {
   public static <V> ListenableFuture<List<V>> allAsList(
       Iterable<? extends ListenableFuture<? extends V>> futures) {
     return new ListFuture<V>(ImmutableList.copyOf(futures), true,
-        MoreExecutors.sameThreadExecutor());
+        MoreExecutors.directExecutor());
   }
 
   /**
@@ -638,7 +676,7 @@ public final class Futures {
   public static <V> ListenableFuture<List<V>> successfulAsList(
       ListenableFuture<? extends V>... futures) {
     return new ListFuture<V>(ImmutableList.copyOf(futures), false,
-        MoreExecutors.sameThreadExecutor());
+        MoreExecutors.directExecutor());
   }
 
   /**
@@ -658,7 +696,206 @@ public final class Futures {
   public static <V> ListenableFuture<List<V>> successfulAsList(
       Iterable<? extends ListenableFuture<? extends V>> futures) {
     return new ListFuture<V>(ImmutableList.copyOf(futures), false,
-        MoreExecutors.sameThreadExecutor());
+        MoreExecutors.directExecutor());
+  }
+
+  /**
+   * Creates a new {@code ListenableFuture} whose value is a list containing the
+   * values of all its input futures, if all succeed. If any input fails or is
+   * canceled, the returned future fails or is canceled immediately, and every
+   * input that has not yet completed is canceled (without interruption).
+   * Canceling the returned future likewise cancels the inputs.
+   *
+   * <p>The list of results is in the same order as the input list.
+   *
+   * <p>Use this instead of {@link #allAsList(ListenableFuture[])} when the
+   * inputs are not shared with other consumers and there is no point in
+   * letting them run once the combined result is known to have failed.
+   *
+   * @param futures futures to combine
+   * @return a future that provides a list of the results of the component
+   *         futures
+   * @since 12.0
+   */
+  @Beta
+  public static <V> ListenableFuture<List<V>> allAsListFailFast(
+      ListenableFuture<? extends V>... futures) {
+    return new ListFuture<V>(ImmutableList.copyOf(futures), true, true,
+        MoreExecutors.directExecutor());
+  }
+
+  /**
+   * Creates a new {@code ListenableFuture} whose value is a list containing the
+   * values of all its input futures, if all succeed. If any input fails or is
+   * canceled, the returned future fails or is canceled immediately, and every
+   * input that has not yet completed is canceled (without interruption).
+   * Canceling the returned future likewise cancels the inputs.
+   *
+   * <p>The list of results is in the same order as the input list.
+   *
+   * <p>Use this instead of {@link #allAsList(Iterable)} when the inputs are
+   * not shared with other consumers and there is no point in letting them run
+   * once the combined result is known to have failed.
+   *
+   * @param futures futures to combine
+   * @return a future that provides a list of the results of the component
+   *         futures
+   * @since 12.0
+   */
+  @Beta
+  public static <V> ListenableFuture<List<V>> allAsListFailFast(
+      Iterable<? extends ListenableFuture<? extends V>> futures) {
+    return new ListFuture<V>(ImmutableList.copyOf(futures), true, true,
+        MoreExecutors.directExecutor());
+  }
+
+  /**
+   * Returns a list of futures with the same results as {@code futures}, but
+   * ordered by when the inputs complete rather than by their position: the
+   * first future in the returned list completes with the result of whichever
+   * input completes first, the second with the next one, and so on. This lets
+   * callers process the results of a large fan-out as they arrive, for example
+   * by calling {@code get} on each returned future in turn.
+   *
+   * <p>Results, failures and cancellations are all passed through. Canceling
+   * one of the returned futures does not cancel any input, since it is not
+   * known in advance which input it will be associated with.
+   *
+   * @param futures futures whose results should be reordered
+   * @return one future per input, in completion order
+   * @since 12.0
+   */
+  @Beta
+  public static <T> ImmutableList<ListenableFuture<T>> inCompletionOrder(
+      Iterable<? extends ListenableFuture<? extends T>> futures) {
+    ImmutableList<? extends ListenableFuture<? extends T>> inputs =
+        ImmutableList.copyOf(futures);
+    ImmutableList.Builder<SettableFuture<T>> builder = ImmutableList.builder();
+    for (int i = 0; i < inputs.size(); i++) {
+      builder.add(SettableFuture.<T>create());
+    }
+    final ImmutableList<SettableFuture<T>> outputs = builder.build();
+
+    final AtomicInteger nextOutput = new AtomicInteger();
+    for (final ListenableFuture<? extends T> input : inputs) {
+      input.addListener(new Runnable() {
+        @Override
+        public void run() {
+          propagate(input, outputs.get(nextOutput.getAndIncrement()));
+        }
+      }, MoreExecutors.directExecutor());
+    }
+    return ImmutableList.<ListenableFuture<T>>copyOf(outputs);
+  }
+
+  /**
+   * Submits each of {@code tasks} to {@code executor}, never allowing more
+   * than {@code maxInFlight} of them to be submitted but not yet completed.
+   * Tasks are submitted in iteration order: the first {@code maxInFlight}
+   * immediately, and each remaining one as soon as an earlier task completes.
+   *
+   * <p>The returned list holds one future per task, in the same order as
+   * {@code tasks}. Canceling a future whose task has not been submitted yet
+   * means the task is never submitted; canceling one whose task is running
+   * cancels the executor's future for it. If {@code executor} rejects a task,
+   * the corresponding future fails with the {@code
+   * RejectedExecutionException} and the next task is tried.
+   *
+   * <p>Combine this with {@link #inCompletionOrder} to consume the results of
+   * a large, throttled fan-out as they arrive.
+   *
+   * @param executor executor to run the tasks
+   * @param tasks tasks to run; the iterable is copied when this method is
+   *     called
+   * @param maxInFlight maximum number of tasks submitted but not yet complete
+   * @return one future per task, in the order of {@code tasks}
+   * @throws IllegalArgumentException if {@code maxInFlight} is not positive
+   * @since 12.0
+   */
+  @Beta
+  public static <T> ImmutableList<ListenableFuture<T>> submitAll(
+      ListeningExecutorService executor,
+      Iterable<? extends Callable<? extends T>> tasks, int maxInFlight) {
+    checkNotNull(executor);
+    checkNotNull(tasks);
+    checkArgument(maxInFlight > 0,
+        "maxInFlight must be positive: %s", maxInFlight);
+    BoundedSubmitter<T> submitter = new BoundedSubmitter<T>(
+        executor, ImmutableList.copyOf(tasks), maxInFlight);
+    submitter.drain();
+    return ImmutableList.<ListenableFuture<T>>copyOf(submitter.outputs);
+  }
+
+  /**
+   * Returns a future with the same result as {@code future}, except that it
+   * fails with a {@link TimeoutException} if {@code future} has not completed
+   * within the given time. On timeout, {@code future} is cancelled. Canceling
+   * the returned future cancels {@code future} as well.
+   *
+   * <p>The timeout is scheduled on {@code scheduledExecutor}, so no thread
+   * blocks waiting for the input; with a {@link HashedWheelTimer}, scheduling
+   * and canceling the timeout take constant time.
+   *
+   * @param future the future to limit
+   * @param time the maximum time to wait for {@code future}
+   * @param unit the time unit of {@code time}
+   * @param scheduledExecutor the executor on which to schedule the timeout
+   * @return a future that completes with {@code future}'s result, or fails
+   *     with a {@code TimeoutException}
+   * @since 12.0
+   */
+  @Beta
+  public static <V> ListenableFuture<V> withTimeout(
+      final ListenableFuture<V> future, long time, TimeUnit unit,
+      ScheduledExecutorService scheduledExecutor) {
+    checkNotNull(future);
+    checkNotNull(unit);
+    final SettableFuture<V> result = SettableFuture.create();
+    final AtomicBoolean timedOut = new AtomicBoolean();
+    final Future<?> timeout = scheduledExecutor.schedule(new Runnable() {
+      @Override
+      public void run() {
+        // Cancel the input before failing the result, so that callers who see
+        // the timeout also see the input cancelled.
+        timedOut.set(true);
+        future.cancel(true);
+        result.setException(new TimeoutException("Future timed out: " + future));
+      }
+    }, time, unit);
+    future.addListener(new Runnable() {
+      @Override
+      public void run() {
+        timeout.cancel(false);
+        if (!timedOut.get()) {
+          propagate(future, result);
+        }
+      }
+    }, MoreExecutors.directExecutor());
+    result.addListener(new Runnable() {
+      @Override
+      public void run() {
+        if (result.isCancelled()) {
+          future.cancel(false);
+        }
+      }
+    }, MoreExecutors.directExecutor());
+    return result;
+  }
+
+  /**
+   * Returns a future with the same result as {@code future}, except that it
+   * fails with a {@link TimeoutException} if {@code future} has not completed
+   * within the given time, scheduling the timeout on the
+   * {@linkplain HashedWheelTimer#sharedTimer shared timer}. Timeouts may
+   * therefore fire up to the timer's 10 millisecond tick late.
+   *
+   * @see #withTimeout(ListenableFuture, long, TimeUnit, ScheduledExecutorService)
+   * @since 12.0
+   */
+  @Beta
+  public static <V> ListenableFuture<V> withTimeout(
+      ListenableFuture<V> future, long time, TimeUnit unit) {
+    return withTimeout(future, time, unit, HashedWheelTimer.sharedTimer());
   }
 
   /**
@@ -705,7 +942,7 @@ public final class Futures {
    */
   public static <V> void addCallback(ListenableFuture<V> future,
       FutureCallback<? super V> callback) {
-    addCallback(future, callback, MoreExecutors.sameThreadExecutor());
+    addCallback(future, callback, MoreExecutors.directExecutor());
   }
 
   /**
@@ -1069,6 +1306,7 @@ public final class Futures {
   private static class ListFuture<V> extends AbstractFuture<List<V>> {
     ImmutableList<? extends ListenableFuture<? extends V>> futures;
     final boolean allMustSucceed;
+    final boolean cancelInputsWhenDone;
     final AtomicInteger remaining;
     List<V> values;
 
@@ -1084,9 +1322,28 @@ public final class Futures {
     ListFuture(
         final ImmutableList<? extends ListenableFuture<? extends V>> futures,
         final boolean allMustSucceed, final Executor listenerExecutor) {
+      this(futures, allMustSucceed, false, listenerExecutor);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param futures all the futures to build the list from
+     * @param allMustSucceed whether a single failure or cancellation should
+     *        propagate to this future
+     * @param cancelInputsWhenDone whether to cancel all inputs once this
+     *        future is done; only inputs that are still running are affected
+     * @param listenerExecutor used to run listeners on all the passed in
+     *        futures.
+     */
+    ListFuture(
+        final ImmutableList<? extends ListenableFuture<? extends V>> futures,
+        final boolean allMustSucceed, final boolean cancelInputsWhenDone,
+        final Executor listenerExecutor) {
       this.futures = futures;
       this.values = Lists.newArrayListWithCapacity(futures.size());
       this.allMustSucceed = allMustSucceed;
+      this.cancelInputsWhenDone = cancelInputsWhenDone;
       this.remaining = new AtomicInteger(futures.size());
 
       init(listenerExecutor);
@@ -1101,10 +1358,19 @@ public final class Futures {
           // or (in case of failure) is no longer useful.
           ListFuture.this.values = null;
 
+          // If we succeeded, every input is already done and this is a no-op.
+          ImmutableList<? extends ListenableFuture<? extends V>> localFutures =
+              ListFuture.this.futures;
+          if (cancelInputsWhenDone && localFutures != null) {
+            for (ListenableFuture<? extends V> future : localFutures) {
+              future.cancel(false);
+            }
+          }
+
           // Let go of the memory held by other futures
           ListFuture.this.futures = null;
         }
-      }, MoreExecutors.sameThreadExecutor());
+      }, MoreExecutors.directExecutor());
 
       // Now begin the "real" initialization.
 
@@ -1194,6 +1460,151 @@ public final class Futures {
 
   }
 
+  /**
+   * Completes {@code to} with the outcome of the done future {@code from}.
+   */
+  private static <T> void propagate(
+      Future<? extends T> from, SettableFuture<T> to) {
+    try {
+      to.set(getUninterruptibly(from));
+    } catch (CancellationException e) {
+      to.cancel(false);
+    } catch (ExecutionException e) {
+      to.setException(e.getCause());
+    } catch (RuntimeException e) {
+      to.setException(e);
+    }
+  }
+
+  /**
+   * Feeds tasks to an executor for {@link #submitAll}, keeping at most
+   * {@code maxInFlight} outstanding.
+   *
+   * <p>Submission happens in {@link #drain}, which only one thread runs at a
+   * time: a thread that finds another one draining just records that there is
+   * more work and leaves it to that thread. Completions that happen inside
+   * {@code submit}, as with {@link MoreExecutors#sameThreadExecutor}, are
+   * therefore handled by looping rather than by recursion.
+   */
+  private static final class BoundedSubmitter<T> {
+    final ListeningExecutorService executor;
+    final ImmutableList<? extends Callable<? extends T>> tasks;
+    final ImmutableList<BoundedTaskFuture<T>> outputs;
+    final AtomicInteger permits;
+    final AtomicInteger drainRequests = new AtomicInteger();
+    // Only accessed by the thread that is draining.
+    int nextTask;
+
+    BoundedSubmitter(ListeningExecutorService executor,
+        ImmutableList<? extends Callable<? extends T>> tasks,
+        int maxInFlight) {
+      this.executor = executor;
+      this.tasks = tasks;
+      this.permits = new AtomicInteger(maxInFlight);
+      ImmutableList.Builder<BoundedTaskFuture<T>> builder =
+          ImmutableList.builder();
+      for (int i = 0; i < tasks.size(); i++) {
+        builder.add(new BoundedTaskFuture<T>());
+      }
+      this.outputs = builder.build();
+    }
+
+    void drain() {
+      if (drainRequests.getAndIncrement() != 0) {
+        return;
+      }
+      // An Error from submitting one task is rethrown only once the others
+      // have been submitted, so that every output still completes.
+      Error error = null;
+      do {
+        while (nextTask < tasks.size() && permits.get() > 0) {
+          permits.decrementAndGet();
+          int index = nextTask++;
+          try {
+            submit(tasks.get(index), outputs.get(index));
+          } catch (Error e) {
+            if (error == null) {
+              error = e;
+            }
+          }
+        }
+      } while (drainRequests.decrementAndGet() != 0);
+      if (error != null) {
+        throw error;
+      }
+    }
+
+    private void submit(
+        Callable<? extends T> task, final BoundedTaskFuture<T> output) {
+      if (output.isDone()) {
+        // cancelled before its turn came; never run it
+        permits.incrementAndGet();
+        return;
+      }
+      final ListenableFuture<? extends T> submitted;
+      try {
+        submitted = executor.submit(task);
+      } catch (Throwable t) {
+        permits.incrementAndGet();
+        // rethrows an Error, after completing output
+        output.setException(t);
+        return;
+      }
+      output.setDelegate(submitted);
+      submitted.addListener(new Runnable() {
+        @Override
+        public void run() {
+          try {
+            output.setFrom(submitted);
+          } finally {
+            permits.incrementAndGet();
+            drain();
+          }
+        }
+      }, MoreExecutors.directExecutor());
+    }
+  }
+
+  /**
+   * The caller's view of a task submitted through {@link #submitAll}, which
+   * exists before the task itself is submitted.
+   */
+  private static final class BoundedTaskFuture<T> extends AbstractFuture<T> {
+    private volatile Future<?> delegate;
+
+    void setDelegate(Future<?> delegate) {
+      this.delegate = delegate;
+      if (isCancelled()) {
+        // cancelled while being submitted
+        delegate.cancel(false);
+      }
+    }
+
+    void setFrom(Future<? extends T> done) {
+      try {
+        set(getUninterruptibly(done));
+      } catch (CancellationException e) {
+        cancel(false);
+      } catch (ExecutionException e) {
+        setException(e.getCause());
+      } catch (RuntimeException e) {
+        setException(e);
+      }
+    }
+
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning) {
+      if (!super.cancel(mayInterruptIfRunning)) {
+        return false;
+      }
+      Future<?> localDelegate = delegate;
+      if (localDelegate != null) {
+        localDelegate.cancel(mayInterruptIfRunning);
+      }
+      return true;
+    }
+  }
+
   /**
    * A checked future that uses a function to map from exceptions to the
    * appropriate checked type.
@@ -0,0 +1,639 @@
+/*
+ * Copyright (C) 2012 The Guava Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.common.util.concurrent;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import com.google.common.annotations.Beta;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.math.IntMath;
+
+import java.math.RoundingMode;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A {@link ListeningScheduledExecutorService} backed by a hashed timing wheel, suited to very
+ * large numbers of delayed tasks that need only approximate timing, such as request timeouts and
+ * periodic housekeeping.
+ *
+ * <p>A single timer thread advances around a circular array of buckets, one bucket per
+ * <i>tick</i>. Scheduling a task appends it to a lock-free queue, and cancelling one marks it,
+ * both in constant time; the timer thread moves queued tasks into their buckets and unlinks
+ * cancelled ones on its next tick. A {@link java.util.concurrent.ScheduledThreadPoolExecutor}, in
+ * contrast, pays a logarithmic heap operation under a lock for every schedule and cancellation.
+ * The price is precision: a task runs on the first tick at or after its delay has elapsed, so it
+ * may run up to one tick late, and timing is only as good as the tick duration.
+ *
+ * <p>Expired tasks are never run on the timer thread itself, but handed to a separate task
+ * executor, so a slow task cannot delay the wheel. Periodic tasks are rescheduled when an
+ * execution finishes, so executions of the same task never overlap.
+ *
+ * <p>{@link #sharedTimer()} returns a process-wide instance whose threads are daemons and which
+ * cannot be shut down; it is the default executor of {@link AbstractScheduledService}, and the
+ * timer used by {@link Futures#withTimeout(ListenableFuture, long, TimeUnit)}.
+ *
+ * <p>On {@link #shutdown}, periodic tasks are cancelled, while delayed one-shot tasks still run at
+ * their scheduled time.
+ *
+ * @since 12.0
+ */
+@Beta
+public final class HashedWheelTimer extends AbstractListeningExecutorService
+    implements ListeningScheduledExecutorService {
+  private static final int NEW = 0;
+  private static final int STARTED = 1;
+  private static final int SHUTDOWN = 2;
+
+  /** Upper bound on tasks moved into the wheel per tick, so a burst cannot starve expiry. */
+  private static final int MAX_TRANSFERS_PER_TICK = 100000;
+
+  private final long tickNanos;
+  private final Bucket[] wheel;
+  private final int mask;
+  private final Executor taskExecutor;
+  private final ExecutorService ownedTaskExecutor;
+  private final boolean shared;
+  private final Thread workerThread;
+
+  private final AtomicInteger state = new AtomicInteger(NEW);
+  private final Queue<TimerTask<?>> newTasks = new ConcurrentLinkedQueue<TimerTask<?>>();
+  private final Queue<TimerTask<?>> cancelledTasks = new ConcurrentLinkedQueue<TimerTask<?>>();
+  private final CountDownLatch termination = new CountDownLatch(1);
+
+  /**
+   * The number of tasks handed to the task executor that have not finished; the timer terminates
+   * only once this is zero.
+   */
+  private final AtomicInteger inFlight = new AtomicInteger();
+  /** Set once the worker has finished its final sweep, or at shutdown if it never started. */
+  private volatile boolean workerDone;
+
+  /** Set by shutdownNow, telling the worker to cancel everything and exit. */
+  private volatile boolean discardPending;
+  /** Set by the worker before its final sweep; see {@link #enqueue}. */
+  private volatile boolean workerExited;
+  /** Tasks cancelled by the worker's final sweep, for shutdownNow. */
+  private volatile List<Runnable> unrunTasks = ImmutableList.of();
+
+  /** Set once the worker has started; deadlines are measured from here. */
+  private volatile long startTime;
+
+  /**
+   * Creates a timer with a 10 millisecond tick and 512 buckets, which runs tasks on a cached pool
+   * of daemon threads that is shut down along with the timer.
+   */
+  public HashedWheelTimer() {
+    this(10, TimeUnit.MILLISECONDS, 512);
+  }
+
+  /**
+   * Creates a timer with the given tick duration and number of buckets, which runs tasks on a
+   * cached pool of daemon threads that is shut down along with the timer.
+   *
+   * @param tickDuration the granularity of the timer
+   * @param unit the time unit of {@code tickDuration}
+   * @param ticksPerWheel the number of buckets; rounded up to a power of two
+   * @throws IllegalArgumentException if {@code tickDuration} or {@code ticksPerWheel} is not
+   *     positive, or {@code ticksPerWheel} exceeds 2^30
+   */
+  public HashedWheelTimer(long tickDuration, TimeUnit unit, int ticksPerWheel) {
+    this(tickDuration, unit, ticksPerWheel, null, false);
+  }
+
+  /**
+   * Creates a timer with the given tick duration and number of buckets, which runs tasks on
+   * {@code taskExecutor}. The task executor is not shut down along with the timer.
+   *
+   * @param tickDuration the granularity of the timer
+   * @param unit the time unit of {@code tickDuration}
+   * @param ticksPerWheel the number of buckets; rounded up to a power of two
+   * @param taskExecutor the executor that runs expired tasks
+   * @throws IllegalArgumentException if {@code tickDuration} or {@code ticksPerWheel} is not
+   *     positive, or {@code ticksPerWheel} exceeds 2^30
+   */
+  public HashedWheelTimer(
+      long tickDuration, TimeUnit unit, int ticksPerWheel, Executor taskExecutor) {
+    this(tickDuration, unit, ticksPerWheel, checkNotNull(taskExecutor), false);
+  }
+
+  private HashedWheelTimer(long tickDuration, TimeUnit unit, int ticksPerWheel,
+      Executor taskExecutor, boolean shared) {
+    checkArgument(tickDuration > 0, "tickDuration must be positive: %s", tickDuration);
+    checkArgument(ticksPerWheel > 0 && ticksPerWheel <= 1 << 30,
+        "ticksPerWheel must be in (0, 2^30]: %s", ticksPerWheel);
+    this.tickNanos = unit.toNanos(tickDuration);
+    int size = 1 << IntMath.log2(ticksPerWheel, RoundingMode.CEILING);
+    this.wheel = new Bucket[size];
+    for (int i = 0; i < size; i++) {
+      wheel[i] = new Bucket();
+    }
+    this.mask = size - 1;
+    this.shared = shared;
+
+    ThreadFactory threadFactory = new ThreadFactoryBuilder()
+        .setDaemon(true)
+        .setNameFormat("HashedWheelTimer-worker-%d")
+        .build();
+    if (taskExecutor == null) {
+      this.ownedTaskExecutor = Executors.newCachedThreadPool(new ThreadFactoryBuilder()
+          .setDaemon(true)
+          .setNameFormat("HashedWheelTimer-task-%d")
+          .build());
+      this.taskExecutor = ownedTaskExecutor;
+    } else {
+      this.ownedTaskExecutor = null;
+      this.taskExecutor = taskExecutor;
+    }
+    this.workerThread = threadFactory.newThread(new Worker());
+  }
+
+  private static final class SharedTimerHolder {
+    static final HashedWheelTimer INSTANCE =
+        new HashedWheelTimer(10, TimeUnit.MILLISECONDS, 512, null, true);
+  }
+
+  /**
+   * Returns the process-wide timer, which has a 10 millisecond tick and runs tasks on a cached
+   * pool of daemon threads. Its shutdown methods throw {@link UnsupportedOperationException}.
+   */
+  public static HashedWheelTimer sharedTimer() {
+    return SharedTimerHolder.INSTANCE;
+  }
+
+  // Scheduling
+
+  @Override public ScheduledFuture<?> schedule(Runnable command, long delay, TimeUnit unit) {
+    return schedule(Executors.callable(checkNotNull(command)), delay, unit);
+  }
+
+  @Override public <V> ScheduledFuture<V> schedule(
+      Callable<V> callable, long delay, TimeUnit unit) {
+    TimerTask<V> task = new TimerTask<V>(checkNotNull(callable), deadlineAfter(delay, unit), 0);
+    enqueue(task);
+    return task;
+  }
+
+  @Override public ScheduledFuture<?> scheduleAtFixedRate(
+      Runnable command, long initialDelay, long period, TimeUnit unit) {
+    checkArgument(period > 0, "period must be positive: %s", period);
+    TimerTask<Object> task = new TimerTask<Object>(Executors.callable(checkNotNull(command)),
+        deadlineAfter(initialDelay, unit), unit.toNanos(period));
+    enqueue(task);
+    return task;
+  }
+
+  @Override public ScheduledFuture<?> scheduleWithFixedDelay(
+      Runnable command, long initialDelay, long delay, TimeUnit unit) {
+    checkArgument(delay > 0, "delay must be positive: %s", delay);
+    TimerTask<Object> task = new TimerTask<Object>(Executors.callable(checkNotNull(command)),
+        deadlineAfter(initialDelay, unit), -unit.toNanos(delay));
+    enqueue(task);
+    return task;
+  }
+
+  /**
+   * Runs {@code command} on the task executor right away, without going through the wheel.
+   */
+  @Override public void execute(Runnable command) {
+    checkNotNull(command);
+    // Counted before the state is read, so that shutdown either rejects the command or waits for it
+    inFlight.incrementAndGet();
+    if (state.get() == SHUTDOWN) {
+      taskFinished();
+      throw new RejectedExecutionException("Timer has been shut down");
+    }
+    dispatch(command);
+  }
+
+  /**
+   * Hands {@code task}, already counted in {@link #inFlight}, to the task executor, and stops
+   * counting it once it has run or been rejected.
+   */
+  private void dispatch(final Runnable task) {
+    try {
+      taskExecutor.execute(new Runnable() {
+        @Override public void run() {
+          try {
+            task.run();
+          } finally {
+            taskFinished();
+          }
+        }
+      });
+    } catch (RuntimeException e) {
+      taskFinished();
+      throw e;
+    }
+  }
+
+  private void taskFinished() {
+    if (inFlight.decrementAndGet() == 0) {
+      tryTerminate();
+    }
+  }
+
+  private void enqueue(TimerTask<?> task) {
+    startWorkerIfNeeded();
+    if (state.get() == SHUTDOWN) {
+      throw new RejectedExecutionException("Timer has been shut down");
+    }
+    newTasks.add(task);
+    // The worker sets workerExited before its final sweep of newTasks, so if we read false here
+    // that sweep will see our task. If we read true, whichever of us removes the task handles it.
+    if (workerExited && newTasks.remove(task)) {
+      throw new RejectedExecutionException("Timer has been shut down");
+    }
+  }
+
+  private void startWorkerIfNeeded() {
+    if (state.get() == NEW) {
+      synchronized (workerThread) {
+        if (state.get() == NEW) {
+          startTime = System.nanoTime();
+          workerThread.start();
+          state.set(STARTED);
+        }
+      }
+    }
+  }
+
+  private long elapsedNanos() {
+    return System.nanoTime() - startTime;
+  }
+
+  private long deadlineAfter(long delay, TimeUnit unit) {
+    startWorkerIfNeeded();
+    return saturatedAdd(elapsedNanos(), unit.toNanos(delay));
+  }
+
+  /**
+   * Returns {@code time + delayNanos}, treating a negative delay as zero, and capped at {@code
+   * Long.MAX_VALUE} rather than overflowing, like {@code ScheduledThreadPoolExecutor.triggerTime};
+   * {@code time} must not be negative.
+   */
+  private static long saturatedAdd(long time, long delayNanos) {
+    long delay = Math.max(0, delayNanos);
+    return (delay > Long.MAX_VALUE - time) ? Long.MAX_VALUE : time + delay;
+  }
+
+  // Shutdown
+
+  /**
+   * Stops accepting new tasks and cancels periodic ones. Delayed one-shot tasks still run when they
+   * expire, after which the timer terminates.
+   *
+   * @throws UnsupportedOperationException if this is the {@linkplain #sharedTimer shared timer}
+   */
+  @Override public void shutdown() {
+    if (shared) {
+      throw new UnsupportedOperationException("The shared timer cannot be shut down");
+    }
+    // the worker notices the new state on its next tick, and cancels periodic tasks then
+    advanceToShutdown();
+  }
+
+  /**
+   * Stops accepting new tasks, cancels every pending one, and waits for the timer thread to exit.
+   * Tasks already handed to the task executor are not interrupted, and the timer terminates once
+   * they finish.
+   *
+   * @return the tasks that were cancelled
+   * @throws UnsupportedOperationException if this is the {@linkplain #sharedTimer shared timer}
+   */
+  @Override public List<Runnable> shutdownNow() {
+    if (shared) {
+      throw new UnsupportedOperationException("The shared timer cannot be shut down");
+    }
+    discardPending = true;
+    if (advanceToShutdown()) {
+      return ImmutableList.of();
+    }
+    LockSupport.unpark(workerThread);
+    if (Thread.currentThread() != workerThread) {
+      Uninterruptibles.joinUninterruptibly(workerThread);
+    }
+    return unrunTasks;
+  }
+
+  /**
+   * Moves to the SHUTDOWN state, and returns true if the worker had never started, in which case
+   * the timer terminates as soon as no task is in flight.
+   */
+  private boolean advanceToShutdown() {
+    synchronized (workerThread) {
+      int previous = state.getAndSet(SHUTDOWN);
+      if (previous == NEW) {
+        workerDone = true;
+        tryTerminate();
+        return true;
+      }
+      return false;
+    }
+  }
+
+  /**
+   * Terminates the timer if the worker is done and no task is in flight. Called by each of them on
+   * finishing, so whichever finishes last terminates the timer.
+   */
+  private void tryTerminate() {
+    if (workerDone && inFlight.get() == 0 && termination.getCount() > 0) {
+      termination.countDown();
+      if (ownedTaskExecutor != null) {
+        ownedTaskExecutor.shutdown();
+      }
+    }
+  }
+
+  @Override public boolean isShutdown() {
+    return state.get() == SHUTDOWN;
+  }
+
+  @Override public boolean isTerminated() {
+    return termination.getCount() == 0;
+  }
+
+  @Override public boolean awaitTermination(long timeout, TimeUnit unit)
+      throws InterruptedException {
+    return termination.await(timeout, unit);
+  }
+
+  @Override public String toString() {
+    return "HashedWheelTimer[tick=" + tickNanos + "ns, buckets=" + wheel.length + "]";
+  }
+
+  // The wheel; everything below is only touched by the worker thread, except TimerTask's
+  // public methods.
+
+  private final class Worker implements Runnable {
+    private long tick;
+    private int pending;
+
+    @Override public void run() {
+      boolean periodicCancelled = false;
+      for (;;) {
+        long now = waitForNextTick();
+        if (discardPending) {
+          break;
+        }
+        if (state.get() == SHUTDOWN && !periodicCancelled) {
+          cancelPeriodicTasks();
+          periodicCancelled = true;
+        }
+        unlinkCancelled();
+        transferNewTasks();
+        pending -= wheel[(int) (tick & mask)].expire(now);
+        tick++;
+        if (periodicCancelled && pending == 0 && newTasks.isEmpty()) {
+          break;
+        }
+      }
+
+      workerExited = true;
+      List<Runnable> unrun = Lists.newArrayList();
+      for (Bucket bucket : wheel) {
+        bucket.drainTo(unrun);
+      }
+      for (TimerTask<?> task; (task = newTasks.poll()) != null; ) {
+        unrun.add(task);
+      }
+      for (Runnable task : unrun) {
+        ((TimerTask<?>) task).cancel(false);
+      }
+      unrunTasks = ImmutableList.copyOf(unrun);
+      workerDone = true;
+      tryTerminate();
+    }
+
+    /**
+     * Sleeps until the end of the current tick, and returns the elapsed time then.
+     */
+    private long waitForNextTick() {
+      long deadline = tickNanos * (tick + 1);
+      for (;;) {
+        long now = elapsedNanos();
+        long sleepNanos = deadline - now;
+        if (sleepNanos <= 0 || discardPending) {
+          return now;
+        }
+        LockSupport.parkNanos(this, sleepNanos);
+      }
+    }
+
+    private void unlinkCancelled() {
+      for (TimerTask<?> task; (task = cancelledTasks.poll()) != null; ) {
+        if (task.bucket != null) {
+          task.bucket.remove(task);
+          pending--;
+        }
+      }
+    }
+
+    private void transferNewTasks() {
+      for (int i = 0; i < MAX_TRANSFERS_PER_TICK; i++) {
+        TimerTask<?> task = newTasks.poll();
+        if (task == null) {
+          return;
+        }
+        if (task.isDone()) {
+          continue;
+        }
+        if (state.get() == SHUTDOWN && task.period != 0) {
+          task.cancel(false);
+          continue;
+        }
+        long calculated = task.deadline / tickNanos;
+        task.remainingRounds = (calculated - tick) / wheel.length;
+        long ticks = Math.max(calculated, tick); // don't schedule into the past
+        wheel[(int) (ticks & mask)].add(task);
+        pending++;
+      }
+    }
+
+    private void cancelPeriodicTasks() {
+      for (Bucket bucket : wheel) {
+        for (TimerTask<?> task = bucket.head; task != null; task = task.next) {
+          if (task.period != 0) {
+            // unlinked by unlinkCancelled
+            task.cancel(false);
+          }
+        }
+      }
+    }
+  }
+
+  /** A doubly-linked list of the tasks that fall in one slot of the wheel. */
+  private final class Bucket {
+    TimerTask<?> head;
+    TimerTask<?> tail;
+
+    void add(TimerTask<?> task) {
+      task.bucket = this;
+      if (head == null) {
+        head = tail = task;
+      } else {
+        tail.next = task;
+        task.prev = tail;
+        tail = task;
+      }
+    }
+
+    void remove(TimerTask<?> task) {
+      TimerTask<?> next = task.next;
+      if (task.prev != null) {
+        task.prev.next = next;
+      }
+      if (task.next != null) {
+        task.next.prev = task.prev;
+      }
+      if (task == head) {
+        head = next;
+      }
+      if (task == tail) {
+        tail = task.prev;
+      }
+      task.prev = null;
+      task.next = null;
+      task.bucket = null;
+    }
+
+    /**
+     * Fires every task in this bucket whose last round has come, and returns how many tasks left
+     * the bucket.
+     */
+    int expire(long now) {
+      int removed = 0;
+      TimerTask<?> task = head;
+      while (task != null) {
+        TimerTask<?> next = task.next;
+        if (task.isDone()) {
+          // cancelled; it is also in cancelledTasks, where it will be found already unlinked
+          remove(task);
+          removed++;
+        } else if (task.remainingRounds <= 0 && task.deadline <= now) {
+          remove(task);
+          removed++;
+          fire(task);
+        } else {
+          task.remainingRounds--;
+        }
+        task = next;
+      }
+      return removed;
+    }
+
+    void drainTo(List<Runnable> tasks) {
+      for (TimerTask<?> task = head; task != null; task = task.next) {
+        tasks.add(task);
+      }
+      head = tail = null;
+    }
+  }
+
+  private void fire(TimerTask<?> task) {
+    inFlight.incrementAndGet();
+    try {
+      dispatch(task);
+    } catch (RuntimeException e) {
+      // whatever the task executor throws fails this task only, not the worker
+      task.setException(e);
+    }
+  }
+
+  /**
+   * A task in the wheel, and its future. The {@code period} follows
+   * {@link java.util.concurrent.ScheduledThreadPoolExecutor}: zero for one-shot tasks, positive for
+   * fixed-rate and negative for fixed-delay ones.
+   */
+  private final class TimerTask<V> extends AbstractFuture<V>
+      implements ScheduledFuture<V>, Runnable {
+    final Callable<V> callable;
+    final long period;
+    volatile long deadline;
+
+    // only accessed by the worker thread
+    long remainingRounds;
+    Bucket bucket;
+    TimerTask<?> prev;
+    TimerTask<?> next;
+
+    TimerTask(Callable<V> callable, long deadline, long period) {
+      this.callable = callable;
+      this.deadline = deadline;
+      this.period = period;
+    }
+
+    @Override public void run() {
+      if (isDone()) {
+        return;
+      }
+      try {
+        V result = callable.call();
+        if (period == 0) {
+          set(result);
+          return;
+        }
+      } catch (Throwable t) {
+        setException(t);
+        return;
+      }
+      if (!isDone()) {
+        deadline = (period > 0)
+            ? saturatedAdd(deadline, period)
+            : saturatedAdd(elapsedNanos(), -period);
+        try {
+          enqueue(this);
+        } catch (RejectedExecutionException e) {
+          cancel(false);
+        }
+      }
+    }
+
+    @Override public boolean cancel(boolean mayInterruptIfRunning) {
+      if (!super.cancel(mayInterruptIfRunning)) {
+        return false;
+      }
+      cancelledTasks.add(this);
+      return true;
+    }
+
+    @Override public long getDelay(TimeUnit unit) {
+      return unit.convert(deadline - elapsedNanos(), TimeUnit.NANOSECONDS);
+    }
+
+    @Override public int compareTo(Delayed other) {
+      long delay = getDelay(TimeUnit.NANOSECONDS);
+      long otherDelay = other.getDelay(TimeUnit.NANOSECONDS);
+      return (delay < otherDelay) ? -1 : (delay > otherDelay) ? 1 : 0;
+    }
+  }
+}
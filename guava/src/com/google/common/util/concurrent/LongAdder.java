@@ -0,0 +1,146 @@
+/*
+ * Written by Doug Lea with assistance from members of JCP JSR-166
+ * Expert Group and released to the public domain, as explained at
+ * http://creativecommons.org/publicdomain/zero/1.0/
+ */
+
+/*
+ * Source:
+ * http://gee.cs.oswego.edu/cgi-bin/viewcvs.cgi/jsr166/src/jsr166e/LongAdder.java
+ * (Modified to adapt to guava coding conventions, to use field updaters
+ * instead of sun.misc.Unsafe, and to make sumThenReset exact)
+ */
+
+package com.google.common.util.concurrent;
+
+/**
+ * One or more variables that together maintain an initially zero
+ * {@code long} sum. When updates (method {@link #add}) are contended
+ * across threads, the set of variables may grow dynamically to reduce
+ * contention. Method {@link #sum} returns the current total combined
+ * across the variables maintaining the sum.
+ *
+ * <p>This class is usually preferable to {@link
+ * java.util.concurrent.atomic.AtomicLong} when multiple threads update
+ * a common sum that is used for purposes such as collecting statistics,
+ * not for fine-grained synchronization control. Under low update
+ * contention, the two classes have similar characteristics. But under
+ * high contention, expected throughput of this class is significantly
+ * higher, at the expense of higher space consumption.
+ *
+ * @author Doug Lea
+ */
+class LongAdder extends Striped64 {
+
+  /**
+   * Version of plus for use in retryUpdate
+   */
+  @Override
+  final long fn(long v, long x) {
+    return v + x;
+  }
+
+  /**
+   * Creates a new adder with initial sum of zero.
+   */
+  LongAdder() {
+  }
+
+  /**
+   * Adds the given value.
+   *
+   * @param x the value to add
+   */
+  final void add(long x) {
+    Cell[] as;
+    long b;
+    long v;
+    HashCode hc;
+    Cell a;
+    int n;
+    if ((as = cells) != null || !casBase(b = base, b + x)) {
+      boolean uncontended = true;
+      int h = (hc = threadHashCode.get()).code;
+      if (as == null || (n = as.length) < 1
+          || (a = as[(n - 1) & h]) == null
+          || !(uncontended = a.cas(v = a.value, v + x))) {
+        retryUpdate(x, hc, uncontended);
+      }
+    }
+  }
+
+  /**
+   * Equivalent to {@code add(1)}.
+   */
+  final void increment() {
+    add(1L);
+  }
+
+  /**
+   * Equivalent to {@code add(-1)}.
+   */
+  final void decrement() {
+    add(-1L);
+  }
+
+  /**
+   * Returns the current sum. The returned value is <em>NOT</em> an
+   * atomic snapshot; invocation in the absence of concurrent
+   * updates returns an accurate result, but concurrent updates that
+   * occur while the sum is being calculated might not be
+   * incorporated.
+   *
+   * @return the sum
+   */
+  final long sum() {
+    long sum = base;
+    Cell[] as = cells;
+    if (as != null) {
+      for (Cell a : as) {
+        if (a != null) {
+          sum += a.value;
+        }
+      }
+    }
+    return sum;
+  }
+
+  /**
+   * Returns the current sum and resets the variables maintaining it
+   * to zero. Each variable is swapped to zero atomically, and the
+   * table lock is held so that no cell can be attached or moved while
+   * the table is read; every update is therefore either included in
+   * the returned value or left in this adder, never lost. The result
+   * is still not an atomic snapshot.
+   *
+   * @return the sum
+   */
+  final long sumThenReset() {
+    long sum = getAndSetBase(0L);
+    while (!casBusy()) {
+      Thread.yield();
+    }
+    try {
+      Cell[] as = cells;
+      if (as != null) {
+        for (Cell a : as) {
+          if (a != null) {
+            sum += a.getAndSet(0L);
+          }
+        }
+      }
+    } finally {
+      busy = 0;
+    }
+    return sum;
+  }
+
+  /**
+   * Returns the String representation of the {@link #sum}.
+   * @return the String representation of the {@link #sum}
+   */
+  @Override
+  public String toString() {
+    return Long.toString(sum());
+  }
+}
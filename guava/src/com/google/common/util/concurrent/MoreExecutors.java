@@ -19,10 +19,14 @@ package com.google.common.util.concurrent;
 import static com.google.common.base.Preconditions.checkNotNull;
 
 import com.google.common.annotations.Beta;
+import com.google.common.base.Throwables;
 
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
 import java.util.Collections;
 import java.util.List;
 import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.RejectedExecutionException;
@@ -348,6 +352,39 @@ public final class MoreExecutors {
     }
   }
 
+  /**
+   * Returns a shared {@link Executor} that runs each task in the thread that
+   * calls {@code execute}. Unlike {@link #sameThreadExecutor} it has no
+   * shutdown state, so it costs neither an allocation nor a lock per use. It is
+   * meant for internal listeners whose executor callers never see.
+   */
+  static Executor directExecutor() {
+    return DirectExecutor.INSTANCE;
+  }
+
+  /**
+   * Returns {@code true} if {@code executor} is known to run every task
+   * synchronously in the calling thread, so that a caller may run a task
+   * itself instead of submitting it.
+   */
+  static boolean isDirectExecutor(Executor executor) {
+    return executor == DirectExecutor.INSTANCE
+        || (executor instanceof SameThreadExecutorService
+            && !((SameThreadExecutorService) executor).isShutdown());
+  }
+
+  private enum DirectExecutor implements Executor {
+    INSTANCE;
+
+    @Override public void execute(Runnable command) {
+      command.run();
+    }
+
+    @Override public String toString() {
+      return "MoreExecutors.directExecutor()";
+    }
+  }
+
   /**
    * Creates an {@link ExecutorService} whose {@code submit} and {@code
    * invokeAll} methods submit {@link ListenableFutureTask} instances to the
@@ -401,6 +438,103 @@ public final class MoreExecutors {
         : new ScheduledListeningDecorator(delegate);
   }
 
+  /**
+   * Returns whether this JVM supports virtual threads, that is, whether {@link
+   * #newVirtualThreadListeningExecutor} and {@link #virtualThreadFactory} may
+   * be called.
+   *
+   * @since 12.0
+   */
+  @Beta
+  public static boolean isVirtualThreadSupported() {
+    return VirtualThreads.NEW_EXECUTOR != null;
+  }
+
+  /**
+   * Creates an executor that runs each task on a new virtual thread, as by
+   * {@code Executors.newVirtualThreadPerTaskExecutor()}, decorated with {@link
+   * #listeningDecorator(ExecutorService)}. Virtual threads are cheap enough to
+   * create one per blocking task, so this suits large numbers of tasks that
+   * spend most of their time waiting.
+   *
+   * <p>This library is compiled for older JVMs, so the executor is created by
+   * reflection; call {@link #isVirtualThreadSupported} first to find out
+   * whether it is available. Blocking in a {@code synchronized} block or
+   * method pins a virtual thread to its carrier thread, so {@link Monitor},
+   * {@link ExecutionList} and {@link AbstractService} use only {@code
+   * java.util.concurrent} locks, which do not.
+   *
+   * @throws UnsupportedOperationException if this JVM does not support virtual
+   *     threads
+   * @since 12.0
+   */
+  @Beta
+  public static ListeningExecutorService newVirtualThreadListeningExecutor() {
+    return listeningDecorator(
+        (ExecutorService) VirtualThreads.invoke(VirtualThreads.NEW_EXECUTOR, null));
+  }
+
+  /**
+   * Returns a {@link ThreadFactory} that creates unstarted virtual threads, as
+   * by {@code Thread.ofVirtual().factory()}. It may be passed to {@link
+   * ThreadFactoryBuilder#setThreadFactory} to name virtual threads or set their
+   * uncaught exception handler; virtual threads are always daemons and ignore
+   * priorities, so do not combine it with {@code setDaemon(false)} or {@code
+   * setPriority}.
+   *
+   * @throws UnsupportedOperationException if this JVM does not support virtual
+   *     threads
+   * @since 12.0
+   */
+  @Beta
+  public static ThreadFactory virtualThreadFactory() {
+    Object builder = VirtualThreads.invoke(VirtualThreads.OF_VIRTUAL, null);
+    return (ThreadFactory) VirtualThreads.invoke(VirtualThreads.FACTORY, builder);
+  }
+
+  /**
+   * The virtual thread APIs of newer JVMs, looked up by reflection. The methods
+   * are all null if any of them is missing.
+   */
+  private static final class VirtualThreads {
+    static final Method NEW_EXECUTOR;
+    static final Method OF_VIRTUAL;
+    static final Method FACTORY;
+
+    static {
+      Method newExecutor = null;
+      Method ofVirtual = null;
+      Method factory = null;
+      try {
+        newExecutor = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+        ofVirtual = Thread.class.getMethod("ofVirtual");
+        factory = Class.forName("java.lang.Thread$Builder").getMethod("factory");
+      } catch (ClassNotFoundException e) {
+        newExecutor = null;
+      } catch (NoSuchMethodException e) {
+        newExecutor = null;
+      }
+      boolean supported = newExecutor != null;
+      NEW_EXECUTOR = supported ? newExecutor : null;
+      OF_VIRTUAL = supported ? ofVirtual : null;
+      FACTORY = supported ? factory : null;
+    }
+
+    static Object invoke(Method method, Object target) {
+      if (method == null) {
+        throw new UnsupportedOperationException(
+            "Virtual threads are not supported by this JVM");
+      }
+      try {
+        return method.invoke(target);
+      } catch (IllegalAccessException e) {
+        throw new UnsupportedOperationException(e);
+      } catch (InvocationTargetException e) {
+        throw Throwables.propagate(e.getCause());
+      }
+    }
+  }
+
   private static class ListeningDecorator
       extends AbstractListeningExecutorService {
     final ExecutorService delegate;
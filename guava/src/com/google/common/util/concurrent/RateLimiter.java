@@ -0,0 +1,569 @@
+/*
+ * Copyright (C) 2012 The Guava Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.common.util.concurrent;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import com.google.common.annotations.Beta;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Ticker;
+
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * A rate limiter. Conceptually, a rate limiter distributes permits at a
+ * configurable rate. Each {@link #acquire()} blocks if necessary until a permit is
+ * available, and then takes it. Once acquired, permits need not be released.
+ *
+ * <p>Rate limiters are often used to restrict the rate at which some
+ * physical or logical resource is accessed. For example, to submit no more than
+ * two tasks per second: <pre>   {@code
+ *
+ *   final RateLimiter rateLimiter = RateLimiter.create(2.0);
+ *   void submitTasks(List<Runnable> tasks, Executor executor) {
+ *     for (Runnable task : tasks) {
+ *       rateLimiter.acquire(); // may wait
+ *       executor.execute(task);
+ *     }
+ *   }}</pre>
+ *
+ * <p>The number of permits requested never affects the throttling of the request
+ * itself (an invocation to {@code acquire(1)} and an invocation to {@code acquire(1000)}
+ * result in exactly the same throttling, if any), but it affects the throttling of the
+ * <i>next</i> request. That is, if an expensive task arrives at an idle rate limiter, it
+ * is granted immediately, but it is the <i>next</i> request that experiences extra
+ * throttling, thus paying for the cost of the expensive task.
+ *
+ * <p>There are two kinds of permit schedule:
+ * <ul>
+ * <li>{@linkplain #create(double) Smooth bursty}: permits that go unused while the limiter
+ *     is idle are saved, up to one second's worth, and handed out without waiting when
+ *     requests resume.
+ * <li>{@linkplain #create(double, long, TimeUnit) Smooth warm-up}: after a period of
+ *     inactivity the limiter is "cold", and hands out permits at a third of the stable rate,
+ *     speeding up steadily until the stable rate is reached after the warm-up period. This
+ *     suits resources, such as caches and connection pools, that need time to get up to
+ *     speed.
+ * </ul>
+ *
+ * <p>All callers reserve their permits under a short lock that only does arithmetic;
+ * waiting for the reserved time happens outside it, so callers never queue behind one
+ * another's sleep. A {@link #tryAcquire} that cannot succeed within its timeout usually
+ * returns without taking the lock at all.
+ *
+ * @since 12.0
+ */
+@ThreadSafe
+@Beta
+public abstract class RateLimiter {
+  /*
+   * How is the RateLimiter designed, and why?
+   *
+   * The primary feature of a RateLimiter is its "stable rate", the maximum rate that it
+   * allows in normal conditions. This is enforced by "throttling" incoming requests as
+   * needed, i.e. by computing, for an incoming request, the appropriate throttle time, and
+   * making the calling thread wait as much.
+   *
+   * The simplest way to maintain a rate of QPS is to keep the timestamp of the last
+   * granted request, and ensure that (1/QPS) seconds have elapsed since then. Such a
+   * RateLimiter has no memory of under-utilization, though, so instead we allow "storing"
+   * unused permits, in storedPermits, up to maxPermits. A request first spends stored
+   * permits and then fresh ones; fresh permits always cost stableIntervalMicros each, and
+   * the cost of stored permits depends on the subclass: nothing for Bursty, and
+   * progressively more, the more are stored, for WarmingUp.
+   *
+   * nextFreeTicketMicros is the time at which the next request can be granted. When it is
+   * in the past, the limiter has been idle, and resync() converts the idle time into stored
+   * permits. A request that needs more permits than are available is still granted at
+   * nextFreeTicketMicros, and pushes nextFreeTicketMicros further into the future: the
+   * next request pays for it.
+   */
+
+  /**
+   * The underlying timer; used both to measure elapsed time and sleep as necessary. A separate
+   * object to facilitate testing.
+   */
+  private final SleepingTicker ticker;
+
+  /**
+   * The timestamp when the RateLimiter was created; used to avoid possible overflow/time-wrapping
+   * errors.
+   */
+  private final long offsetNanos;
+
+  /**
+   * The currently stored permits.
+   */
+  double storedPermits;
+
+  /**
+   * The maximum number of stored permits.
+   */
+  double maxPermits;
+
+  /**
+   * The interval between two unit requests, at our stable rate. E.g., a stable rate of 5 permits
+   * per second has a stable interval of 200ms.
+   */
+  volatile double stableIntervalMicros;
+
+  private final Object mutex = new Object();
+
+  /**
+   * The time when the next request (no matter its size) will be granted. After granting a request,
+   * this is pushed further in the future. Large requests push this further than small requests.
+   * Only written while holding {@code mutex}, and never decreases, which is what allows
+   * {@link #tryAcquire} to read it without the lock.
+   */
+  private volatile long nextFreeTicketMicros = 0L;
+
+  /**
+   * Creates a {@code RateLimiter} with the specified stable throughput, given as
+   * "permits per second" (commonly referred to as <i>QPS</i>, queries per second).
+   *
+   * <p>The returned {@code RateLimiter} ensures that on average no more than {@code
+   * permitsPerSecond} are issued during any given second, with sustained requests
+   * being smoothly spread over each second. When the incoming request rate exceeds
+   * {@code permitsPerSecond} the rate limiter will release one permit every {@code
+   * (1.0 / permitsPerSecond)} seconds. When the rate limiter is unused,
+   * bursts of up to {@code permitsPerSecond} permits will be allowed, with subsequent
+   * requests being smoothly limited at the stable rate of {@code permitsPerSecond}.
+   *
+   * @param permitsPerSecond the rate of the returned {@code RateLimiter}, measured in
+   *        how many permits become available per second
+   * @throws IllegalArgumentException if {@code permitsPerSecond} is not positive
+   */
+  public static RateLimiter create(double permitsPerSecond) {
+    return create(SleepingTicker.SYSTEM_TICKER, permitsPerSecond);
+  }
+
+  @VisibleForTesting
+  static RateLimiter create(SleepingTicker ticker, double permitsPerSecond) {
+    RateLimiter rateLimiter = new Bursty(ticker, 1.0);
+    rateLimiter.setRate(permitsPerSecond);
+    return rateLimiter;
+  }
+
+  /**
+   * Creates a {@code RateLimiter} with the specified stable throughput, given as
+   * "permits per second" (commonly referred to as <i>QPS</i>, queries per second), and a
+   * <i>warmup period</i>, during which the {@code RateLimiter} smoothly ramps up its rate,
+   * until it reaches its maximum rate at the end of the period (as long as there are enough
+   * requests to saturate it). Similarly, if the {@code RateLimiter} is left <i>unused</i> for
+   * a duration of {@code warmupPeriod}, it will gradually return to its "cold" state,
+   * i.e. it will go through the same warming up process as when it was first created.
+   *
+   * <p>The returned {@code RateLimiter} is intended for cases where the resource that actually
+   * fulfills the requests (e.g., a remote server) needs "warmup" time, rather than
+   * being immediately accessed at the stable (maximum) rate.
+   *
+   * <p>The returned {@code RateLimiter} starts in a "cold" state (i.e. the warmup period
+   * will follow), and if it is left unused for long enough, it will return to that state.
+   *
+   * @param permitsPerSecond the rate of the returned {@code RateLimiter}, measured in
+   *        how many permits become available per second
+   * @param warmupPeriod the duration of the period where the {@code RateLimiter} ramps up its
+   *        rate, before reaching its stable (maximum) rate
+   * @param unit the time unit of the warmupPeriod argument
+   * @throws IllegalArgumentException if {@code permitsPerSecond} is not positive, or
+   *        {@code warmupPeriod} is negative
+   */
+  public static RateLimiter create(double permitsPerSecond, long warmupPeriod, TimeUnit unit) {
+    return create(SleepingTicker.SYSTEM_TICKER, permitsPerSecond, warmupPeriod, unit);
+  }
+
+  @VisibleForTesting
+  static RateLimiter create(
+      SleepingTicker ticker, double permitsPerSecond, long warmupPeriod, TimeUnit unit) {
+    checkArgument(warmupPeriod >= 0, "warmupPeriod must not be negative: %s", warmupPeriod);
+    RateLimiter rateLimiter = new WarmingUp(ticker, warmupPeriod, unit);
+    rateLimiter.setRate(permitsPerSecond);
+    return rateLimiter;
+  }
+
+  @VisibleForTesting
+  static RateLimiter createWithCapacity(
+      SleepingTicker ticker, double permitsPerSecond, long maxBurstBuildup, TimeUnit unit) {
+    double maxBurstSeconds = unit.toNanos(maxBurstBuildup) / 1E+9;
+    Bursty rateLimiter = new Bursty(ticker, maxBurstSeconds);
+    rateLimiter.setRate(permitsPerSecond);
+    return rateLimiter;
+  }
+
+  private RateLimiter(SleepingTicker ticker) {
+    this.ticker = checkNotNull(ticker);
+    this.offsetNanos = ticker.read();
+  }
+
+  /**
+   * Updates the stable rate of this {@code RateLimiter}, that is, the
+   * {@code permitsPerSecond} argument provided in the factory method that
+   * constructed the {@code RateLimiter}. Currently throttled threads will <b>not</b>
+   * be awakened as a result of this invocation, thus they do not observe the new rate;
+   * only subsequent requests will.
+   *
+   * <p>Note though that, since each request repays (by waiting, if necessary) the cost
+   * of the <i>previous</i> request, this means that the very next request
+   * after an invocation to {@code setRate} will not be affected by the new rate;
+   * it will pay the cost of the previous request, which is in terms of the previous rate.
+   *
+   * <p>The behavior of the {@code RateLimiter} is not modified in any other way,
+   * e.g. if the {@code RateLimiter} was configured with a warmup period of 20 seconds,
+   * it still has a warmup period of 20 seconds after this method invocation.
+   *
+   * @param permitsPerSecond the new stable rate of this {@code RateLimiter}
+   * @throws IllegalArgumentException if {@code permitsPerSecond} is not positive
+   */
+  public final void setRate(double permitsPerSecond) {
+    checkArgument(permitsPerSecond > 0.0 && !Double.isNaN(permitsPerSecond),
+        "rate must be positive");
+    synchronized (mutex) {
+      resync(readSafeMicros());
+      double stableIntervalMicros = TimeUnit.SECONDS.toMicros(1L) / permitsPerSecond;
+      this.stableIntervalMicros = stableIntervalMicros;
+      doSetRate(permitsPerSecond, stableIntervalMicros);
+    }
+  }
+
+  abstract void doSetRate(double permitsPerSecond, double stableIntervalMicros);
+
+  /**
+   * Returns the stable rate (as {@code permits per seconds}) with which this
+   * {@code RateLimiter} is configured with. The initial value of this is the same as
+   * the {@code permitsPerSecond} argument passed in the factory method that produced
+   * this {@code RateLimiter}, and it is only updated after invocations
+   * to {@linkplain #setRate}.
+   */
+  public final double getRate() {
+    return TimeUnit.SECONDS.toMicros(1L) / stableIntervalMicros;
+  }
+
+  /**
+   * Acquires a permit from this {@code RateLimiter}, blocking until the request can be granted.
+   *
+   * <p>This method is equivalent to {@code acquire(1)}.
+   *
+   * @return time spent sleeping to enforce rate, in seconds; 0.0 if not rate-limited
+   */
+  public double acquire() {
+    return acquire(1);
+  }
+
+  /**
+   * Acquires the given number of permits from this {@code RateLimiter}, blocking until the
+   * request can be granted.
+   *
+   * @param permits the number of permits to acquire
+   * @return time spent sleeping to enforce rate, in seconds; 0.0 if not rate-limited
+   * @throws IllegalArgumentException if {@code permits} is not positive
+   */
+  public double acquire(int permits) {
+    checkPermits(permits);
+    long microsToWait;
+    synchronized (mutex) {
+      microsToWait = reserveNextTicket(permits, readSafeMicros());
+    }
+    ticker.sleepMicrosUninterruptibly(microsToWait);
+    return 1.0 * microsToWait / TimeUnit.SECONDS.toMicros(1L);
+  }
+
+  /**
+   * Acquires a permit from this {@code RateLimiter} if it can be obtained
+   * without exceeding the specified {@code timeout}, or returns {@code false}
+   * immediately (without waiting) if the permit would not have been granted
+   * before the timeout expired.
+   *
+   * <p>This method is equivalent to {@code tryAcquire(1, timeout, unit)}.
+   *
+   * @param timeout the maximum time to wait for the permit
+   * @param unit the time unit of the timeout argument
+   * @return {@code true} if the permit was acquired, {@code false} otherwise
+   */
+  public boolean tryAcquire(long timeout, TimeUnit unit) {
+    return tryAcquire(1, timeout, unit);
+  }
+
+  /**
+   * Acquires permits from this {@link RateLimiter} if it can be acquired immediately without delay.
+   *
+   * <p>This method is equivalent to {@code tryAcquire(permits, 0, anyUnit)}.
+   *
+   * @param permits the number of permits to acquire
+   * @return {@code true} if the permits were acquired, {@code false} otherwise
+   * @throws IllegalArgumentException if {@code permits} is not positive
+   */
+  public boolean tryAcquire(int permits) {
+    return tryAcquire(permits, 0, TimeUnit.MICROSECONDS);
+  }
+
+  /**
+   * Acquires a permit from this {@link RateLimiter} if it can be acquired immediately without
+   * delay.
+   *
+   * <p>This method is equivalent to {@code tryAcquire(1)}.
+   *
+   * @return {@code true} if the permit was acquired, {@code false} otherwise
+   */
+  public boolean tryAcquire() {
+    return tryAcquire(1, 0, TimeUnit.MICROSECONDS);
+  }
+
+  /**
+   * Acquires the given number of permits from this {@code RateLimiter} if it can be obtained
+   * without exceeding the specified {@code timeout}, or returns {@code false}
+   * immediately (without waiting) if the permits would not have been granted
+   * before the timeout expired.
+   *
+   * @param permits the number of permits to acquire
+   * @param timeout the maximum time to wait for the permits
+   * @param unit the time unit of the timeout argument
+   * @return {@code true} if the permits were acquired, {@code false} otherwise
+   * @throws IllegalArgumentException if {@code permits} is not positive
+   */
+  public boolean tryAcquire(int permits, long timeout, TimeUnit unit) {
+    long timeoutMicros = unit.toMicros(timeout);
+    checkPermits(permits);
+    long nowMicros = readSafeMicros();
+    if (!canAcquire(nowMicros, timeoutMicros)) {
+      // nextFreeTicketMicros never decreases, so this cannot improve by taking the lock
+      return false;
+    }
+    long microsToWait;
+    synchronized (mutex) {
+      if (!canAcquire(nowMicros, timeoutMicros)) {
+        return false;
+      }
+      microsToWait = reserveNextTicket(permits, nowMicros);
+    }
+    ticker.sleepMicrosUninterruptibly(microsToWait);
+    return true;
+  }
+
+  private boolean canAcquire(long nowMicros, long timeoutMicros) {
+    return nextFreeTicketMicros - timeoutMicros <= nowMicros;
+  }
+
+  private static void checkPermits(int permits) {
+    checkArgument(permits > 0, "Requested permits must be positive");
+  }
+
+  /**
+   * Reserves next ticket and returns the wait time that the caller must wait for.
+   *
+   * <p>The return value is guaranteed to be non-negative.
+   */
+  private long reserveNextTicket(double requiredPermits, long nowMicros) {
+    resync(nowMicros);
+    long microsToNextFreeTicket = Math.max(0, nextFreeTicketMicros - nowMicros);
+    double storedPermitsToSpend = Math.min(requiredPermits, this.storedPermits);
+    double freshPermits = requiredPermits - storedPermitsToSpend;
+
+    long waitMicros = storedPermitsToWaitTime(this.storedPermits, storedPermitsToSpend)
+        + (long) (freshPermits * stableIntervalMicros);
+
+    this.nextFreeTicketMicros = nextFreeTicketMicros + waitMicros;
+    this.storedPermits -= storedPermitsToSpend;
+    return microsToNextFreeTicket;
+  }
+
+  /**
+   * Translates a specified portion of our currently stored permits which we want to
+   * spend/acquire, into a throttling time. Conceptually, this evaluates the integral
+   * of the underlying function we use, for the range of
+   * [(storedPermits - permitsToTake), storedPermits].
+   *
+   * <p>This always holds: {@code 0 <= permitsToTake <= storedPermits}
+   */
+  abstract long storedPermitsToWaitTime(double storedPermits, double permitsToTake);
+
+  private void resync(long nowMicros) {
+    // if nextFreeTicket is in the past, resync to now
+    if (nowMicros > nextFreeTicketMicros) {
+      storedPermits = Math.min(maxPermits,
+          storedPermits + (nowMicros - nextFreeTicketMicros) / stableIntervalMicros);
+      nextFreeTicketMicros = nowMicros;
+    }
+  }
+
+  private long readSafeMicros() {
+    return TimeUnit.NANOSECONDS.toMicros(ticker.read() - offsetNanos);
+  }
+
+  @Override
+  public String toString() {
+    return String.format("RateLimiter[stableRate=%3.1fqps]", 1000000.0 / stableIntervalMicros);
+  }
+
+  /**
+   * This implements the following function:
+   *
+   *          ^ throttling
+   *          |
+   * 3*stable +                  /
+   * interval |                 /.
+   *  (cold)  |                / .
+   *          |               /  .   <-- "warmup period" is the area of the trapezoid between
+   * 2*stable +              /   .       halfPermits and maxPermits
+   * interval |             /    .
+   *          |            /     .
+   *          |           /      .
+   *   stable +----------/  WARM . }
+   * interval |          .   UP  . } <-- this rectangle (from 0 to maxPermits, and
+   *          |          . PERIOD. }     height == stableInterval) defines the cooldown period,
+   *          |          .       . }     and we want cooldownPeriod == warmupPeriod
+   *          |---------------------------------> storedPermits
+   *              (halfPermits) (maxPermits)
+   *
+   * Before going into the details of this particular function, let's keep in mind the basics:
+   * 1) The state of the RateLimiter (storedPermits) is a vertical line in this figure.
+   * 2) When the RateLimiter is not used, this goes right (up to maxPermits)
+   * 3) When the RateLimiter is used, this goes left (down to zero), since if we have storedPermits,
+   *    we serve from those first
+   * 4) When _unused_, we go right at the same speed (rate)! I.e., if our rate is
+   *    2 permits per second, and 3 unused seconds pass, we will always save 6 permits
+   *    (no matter what our initial position was), up to maxPermits.
+   *    If we invert the rate, we get the "stableInterval" (interval between two requests
+   *    in a perfectly spaced out sequence of requests of the given rate). Thus, if you
+   *    want to see "how much time it will take to go from X storedPermits to X+K storedPermits?",
+   *    the answer is always stableInterval * K. In the same example, for 2 permits per second,
+   *    stableInterval is 500ms. Thus to go from X storedPermits to X+6 storedPermits, we
+   *    require 6 * 500ms = 3 seconds.
+   *
+   *    In short, the time it takes to move to the right (save K permits) is equal to the
+   *    rectangle of width == K and height == stableInterval.
+   * 5) When _used_, the time it takes, as explained in the introductory class note, is
+   *    equal to the integral of our function, between X permits and X-K permits, assuming
+   *    we want to spend K saved permits.
+   *
+   * The slope of the line between halfPermits and maxPermits is set so that the trapezoid
+   * under it has an area of warmupPeriod: going from a full store of permits to half of it
+   * takes exactly the warm-up period, starting at three times the stable interval.
+   */
+  private static class WarmingUp extends RateLimiter {
+    final long warmupPeriodMicros;
+    /**
+     * The slope of the line from the stable interval (when permits == 0), to the cold interval
+     * (when permits == maxPermits)
+     */
+    private double slope;
+    private double halfPermits;
+
+    WarmingUp(SleepingTicker ticker, long warmupPeriod, TimeUnit timeUnit) {
+      super(ticker);
+      this.warmupPeriodMicros = timeUnit.toMicros(warmupPeriod);
+    }
+
+    @Override
+    void doSetRate(double permitsPerSecond, double stableIntervalMicros) {
+      double oldMaxPermits = maxPermits;
+      maxPermits = warmupPeriodMicros / stableIntervalMicros;
+      halfPermits = maxPermits / 2.0;
+      // Stable interval is x, cold is 3x, so on average it's 2x. Double the time -> halve the rate
+      double coldIntervalMicros = stableIntervalMicros * 3.0;
+      slope = (halfPermits == 0.0)
+          ? 0.0
+          : (coldIntervalMicros - stableIntervalMicros) / halfPermits;
+      if (oldMaxPermits == Double.POSITIVE_INFINITY) {
+        // if we don't special-case this, we would get storedPermits == NaN, below
+        storedPermits = 0.0;
+      } else {
+        storedPermits = (oldMaxPermits == 0.0)
+            ? maxPermits // initial state is cold
+            : storedPermits * maxPermits / oldMaxPermits;
+      }
+    }
+
+    @Override
+    long storedPermitsToWaitTime(double storedPermits, double permitsToTake) {
+      double availablePermitsAboveHalf = storedPermits - halfPermits;
+      long micros = 0;
+      // measuring the integral on the right part of the function (the climbing line)
+      if (availablePermitsAboveHalf > 0.0) {
+        double permitsAboveHalfToTake = Math.min(availablePermitsAboveHalf, permitsToTake);
+        micros = (long) (permitsAboveHalfToTake * (permitsToTime(availablePermitsAboveHalf)
+            + permitsToTime(availablePermitsAboveHalf - permitsAboveHalfToTake)) / 2.0);
+        permitsToTake -= permitsAboveHalfToTake;
+      }
+      // measuring the integral on the left part of the function (the horizontal line)
+      micros += (stableIntervalMicros * permitsToTake);
+      return micros;
+    }
+
+    private double permitsToTime(double permits) {
+      return stableIntervalMicros + permits * slope;
+    }
+  }
+
+  /**
+   * This implements a trivial function, where storedPermits are translated to
+   * zero throttling - thus, a client gets an infinite speedup for permits acquired out
+   * of the storedPermits pool. This is also used for the special case of the "metronome",
+   * where the width of the function is also zero; maxStoredPermits is zero, thus
+   * storedPermits and permitsToTake are always zero as well. Such a RateLimiter can
+   * not save permits when unused, thus all permits it serves are fresh, using the
+   * designated rate.
+   */
+  private static class Bursty extends RateLimiter {
+    /** The work (permits) of how many seconds can be saved up if this RateLimiter is unused? */
+    final double maxBurstSeconds;
+
+    Bursty(SleepingTicker ticker, double maxBurstSeconds) {
+      super(ticker);
+      this.maxBurstSeconds = maxBurstSeconds;
+    }
+
+    @Override
+    void doSetRate(double permitsPerSecond, double stableIntervalMicros) {
+      double oldMaxPermits = this.maxPermits;
+      maxPermits = maxBurstSeconds * permitsPerSecond;
+      storedPermits = (oldMaxPermits == 0.0)
+          ? 0.0 // initial state
+          : storedPermits * maxPermits / oldMaxPermits;
+    }
+
+    @Override
+    long storedPermitsToWaitTime(double storedPermits, double permitsToTake) {
+      return 0L;
+    }
+  }
+
+  /**
+   * A {@link Ticker} that can also sleep; the time source and sleeping mechanism of a
+   * {@code RateLimiter}, replaced by a fake in tests.
+   */
+  @VisibleForTesting
+  abstract static class SleepingTicker extends Ticker {
+    abstract void sleepMicrosUninterruptibly(long micros);
+
+    static final SleepingTicker SYSTEM_TICKER = new SleepingTicker() {
+      @Override
+      public long read() {
+        return systemTicker().read();
+      }
+
+      @Override
+      public void sleepMicrosUninterruptibly(long micros) {
+        if (micros > 0) {
+          Uninterruptibles.sleepUninterruptibly(micros, TimeUnit.MICROSECONDS);
+        }
+      }
+    };
+  }
+}
@@ -0,0 +1,606 @@
+/*
+ * Copyright (C) 2012 The Guava Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.common.util.concurrent;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+
+import com.google.common.annotations.Beta;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Objects;
+import com.google.common.base.Stopwatch;
+import com.google.common.base.Ticker;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableMultimap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.ImmutableSetMultimap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Multimap;
+import com.google.common.collect.Sets;
+import com.google.common.util.concurrent.Service.State;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.annotation.concurrent.GuardedBy;
+
+/**
+ * A manager for monitoring and controlling a set of {@link Service services}. Services are started
+ * and stopped in parallel: {@link #startAsync} calls {@link Service#start} on every service that
+ * is ready to start without waiting for any of them, so a set of independent services takes about
+ * as long to start as the slowest of them, rather than the sum.
+ *
+ * <p>A service may be declared to depend on others. It is then started only once all of its
+ * dependencies are {@linkplain State#RUNNING running}, and is stopped before any of them are. If a
+ * dependency fails to start, its dependents are never started.
+ *
+ * <p>Typical use: <pre>   {@code
+ *
+ *   ServiceManager manager = new ServiceManager(services, dependencies);
+ *   manager.addListener(listener, MoreExecutors.sameThreadExecutor());
+ *   manager.startAsync().awaitHealthy();
+ *   logger.info("Startup times: " + manager.startupTimes());
+ *   ...
+ *   manager.stopAsync().awaitStopped();}</pre>
+ *
+ * <p>The {@code Service} interface offers no way to be told about a failure after a service has
+ * started, so {@link #isHealthy} and {@link #servicesByState} query each service's current state,
+ * while listeners only hear about failures during startup and shutdown.
+ *
+ * @since 12.0
+ */
+@Beta
+public final class ServiceManager {
+  private static final Logger logger = Logger.getLogger(ServiceManager.class.getName());
+
+  private final ImmutableSet<Service> services;
+  /** Maps each service to the services it depends on. */
+  private final ImmutableSetMultimap<Service, Service> dependencies;
+  /** Maps each service to the services that depend on it. */
+  private final ImmutableSetMultimap<Service, Service> dependents;
+  private final Ticker ticker;
+
+  private final Monitor monitor = new Monitor();
+
+  @GuardedBy("monitor")
+  private boolean startRequested;
+
+  @GuardedBy("monitor")
+  private boolean stopRequested;
+
+  /** Services on which {@code start} has been called, with the time they took to finish. */
+  @GuardedBy("monitor")
+  private final Map<Service, Stopwatch> startupTimers = Maps.newLinkedHashMap();
+
+  /** Services that reached {@link State#RUNNING}. */
+  @GuardedBy("monitor")
+  private final Set<Service> started = Sets.newHashSet();
+
+  /** Services that failed to start. */
+  @GuardedBy("monitor")
+  private final Set<Service> failedToStart = Sets.newHashSet();
+
+  /** Services on which {@code stop} has been called. */
+  @GuardedBy("monitor")
+  private final Set<Service> stopping = Sets.newHashSet();
+
+  /** Services that have finished stopping, successfully or not. */
+  @GuardedBy("monitor")
+  private final Set<Service> stopped = Sets.newHashSet();
+
+  @GuardedBy("monitor")
+  private final List<ListenerExecutorPair> listeners = Lists.newArrayList();
+
+  private final Monitor.Guard startupFinished = new Monitor.Guard(monitor) {
+    @Override public boolean isSatisfied() {
+      return started.size() == services.size() || !failedToStart.isEmpty() || stopRequested;
+    }
+  };
+
+  private final Monitor.Guard allStopped = new Monitor.Guard(monitor) {
+    @Override public boolean isSatisfied() {
+      return stopped.size() == services.size();
+    }
+  };
+
+  /**
+   * Constructs a new instance for managing the given independent services.
+   *
+   * @param services The services to manage
+   * @throws IllegalArgumentException if not all services are {@link State#NEW new}
+   */
+  public ServiceManager(Iterable<? extends Service> services) {
+    this(services, ImmutableSetMultimap.<Service, Service>of());
+  }
+
+  /**
+   * Constructs a new instance for managing the given services, where each key of
+   * {@code dependencies} depends on all of its values.
+   *
+   * @param services The services to manage
+   * @param dependencies For each service, the services that must be running before it is started
+   * @throws IllegalArgumentException if not all services are {@link State#NEW new}, if a
+   *     dependency mentions a service that is not in {@code services}, or if the dependencies
+   *     contain a cycle
+   */
+  public ServiceManager(Iterable<? extends Service> services,
+      Multimap<? extends Service, ? extends Service> dependencies) {
+    this(services, dependencies, Ticker.systemTicker());
+  }
+
+  @VisibleForTesting
+  ServiceManager(Iterable<? extends Service> services,
+      Multimap<? extends Service, ? extends Service> dependencies, Ticker ticker) {
+    this.services = ImmutableSet.copyOf(services);
+    this.dependencies = ImmutableSetMultimap.copyOf(dependencies);
+    this.dependents = this.dependencies.inverse();
+    this.ticker = checkNotNull(ticker);
+    for (Service service : this.services) {
+      checkArgument(service.state() == State.NEW, "Service %s is %s, not NEW",
+          service, service.state());
+    }
+    for (Map.Entry<Service, Service> entry : this.dependencies.entries()) {
+      checkArgument(this.services.contains(entry.getKey()),
+          "Unmanaged service %s has dependencies", entry.getKey());
+      checkArgument(this.services.contains(entry.getValue()),
+          "Unmanaged service %s is a dependency", entry.getValue());
+    }
+    checkAcyclic();
+  }
+
+  private void checkAcyclic() {
+    // Kahn's algorithm: repeatedly remove services with no remaining dependencies
+    Map<Service, Integer> remaining = Maps.newHashMap();
+    List<Service> ready = Lists.newArrayList();
+    for (Service service : services) {
+      int count = dependencies.get(service).size();
+      remaining.put(service, count);
+      if (count == 0) {
+        ready.add(service);
+      }
+    }
+    int visited = 0;
+    while (!ready.isEmpty()) {
+      Service service = ready.remove(ready.size() - 1);
+      visited++;
+      for (Service dependent : dependents.get(service)) {
+        int count = remaining.get(dependent) - 1;
+        remaining.put(dependent, count);
+        if (count == 0) {
+          ready.add(dependent);
+        }
+      }
+    }
+    checkArgument(visited == services.size(), "Service dependencies contain a cycle");
+  }
+
+  /**
+   * Registers a {@link Listener} to be {@linkplain Executor#execute executed} on the given
+   * executor. The listener will not have previous state changes replayed, so it is suggested that
+   * listeners are added before any of the managed services are {@linkplain Service#start started}.
+   *
+   * @param listener the listener to run when the manager changes state
+   * @param executor the executor in which the listener callback methods will be run
+   */
+  public void addListener(Listener listener, Executor executor) {
+    checkNotNull(listener, "listener");
+    checkNotNull(executor, "executor");
+    monitor.enter();
+    try {
+      listeners.add(new ListenerExecutorPair(listener, executor));
+    } finally {
+      monitor.leave();
+    }
+  }
+
+  /**
+   * Initiates service {@linkplain Service#start startup} on all the services being managed. A
+   * service whose dependencies are not yet running is started as soon as they are. It is only
+   * valid to call this method once.
+   *
+   * @return this
+   * @throws IllegalStateException if this method has already been called
+   */
+  public ServiceManager startAsync() {
+    monitor.enter();
+    try {
+      checkState(!startRequested, "Services already started");
+      startRequested = true;
+    } finally {
+      monitor.leave();
+    }
+    for (Service service : services) {
+      if (dependencies.get(service).isEmpty()) {
+        startService(service);
+      }
+    }
+    return this;
+  }
+
+  private void startService(final Service service) {
+    monitor.enter();
+    try {
+      if (stopRequested || startupTimers.containsKey(service)) {
+        return;
+      }
+      startupTimers.put(service, new Stopwatch(ticker).start());
+    } finally {
+      monitor.leave();
+    }
+    final ListenableFuture<State> future = service.start();
+    future.addListener(new Runnable() {
+      @Override public void run() {
+        startupFinished(service, future);
+      }
+    }, MoreExecutors.directExecutor());
+  }
+
+  private void startupFinished(Service service, ListenableFuture<State> future) {
+    Throwable failure = null;
+    State result = null;
+    try {
+      result = Uninterruptibles.getUninterruptibly(future);
+    } catch (ExecutionException e) {
+      failure = e.getCause();
+    }
+
+    List<Service> toStart = Lists.newArrayList();
+    List<Runnable> events = Lists.newArrayList();
+    monitor.enter();
+    try {
+      startupTimers.get(service).stop();
+      if (result == State.RUNNING) {
+        started.add(service);
+        for (Service dependent : dependents.get(service)) {
+          if (started.containsAll(dependencies.get(dependent))) {
+            toStart.add(dependent);
+          }
+        }
+        if (started.size() == services.size()) {
+          addEvent(events, HEALTHY, null);
+        }
+      } else if (failure != null) {
+        failedToStart.add(service);
+        addEvent(events, FAILURE, service);
+      }
+    } finally {
+      monitor.leave();
+    }
+
+    if (failure != null) {
+      logger.log(Level.SEVERE, "Service " + service + " failed to start", failure);
+    }
+    runEvents(events);
+    for (Service dependent : toStart) {
+      startService(dependent);
+    }
+  }
+
+  /**
+   * Initiates service {@linkplain Service#stop shutdown} on all the services being managed. A
+   * service is stopped once every service that depends on it has finished stopping. Services that
+   * have not been started are {@linkplain State#TERMINATED terminated} without being started.
+   *
+   * @return this
+   */
+  public ServiceManager stopAsync() {
+    monitor.enter();
+    try {
+      if (stopRequested) {
+        return this;
+      }
+      stopRequested = true;
+    } finally {
+      monitor.leave();
+    }
+    for (Service service : services) {
+      if (dependents.get(service).isEmpty()) {
+        stopService(service);
+      }
+    }
+    return this;
+  }
+
+  private void stopService(final Service service) {
+    monitor.enter();
+    try {
+      if (!stopping.add(service)) {
+        return;
+      }
+    } finally {
+      monitor.leave();
+    }
+    final ListenableFuture<State> future = service.stop();
+    future.addListener(new Runnable() {
+      @Override public void run() {
+        stopFinished(service, future);
+      }
+    }, MoreExecutors.directExecutor());
+  }
+
+  private void stopFinished(Service service, ListenableFuture<State> future) {
+    Throwable failure = null;
+    try {
+      Uninterruptibles.getUninterruptibly(future);
+    } catch (ExecutionException e) {
+      failure = e.getCause();
+    }
+
+    List<Service> toStop = Lists.newArrayList();
+    List<Runnable> events = Lists.newArrayList();
+    boolean newFailure;
+    monitor.enter();
+    try {
+      stopped.add(service);
+      for (Service dependency : dependencies.get(service)) {
+        if (stopped.containsAll(dependents.get(dependency))) {
+          toStop.add(dependency);
+        }
+      }
+      // a failure to start has already been reported
+      newFailure = failure != null && !failedToStart.contains(service);
+      if (newFailure) {
+        addEvent(events, FAILURE, service);
+      }
+      if (stopped.size() == services.size()) {
+        addEvent(events, STOPPED, null);
+      }
+    } finally {
+      monitor.leave();
+    }
+
+    if (newFailure) {
+      logger.log(Level.SEVERE, "Service " + service + " failed", failure);
+    }
+    runEvents(events);
+    for (Service dependency : toStop) {
+      stopService(dependency);
+    }
+  }
+
+  /**
+   * Waits for the {@link ServiceManager} to become {@linkplain #isHealthy() healthy}. The manager
+   * will become healthy after all the component services have reached the {@linkplain
+   * State#RUNNING running} state.
+   *
+   * @throws IllegalStateException if a service fails to start, or if shutdown is requested before
+   *     all services have started
+   */
+  public void awaitHealthy() {
+    monitor.enterWhenUninterruptibly(startupFinished);
+    try {
+      checkHealthy();
+    } finally {
+      monitor.leave();
+    }
+  }
+
+  /**
+   * Waits for the {@link ServiceManager} to become {@linkplain #isHealthy() healthy} for no more
+   * than the given time. The manager will become healthy after all the component services have
+   * reached the {@linkplain State#RUNNING running} state.
+   *
+   * @param timeout the maximum time to wait
+   * @param unit the time unit of the timeout argument
+   * @throws TimeoutException if not all of the services have finished starting within the deadline
+   * @throws IllegalStateException if a service fails to start, or if shutdown is requested before
+   *     all services have started
+   */
+  public void awaitHealthy(long timeout, TimeUnit unit) throws TimeoutException {
+    if (!monitor.enterWhenUninterruptibly(startupFinished, timeout, unit)) {
+      throw new TimeoutException("Timeout waiting for the services to become healthy.");
+    }
+    try {
+      checkHealthy();
+    } finally {
+      monitor.leave();
+    }
+  }
+
+  @GuardedBy("monitor")
+  private void checkHealthy() {
+    if (started.size() != services.size()) {
+      throw new IllegalStateException("Expected to be healthy after starting, but "
+          + (failedToStart.isEmpty()
+              ? "shutdown was requested first."
+              : "these services failed: " + failedToStart));
+    }
+  }
+
+  /**
+   * Waits for all the services to reach a terminal state. After this method returns all services
+   * will either be {@link State#TERMINATED terminated} or {@link State#FAILED failed}.
+   */
+  public void awaitStopped() {
+    monitor.enterWhenUninterruptibly(allStopped);
+    monitor.leave();
+  }
+
+  /**
+   * Waits for all the services to reach a terminal state for no more than the given time. After
+   * this method returns all services will either be {@link State#TERMINATED terminated} or {@link
+   * State#FAILED failed}.
+   *
+   * @param timeout the maximum time to wait
+   * @param unit the time unit of the timeout argument
+   * @throws TimeoutException if not all of the services have stopped within the deadline
+   */
+  public void awaitStopped(long timeout, TimeUnit unit) throws TimeoutException {
+    if (!monitor.enterWhenUninterruptibly(allStopped, timeout, unit)) {
+      throw new TimeoutException("Timeout waiting for the services to stop.");
+    }
+    monitor.leave();
+  }
+
+  /**
+   * Returns true if all services are currently in the {@linkplain State#RUNNING running} state.
+   *
+   * <p>Users who want more detailed information should use the {@link #servicesByState} method to
+   * get detailed information about which services are not running.
+   */
+  public boolean isHealthy() {
+    for (Service service : services) {
+      if (!service.isRunning()) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Provides a snapshot of the current state of all the services under management.
+   *
+   * <p>N.B. This snapshot it not guaranteed to be consistent, i.e. the set of states returned may
+   * not correspond to any particular point in time view of the services.
+   */
+  public ImmutableMultimap<State, Service> servicesByState() {
+    ImmutableMultimap.Builder<State, Service> builder = ImmutableMultimap.builder();
+    for (Service service : services) {
+      builder.put(service.state(), service);
+    }
+    return builder.build();
+  }
+
+  /**
+   * Returns the service load times. This value will only return startup times for services that
+   * have finished starting, successfully or not, in the order in which they were started.
+   *
+   * @return Map of services and their corresponding startup time in millis, the map entries will be
+   *     ordered by startup time.
+   */
+  public ImmutableMap<Service, Long> startupTimes() {
+    ImmutableMap.Builder<Service, Long> builder = ImmutableMap.builder();
+    monitor.enter();
+    try {
+      for (Map.Entry<Service, Stopwatch> entry : startupTimers.entrySet()) {
+        Stopwatch stopwatch = entry.getValue();
+        if (!stopwatch.isRunning()) {
+          builder.put(entry.getKey(), stopwatch.elapsedMillis());
+        }
+      }
+    } finally {
+      monitor.leave();
+    }
+    return builder.build();
+  }
+
+  @Override public String toString() {
+    return Objects.toStringHelper(ServiceManager.class)
+        .add("services", services)
+        .toString();
+  }
+
+  @GuardedBy("monitor")
+  private void addEvent(List<Runnable> events, final Event event, final Service service) {
+    for (final ListenerExecutorPair pair : listeners) {
+      events.add(new Runnable() {
+        @Override public void run() {
+          try {
+            pair.executor.execute(new Runnable() {
+              @Override public void run() {
+                event.call(pair.listener, service);
+              }
+            });
+          } catch (RuntimeException e) {
+            logger.log(Level.SEVERE, "Exception while executing listener " + pair.listener
+                + " with executor " + pair.executor, e);
+          }
+        }
+      });
+    }
+  }
+
+  /** Runs the queued listener dispatches; never called while holding the monitor. */
+  private static void runEvents(List<Runnable> events) {
+    for (Runnable event : events) {
+      event.run();
+    }
+  }
+
+  private abstract static class Event {
+    abstract void call(Listener listener, Service service);
+  }
+
+  private static final Event HEALTHY = new Event() {
+    @Override void call(Listener listener, Service service) {
+      listener.healthy();
+    }
+  };
+
+  private static final Event STOPPED = new Event() {
+    @Override void call(Listener listener, Service service) {
+      listener.stopped();
+    }
+  };
+
+  private static final Event FAILURE = new Event() {
+    @Override void call(Listener listener, Service service) {
+      listener.failure(service);
+    }
+  };
+
+  private static final class ListenerExecutorPair {
+    final Listener listener;
+    final Executor executor;
+
+    ListenerExecutorPair(Listener listener, Executor executor) {
+      this.listener = listener;
+      this.executor = executor;
+    }
+  }
+
+  /**
+   * A listener for the aggregate state changes of the services that are under management. Users
+   * that need to listen to more fine-grained events (such as when each particular {@link Service}
+   * starts, or terminates), should inspect the futures returned by the services themselves.
+   *
+   * @since 12.0
+   */
+  @Beta
+  public interface Listener {
+    /**
+     * Called when the service initially becomes healthy.
+     *
+     * <p>This will be called at most once after all the services have entered the {@linkplain
+     * State#RUNNING running} state. If any services fail during start up then this method will
+     * not be called.
+     */
+    void healthy();
+
+    /**
+     * Called when all of the services have reached a terminal state, either {@linkplain
+     * State#TERMINATED terminated} or {@linkplain State#FAILED failed}.
+     */
+    void stopped();
+
+    /**
+     * Called when a component service has failed to start or stop.
+     *
+     * @param service The service that failed.
+     */
+    void failure(Service service);
+  }
+}
@@ -0,0 +1,291 @@
+/*
+ * Copyright (C) 2012 The Guava Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.common.util.concurrent;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import com.google.common.annotations.Beta;
+import com.google.common.base.Function;
+import com.google.common.collect.Maps;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+
+/**
+ * A map of {@code long} counters, intended for keys that are updated from many threads at once.
+ * Like {@link AtomicLongMap}, a key that has not been updated has an implicit value of zero, but
+ * where {@code AtomicLongMap} keeps a single {@code AtomicLong} per key, this class keeps a set of
+ * padded cells per key and spreads contended updates across them. Under heavy contention on a few
+ * hot keys, updates therefore rarely need to retry.
+ *
+ * <p>The price is that values are only summed when they are read: there is no equivalent of
+ * {@code addAndGet}, and {@link #get}, {@link #sum} and {@link #asMap} are not atomic snapshots
+ * while updates are in progress. Use {@code AtomicLongMap} when callers need the updated value,
+ * or when contention is low, since every key of this map takes more memory.
+ *
+ * <p>Instances of this class may be used by multiple threads concurrently. {@link #remove},
+ * {@link #removeAllZeros} and {@link #clear} never lose concurrent updates: an update that races
+ * with the removal of its key is either included in the value removed, or applied to the key
+ * afterwards. An update never takes part of the value that a removal returns.
+ *
+ * <p><b>Warning:</b> Entries whose values are zero are not automatically removed from the map.
+ * Instead they must be removed manually with {@link #removeAllZeros}.
+ *
+ * @since 12.0
+ */
+@Beta
+public final class StripedAtomicLongMap<K> {
+  private final ConcurrentHashMap<K, Counter> map;
+
+  private StripedAtomicLongMap(ConcurrentHashMap<K, Counter> map) {
+    this.map = checkNotNull(map);
+  }
+
+  /**
+   * Creates a {@code StripedAtomicLongMap}.
+   */
+  public static <K> StripedAtomicLongMap<K> create() {
+    return new StripedAtomicLongMap<K>(new ConcurrentHashMap<K, Counter>());
+  }
+
+  /**
+   * Creates a {@code StripedAtomicLongMap} with the same mappings as the specified {@code Map}.
+   */
+  public static <K> StripedAtomicLongMap<K> create(Map<? extends K, ? extends Long> m) {
+    StripedAtomicLongMap<K> result = create();
+    for (Map.Entry<? extends K, ? extends Long> entry : m.entrySet()) {
+      result.add(entry.getKey(), entry.getValue());
+    }
+    return result;
+  }
+
+  /**
+   * Returns the value associated with {@code key}, or zero if there is no value associated with
+   * {@code key}.
+   *
+   * <p>This method is not atomic: the value may or may not include concurrent updates.
+   */
+  public long get(K key) {
+    Counter counter = map.get(key);
+    return counter == null ? 0L : counter.sum();
+  }
+
+  /**
+   * Increments by one the value currently associated with {@code key}.
+   */
+  public void increment(K key) {
+    add(key, 1L);
+  }
+
+  /**
+   * Decrements by one the value currently associated with {@code key}.
+   */
+  public void decrement(K key) {
+    add(key, -1L);
+  }
+
+  /**
+   * Adds {@code delta} to the value currently associated with {@code key}.
+   */
+  public void add(K key, long delta) {
+    for (;;) {
+      Counter counter = map.get(key);
+      if (counter == null) {
+        Counter newCounter = new Counter();
+        counter = map.putIfAbsent(key, newCounter);
+        if (counter == null) {
+          counter = newCounter;
+        }
+      }
+      if (counter.isRetired()) {
+        // being removed; help, then retry with a fresh counter
+        map.remove(key, counter);
+        continue;
+      }
+
+      counter.add(delta);
+      if (counter.isRetired()) {
+        // the removal may have drained the counter before our update landed
+        moveLeftover(key, counter);
+      }
+      return;
+    }
+  }
+
+  /**
+   * Waits until the thread that retired {@code counter} has drained it, then moves the updates
+   * that landed afterwards back into the map. Waiting ensures that only the retiring thread takes
+   * the value the counter held when it was retired.
+   */
+  private void moveLeftover(K key, Counter counter) {
+    while (counter.state != DRAINED) {
+      Thread.yield();
+    }
+    long leftover = counter.sumThenReset();
+    if (leftover != 0L) {
+      add(key, leftover);
+    }
+  }
+
+  /**
+   * Retires {@code counter}, removes it from the map, and drains it, returning the value it held.
+   * If another thread retired the counter first, only helps remove it and returns zero, since
+   * that thread takes the value.
+   */
+  private long retire(K key, Counter counter) {
+    boolean retired = counter.retire();
+    map.remove(key, counter);
+    if (!retired) {
+      return 0L;
+    }
+    try {
+      return counter.sumThenReset();
+    } finally {
+      counter.state = DRAINED;
+    }
+  }
+
+  /**
+   * Removes and returns the value associated with {@code key}. If {@code key} is not
+   * in the map, this method has no effect and returns zero.
+   */
+  public long remove(K key) {
+    Counter counter = map.get(key);
+    return (counter == null) ? 0L : retire(key, counter);
+  }
+
+  /**
+   * Removes all mappings from this map whose values are zero.
+   *
+   * <p>This method is not atomic: the map may be visible in intermediate states, where some
+   * of the zero values have been removed and others have not.
+   */
+  public void removeAllZeros() {
+    for (Map.Entry<K, Counter> entry : map.entrySet()) {
+      Counter counter = entry.getValue();
+      if (counter.sum() == 0L) {
+        // put back what arrived since the sum was read
+        long value = retire(entry.getKey(), counter);
+        if (value != 0L) {
+          add(entry.getKey(), value);
+        }
+      }
+    }
+  }
+
+  /**
+   * Returns the sum of all values in this map.
+   *
+   * <p>This method is not atomic: the sum may or may not include other concurrent operations.
+   */
+  public long sum() {
+    long sum = 0L;
+    for (Counter counter : map.values()) {
+      sum = sum + counter.sum();
+    }
+    return sum;
+  }
+
+  private transient Map<K, Long> asMap;
+
+  /**
+   * Returns a live, read-only view of the map backing this {@code StripedAtomicLongMap}.
+   */
+  public Map<K, Long> asMap() {
+    Map<K, Long> result = asMap;
+    return (result == null) ? asMap = createAsMap() : result;
+  }
+
+  private Map<K, Long> createAsMap() {
+    return Collections.unmodifiableMap(
+        Maps.transformValues(map, new Function<Counter, Long>() {
+          @Override
+          public Long apply(Counter counter) {
+            return counter.sum();
+          }
+        }));
+  }
+
+  /**
+   * Returns true if this map contains a mapping for the specified key.
+   */
+  public boolean containsKey(Object key) {
+    return map.containsKey(key);
+  }
+
+  /**
+   * Returns the number of key-value mappings in this map. If the map contains more than
+   * {@code Integer.MAX_VALUE} elements, returns {@code Integer.MAX_VALUE}.
+   */
+  public int size() {
+    return map.size();
+  }
+
+  /**
+   * Returns {@code true} if this map contains no key-value mappings.
+   */
+  public boolean isEmpty() {
+    return map.isEmpty();
+  }
+
+  /**
+   * Removes all of the mappings from this map.
+   *
+   * <p>This method is not atomic: the map may not be empty after returning if there were concurrent
+   * writes.
+   */
+  public void clear() {
+    for (Map.Entry<K, Counter> entry : map.entrySet()) {
+      retire(entry.getKey(), entry.getValue());
+    }
+  }
+
+  @Override
+  public String toString() {
+    return asMap().toString();
+  }
+
+  private static final int LIVE = 0;
+  private static final int RETIRED = 1;
+  private static final int DRAINED = 2;
+
+  /**
+   * The cells for one key. A single thread retires a counter before removing it from the map,
+   * after which it is never updated through the map again, and marks it drained once it has
+   * summed and reset the cells. Writers check the state after updating, and if the counter is
+   * retired, wait until it is drained and move whatever is left to a new counter. Since the state
+   * changes before the retiring thread sums the cells, any update that the sum might miss is moved
+   * by its writer, and since writers wait, none of them takes part of the retiring thread's sum.
+   */
+  private static final class Counter extends LongAdder {
+    private static final AtomicIntegerFieldUpdater<Counter> stateUpdater =
+        AtomicIntegerFieldUpdater.newUpdater(Counter.class, "state");
+
+    volatile int state = LIVE;
+
+    boolean isRetired() {
+      return state != LIVE;
+    }
+
+    /** Retires this counter, and returns whether this call did, rather than an earlier one. */
+    boolean retire() {
+      return stateUpdater.compareAndSet(this, LIVE, RETIRED);
+    }
+  }
+}
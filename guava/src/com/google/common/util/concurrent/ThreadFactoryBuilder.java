@@ -29,7 +29,8 @@ import java.util.concurrent.atomic.AtomicLong;
  * <ul>
  * <li> whether threads should be marked as {@linkplain Thread#setDaemon daemon}
  * threads
- * <li> a {@linkplain ThreadFactoryBuilder#setNameFormat naming format}
+ * <li> a {@linkplain ThreadFactoryBuilder#setNameFormat naming format},
+ * which may include a per-pool number
  * <li> a {@linkplain Thread#setPriority thread priority}
  * <li> an {@linkplain Thread#setUncaughtExceptionHandler uncaught exception
  * handler}
@@ -43,6 +44,8 @@ import java.util.concurrent.atomic.AtomicLong;
  * @since 4.0
  */
 public final class ThreadFactoryBuilder {
+  private static final AtomicLong poolCount = new AtomicLong(0);
+
   private String nameFormat = null;
   private Boolean daemon = null;
   private Integer priority = null;
@@ -58,14 +61,20 @@ public final class ThreadFactoryBuilder {
    * Sets the naming format to use when naming threads ({@link Thread#setName})
    * which are created with this ThreadFactory.
    *
+   * <p>Formats may also refer to a second integer, the pool number, which is
+   * unique to each built instance of the ThreadFactory across the whole
+   * process, so that threads of different pools built from the same format
+   * can be told apart: for example {@code "worker-pool-%2$d-thread-%1$d"}.
+   *
    * @param nameFormat a {@link String#format(String, Object...)}-compatible
    *     format String, to which a unique integer (0, 1, etc.) will be supplied
-   *     as the single parameter. This integer will be unique to the built
-   *     instance of the ThreadFactory and will be assigned sequentially.
+   *     as the first parameter. This integer will be unique to the built
+   *     instance of the ThreadFactory and will be assigned sequentially. The
+   *     pool number (0, 1, etc.) is supplied as the second parameter.
    * @return this for the builder pattern
    */
   public ThreadFactoryBuilder setNameFormat(String nameFormat) {
-    String.format(nameFormat, 0); // fail fast if the format is bad or null
+    String.format(nameFormat, 0, 0); // fail fast if the format is bad or null
     this.nameFormat = nameFormat;
     return this;
   }
@@ -154,11 +163,13 @@ public final class ThreadFactoryBuilder {
         ? builder.backingThreadFactory
         : Executors.defaultThreadFactory();
     final AtomicLong count = (nameFormat != null) ? new AtomicLong(0) : null;
+    final long pool = (nameFormat != null) ? poolCount.getAndIncrement() : -1;
     return new ThreadFactory() {
       @Override public Thread newThread(Runnable runnable) {
         Thread thread = backingThreadFactory.newThread(runnable);
         if (nameFormat != null) {
-          thread.setName(String.format(nameFormat, count.getAndIncrement()));
+          thread.setName(
+              String.format(nameFormat, count.getAndIncrement(), pool));
         }
         if (daemon != null) {
           thread.setDaemon(daemon);
@@ -0,0 +1,571 @@
+/*
+ * Copyright (C) 2012 The Guava Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.common.util.concurrent;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import com.google.common.annotations.Beta;
+import com.google.common.base.Objects;
+import com.google.common.collect.ImmutableList;
+
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A {@link ListeningExecutorService} with a fixed number of worker threads, each of which has its
+ * own task deque and steals from the others when it runs out of work.
+ *
+ * <p>A {@link java.util.concurrent.ThreadPoolExecutor} hands every task through a single blocking
+ * queue, whose lock every submitter and every worker contends for; at high task rates that lock
+ * dominates. Here, tasks submitted from outside the pool go through a lock-free queue, and, if the
+ * executor {@linkplain #create(int, ThreadFactory, boolean) runs child tasks locally}, tasks
+ * submitted by a task already running in the pool are pushed onto the submitting worker's own
+ * deque. The owner pushes and pops at one end of its deque without contention, in last-in,
+ * first-out order for cache locality, and idle workers steal the oldest tasks from the other end.
+ * This suits divide-and-conquer work and fan-outs of many small tasks.
+ *
+ * <p>The executor keeps {@linkplain #stats() statistics} on queue wait time, run time, steals and
+ * rejections, cheaply enough to be left on in production.
+ *
+ * <p>Workers are started when the executor is created, and run until it is shut down. Exceptions
+ * thrown by tasks passed to {@link #execute} are passed to the worker thread's uncaught exception
+ * handler, and the worker carries on with its next task.
+ *
+ * @since 12.0
+ */
+@Beta
+public final class WorkStealingExecutorService extends AbstractListeningExecutorService {
+  private static final int RUNNING = 0;
+  private static final int SHUTDOWN = 1;
+  private static final int STOP = 2;
+
+  private final Worker[] workers;
+  private final boolean runChildTasksLocally;
+  private final Queue<Task> submissions = new ConcurrentLinkedQueue<Task>();
+  private final Queue<Worker> idleWorkers = new ConcurrentLinkedQueue<Worker>();
+  private final AtomicInteger state = new AtomicInteger(RUNNING);
+  private final CountDownLatch termination;
+  /** The worker running on each of this executor's threads; null on any other thread. */
+  private final ThreadLocal<Worker> currentWorker = new ThreadLocal<Worker>();
+
+  private final LongAdder completedTasks = new LongAdder();
+  private final LongAdder queueWaitNanos = new LongAdder();
+  private final LongAdder runNanos = new LongAdder();
+  private final LongAdder steals = new LongAdder();
+  private final LongAdder rejections = new LongAdder();
+
+  /**
+   * Creates an executor with {@code parallelism} worker threads, which runs child tasks locally.
+   * Its threads are named {@code "work-stealing-pool-N-thread-M"}, and are not daemons.
+   *
+   * @throws IllegalArgumentException if {@code parallelism} is not positive
+   */
+  public static WorkStealingExecutorService create(int parallelism) {
+    return create(parallelism,
+        new ThreadFactoryBuilder().setNameFormat("work-stealing-pool-%2$d-thread-%1$d").build(),
+        true);
+  }
+
+  /**
+   * Creates an executor with {@code parallelism} worker threads created by {@code threadFactory}.
+   *
+   * @param parallelism the number of worker threads
+   * @param threadFactory the factory for the worker threads
+   * @param runChildTasksLocally whether a task submitted from one of this executor's own workers
+   *     should be pushed onto that worker's deque, where it is likely to run on the same thread
+   *     unless another worker steals it, rather than onto the shared submission queue
+   * @throws IllegalArgumentException if {@code parallelism} is not positive
+   */
+  public static WorkStealingExecutorService create(
+      int parallelism, ThreadFactory threadFactory, boolean runChildTasksLocally) {
+    checkArgument(parallelism > 0, "parallelism must be positive: %s", parallelism);
+    checkNotNull(threadFactory);
+    WorkStealingExecutorService executor =
+        new WorkStealingExecutorService(parallelism, threadFactory, runChildTasksLocally);
+    for (Worker worker : executor.workers) {
+      worker.thread.start();
+    }
+    return executor;
+  }
+
+  private WorkStealingExecutorService(
+      int parallelism, ThreadFactory threadFactory, boolean runChildTasksLocally) {
+    this.runChildTasksLocally = runChildTasksLocally;
+    this.termination = new CountDownLatch(parallelism);
+    this.workers = new Worker[parallelism];
+    for (int i = 0; i < parallelism; i++) {
+      workers[i] = new Worker(i, threadFactory);
+    }
+  }
+
+  // Submission
+
+  @Override public void execute(Runnable command) {
+    checkNotNull(command);
+    if (state.get() != RUNNING) {
+      reject();
+    }
+    Task task = new Task(command, System.nanoTime());
+    Worker current = runChildTasksLocally ? currentWorker.get() : null;
+    if (current != null) {
+      current.queue.push(task);
+      // shutdownNow sets STOP before draining the deques, and this worker exits without running
+      // them, so take the task back unless the drain got it first. Thieves take from the base,
+      // so a non-null pop is the task just pushed.
+      if (state.get() == STOP && current.queue.pop() == task) {
+        reject();
+      }
+    } else {
+      submissions.add(task);
+      // See Worker.run: if we read SHUTDOWN here, the workers may already have found the queue
+      // empty and exited, so take the task back unless one of them got it first.
+      if (state.get() != RUNNING && submissions.remove(task)) {
+        reject();
+      }
+    }
+    if (!idleWorkers.isEmpty()) {
+      signalWork();
+    }
+  }
+
+  private void reject() {
+    rejections.increment();
+    throw new RejectedExecutionException("Executor has been shut down");
+  }
+
+  /** Wakes up one idle worker, if there is one. */
+  private void signalWork() {
+    for (Worker worker; (worker = idleWorkers.poll()) != null; ) {
+      if (worker.idle.compareAndSet(true, false)) {
+        LockSupport.unpark(worker.thread);
+        return;
+      }
+    }
+  }
+
+  // Shutdown
+
+  @Override public void shutdown() {
+    if (state.compareAndSet(RUNNING, SHUTDOWN)) {
+      for (Worker worker : workers) {
+        LockSupport.unpark(worker.thread);
+      }
+    }
+  }
+
+  /**
+   * Stops accepting new tasks, interrupts all workers, and returns the tasks that had not yet
+   * started, in no particular order.
+   */
+  @Override public List<Runnable> shutdownNow() {
+    int previous = state.getAndSet(STOP);
+    if (previous == STOP) {
+      return ImmutableList.of();
+    }
+    for (Worker worker : workers) {
+      worker.thread.interrupt();
+      LockSupport.unpark(worker.thread);
+    }
+    ImmutableList.Builder<Runnable> unstarted = ImmutableList.builder();
+    for (Task task; (task = submissions.poll()) != null; ) {
+      unstarted.add(task.command);
+    }
+    for (Worker worker : workers) {
+      // poll() gives up on a slot that a thief or grow() is still moving, and nothing will run
+      // what is left behind, so keep at it: owners stop pushing once they see STOP
+      while (worker.queue.size() > 0) {
+        Task task = worker.queue.poll();
+        if (task != null) {
+          unstarted.add(task.command);
+        } else {
+          Thread.yield();
+        }
+      }
+    }
+    return unstarted.build();
+  }
+
+  @Override public boolean isShutdown() {
+    return state.get() != RUNNING;
+  }
+
+  @Override public boolean isTerminated() {
+    return termination.getCount() == 0;
+  }
+
+  @Override public boolean awaitTermination(long timeout, TimeUnit unit)
+      throws InterruptedException {
+    return termination.await(timeout, unit);
+  }
+
+  // Statistics
+
+  /**
+   * Returns the number of worker threads.
+   */
+  public int getParallelism() {
+    return workers.length;
+  }
+
+  /**
+   * Returns an estimate of the number of tasks submitted but not yet started. This method is
+   * designed for use in monitoring of the system state, not for synchronization control.
+   */
+  public int getQueuedTaskCount() {
+    int count = submissions.size();
+    for (Worker worker : workers) {
+      count += worker.queue.size();
+    }
+    return count;
+  }
+
+  /**
+   * Returns a snapshot of this executor's statistics. The counters are updated without locking, so
+   * a snapshot taken while tasks are running may be slightly inconsistent; for example, the total
+   * run time may include a task that is not yet counted as completed.
+   */
+  public Stats stats() {
+    return new Stats(completedTasks.sum(), queueWaitNanos.sum(), runNanos.sum(), steals.sum(),
+        rejections.sum());
+  }
+
+  @Override public String toString() {
+    return Objects.toStringHelper(this)
+        .add("parallelism", workers.length)
+        .add("state", state.get())
+        .add("queued", getQueuedTaskCount())
+        .toString();
+  }
+
+  /**
+   * Statistics about the tasks run by a {@link WorkStealingExecutorService}. Snapshots are
+   * immutable; subtract an earlier snapshot from a later one with {@link #minus} to get the
+   * statistics for an interval, for export to a monitoring system.
+   *
+   * @since 12.0
+   */
+  @Beta
+  public static final class Stats {
+    private final long completedTaskCount;
+    private final long totalQueueWaitNanos;
+    private final long totalRunNanos;
+    private final long stealCount;
+    private final long rejectedTaskCount;
+
+    Stats(long completedTaskCount, long totalQueueWaitNanos, long totalRunNanos, long stealCount,
+        long rejectedTaskCount) {
+      this.completedTaskCount = completedTaskCount;
+      this.totalQueueWaitNanos = totalQueueWaitNanos;
+      this.totalRunNanos = totalRunNanos;
+      this.stealCount = stealCount;
+      this.rejectedTaskCount = rejectedTaskCount;
+    }
+
+    /** Returns the number of tasks that have finished running, normally or not. */
+    public long completedTaskCount() {
+      return completedTaskCount;
+    }
+
+    /** Returns the total time completed tasks spent queued before they started, in nanoseconds. */
+    public long totalQueueWaitNanos() {
+      return totalQueueWaitNanos;
+    }
+
+    /** Returns the total time completed tasks spent running, in nanoseconds. */
+    public long totalRunNanos() {
+      return totalRunNanos;
+    }
+
+    /**
+     * Returns the average time a completed task spent queued, in nanoseconds, or 0.0 if no task
+     * has completed.
+     */
+    public double averageQueueWaitNanos() {
+      return (completedTaskCount == 0) ? 0.0 : (double) totalQueueWaitNanos / completedTaskCount;
+    }
+
+    /**
+     * Returns the average time a completed task spent running, in nanoseconds, or 0.0 if no task
+     * has completed.
+     */
+    public double averageRunNanos() {
+      return (completedTaskCount == 0) ? 0.0 : (double) totalRunNanos / completedTaskCount;
+    }
+
+    /** Returns the number of tasks a worker took from another worker's deque. */
+    public long stealCount() {
+      return stealCount;
+    }
+
+    /** Returns the number of tasks rejected because the executor had been shut down. */
+    public long rejectedTaskCount() {
+      return rejectedTaskCount;
+    }
+
+    /**
+     * Returns the difference between this snapshot and {@code other}, which should be an earlier
+     * snapshot of the same executor.
+     */
+    public Stats minus(Stats other) {
+      return new Stats(completedTaskCount - other.completedTaskCount,
+          totalQueueWaitNanos - other.totalQueueWaitNanos,
+          totalRunNanos - other.totalRunNanos,
+          stealCount - other.stealCount,
+          rejectedTaskCount - other.rejectedTaskCount);
+    }
+
+    @Override public String toString() {
+      return Objects.toStringHelper(this)
+          .add("completedTaskCount", completedTaskCount)
+          .add("totalQueueWaitNanos", totalQueueWaitNanos)
+          .add("totalRunNanos", totalRunNanos)
+          .add("stealCount", stealCount)
+          .add("rejectedTaskCount", rejectedTaskCount)
+          .toString();
+    }
+  }
+
+  // Workers
+
+  private static final class Task {
+    final Runnable command;
+    final long submittedNanos;
+
+    Task(Runnable command, long submittedNanos) {
+      this.command = command;
+      this.submittedNanos = submittedNanos;
+    }
+  }
+
+  private final class Worker implements Runnable {
+    final WorkQueue queue = new WorkQueue();
+    final AtomicBoolean idle = new AtomicBoolean();
+    final Thread thread;
+    int seed;
+
+    Worker(int index, ThreadFactory threadFactory) {
+      this.seed = index * 0x9E3779B9 + 1; // any nonzero seed will do for xorshift
+      this.thread = threadFactory.newThread(this);
+      checkNotNull(thread, "threadFactory returned null");
+    }
+
+    @Override public void run() {
+      currentWorker.set(this);
+      try {
+        for (;;) {
+          if (state.get() == STOP) {
+            return;
+          }
+          Task task = scan();
+          if (task != null) {
+            if (idle.get() && idle.compareAndSet(true, false)) {
+              idleWorkers.remove(this);
+            }
+            runTask(task);
+            continue;
+          }
+          if (state.get() != RUNNING && isQuiescent()) {
+            // nothing can be added after shutdown, so once empty, the queues stay empty
+            return;
+          }
+          if (idle.compareAndSet(false, true)) {
+            // rescan before parking: a submitter that missed us in idleWorkers will have
+            // published its task before it looked
+            idleWorkers.add(this);
+            continue;
+          }
+          LockSupport.park(this);
+        }
+      } finally {
+        currentWorker.remove();
+        idle.set(false);
+        idleWorkers.remove(this);
+        termination.countDown();
+      }
+    }
+
+    /** Returns a task from this worker's deque, the submission queue or another worker. */
+    Task scan() {
+      Task task = queue.pop();
+      if (task != null) {
+        return task;
+      }
+      task = submissions.poll();
+      if (task != null) {
+        return task;
+      }
+      Worker[] workers = WorkStealingExecutorService.this.workers;
+      int n = workers.length;
+      if (n > 1) {
+        int start = (nextRandom() >>> 1) % n;
+        for (int i = 0; i < n; i++) {
+          Worker victim = workers[(start + i) % n];
+          if (victim != this) {
+            task = victim.queue.poll();
+            if (task != null) {
+              steals.increment();
+              if (victim.queue.size() > 0 && !idleWorkers.isEmpty()) {
+                // more work where that came from; get help with it
+                signalWork();
+              }
+              return task;
+            }
+          }
+        }
+      }
+      return null;
+    }
+
+    void runTask(Task task) {
+      // clear any interrupt left over from a previous task, unless shutdownNow set it
+      if (Thread.interrupted() && state.get() == STOP) {
+        thread.interrupt();
+      }
+      long start = System.nanoTime();
+      queueWaitNanos.add(start - task.submittedNanos);
+      try {
+        task.command.run();
+      } catch (Throwable t) {
+        thread.getUncaughtExceptionHandler().uncaughtException(thread, t);
+      } finally {
+        runNanos.add(System.nanoTime() - start);
+        completedTasks.increment();
+      }
+    }
+
+    int nextRandom() {
+      int x = seed;
+      x ^= x << 13;
+      x ^= x >>> 17;
+      x ^= x << 5;
+      return seed = x;
+    }
+  }
+
+  private boolean isQuiescent() {
+    if (!submissions.isEmpty()) {
+      return false;
+    }
+    for (Worker worker : workers) {
+      if (worker.queue.size() > 0) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * A work-stealing deque, after the one in the jsr166y fork/join framework. Only the owning
+   * worker calls {@link #push} and {@link #pop}, which work at the top of the deque; any thread may
+   * call {@link #poll}, which takes from the bottom. Both ends claim a task by nulling out its slot
+   * with a compare-and-set, so a task is taken exactly once even when the owner and a thief race
+   * for the last one.
+   */
+  private static final class WorkQueue {
+    private static final int INITIAL_CAPACITY = 1 << 8;
+    private static final int MAXIMUM_CAPACITY = 1 << 26;
+
+    /** The slots; replaced only by the owner, when it grows the deque. */
+    volatile AtomicReferenceArray<Task> array =
+        new AtomicReferenceArray<Task>(INITIAL_CAPACITY);
+    /** Index of the next slot to poll; advanced by whichever thread claims that slot. */
+    volatile int base;
+    /** Index of the next slot to push to; written only by the owner. */
+    volatile int top;
+
+    int size() {
+      int n = top - base;
+      return (n < 0) ? 0 : n;
+    }
+
+    void push(Task task) {
+      AtomicReferenceArray<Task> a = array;
+      int s = top;
+      if (s - base >= a.length() - 1) {
+        a = grow();
+      }
+      a.lazySet(s & (a.length() - 1), task);
+      top = s + 1; // publishes the slot
+    }
+
+    Task pop() {
+      AtomicReferenceArray<Task> a = array;
+      for (int s; (s = top - 1) - base >= 0; ) {
+        int i = s & (a.length() - 1);
+        Task task = a.get(i);
+        if (task == null) {
+          break; // lost to a thief
+        }
+        if (a.compareAndSet(i, task, null)) {
+          top = s;
+          return task;
+        }
+      }
+      return null;
+    }
+
+    Task poll() {
+      for (int b; (b = base) - top < 0; ) {
+        AtomicReferenceArray<Task> a = array;
+        int i = b & (a.length() - 1);
+        Task task = a.get(i);
+        if (base == b) {
+          if (task == null) {
+            // the owner or another thief claimed it, or it is being moved by grow(); either way
+            // this is not worth waiting for
+            return null;
+          }
+          if (a.compareAndSet(i, task, null)) {
+            base = b + 1;
+            return task;
+          }
+        }
+      }
+      return null;
+    }
+
+    private AtomicReferenceArray<Task> grow() {
+      AtomicReferenceArray<Task> oldArray = array;
+      int oldSize = oldArray.length();
+      if (oldSize >= MAXIMUM_CAPACITY) {
+        throw new RejectedExecutionException("Work queue capacity exceeded");
+      }
+      AtomicReferenceArray<Task> newArray = new AtomicReferenceArray<Task>(oldSize << 1);
+      int oldMask = oldSize - 1;
+      int newMask = (oldSize << 1) - 1;
+      array = newArray;
+      for (int j = base, t = top; j - t < 0; j++) {
+        int i = j & oldMask;
+        Task task = oldArray.get(i);
+        if (task != null && oldArray.compareAndSet(i, task, null)) {
+          newArray.lazySet(j & newMask, task);
+        }
+      }
+      return newArray;
+    }
+  }
+}